@@ -11,6 +11,7 @@ import java.io.IOException;
 import javax.swing.ButtonGroup;
 import javax.swing.GroupLayout;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -31,6 +32,8 @@ public class GraphicalUI extends JFrame {
     private JTextField objectPathField;
     private static int MAX_LOL = 20;
     private JSpinner spinner;
+    private JSpinner threadSpinner;
+    private JCheckBox twoDBox;
 
     public GraphicalUI() {
 
@@ -80,6 +83,13 @@ public class GraphicalUI extends JFrame {
         SpinnerNumberModel spinModel = new SpinnerNumberModel(1, 0, MAX_LOL, 1);
         spinner = new JSpinner(spinModel);
         spinner.setMaximumSize(new Dimension(50,100));
+        JLabel threadLabel = new JLabel("Threads: ");
+        int processors = Runtime.getRuntime().availableProcessors();
+        SpinnerNumberModel threadModel = new SpinnerNumberModel(Compression.getParallelism(), 1,
+                Math.max(4 * processors, Compression.getParallelism()), 1);
+        threadSpinner = new JSpinner(threadModel);
+        threadSpinner.setMaximumSize(new Dimension(50,100));
+        twoDBox = new JCheckBox("Transform rows too (2D)", Compression.isTwoDimensional());
         
         layout.setHorizontalGroup(
                 layout.createParallelGroup(GroupLayout.Alignment.CENTER)
@@ -97,7 +107,11 @@ public class GraphicalUI extends JFrame {
                     .addComponent(convertButton)
                     .addPreferredGap(LayoutStyle.ComponentPlacement.UNRELATED)
                     .addComponent(lolLabel)
-                    .addComponent(spinner))
+                    .addComponent(spinner)
+                    .addPreferredGap(LayoutStyle.ComponentPlacement.UNRELATED)
+                    .addComponent(threadLabel)
+                    .addComponent(threadSpinner))
+                .addComponent(twoDBox)
                 );
 
         layout.setVerticalGroup(
@@ -116,7 +130,9 @@ public class GraphicalUI extends JFrame {
                     .addComponent(convertButton)
                     .addComponent(lolLabel)
                     .addComponent(spinner)
-                ));
+                    .addComponent(threadLabel)
+                    .addComponent(threadSpinner)
+                ).addComponent(twoDBox));
     }
 
     /**
@@ -124,6 +140,8 @@ public class GraphicalUI extends JFrame {
      * the conversion depending on the radiobuttons.
      */
     private void convert() {
+        Compression.setParallelism((Integer) threadSpinner.getValue());
+        Compression.setTwoDimensional(twoDBox.isSelected());
         if (bmpToWtf.isSelected()) {
             convertBmpToWtf();
         } else if (wtfTBmp.isSelected()){
@@ -0,0 +1,1392 @@
+package compression;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Measures the speed of different parts of the program. Run it with
+ * 'java -cp Compression.jar compression.Benchmark name', where name tells
+ * which benchmark is run. Without a name the list of the benchmarks is
+ * printed.
+ *
+ * The data of the benchmarks is generated, so no image files are needed.
+ * Every measured task is first run a few times without timing so that the
+ * virtual machine has compiled it, and then the best of several rounds is
+ * reported.
+ */
+public class Benchmark {
+
+    private static int WARMUP_ROUNDS = 20;
+    private static int ROUNDS = 20;
+    private static int BIG_WARMUP_ROUNDS = 2;
+    private static int BIG_ROUNDS = 3;
+    private static int COLUMNS = 64;
+    private static int[] HEIGHTS = {4096, 16384};
+    private static int[] LEVELS_OF_LOSS = {0, 2, 5};
+    private static int IMAGE_WIDTH = 1024;
+    private static int IMAGE_HEIGHT = 1024;
+    private static int BITMAP_WIDTH = 8192;
+    private static int BITMAP_HEIGHT = 6400;
+
+    /**
+     * Chooses the benchmark according to the command line arguments.
+     *
+     * @param args[0] The name of the benchmark.
+     * @param args[1] For some benchmarks, a bmp-file to be used instead of
+     * generated data.
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            printHelp();
+            return;
+        }
+
+        String name = args[0].trim();
+        if (name.equals("inverse")) {
+            benchmarkInverse();
+        } else if (name.equals("parallel")) {
+            benchmarkParallel();
+        } else if (name.equals("tiled")) {
+            benchmarkTiled();
+        } else if (name.equals("kernels")) {
+            benchmarkKernels();
+        } else if (name.equals("narrow")) {
+            benchmarkNarrow();
+        } else if (name.equals("series")) {
+            benchmarkSeries();
+        } else if (name.equals("io")) {
+            benchmarkIO();
+        } else if (name.equals("entropy")) {
+            benchmarkEntropy();
+        } else if (name.equals("sparse")) {
+            benchmarkSparse();
+        } else if (name.equals("progressive")) {
+            benchmarkProgressive();
+        } else if (name.equals("thumbnail")) {
+            benchmarkThumbnail();
+        } else if (name.equals("region")) {
+            benchmarkRegion();
+        } else if (name.equals("bitmap")) {
+            benchmarkBitmap();
+        } else if (name.equals("bmp")) {
+            benchmarkBmp();
+        } else if (name.equals("channels")) {
+            benchmarkChannels();
+        } else if (name.equals("ycocg")) {
+            benchmarkColorTransform(args.length > 1 ? args[1].trim() : null);
+        } else if (name.equals("layout")) {
+            benchmarkLayout();
+        } else if (name.equals("indexed")) {
+            benchmarkIndexed();
+        } else if (name.equals("2d")) {
+            benchmarkTwoDimensional(args.length > 1 ? args[1].trim() : null);
+        } else {
+            System.out.println("Unknown benchmark: " + name);
+            printHelp();
+        }
+    }
+
+    /**
+     * Prints the names of the benchmarks.
+     */
+    public static void printHelp() {
+        System.out.println("Benchmarks:");
+        System.out.println("inverse   inverse transform of a column: inverseBySupports vs. liftingInverse");
+        System.out.println("parallel  transform and inverse of an image with 1, 2, 4,... threads");
+        System.out.println("2d [img]  sizes of wtf-files with the column and the two-dimensional transform");
+        System.out.println("tiled     two-dimensional transform of a big image, whole and in tiles");
+        System.out.println("kernels   transform and inverse of a column with the scalar and the vector kernels");
+        System.out.println("          (run with --add-modules jdk.incubator.vector to get the vector ones)");
+        System.out.println("series    transforms of an image with the levels of loss 0,...,20: one by one vs. at once");
+        System.out.println("entropy   file sizes and speeds of entropy and Rice coded wtf-files vs. mixed ones");
+        System.out.println("sparse    zero run coded wtf-files and the sparse inverse, noisy and flat images");
+        System.out.println("progressive  quality and reading time of beginnings of a progressive wtf-file");
+        System.out.println("thumbnail thumbnails of an indexed and a mixed wtf-file vs. decoding the whole image");
+        System.out.println("region    rectangles of different sizes cut from wtf-files vs. decoding the whole image");
+        System.out.println("indexed   reading an indexed wtf-file with one thread vs. all the threads");
+        System.out.println("bitmap    bmp-images of 52 megapixels to planes and back: getRGB/setRGB vs. the raster");
+        System.out.println("bmp       reading and writing a bmp-file of 52 megapixels: ImageIO vs. BmpReader and BmpWriter");
+        System.out.println("layout    a bmp-file to a transform and back: column-major vs. row-major planes");
+        System.out.println("channels  a grayscale image stored as three colors vs. as one color");
+        System.out.println("ycocg [img]  sizes and quality of wtf-files with and without the YCoCg-R colors");
+        System.out.println("io        writing and reading a wtf-file with streams vs. mapped files and channels");
+        System.out.println("narrow    memory of the coefficients and writing time, as ints and narrowly");
+    }
+
+    /**
+     * Compares the O(n log n) inverse transform, which adds every coefficient
+     * to the numbers under its wavelet, to the O(n) one that rebuilds the
+     * levels from the root.
+     */
+    private static void benchmarkInverse() {
+        System.out.println("height\tlol\tby supports\tlifting \tspeedup");
+        for (final int height : HEIGHTS) {
+            for (final int lol : LEVELS_OF_LOSS) {
+                final int[][] transforms = new int[COLUMNS][];
+                for (int i = 0; i < COLUMNS; i++) {
+                    transforms[i] = HaarTransform.lossyTransformArbitraryLength(createColumn(height, i), lol);
+                }
+                final byte[] inverse = new byte[height];
+                final int[] work = new int[transforms[0].length];
+
+                double bySupports = time(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < COLUMNS; i++) {
+                            HaarTransform.inverseBySupports(transforms[i], lol);
+                        }
+                    }
+                });
+                double lifting = time(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < COLUMNS; i++) {
+                            HaarTransform.liftingInverse(transforms[i], lol, inverse, work);
+                        }
+                    }
+                });
+
+                System.out.println(height + "\t" + lol + "\t" + format(bySupports) + " ms\t"
+                        + format(lifting) + " ms\t" + format(bySupports / lifting) + "x");
+            }
+        }
+    }
+
+    /**
+     * Compares the scalar kernels of the class HaarKernels with the ones that
+     * HaarKernels.get() chooses: lossyTransformPowerOfTwo, which uses sumTree,
+     * and addDivideConvert on columns whose heights are powers of two, and
+     * liftingInverse, which the files are converted back with.
+     */
+    private static void benchmarkKernels() {
+        HaarKernels scalar = new HaarKernels();
+        HaarKernels chosen = HaarKernels.get();
+        System.out.println("Kernels: " + chosen.getName());
+        System.out.println("height\tlol\ttransform\t\t\tadd, divide, convert\t\tlifting inverse");
+        System.out.println("\t\tscalar\t\tchosen\t\tscalar\t\tchosen\t\tscalar\t\tchosen");
+        for (int height : HEIGHTS) {
+            for (final int lol : LEVELS_OF_LOSS) {
+                final byte[][] columns = new byte[COLUMNS][];
+                final int[][] sums = new int[COLUMNS][height];
+                for (int i = 0; i < COLUMNS; i++) {
+                    columns[i] = createColumn(height, i);
+                    for (int y = 0; y < height; y++) {
+                        sums[i][y] = columns[i][y] << lol;
+                    }
+                }
+                final byte[] result = new byte[height];
+                final int[][] lifted = new int[COLUMNS][];
+                for (int i = 0; i < COLUMNS; i++) {
+                    lifted[i] = new int[HaarTransform.compressedLength(height, lol)];
+                    HaarTransform.liftingTransform(columns[i], lol, lifted[i]);
+                }
+                final int[] work = new int[height];
+
+                Runnable transform = new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < COLUMNS; i++) {
+                            HaarTransform.lossyTransformPowerOfTwo(columns[i], lol);
+                        }
+                    }
+                };
+                Runnable divide = new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < COLUMNS; i++) {
+                            HaarKernels.get().addDivideConvert(sums[i], 1, 1 << lol, result);
+                        }
+                    }
+                };
+                Runnable inverse = new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < COLUMNS; i++) {
+                            HaarTransform.liftingInverse(lifted[i], lol, result, work);
+                        }
+                    }
+                };
+
+                HaarKernels.set(scalar);
+                double scalarTransform = time(transform);
+                double scalarDivide = time(divide);
+                double scalarInverse = time(inverse);
+                HaarKernels.set(chosen);
+                double chosenTransform = time(transform);
+                double chosenDivide = time(divide);
+                double chosenInverse = time(inverse);
+
+                System.out.println(height + "\t" + lol + "\t" + format(scalarTransform) + " ms\t"
+                        + format(chosenTransform) + " ms\t" + format(scalarDivide) + " ms\t"
+                        + format(chosenDivide) + " ms\t" + format(scalarInverse) + " ms\t"
+                        + format(chosenInverse) + " ms");
+            }
+        }
+    }
+
+    /**
+     * Transforms and inverts an image with the sequential methods and with
+     * ParallelTransform, doubling the number of threads up to the number of
+     * processors.
+     */
+    private static void benchmarkParallel() {
+        final byte[][][] data = createImage(3, IMAGE_WIDTH, IMAGE_HEIGHT);
+        final int[][][] transform = HaarTransform.lossyTransfrom(data, 0);
+        System.out.println("Image " + IMAGE_WIDTH + " x " + IMAGE_HEIGHT + ", lol = 0");
+        System.out.println("threads\ttransform\tinverse");
+
+        double transformTime = time(new Runnable() {
+            @Override
+            public void run() {
+                HaarTransform.lossyTransfrom(data, 0);
+            }
+        });
+        double inverseTime = time(new Runnable() {
+            @Override
+            public void run() {
+                HaarTransform.inverseLossyTransform(transform, IMAGE_HEIGHT, 0);
+            }
+        });
+        System.out.println("seq.\t" + format(transformTime) + " ms\t" + format(inverseTime) + " ms");
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= processors; threads *= 2) {
+            final ForkJoinPool pool = new ForkJoinPool(threads);
+            transformTime = time(new Runnable() {
+                @Override
+                public void run() {
+                    ParallelTransform.lossyTransform(data, 0, pool);
+                }
+            });
+            inverseTime = time(new Runnable() {
+                @Override
+                public void run() {
+                    ParallelTransform.inverseLossyTransform(transform, IMAGE_HEIGHT, 0, pool);
+                }
+            });
+            pool.shutdown();
+            System.out.println(threads + "\t" + format(transformTime) + " ms\t" + format(inverseTime) + " ms");
+        }
+    }
+
+    /**
+     * Writes an image into wtf-files with the column transform and with the
+     * two-dimensional one, for levels of loss 0,...,5, and compares the sizes
+     * of the files. Because the two-dimensional transform loses more with the
+     * same level of loss, also the mean absolute error of the retrieved
+     * shades is reported.
+     *
+     * @param imageFile A bmp-file, or null for a generated image.
+     * @throws IOException
+     */
+    private static void benchmarkTwoDimensional(String imageFile) throws IOException {
+        byte[][][] data = imageFile == null ? createImage(3, IMAGE_WIDTH, IMAGE_HEIGHT)
+                : BitmapIO.readFileIntoByteData(new File(imageFile));
+        int width = data[0].length;
+        int height = data[0][0].length;
+        ForkJoinPool pool = new ForkJoinPool();
+        File file = File.createTempFile("benchmark", ".wtf");
+
+        System.out.println("Image " + width + " x " + height);
+        System.out.println("lol\tcolumns\t\terror\t2D\t\terror\treduction");
+        for (int lol = 0; lol <= 5; lol++) {
+            int[][][] transform = ParallelTransform.lossyTransform(data, lol, pool);
+            WTFIO.writeMixedData(transform, height, lol, file);
+            long columnSize = file.length();
+            double columnError = meanError(data, ParallelTransform.inverseLossyTransform(transform, height, lol, pool));
+
+            transform = HaarTransform.lossyTransform2D(data, lol, pool);
+            WTFIO.writeMixedData2D(transform, width, height, lol, file);
+            long twoDSize = file.length();
+            double twoDError = meanError(data, HaarTransform.inverseLossyTransform2D(transform, width, height, lol, pool));
+
+            System.out.println(lol + "\t" + (columnSize / 1000) + " kb\t" + format(columnError) + "\t"
+                    + (twoDSize / 1000) + " kb\t" + format(twoDError) + "\t"
+                    + format(100.0 * (columnSize - twoDSize) / columnSize) + " %");
+        }
+
+        file.delete();
+        pool.shutdown();
+    }
+
+    /**
+     * Transforms and inverts a 4096 x 4096 image two-dimensionally as a whole
+     * and in tiles of different sizes.
+     */
+    private static void benchmarkTiled() {
+        final byte[][][] data = createImage(3, 4096, 4096);
+        final ForkJoinPool pool = new ForkJoinPool();
+        System.out.println("Image 4096 x 4096, lol = 0");
+        System.out.println("tiles\ttransform\tinverse");
+
+        final int[][][] whole = HaarTransform.lossyTransform2D(data, 0, pool);
+        double transformTime = time(new Runnable() {
+            @Override
+            public void run() {
+                HaarTransform.lossyTransform2D(data, 0, pool);
+            }
+        }, BIG_WARMUP_ROUNDS, BIG_ROUNDS);
+        double inverseTime = time(new Runnable() {
+            @Override
+            public void run() {
+                HaarTransform.inverseLossyTransform2D(whole, 4096, 4096, 0, pool);
+            }
+        }, BIG_WARMUP_ROUNDS, BIG_ROUNDS);
+        System.out.println("none\t" + format(transformTime) + " ms\t" + format(inverseTime) + " ms");
+
+        for (final int tileSize : new int[]{64, 128, 256, 512}) {
+            final int[][][] tiled = HaarTransform.lossyTransformTiled(data, 0, tileSize, pool);
+            transformTime = time(new Runnable() {
+                @Override
+                public void run() {
+                    HaarTransform.lossyTransformTiled(data, 0, tileSize, pool);
+                }
+            }, BIG_WARMUP_ROUNDS, BIG_ROUNDS);
+            inverseTime = time(new Runnable() {
+                @Override
+                public void run() {
+                    HaarTransform.inverseLossyTransformTiled(tiled, 4096, 4096, 0, tileSize, pool);
+                }
+            }, BIG_WARMUP_ROUNDS, BIG_ROUNDS);
+            System.out.println(tileSize + "\t" + format(transformTime) + " ms\t" + format(inverseTime) + " ms");
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * Compares the memory that the coefficients of an image take when they are
+     * stored as ints and narrowly, and the times of transforming the image and
+     * writing the transform into a wtf-file in both ways.
+     *
+     * @throws IOException
+     */
+    private static void benchmarkNarrow() throws IOException {
+        final ImagePlanes image = ImagePlanes.fromJagged(createImage(3, IMAGE_WIDTH, IMAGE_HEIGHT));
+        final ForkJoinPool pool = new ForkJoinPool();
+        final File file = File.createTempFile("benchmark", ".wtf");
+        System.out.println("Image " + IMAGE_WIDTH + " x " + IMAGE_HEIGHT);
+        System.out.println("lol	ints	narrow	ints: transform + write	narrow: transform + write");
+
+        for (final int lol : LEVELS_OF_LOSS) {
+            NarrowCoefficients narrow = ParallelTransform.lossyTransformNarrow(image, lol, pool);
+            double intTime = time(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        WTFIO.writeMixedData(ParallelTransform.lossyTransform(image, lol, pool),
+                                IMAGE_HEIGHT, lol, file);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }, BIG_WARMUP_ROUNDS, BIG_ROUNDS);
+            double narrowTime = time(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        WTFIO.writeMixedData(ParallelTransform.lossyTransformNarrow(image, lol, pool),
+                                IMAGE_HEIGHT, lol, file);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }, BIG_WARMUP_ROUNDS, BIG_ROUNDS);
+            System.out.println(lol + "\t" + narrow.getCoefficients() * 4 / 1024 + " kB\t"
+                    + narrow.getSizeInBytes() / 1024 + " kB\t" + format(intTime) + " ms\t\t\t"
+                    + format(narrowTime) + " ms");
+        }
+        file.delete();
+        pool.shutdown();
+    }
+
+    /**
+     * Compares transforming an image with all the levels of loss 0,...,20 one
+     * level at a time to deriving them from one transform.
+     */
+    private static void benchmarkSeries() {
+        final ImagePlanes image = ImagePlanes.fromJagged(createImage(3, IMAGE_WIDTH, IMAGE_HEIGHT));
+        final ForkJoinPool pool = new ForkJoinPool();
+        System.out.println("Image " + IMAGE_WIDTH + " x " + IMAGE_HEIGHT + ", lol = 0,...,20");
+
+        double oneByOne = time(new Runnable() {
+            @Override
+            public void run() {
+                for (int lol = 0; lol <= 20; lol++) {
+                    ParallelTransform.lossyTransformNarrow(image, lol, pool);
+                }
+            }
+        }, BIG_WARMUP_ROUNDS, BIG_ROUNDS);
+        double atOnce = time(new Runnable() {
+            @Override
+            public void run() {
+                ParallelTransform.lossyTransformSeries(image, 0, 20, pool);
+            }
+        }, BIG_WARMUP_ROUNDS, BIG_ROUNDS);
+        System.out.println("one by one\t" + format(oneByOne) + " ms");
+        System.out.println("at once\t\t" + format(atOnce) + " ms");
+        pool.shutdown();
+    }
+
+    /**
+     * Compares the entropy coded wtf-files (type 5) and the Rice coded ones
+     * (type 6) to the mixed ones (type 1): the sizes of the files and how many
+     * megabytes of the image are written and read in a second. All are read
+     * with all the threads, and all but the Rice coded ones are written with
+     * them too.
+     *
+     * @throws IOException
+     */
+    private static void benchmarkEntropy() throws IOException {
+        final ForkJoinPool pool = new ForkJoinPool();
+        final File mixed = File.createTempFile("benchmark", ".wtf");
+        final File coded = File.createTempFile("benchmark", ".wtf");
+        final File rice = File.createTempFile("benchmark", ".wtf");
+        double megabytes = 3.0 * IMAGE_WIDTH * IMAGE_HEIGHT / (1 << 20);
+        System.out.println("Image " + IMAGE_WIDTH + " x " + IMAGE_HEIGHT + ", " + pool.getParallelism() + " threads");
+        System.out.println("\ttype 1\t\t\t\ttype 5\t\t\t\ttype 6");
+        System.out.println("lol\tfile\twrite\t\tread\t\tfile\twrite\t\tread\t\tfile\twrite\t\tread");
+
+        for (int lol : LEVELS_OF_LOSS) {
+            final CoefficientPlanes transform = ParallelTransform.lossyTransform(
+                    ImagePlanes.fromJagged(createImage(3, IMAGE_WIDTH, IMAGE_HEIGHT)), lol, pool);
+            final int levelOfLoss = lol;
+
+            double mixedWrite = time(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        WTFIO.writeMixedData(transform, IMAGE_HEIGHT, levelOfLoss, mixed, pool);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }, BIG_WARMUP_ROUNDS * 5, BIG_ROUNDS * 3);
+            double codedWrite = time(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        WTFIO.writeEntropyData(transform, IMAGE_WIDTH, IMAGE_HEIGHT, levelOfLoss, 0, coded, pool);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }, BIG_WARMUP_ROUNDS * 5, BIG_ROUNDS * 3);
+            double riceWrite = time(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        WTFIO.writeRiceData(transform, IMAGE_WIDTH, IMAGE_HEIGHT, levelOfLoss, 0, rice);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }, BIG_WARMUP_ROUNDS * 5, BIG_ROUNDS * 3);
+            double mixedRead = time(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        new WTFIO(mixed).readPlanes(pool);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            double codedRead = time(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        new WTFIO(coded).readPlanes(pool);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            double riceRead = time(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        new WTFIO(rice).readPlanes(pool);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+
+            System.out.println(lol + "\t" + mixed.length() / 1024 + " kB\t"
+                    + format(megabytes * 1000 / mixedWrite) + " MB/s\t" + format(megabytes * 1000 / mixedRead)
+                    + " MB/s\t" + coded.length() / 1024 + " kB\t" + format(megabytes * 1000 / codedWrite)
+                    + " MB/s\t" + format(megabytes * 1000 / codedRead) + " MB/s\t" + rice.length() / 1024
+                    + " kB\t" + format(megabytes * 1000 / riceWrite) + " MB/s\t"
+                    + format(megabytes * 1000 / riceRead) + " MB/s");
+        }
+        mixed.delete();
+        coded.delete();
+        rice.delete();
+        pool.shutdown();
+    }
+
+    /**
+     * Compares the zero run coded wtf-files (type 7) to the mixed ones (type 1)
+     * and the inverse transform of a SparseLine to liftingInverse, with the
+     * generated image, with a flat one, whose numbers are rounded down to
+     * multiples of 32, and with one of plain rectangles. The inverses are of
+     * all the columns of a color, one after another. Then the whole type 7
+     * file is decoded into the image both with readPlanes and the dense
+     * inverse and with WTFIO.readSparseImage, which picks the inverse line by
+     * line.
+     *
+     * @throws IOException
+     */
+    private static void benchmarkSparse() throws IOException {
+        final ForkJoinPool pool = new ForkJoinPool();
+        File mixed = File.createTempFile("benchmark", ".wtf");
+        final File coded = File.createTempFile("benchmark", ".wtf");
+        System.out.println("Image " + IMAGE_WIDTH + " x " + IMAGE_HEIGHT);
+        System.out.println("image\tlol\tnonzero\ttype 1\t\ttype 7\t\tdense inverse\tsparse inverse"
+                + "\tdense decode\tsparse decode");
+
+        String[] images = {"noisy", "flat", "blocks"};
+        for (String image : images) {
+            byte[][][] data = createImage(3, IMAGE_WIDTH, IMAGE_HEIGHT);
+            for (byte[][] color : data) {
+                for (int x = 0; x < IMAGE_WIDTH; x++) {
+                    for (int y = 0; y < IMAGE_HEIGHT; y++) {
+                        if (image.equals("flat")) {
+                            color[x][y] &= ~31;
+                        } else if (image.equals("blocks")) {
+                            color[x][y] = (byte) (40 * ((x / 100 + y / 150) % 5));
+                        }
+                    }
+                }
+            }
+            for (final int lol : LEVELS_OF_LOSS) {
+                CoefficientPlanes transform = ParallelTransform.lossyTransform(ImagePlanes.fromJagged(data), lol,
+                        pool);
+                WTFIO.writeMixedData(transform, IMAGE_HEIGHT, lol, mixed);
+                WTFIO.writeZeroRunData(transform, IMAGE_WIDTH, IMAGE_HEIGHT, lol, 0, coded);
+
+                final int[][] columns = new int[IMAGE_WIDTH][];
+                final SparseLine[] sparse = new SparseLine[IMAGE_WIDTH];
+                long nonzero = 0;
+                for (int x = 0; x < IMAGE_WIDTH; x++) {
+                    columns[x] = HaarTransform.lossyTransformArbitraryLength(data[0][x], lol);
+                    sparse[x] = SparseLine.fromDense(columns[x], 0, columns[x].length);
+                    nonzero += sparse[x].getCount();
+                }
+                final byte[] inverse = new byte[IMAGE_HEIGHT];
+                final int[] work = new int[columns[0].length];
+                final int[] sparseWork = new int[2 * columns[0].length];
+
+                double dense = time(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int x = 0; x < IMAGE_WIDTH; x++) {
+                            HaarTransform.liftingInverse(columns[x], lol, inverse, work);
+                        }
+                    }
+                }, BIG_WARMUP_ROUNDS * 5, BIG_ROUNDS * 3);
+                double sparseTime = time(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int x = 0; x < IMAGE_WIDTH; x++) {
+                            HaarTransform.sparseInverse(sparse[x], lol, inverse, 0, IMAGE_HEIGHT, sparseWork);
+                        }
+                    }
+                }, BIG_WARMUP_ROUNDS * 5, BIG_ROUNDS * 3);
+                double denseDecode = time(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            ParallelTransform.inverseLossyTransform(new WTFIO(coded).readPlanes(pool), IMAGE_HEIGHT,
+                                    lol, pool);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }, BIG_WARMUP_ROUNDS, BIG_ROUNDS);
+                double sparseDecode = time(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            new WTFIO(coded).readSparseImage(pool);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }, BIG_WARMUP_ROUNDS, BIG_ROUNDS);
+
+                System.out.println(image + "\t" + lol + "\t"
+                        + format(100.0 * nonzero / IMAGE_WIDTH / columns[0].length) + " %\t"
+                        + mixed.length() / 1024 + " kB\t\t" + coded.length() / 1024 + " kB\t\t"
+                        + format(dense) + " ms\t" + format(sparseTime) + " ms\t"
+                        + format(denseDecode) + " ms\t" + format(sparseDecode) + " ms");
+            }
+        }
+        mixed.delete();
+        coded.delete();
+        pool.shutdown();
+    }
+
+    /**
+     * Writes the generated image as a progressive wtf-file (type 8) and reads
+     * beginnings of it of different lengths. For each the peak signal to
+     * noise ratio of the image retrieved from it is told, with the time the
+     * reading took. The sizes of the mixed (type 1) and the entropy coded
+     * (type 5) files are told for comparison.
+     *
+     * @throws IOException
+     */
+    private static void benchmarkProgressive() throws IOException {
+        final ForkJoinPool pool = new ForkJoinPool();
+        final File file = File.createTempFile("benchmark", ".wtf");
+        File other = File.createTempFile("benchmark", ".wtf");
+        ImagePlanes image = ImagePlanes.fromJagged(createImage(3, IMAGE_WIDTH, IMAGE_HEIGHT));
+        System.out.println("Image " + IMAGE_WIDTH + " x " + IMAGE_HEIGHT);
+
+        for (int lol : new int[]{0, 2}) {
+            final CoefficientPlanes transform = ParallelTransform.lossyTransform(image, lol, pool);
+            final int levelOfLoss = lol;
+            WTFIO.writeMixedData(transform, IMAGE_HEIGHT, lol, other);
+            long mixedLength = other.length();
+            WTFIO.writeEntropyData(transform, IMAGE_WIDTH, IMAGE_HEIGHT, lol, 0, other, pool);
+            double write = time(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        WTFIO.writeProgressiveData(transform, IMAGE_WIDTH, IMAGE_HEIGHT, levelOfLoss, 0, file);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }, BIG_WARMUP_ROUNDS, BIG_ROUNDS);
+            System.out.println("lol " + lol + ": type 1 " + mixedLength / 1024 + " kB, type 5 "
+                    + other.length() / 1024 + " kB, type 8 " + file.length() / 1024 + " kB written in "
+                    + format(write) + " ms");
+            System.out.println("read	bytes	PSNR		read time");
+
+            for (int percent : new int[]{1, 5, 10, 25, 50, 100}) {
+                final long bytes = file.length() * percent / 100;
+                double read = time(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            new WTFIO(file).readProgressive(bytes);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }, BIG_WARMUP_ROUNDS, BIG_ROUNDS);
+                ImagePlanes decoded = ParallelTransform.inverseLossyTransform(
+                        new WTFIO(file).readProgressive(bytes), IMAGE_HEIGHT, lol, pool);
+                System.out.println(percent + " %	" + bytes / 1024 + " kB	" + psnr(image, decoded) + "		"
+                        + format(read) + " ms");
+            }
+        }
+        file.delete();
+        other.delete();
+        pool.shutdown();
+    }
+
+    /**
+     * An auxiliary method for benchmarkProgressive. Tells the peak signal to
+     * noise ratio of an image retrieved from a transform, in decibels. The
+     * numbers are compared as signed bytes like the transforms see them.
+     */
+    private static String psnr(ImagePlanes original, ImagePlanes retrieved) {
+        double squares = 0;
+        long pixels = 0;
+        for (int c = 0; c < original.getColors(); c++) {
+            byte[] a = original.getPlane(c);
+            byte[] b = retrieved.getPlane(c);
+            for (int i = 0; i < a.length; i++) {
+                int difference = a[i] - b[i];
+                squares += difference * difference;
+            }
+            pixels += a.length;
+        }
+        if (squares == 0) {
+            return "lossless";
+        }
+        return format(10 * Math.log10(255.0 * 255.0 * pixels / squares)) + " dB";
+    }
+
+    /**
+     * Compares decoding the whole image from a wtf-file to decoding
+     * thumbnails of it with WTFIO.readCoarserPlanes and
+     * ParallelTransform.inverseThumbnail. The indexed file (type 4) is read
+     * only partly, the mixed one (type 1) whole.
+     *
+     * @throws IOException
+     */
+    private static void benchmarkThumbnail() throws IOException {
+        final ForkJoinPool pool = new ForkJoinPool();
+        File indexed = File.createTempFile("benchmark", ".wtf");
+        File mixed = File.createTempFile("benchmark", ".wtf");
+        CoefficientPlanes transform = ParallelTransform.lossyTransform(
+                ImagePlanes.fromJagged(createImage(3, IMAGE_WIDTH, IMAGE_HEIGHT)), 0, pool);
+        WTFIO.writeIndexedData(transform, IMAGE_WIDTH, IMAGE_HEIGHT, 0, 0, indexed);
+        WTFIO.writeMixedData(transform, IMAGE_HEIGHT, 0, mixed);
+        System.out.println("Image " + IMAGE_WIDTH + " x " + IMAGE_HEIGHT + ", " + pool.getParallelism() + " threads");
+        System.out.println("scale	size		type 4		type 1");
+
+        for (int scale = 0; scale <= 5; scale++) {
+            final int thumbnailScale = scale;
+            String times = "";
+            for (final File file : new File[]{indexed, mixed}) {
+                double time = time(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            WTFIO read = new WTFIO(file);
+                            if (thumbnailScale == 0) {
+                                ParallelTransform.inverseLossyTransform(read.readPlanes(pool), IMAGE_HEIGHT, 0,
+                                        pool);
+                            } else {
+                                ParallelTransform.inverseThumbnail(read.readCoarserPlanes(thumbnailScale, pool),
+                                        IMAGE_HEIGHT, thumbnailScale, thumbnailScale, pool);
+                            }
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }, BIG_WARMUP_ROUNDS * 5, BIG_ROUNDS * 3);
+                times += "\t" + format(time) + " ms";
+            }
+            System.out.println(scale + "\t" + (IMAGE_WIDTH >> scale) + " x " + (IMAGE_HEIGHT >> scale) + "\t" + times);
+        }
+        indexed.delete();
+        mixed.delete();
+        pool.shutdown();
+    }
+
+    /**
+     * Compares decoding the whole image from a wtf-file to decoding squares
+     * of different sizes in its middle with WTFIO.readRegion and
+     * ParallelTransform.inverseRegion, with an indexed (type 4), a mixed
+     * (type 1) and a Rice coded (type 6) file.
+     *
+     * @throws IOException
+     */
+    private static void benchmarkRegion() throws IOException {
+        final ForkJoinPool pool = new ForkJoinPool();
+        File[] files = new File[3];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = File.createTempFile("benchmark", ".wtf");
+        }
+        CoefficientPlanes transform = ParallelTransform.lossyTransform(
+                ImagePlanes.fromJagged(createImage(3, IMAGE_WIDTH, IMAGE_HEIGHT)), 0, pool);
+        WTFIO.writeIndexedData(transform, IMAGE_WIDTH, IMAGE_HEIGHT, 0, 0, files[0]);
+        WTFIO.writeMixedData(transform, IMAGE_HEIGHT, 0, files[1]);
+        WTFIO.writeRiceData(transform, IMAGE_WIDTH, IMAGE_HEIGHT, 0, 0, files[2]);
+        System.out.println("Image " + IMAGE_WIDTH + " x " + IMAGE_HEIGHT + ", " + pool.getParallelism() + " threads");
+        System.out.println("square		type 4		type 1		type 6");
+
+        for (int size = 16; size <= IMAGE_WIDTH; size *= 4) {
+            final int side = size;
+            final int corner = (IMAGE_WIDTH - size) / 2;
+            String times = "";
+            for (final File file : files) {
+                double time = time(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            WTFIO read = new WTFIO(file);
+                            if (side == IMAGE_WIDTH) {
+                                ParallelTransform.inverseLossyTransform(read.readPlanes(pool), IMAGE_HEIGHT, 0,
+                                        pool);
+                            } else {
+                                ParallelTransform.inverseRegion(read.readRegion(corner, corner, side, side, pool),
+                                        IMAGE_HEIGHT, 0, corner, side, pool);
+                            }
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }, BIG_WARMUP_ROUNDS * 5, BIG_ROUNDS * 3);
+                times += "\t" + format(time) + " ms";
+            }
+            System.out.println(size + " x " + size + (side == IMAGE_WIDTH ? " (whole)" : "\t") + times);
+        }
+        for (File file : files) {
+            file.delete();
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * Compares copying a big image into planes and back one pixel at a time
+     * through getRGB and setRGB to copying the bytes of its raster straight,
+     * and the same with reading and writing the bmp-file.
+     *
+     * @throws IOException
+     */
+    private static void benchmarkBitmap() throws IOException {
+        final File file = File.createTempFile("benchmark", ".bmp");
+        final ImagePlanes planes = new ImagePlanes(3, BITMAP_WIDTH, BITMAP_HEIGHT);
+        Random random = new Random();
+        for (int c = 0; c < 3; c++) {
+            random.nextBytes(planes.getPlane(c));
+        }
+        final BufferedImage image = BitmapIO.planesToImage(planes);
+        BitmapIO.writePlanesIntoBitmap(planes, file);
+        System.out.println("Image " + BITMAP_WIDTH + " x " + BITMAP_HEIGHT + ", " + file.length() / (1024 * 1024)
+                + " MB");
+        System.out.println("\t\tper pixel\traster");
+
+        double slowRead = time(new Runnable() {
+            @Override
+            public void run() {
+                BitmapIO.imageToPlanesPerPixel(image);
+            }
+        }, 1, BIG_ROUNDS);
+        double fastRead = time(new Runnable() {
+            @Override
+            public void run() {
+                BitmapIO.imageToPlanes(image);
+            }
+        }, BIG_WARMUP_ROUNDS, BIG_ROUNDS);
+        System.out.println("to planes\t" + format(slowRead) + " ms\t" + format(fastRead) + " ms");
+
+        double slowWrite = time(new Runnable() {
+            @Override
+            public void run() {
+                BitmapIO.planesToImagePerPixel(planes);
+            }
+        }, 1, BIG_ROUNDS);
+        double fastWrite = time(new Runnable() {
+            @Override
+            public void run() {
+                BitmapIO.planesToImage(planes);
+            }
+        }, BIG_WARMUP_ROUNDS, BIG_ROUNDS);
+        System.out.println("to image\t" + format(slowWrite) + " ms\t" + format(fastWrite) + " ms");
+
+        double slowFile = time(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ImageIO.write(BitmapIO.planesToImagePerPixel(BitmapIO.imageToPlanesPerPixel(ImageIO.read(file))),
+                            "bmp", file);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }, 1, BIG_ROUNDS);
+        double fastFile = time(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    BitmapIO.writePlanesIntoBitmap(BitmapIO.readFileIntoPlanes(file), file);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }, 1, BIG_ROUNDS);
+        System.out.println("file and back\t" + format(slowFile) + " ms\t" + format(fastFile) + " ms");
+        file.delete();
+    }
+
+    /**
+     * Compares reading and writing a big bmp-file with ImageIO to reading it
+     * with BmpReader from the mapped file and writing it with BmpWriter, and
+     * the time until the first strip of StreamingEncoder has been read.
+     *
+     * @throws IOException
+     */
+    private static void benchmarkBmp() throws IOException {
+        final File file = File.createTempFile("benchmark", ".bmp");
+        final ImagePlanes planes = new ImagePlanes(3, BITMAP_WIDTH, BITMAP_HEIGHT);
+        Random random = new Random();
+        for (int c = 0; c < 3; c++) {
+            random.nextBytes(planes.getPlane(c));
+        }
+        BitmapIO.writePlanesIntoBitmap(planes, file);
+        final int stripWidth = StreamingEncoder.stripWidth(BITMAP_HEIGHT, 3, 0, StreamingEncoder.DEFAULT_MEMORY_BUDGET);
+        System.out.println("Image " + BITMAP_WIDTH + " x " + BITMAP_HEIGHT + ", " + file.length() / (1024 * 1024)
+                + " MB, strips of " + stripWidth + " columns");
+        System.out.println("\t\tImageIO\t\tBmpReader/BmpWriter");
+
+        double imageIORead = time(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    BitmapIO.imageToPlanes(ImageIO.read(file));
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }, 1, BIG_ROUNDS);
+        double nativeRead = time(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    BitmapIO.readFileIntoPlanes(file);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }, 1, BIG_ROUNDS);
+        System.out.println("read\t\t" + format(imageIORead) + " ms\t" + format(nativeRead) + " ms");
+
+        double imageIOStrip = time(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ImageInputStream stream = ImageIO.createImageInputStream(file);
+                    ImageReader reader = ImageIO.getImageReaders(stream).next();
+                    reader.setInput(stream, true, true);
+                    ImageReadParam region = reader.getDefaultReadParam();
+                    region.setSourceRegion(new Rectangle(0, 0, stripWidth, BITMAP_HEIGHT));
+                    BitmapIO.imageToPlanes(reader.read(0, region));
+                    reader.dispose();
+                    stream.close();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }, 1, BIG_ROUNDS);
+        double nativeStrip = time(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    BmpReader reader = BmpReader.open(file);
+                    reader.readColumns(0, stripWidth);
+                    reader.close();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }, 1, BIG_ROUNDS);
+        System.out.println("first strip\t" + format(imageIOStrip) + " ms\t" + format(nativeStrip) + " ms");
+
+        double imageIOWrite = time(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ImageIO.write(BitmapIO.planesToImage(planes), "bmp", file);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }, 1, BIG_ROUNDS);
+        double nativeWrite = time(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    BitmapIO.writePlanesIntoBitmap(planes, file);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }, 1, BIG_ROUNDS);
+        System.out.println("write\t\t" + format(imageIOWrite) + " ms\t" + format(nativeWrite) + " ms");
+        file.delete();
+    }
+
+    /**
+     * Compares the two layouts of ImagePlanes in both directions. A bmp-file
+     * is read into the column-major planes with BitmapIO.readFileIntoPlanes
+     * and into the row-major ones with readFileIntoRows, and both are
+     * transformed with the column transform, which for the row-major planes
+     * transforms the rows. Then the transforms are inverted and the images
+     * written with writePlanesIntoBitmap and writeRowsIntoBitmap. The sizes of
+     * the Rice coded files of the two transforms are told too, since they
+     * aren't the same.
+     *
+     * @throws IOException
+     */
+    private static void benchmarkLayout() throws IOException {
+        final ForkJoinPool pool = new ForkJoinPool();
+        final File bmp = File.createTempFile("benchmark", ".bmp");
+        File wtf = File.createTempFile("benchmark", ".wtf");
+        final int width = 4 * IMAGE_WIDTH;
+        final int height = 3 * IMAGE_HEIGHT;
+        BitmapIO.writePlanesIntoBitmap(createColorfulImage(width, height), bmp);
+        System.out.println("Image " + width + " x " + height + ", " + pool.getParallelism() + " threads");
+        System.out.println("layout\tread bmp\ttransform\tinverse\t\twrite bmp\ttype 6");
+
+        for (final boolean rows : new boolean[]{false, true}) {
+            double read = time(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (rows) {
+                            BitmapIO.readFileIntoRows(bmp);
+                        } else {
+                            BitmapIO.readFileIntoPlanes(bmp);
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }, BIG_WARMUP_ROUNDS, BIG_ROUNDS);
+            final ImagePlanes image = rows ? BitmapIO.readFileIntoRows(bmp) : BitmapIO.readFileIntoPlanes(bmp);
+            double transform = time(new Runnable() {
+                @Override
+                public void run() {
+                    ParallelTransform.lossyTransform(image, 0, pool);
+                }
+            }, BIG_WARMUP_ROUNDS, BIG_ROUNDS);
+            final CoefficientPlanes coefficients = ParallelTransform.lossyTransform(image, 0, pool);
+            final int lineLength = image.getHeight();
+            double inverse = time(new Runnable() {
+                @Override
+                public void run() {
+                    ParallelTransform.inverseLossyTransform(coefficients, lineLength, 0, pool);
+                }
+            }, BIG_WARMUP_ROUNDS, BIG_ROUNDS);
+            final ImagePlanes decoded = ParallelTransform.inverseLossyTransform(coefficients, lineLength, 0, pool);
+            final File output = File.createTempFile("benchmark", ".bmp");
+            double write = time(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (rows) {
+                            BitmapIO.writeRowsIntoBitmap(decoded, output);
+                        } else {
+                            BitmapIO.writePlanesIntoBitmap(decoded, output);
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }, BIG_WARMUP_ROUNDS, BIG_ROUNDS);
+            output.delete();
+            WTFIO.writeRiceData(coefficients, image.getWidth(), lineLength, 0, 0, wtf);
+            System.out.println((rows ? "rows" : "columns") + "\t" + format(read) + " ms\t" + format(transform)
+                    + " ms\t" + format(inverse) + " ms\t" + format(write) + " ms\t" + wtf.length() / 1024 + " kB");
+        }
+        bmp.delete();
+        wtf.delete();
+        pool.shutdown();
+    }
+
+    /**
+     * Compares converting a grayscale image into a wtf-file when it is stored
+     * as three equal colors in a 24-bit bmp-file to when it is stored as one
+     * color in an 8-bit one.
+     *
+     * @throws IOException
+     */
+    private static void benchmarkChannels() throws IOException {
+        final ForkJoinPool pool = new ForkJoinPool();
+        int width = 2 * IMAGE_WIDTH;
+        int height = 2 * IMAGE_HEIGHT;
+        ImagePlanes gray = ImagePlanes.fromJagged(createImage(1, width, height));
+        ImagePlanes rgb = new ImagePlanes(3, width, height);
+        for (int c = 0; c < 3; c++) {
+            System.arraycopy(gray.getPlane(0), 0, rgb.getPlane(c), 0, width * height);
+        }
+        System.out.println("Image " + width + " x " + height + ", " + pool.getParallelism() + " threads");
+        System.out.println("colors\tbmp\t\twtf\t\tplanes + transform\tread, transform and write");
+
+        for (ImagePlanes image : new ImagePlanes[]{rgb, gray}) {
+            final File bmp = File.createTempFile("benchmark", ".bmp");
+            final File wtf = File.createTempFile("benchmark", ".wtf");
+            BitmapIO.writePlanesIntoBitmap(image, bmp);
+            double time = time(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        ImagePlanes data = BitmapIO.readFileIntoPlanes(bmp);
+                        CoefficientPlanes transform = ParallelTransform.lossyTransform(data, 0, pool);
+                        WTFIO.writeMixedData(transform, data.getHeight(), 0, wtf);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }, BIG_WARMUP_ROUNDS * 5, BIG_ROUNDS * 3);
+            long memory = (long) image.getColors() * width * height * (1 + 4);
+            System.out.println(image.getColors() + "\t" + bmp.length() / 1024 + " kB\t" + wtf.length() / 1024
+                    + " kB\t" + memory / (1024 * 1024) + " MB\t\t\t" + format(time) + " ms");
+            bmp.delete();
+            wtf.delete();
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * Compares the sizes of Rice coded (type 6) and entropy coded (type 5)
+     * wtf-files of the blue, green and red to those of Y, Co and Cg of the
+     * class ColorTransform, with the chromas losing as much as the luma and
+     * more. The peak signal to noise ratio of the image retrieved from each
+     * is told, and the time the color transform and its inverse take. The
+     * generated image has colors that follow each other like in photos.
+     *
+     * @param imageFile A bmp-file to be used instead, or null.
+     * @throws IOException
+     */
+    private static void benchmarkColorTransform(String imageFile) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool();
+        File file = File.createTempFile("benchmark", ".wtf");
+        ImagePlanes image = imageFile == null ? createColorfulImage(2 * IMAGE_WIDTH, 2 * IMAGE_HEIGHT)
+                : BitmapIO.readFileIntoPlanes(new File(imageFile));
+        int width = image.getWidth();
+        int height = image.getHeight();
+        System.out.println("Image " + width + " x " + height);
+
+        for (int lol : new int[]{0, 2}) {
+            final CoefficientPlanes plain = ParallelTransform.lossyTransform(image, lol, pool);
+            System.out.println("lol " + lol + "\ttype 6\t\ttype 5\t\tPSNR");
+            for (int chromaLoss = -1; chromaLoss <= 2; chromaLoss++) {
+                CoefficientPlanes transform = ParallelTransform.lossyTransform(image, lol, pool);
+                if (chromaLoss >= 0) {
+                    ColorTransform.forward(transform);
+                    ColorTransform.dropChroma(transform, height, lol, chromaLoss);
+                }
+                WTFIO.writeRiceData(transform, width, height, lol, 0, file);
+                long riceLength = file.length();
+                WTFIO.writeEntropyData(transform, width, height, lol, 0, file, pool);
+                if (chromaLoss >= 0) {
+                    ColorTransform.inverse(transform);
+                }
+                ImagePlanes decoded = ParallelTransform.inverseLossyTransform(transform, height, lol, pool);
+                System.out.println((chromaLoss < 0 ? "BGR" : "YCoCg +" + chromaLoss) + "\t" + riceLength / 1024
+                        + " kB\t" + file.length() / 1024 + " kB\t" + psnr(image, decoded));
+            }
+
+            double colors = time(new Runnable() {
+                @Override
+                public void run() {
+                    ColorTransform.forward(plain);
+                    ColorTransform.inverse(plain);
+                }
+            }, BIG_WARMUP_ROUNDS * 5, BIG_ROUNDS * 3);
+            System.out.println("Color transform and inverse " + format(colors) + " ms");
+        }
+        file.delete();
+        pool.shutdown();
+    }
+
+    /**
+     * An auxiliary method for benchmarkColorTransform. Generates an image
+     * whose colors are the shades of createImage with slowly changing tints,
+     * different for each color.
+     */
+    private static ImagePlanes createColorfulImage(int width, int height) {
+        ImagePlanes gray = ImagePlanes.fromJagged(createImage(1, width, height));
+        ImagePlanes image = new ImagePlanes(3, width, height);
+        for (int c = 0; c < 3; c++) {
+            byte[] plane = image.getPlane(c);
+            for (int x = 0; x < width; x++) {
+                byte[] tint = createColumn(height, 1009 * (c + 1) + x / 64);
+                for (int y = 0; y < height; y++) {
+                    int i = image.columnOffset(x) + y;
+                    int shade = gray.getPlane(0)[i] + tint[y] / 4;
+                    plane[i] = (byte) Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, shade));
+                }
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Compares reading an indexed wtf-file line after line to decoding its
+     * lines with all the threads, see WTFIO.readPlanes(ForkJoinPool).
+     *
+     * @throws IOException
+     */
+    private static void benchmarkIndexed() throws IOException {
+        final ForkJoinPool pool = new ForkJoinPool();
+        final File file = File.createTempFile("benchmark", ".wtf");
+        System.out.println("Image " + IMAGE_WIDTH + " x " + IMAGE_HEIGHT + ", " + pool.getParallelism() + " threads");
+        System.out.println("lol\tfile\tsequential\tparallel");
+
+        for (int lol : LEVELS_OF_LOSS) {
+            CoefficientPlanes transform = ParallelTransform.lossyTransform(
+                    ImagePlanes.fromJagged(createImage(3, IMAGE_WIDTH, IMAGE_HEIGHT)), lol, pool);
+            WTFIO.writeIndexedData(transform, IMAGE_WIDTH, IMAGE_HEIGHT, lol, 0, file);
+
+            double sequential = time(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        new WTFIO(file).readPlanes();
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }, BIG_WARMUP_ROUNDS * 5, BIG_ROUNDS * 3);
+            double parallel = time(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        new WTFIO(file).readPlanes(pool);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }, BIG_WARMUP_ROUNDS * 5, BIG_ROUNDS * 3);
+            System.out.println(lol + "\t" + file.length() / 1024 + " kB\t" + format(sequential) + " ms\t\t"
+                    + format(parallel) + " ms");
+        }
+        file.delete();
+        pool.shutdown();
+    }
+
+    /**
+     * Compares writing and reading a wtf-file with the streams of java.io to
+     * doing it with mapped files, channels and MixedLineCodec, and writing
+     * with one thread to encoding the lines with all of them
+     * (ParallelMixedWriter).
+     *
+     * @throws IOException
+     */
+    private static void benchmarkIO() throws IOException {
+        final ForkJoinPool pool = new ForkJoinPool();
+        final File file = File.createTempFile("benchmark", ".wtf");
+        System.out.println("Image " + IMAGE_WIDTH + " x " + IMAGE_HEIGHT);
+        System.out.println("lol\tfile\twrite: streams\tchannel\t\tparallel\tread: streams\tmapped");
+
+        for (int lol : LEVELS_OF_LOSS) {
+            final CoefficientPlanes transform = ParallelTransform.lossyTransform(
+                    ImagePlanes.fromJagged(createImage(3, IMAGE_WIDTH, IMAGE_HEIGHT)), lol, pool);
+            final int levelOfLoss = lol;
+            Runnable write = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        WTFIO.writeMixedData(transform, IMAGE_HEIGHT, levelOfLoss, file);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            Runnable read = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        new WTFIO(file).readPlanes();
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+
+            WTFIO.setMappedIO(false);
+            double streamWrite = time(write, BIG_WARMUP_ROUNDS * 5, BIG_ROUNDS * 3);
+            double streamRead = time(read, BIG_WARMUP_ROUNDS * 5, BIG_ROUNDS * 3);
+            WTFIO.setMappedIO(true);
+            double channelWrite = time(write, BIG_WARMUP_ROUNDS * 5, BIG_ROUNDS * 3);
+            double mappedRead = time(read, BIG_WARMUP_ROUNDS * 5, BIG_ROUNDS * 3);
+            double parallelWrite = time(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        WTFIO.writeMixedData(transform, IMAGE_HEIGHT, levelOfLoss, file, pool);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }, BIG_WARMUP_ROUNDS * 5, BIG_ROUNDS * 3);
+            System.out.println(lol + "\t" + file.length() / 1024 + " kB\t" + format(streamWrite) + " ms\t"
+                    + format(channelWrite) + " ms\t" + format(parallelWrite) + " ms\t"
+                    + format(streamRead) + " ms\t" + format(mappedRead) + " ms");
+        }
+        file.delete();
+        pool.shutdown();
+    }
+
+    /**
+     * Calculates the mean absolute difference of two images.
+     */
+    public static double meanError(byte[][][] original, byte[][][] retrieved) {
+        long sum = 0;
+        long count = 0;
+        for (int c = 0; c < original.length; c++) {
+            for (int x = 0; x < original[c].length; x++) {
+                for (int y = 0; y < original[c][x].length; y++) {
+                    sum += Math.abs(original[c][x][y] - retrieved[c][x][y]);
+                    count++;
+                }
+            }
+        }
+        return (double) sum / count;
+    }
+
+    /**
+     * Runs the task first WARMUP_ROUNDS times and then ROUNDS times more,
+     * measuring the latter. The fastest round is reported, since the slower
+     * ones are slowed down by garbage collection and other programs.
+     *
+     * @param task The task to be measured.
+     * @return The time of the fastest round in milliseconds.
+     */
+    public static double time(Runnable task) {
+        return time(task, WARMUP_ROUNDS, ROUNDS);
+    }
+
+    /**
+     * Measures the task like time(Runnable), but with the given numbers of
+     * rounds. Tasks that take seconds need fewer of them.
+     *
+     * @param task The task to be measured.
+     * @param warmupRounds How many times the task is run before measuring.
+     * @param rounds How many times the task is measured.
+     * @return The time of the fastest round in milliseconds.
+     */
+    public static double time(Runnable task, int warmupRounds, int rounds) {
+        for (int i = 0; i < warmupRounds; i++) {
+            task.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < rounds; i++) {
+            long time = System.nanoTime();
+            task.run();
+            best = Math.min(best, System.nanoTime() - time);
+        }
+        return best / 1000000.0;
+    }
+
+    /**
+     * Creates a line of data that looks a bit like a column of a photograph:
+     * slowly changing shades with some noise.
+     *
+     * @param height The length of the line.
+     * @param seed Different seeds give different lines.
+     * @return The line.
+     */
+    public static byte[] createColumn(int height, int seed) {
+        Random random = new Random(seed);
+        byte[] column = new byte[height];
+        for (int y = 0; y < height; y++) {
+            double shade = 100 * Math.sin((y + 31 * seed) / 97.0) * Math.cos(y / 251.0);
+            column[y] = (byte) (shade + random.nextInt(9) - 4);
+        }
+        return column;
+    }
+
+    /**
+     * Creates image data data[c][x][y] of the same kind as createColumn.
+     *
+     * @param colors The number of colors.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @return The data.
+     */
+    public static byte[][][] createImage(int colors, int width, int height) {
+        byte[][][] data = new byte[colors][width][];
+        for (int c = 0; c < colors; c++) {
+            for (int x = 0; x < width; x++) {
+                data[c][x] = createColumn(height, c * width + x);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Formats a number with two decimals.
+     */
+    public static String format(double number) {
+        return String.format("%.2f", number);
+    }
+}
@@ -0,0 +1,318 @@
+package compression;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+/**
+ * Codes a whole transform as an embedded stream of bit planes, for the
+ * progressive wtf-files of type 8 (see the class WTFIO). The stream can be
+ * cut after any byte, and what is before the cut decodes to a coarser
+ * version of the transform, so one file can be read at many qualities.
+ *
+ * The stream goes through the bits of the coefficients from the most
+ * important ones to the least important ones. A coefficient is the sum or the
+ * difference of the numbers under it, so its bits weigh less the more numbers
+ * it spreads over. The coefficients are put into groups by this: a
+ * coefficient over s numbers of a line of the transform is in the group
+ * floor(log2(s) / 2), and in the pass g of the stream its bit g + group is
+ * coded. The groups go from the coarsest to the finest in each pass, and each
+ * group goes through all the lines of all the colors. The passes begin from
+ * the highest bit of any group and end when the lowest bits of all the groups
+ * have been coded.
+ *
+ * A coefficient is significant once a 1-bit of it has been coded. For a
+ * coefficient that isn't significant yet, the bit tells whether it becomes
+ * significant, and its sign follows if it does. The bits are coded with the
+ * adaptive binary coder of the class EntropyCoder, with a context for each
+ * group and for whether the parent of the coefficient in the wavelet tree
+ * (the sum or difference whose half it is) is significant already. Coarse
+ * coefficients that are small make it likely that the ones under them are
+ * small too, which is what the trees of EZW and SPIHT are based on. The bits
+ * of the coefficients that are already significant have contexts of their
+ * own.
+ *
+ * When the stream has been cut, each coefficient is given the value in the
+ * middle of the interval that its known bits leave for it.
+ */
+class BitPlaneCoder {
+
+    static int GROUPS = 16;
+    private static int SIGNIFICANCE = 0; // The contexts 0,...,2 * GROUPS - 1
+    private static int REFINEMENT = 2 * GROUPS; // The contexts 2 * GROUPS,...,3 * GROUPS - 1
+
+    private int colors;
+    private int[] lineStarts;
+    private LineLayout[] layouts; // Of each line of a color
+    private int[] highestBits; // The number of bits of the biggest coefficient of each group
+
+    private BitPlaneCoder(int colors, int[] lineLengths) {
+        this.colors = colors;
+        lineStarts = new int[lineLengths.length];
+        layouts = new LineLayout[lineLengths.length];
+        HashMap<Integer, LineLayout> byLength = new HashMap<Integer, LineLayout>();
+        int start = 0;
+        for (int line = 0; line < lineLengths.length; line++) {
+            lineStarts[line] = start;
+            start += lineLengths[line];
+            LineLayout layout = byLength.get(lineLengths[line]);
+            if (layout == null) {
+                layout = new LineLayout(lineLengths[line]);
+                byLength.put(lineLengths[line], layout);
+            }
+            layouts[line] = layout;
+        }
+    }
+
+    /**
+     * Tells how many bits the biggest coefficient of each group has, which is
+     * needed for decoding.
+     *
+     * @param transform The transform.
+     * @param lineLengths The lengths of the lines of a color.
+     * @return The numbers of bits, GROUPS of them.
+     */
+    static int[] highestBits(CoefficientPlanes transform, int[] lineLengths) {
+        BitPlaneCoder coder = new BitPlaneCoder(transform.getColors(), lineLengths);
+        int[] biggest = new int[GROUPS];
+        for (int c = 0; c < transform.getColors(); c++) {
+            int[] plane = transform.getPlane(c);
+            for (int line = 0; line < lineLengths.length; line++) {
+                int[] groups = coder.layouts[line].groups;
+                int start = coder.lineStarts[line];
+                for (int i = 0; i < groups.length; i++) {
+                    biggest[groups[i]] |= Math.abs(plane[start + i]);
+                }
+            }
+        }
+        int[] bits = new int[GROUPS];
+        for (int group = 0; group < GROUPS; group++) {
+            bits[group] = 32 - Integer.numberOfLeadingZeros(biggest[group]);
+        }
+        return bits;
+    }
+
+    /**
+     * Codes a transform into a stream of bit planes.
+     *
+     * @param transform The transform.
+     * @param lineLengths The lengths of the lines of a color.
+     * @param highestBits The numbers of bits given by highestBits.
+     * @return The stream.
+     */
+    static byte[] encode(CoefficientPlanes transform, int[] lineLengths, int[] highestBits) {
+        BitPlaneCoder coder = new BitPlaneCoder(transform.getColors(), lineLengths);
+        coder.highestBits = highestBits;
+        EntropyCoder bits = EntropyCoder.bitEncoder();
+
+        for (int pass = coder.firstPass(); pass > -GROUPS; pass--) {
+            for (int group = GROUPS - 1; group >= 0; group--) {
+                int bit = pass + group;
+                if (bit < 0 || bit >= highestBits[group]) {
+                    continue;
+                }
+                for (int c = 0; c < coder.colors; c++) {
+                    int[] plane = transform.getPlane(c);
+                    for (int line = 0; line < coder.layouts.length; line++) {
+                        LineLayout layout = coder.layouts[line];
+                        int start = coder.lineStarts[line];
+                        for (int position : layout.byGroup[group]) {
+                            int value = plane[start + position];
+                            int magnitude = Math.abs(value);
+                            int known = magnitude >>> bit;
+                            if (known > 1) {
+                                bits.encodeBit(REFINEMENT + group, known & 1);
+                                continue;
+                            }
+                            int parent = layout.parents[position];
+                            int context = SIGNIFICANCE + 2 * group;
+                            if (parent >= 0 && coder.isSignificant(plane[start + parent], layout.groups[parent], group, pass)) {
+                                context++;
+                            }
+                            bits.encodeBit(context, known);
+                            if (known == 1) {
+                                bits.encodeDirectBits(value < 0 ? 1 : 0, 1);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return bits.finish();
+    }
+
+    /**
+     * Decodes a stream of bit planes, or the beginning of one.
+     *
+     * @param source The buffer whose position is where the stream begins. Its
+     * limit may be anywhere in the stream.
+     * @param target The planes into which the transform is written. They must
+     * be full of zeros.
+     * @param lineLengths The lengths of the lines of a color.
+     * @param highestBits The numbers of bits given by highestBits.
+     */
+    static void decode(ByteBuffer source, CoefficientPlanes target, int[] lineLengths, int[] highestBits) {
+        BitPlaneCoder coder = new BitPlaneCoder(target.getColors(), lineLengths);
+        coder.highestBits = highestBits;
+        EntropyCoder bits = EntropyCoder.bitDecoder(source);
+
+        // The coefficients are kept as their known bits with their signs.
+        int pass;
+        int cut = -1; // The number of the coefficients decoded in the pass where the stream ends
+        passes:
+        for (pass = coder.firstPass(); pass > -GROUPS; pass--) {
+            int decoded = 0;
+            for (int group = GROUPS - 1; group >= 0; group--) {
+                int bit = pass + group;
+                if (bit < 0 || bit >= highestBits[group]) {
+                    continue;
+                }
+                for (int c = 0; c < coder.colors; c++) {
+                    int[] plane = target.getPlane(c);
+                    for (int line = 0; line < coder.layouts.length; line++) {
+                        LineLayout layout = coder.layouts[line];
+                        int start = coder.lineStarts[line];
+                        for (int position : layout.byGroup[group]) {
+                            if (bits.isExhausted()) {
+                                cut = decoded;
+                                break passes;
+                            }
+                            int value = plane[start + position];
+                            if (value != 0) {
+                                if (bits.decodeBit(REFINEMENT + group) == 1) {
+                                    plane[start + position] = value < 0 ? value - (1 << bit) : value + (1 << bit);
+                                }
+                                decoded++;
+                                continue;
+                            }
+                            int parent = layout.parents[position];
+                            int context = SIGNIFICANCE + 2 * group;
+                            if (parent >= 0 && plane[start + parent] != 0) {
+                                context++;
+                            }
+                            if (bits.decodeBit(context) == 1) {
+                                if (bits.isExhausted()) {
+                                    cut = decoded; // The sign is unknown, so this stays 0.
+                                    break passes;
+                                }
+                                plane[start + position] = bits.decodeDirectBits(1) == 1 ? -(1 << bit) : 1 << bit;
+                            }
+                            decoded++;
+                        }
+                    }
+                }
+            }
+        }
+
+        if (cut >= 0) {
+            coder.addMiddles(target, pass, cut);
+        }
+    }
+
+    /**
+     * An auxiliary method for encode. Tells whether the decoder knows the
+     * parent of a coefficient to be significant when it comes to the
+     * coefficient in the pass. A parent in the same group comes after its
+     * children, so then only the bits of the passes before are known.
+     */
+    private boolean isSignificant(int parent, int parentGroup, int group, int pass) {
+        int lowestKnown = pass + parentGroup + (parentGroup == group ? 1 : 0);
+        return Math.abs(parent) >>> lowestKnown != 0;
+    }
+
+    /**
+     * An auxiliary method for encode and decode. Tells the number of the first
+     * pass, i.e. the highest bit of any group minus its group.
+     */
+    private int firstPass() {
+        int first = -GROUPS;
+        for (int group = 0; group < GROUPS; group++) {
+            if (highestBits[group] > 0) {
+                first = Math.max(first, highestBits[group] - 1 - group);
+            }
+        }
+        return first;
+    }
+
+    /**
+     * An auxiliary method for decode. Moves every significant coefficient to
+     * the middle of the interval its known bits leave for it, when the stream
+     * ended after the coefficient number cut of the pass. The coefficients are
+     * gone through in the same order as in the passes.
+     */
+    private void addMiddles(CoefficientPlanes target, int pass, int cut) {
+        int count = 0;
+        for (int group = GROUPS - 1; group >= 0; group--) {
+            int bit = pass + group;
+            if (bit < 0 || bit >= highestBits[group]) {
+                continue;
+            }
+            for (int c = 0; c < colors; c++) {
+                int[] plane = target.getPlane(c);
+                for (int line = 0; line < layouts.length; line++) {
+                    LineLayout layout = layouts[line];
+                    int start = lineStarts[line];
+                    for (int position : layout.byGroup[group]) {
+                        // The lowest known bit is the bit of this pass, or of the one before it.
+                        boolean decoded = count++ < cut;
+                        int half = (1 << (decoded ? bit : bit + 1)) >> 1;
+                        int value = plane[start + position];
+                        if (value > 0) {
+                            plane[start + position] = value + half;
+                        } else if (value < 0) {
+                            plane[start + position] = value - half;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The groups of the coefficients of a line of a certain length and their
+     * parents. The line is split into transforms of subarrays like in
+     * EntropyCoder.levelContexts.
+     */
+    private static class LineLayout {
+
+        private int[] groups;
+        private int[] parents; // -1 for the sums
+        private int[][] byGroup; // The positions of each group in order
+
+        public LineLayout(int length) {
+            groups = new int[length];
+            parents = new int[length];
+            int[] counts = new int[GROUPS];
+            int blockStart = 0;
+            while (blockStart < length) {
+                int blockSize = Integer.highestOneBit(length - blockStart);
+                int sum = blockStart + blockSize - 1;
+                for (int i = blockStart; i <= sum; i++) {
+                    int fromEnd = sum - i;
+                    int spread;
+                    if (fromEnd == 0) {
+                        spread = blockSize;
+                        parents[i] = -1;
+                    } else {
+                        // The differences of the level with size sums, see HaarTransform.sparseInverse.
+                        int size = Integer.highestOneBit(fromEnd);
+                        spread = blockSize / size;
+                        int index = i - blockStart - (blockSize - 2 * size);
+                        parents[i] = size == 1 ? sum : blockStart + blockSize - size + index / 2;
+                    }
+                    groups[i] = Math.min(GROUPS - 1, (31 - Integer.numberOfLeadingZeros(spread)) / 2);
+                    counts[groups[i]]++;
+                }
+                blockStart += blockSize;
+            }
+
+            byGroup = new int[GROUPS][];
+            for (int group = 0; group < GROUPS; group++) {
+                byGroup[group] = new int[counts[group]];
+                counts[group] = 0;
+            }
+            for (int i = 0; i < length; i++) {
+                byGroup[groups[i]][counts[groups[i]]++] = i;
+            }
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package compression;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads an uncompressed bmp-file straight from a memory-mapped file, without
+ * ImageIO decoding it into a BufferedImage first. The rows can be
+ * read one at a time in the order they are stored, or any columns of the
+ * image can be read into planes, so that e.g. StreamingEncoder can transform
+ * the first strip before the rest of the file has been read.
+ *
+ * The files can be of the three kinds that BmpWriter writes: 24-bit files,
+ * 8-bit files whose palette has the 256 grays in order, and 32-bit files whose
+ * bit masks put the alpha after the red. They are read into 3, 1 and 4 colors
+ * respectively. The rows are usually from the bottom up, but a negative
+ * height in the header means that they are from the top down. Other kinds of
+ * bmp-files (other palettes, 16 bits, other masks, compression) aren't read
+ * by this: open returns null for them, and they can be read with ImageIO.
+ */
+public class BmpReader {
+
+    private static int FILE_HEADER_SIZE = 14;
+    private static int MASKS_END = FILE_HEADER_SIZE + 56; // The bit masks of alpha and the others end here
+    private static int ROWS_AT_ONCE = 64; // The height of the strips copied into planes at a time
+    private static int MAX_PART_SIZE = 1 << 30; // The files are mapped in parts of at most this many bytes
+
+    private RandomAccessFile file;
+    private int width;
+    private int height;
+    private int colors; // The number of bytes per pixel too
+    private boolean bottomUp;
+    private int rowSize;
+    private int rowsPerPart;
+    private ByteBuffer[] parts;
+
+    private BmpReader() {
+    }
+
+    /**
+     * Opens a bmp-file for reading if it is of the kind that this class
+     * reads.
+     *
+     * @param input The file.
+     * @return The reader, or null if the file isn't of the kinds described
+     * above.
+     * @throws IOException
+     */
+    public static BmpReader open(File input) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(input, "r");
+        BmpReader reader = new BmpReader();
+        reader.file = file;
+        try {
+            if (!reader.readHeader()) {
+                file.close();
+                return null;
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+        return reader;
+    }
+
+    /**
+     * An auxiliary method for open. Reads the header and maps the pixels.
+     *
+     * @return false if the file isn't of the right kind.
+     */
+    private boolean readHeader() throws IOException {
+        FileChannel channel = file.getChannel();
+        ByteBuffer header = readBytes(0, MASKS_END);
+        if (header.limit() < FILE_HEADER_SIZE + 40 || header.get(0) != 'B' || header.get(1) != 'M') {
+            return false;
+        }
+        long pixelStart = header.getInt(10) & 0xFFFFFFFFL;
+        int infoSize = header.getInt(14);
+        width = header.getInt(18);
+        int storedHeight = header.getInt(22);
+        int planes = header.getShort(26);
+        int bitsPerPixel = header.getShort(28);
+        int compression = header.getInt(30);
+        if (infoSize < 40 || planes != 1 || width <= 0 || storedHeight == 0
+                || storedHeight == Integer.MIN_VALUE) {
+            return false;
+        }
+        if (bitsPerPixel == 24 && compression == 0) {
+            colors = 3;
+        } else if (bitsPerPixel == 8 && compression == 0 && hasGrayPalette(header, infoSize)) {
+            colors = 1;
+        } else if (bitsPerPixel == 32 && compression == 3 && infoSize >= MASKS_END - FILE_HEADER_SIZE
+                && header.limit() == MASKS_END && header.getInt(54) == 0x00FF0000
+                && header.getInt(58) == 0x0000FF00 && header.getInt(62) == 0x000000FF
+                && header.getInt(66) == 0xFF000000) {
+            colors = 4;
+        } else {
+            return false;
+        }
+        bottomUp = storedHeight > 0;
+        height = Math.abs(storedHeight);
+        if (width > (Integer.MAX_VALUE - 3) / colors) {
+            return false;
+        }
+        rowSize = (colors * width + 3) & ~3;
+        if (pixelStart + (long) rowSize * height > channel.size()) {
+            return false;
+        }
+
+        rowsPerPart = Math.max(1, MAX_PART_SIZE / rowSize);
+        parts = new ByteBuffer[(height + rowsPerPart - 1) / rowsPerPart];
+        for (int i = 0; i < parts.length; i++) {
+            int rows = Math.min(rowsPerPart, height - i * rowsPerPart);
+            parts[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                    pixelStart + (long) i * rowsPerPart * rowSize, (long) rows * rowSize);
+        }
+        return true;
+    }
+
+    /**
+     * An auxiliary method for readHeader. Tells whether the palette of an
+     * 8-bit file has the 256 grays in order, so that a pixel is its shade.
+     */
+    private boolean hasGrayPalette(ByteBuffer header, int infoSize) throws IOException {
+        int entries = header.getInt(46);
+        if (entries != 0 && entries != 256) {
+            return false;
+        }
+        ByteBuffer palette = readBytes(FILE_HEADER_SIZE + infoSize, 4 * 256);
+        if (palette.limit() < 4 * 256) {
+            return false;
+        }
+        for (int shade = 0; shade < 256; shade++) {
+            int entry = palette.getInt(4 * shade) & 0xFFFFFF; // Blue, green and red
+            if (entry != shade * 0x010101) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * An auxiliary method for readHeader. Reads at most the given number of
+     * bytes from the position of the file, fewer if the file ends before.
+     */
+    private ByteBuffer readBytes(long position, int length) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        int read = 0;
+        while (bytes.hasRemaining() && read >= 0) {
+            read = file.getChannel().read(bytes, position + bytes.position());
+        }
+        bytes.flip();
+        return bytes;
+    }
+
+    /**
+     * @return The width of the image.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return The height of the image.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return The number of colors: 1 for grayscale, 3 for 24-bit and 4 for
+     * 32-bit files.
+     */
+    public int getColors() {
+        return colors;
+    }
+
+    /**
+     * Tells which row of the image is stored as the given row of the file.
+     *
+     * @param storedRow The number of the row in the file, from 0 to height -
+     * 1.
+     * @return The y-coordinate of the row in the image.
+     */
+    public int imageRow(int storedRow) {
+        return bottomUp ? height - 1 - storedRow : storedRow;
+    }
+
+    /**
+     * Copies the pixels of a part of a row as they are stored: the blue, green
+     * and red shades of each pixel from left to right, and its alpha in
+     * 32-bit files. In 8-bit files a pixel is its gray. So there are
+     * getColors() bytes per pixel.
+     *
+     * @param storedRow The number of the row in the file, see imageRow.
+     * @param x The x-coordinate of the first pixel.
+     * @param columns The number of pixels.
+     * @param target The array into which the bytes are copied.
+     * @param offset The index where the bytes begin in the array.
+     */
+    public void readStoredRow(int storedRow, int x, int columns, byte[] target, int offset) {
+        ByteBuffer part = parts[storedRow / rowsPerPart].duplicate();
+        part.position((storedRow % rowsPerPart) * rowSize + colors * x);
+        part.get(target, offset, colors * columns);
+    }
+
+    /**
+     * Reads some consecutive columns of the image into planes, in the same
+     * form as BitmapIO.readFileIntoPlanes. The rows are read ROWS_AT_ONCE at a
+     * time and each column of them is then written into the planes in one go,
+     * since the planes are stored column by column.
+     *
+     * @param x The x-coordinate of the first column.
+     * @param columns The number of columns.
+     * @return The columns.
+     */
+    public ImagePlanes readColumns(int x, int columns) {
+        ImagePlanes planes = new ImagePlanes(colors, columns, height);
+        int rowBytes = colors * columns;
+        byte[] rows = new byte[ROWS_AT_ONCE * rowBytes];
+
+        for (int top = 0; top < height; top += ROWS_AT_ONCE) {
+            int count = Math.min(ROWS_AT_ONCE, height - top);
+            for (int k = 0; k < count; k++) {
+                int y = top + k;
+                readStoredRow(bottomUp ? height - 1 - y : y, x, columns, rows, k * rowBytes);
+            }
+            for (int color = 0; color < colors; color++) {
+                byte[] plane = planes.getPlane(color);
+                for (int i = 0; i < columns; i++) {
+                    int index = planes.columnOffset(i) + top;
+                    int source = colors * i + color;
+                    for (int k = 0; k < count; k++) {
+                        plane[index++] = (byte) (rows[source] ^ 0x80); // The shade - 128
+                        source += rowBytes;
+                    }
+                }
+            }
+        }
+        return planes;
+    }
+
+    /**
+     * Reads the whole image into planes.
+     *
+     * @return The image in the same form as BitmapIO.readFileIntoPlanes.
+     */
+    public ImagePlanes readPlanes() {
+        return readColumns(0, width);
+    }
+
+    /**
+     * Reads some consecutive rows of the image in the row-major layout of
+     * ImagePlanes, i.e. as the columns of the transposed image. Each row is
+     * copied from the file in one go and its colors are separated in one pass
+     * from left to right, so nothing is read or written by jumps.
+     *
+     * @param y The y-coordinate of the first row.
+     * @param rows The number of rows.
+     * @return The rows, as planes of width rows and height getWidth().
+     */
+    public ImagePlanes readRows(int y, int rows) {
+        ImagePlanes planes = new ImagePlanes(colors, rows, width);
+        byte[] row = new byte[colors * width];
+
+        for (int k = 0; k < rows; k++) {
+            readStoredRow(bottomUp ? height - 1 - (y + k) : y + k, 0, width, row, 0);
+            int offset = planes.columnOffset(k);
+            for (int color = 0; color < colors; color++) {
+                byte[] plane = planes.getPlane(color);
+                int source = color;
+                for (int x = 0; x < width; x++) {
+                    plane[offset + x] = (byte) (row[source] ^ 0x80); // The shade - 128
+                    source += colors;
+                }
+            }
+        }
+        return planes;
+    }
+
+    /**
+     * Reads the whole image row by row.
+     *
+     * @return The image in the same form as BitmapIO.readFileIntoRows.
+     */
+    public ImagePlanes readRows() {
+        return readRows(0, height);
+    }
+
+    /**
+     * Closes the file. The rows can't be read after this.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        parts = null;
+        file.close();
+    }
+}
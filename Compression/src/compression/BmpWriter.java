@@ -0,0 +1,214 @@
+package compression;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes a bmp-file a few columns at a time, so that the whole image never
+ * has to be in memory. The file is created with its full length when the
+ * writer is opened, and the columns can then be written in any order.
+ *
+ * In a bmp-file the rows are from the bottom up, each row has the blue, green
+ * and red shades of its pixels from left to right, and the length of a row is
+ * padded to a multiple of 4 bytes. The shades are written the same way as
+ * BitmapIO.writePlanesIntoBitmap does, i.e. a value v of the planes is the
+ * shade v + 128.
+ *
+ * An image of three colors is written as a 24-bit file. A grayscale image of
+ * one color is written as an 8-bit file whose palette has the 256 grays in
+ * order, so a pixel is just its shade. An image of four colors has the alpha
+ * after the red of each pixel, and it is written as a 32-bit file with a
+ * version 4 header, whose bit masks tell where the alpha is.
+ */
+public class BmpWriter {
+
+    private static int FILE_HEADER_SIZE = 14;
+    private static int INFO_HEADER_SIZE = 40;
+    private static int V4_HEADER_SIZE = 108;
+    private static int ROWS_AT_ONCE = 64; // The height of the strips written at a time
+
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private int width;
+    private int height;
+    private int colors;
+    private int pixelStart;
+    private int rowSize;
+
+    /**
+     * Creates the file of a 24-bit image and writes its header.
+     *
+     * @param output The file to be written.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @throws IOException
+     */
+    public BmpWriter(File output, int width, int height) throws IOException {
+        this(output, width, height, BitmapIO.NO_OF_COLORS);
+    }
+
+    /**
+     * Creates the file and writes its header.
+     *
+     * @param output The file to be written.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param colors The number of colors, 1, 3 or 4, which is also the number
+     * of bytes per pixel.
+     * @throws IOException
+     */
+    public BmpWriter(File output, int width, int height, int colors) throws IOException {
+        if (colors != 1 && colors != 3 && colors != 4) {
+            throw new IllegalArgumentException("Bmp-files have 1, 3 or 4 colors, not " + colors + ".");
+        }
+        this.width = width;
+        this.height = height;
+        this.colors = colors;
+        rowSize = (colors * width + 3) & ~3;
+        int infoSize = colors == 4 ? V4_HEADER_SIZE : INFO_HEADER_SIZE;
+        int paletteSize = colors == 1 ? 4 * 256 : 0;
+        pixelStart = FILE_HEADER_SIZE + infoSize + paletteSize;
+        long imageSize = (long) rowSize * height;
+
+        file = new RandomAccessFile(output, "rw");
+        file.setLength(0);
+        file.setLength(pixelStart + imageSize);
+        channel = file.getChannel();
+
+        ByteBuffer header = ByteBuffer.allocate(pixelStart).order(ByteOrder.LITTLE_ENDIAN);
+        header.put((byte) 'B').put((byte) 'M');
+        header.putInt((int) (pixelStart + imageSize));
+        header.putInt(0);                  // Reserved
+        header.putInt(pixelStart);         // Where the pixels begin
+        header.putInt(infoSize);           // The size of the info header
+        header.putInt(width);
+        header.putInt(height);             // Positive: the rows are from the bottom up
+        header.putShort((short) 1);        // Planes
+        header.putShort((short) (8 * colors)); // Bits per pixel
+        header.putInt(colors == 4 ? 3 : 0);    // Bit masks for 32 bits, otherwise no compression
+        header.putInt((int) imageSize);
+        header.putInt(0);                  // No resolution, like ImageIO
+        header.putInt(0);
+        header.putInt(colors == 1 ? 256 : 0); // The size of the palette
+        header.putInt(0);
+        if (colors == 4) {
+            header.putInt(0x00FF0000);     // The masks of red, green, blue and alpha
+            header.putInt(0x0000FF00);
+            header.putInt(0x000000FF);
+            header.putInt(0xFF000000);
+            header.putInt(0x73524742);     // The color space sRGB; its end points and gamma stay 0
+        }
+        if (colors == 1) {
+            for (int shade = 0; shade < 256; shade++) {
+                header.put((byte) shade).put((byte) shade).put((byte) shade).put((byte) 0);
+            }
+        }
+        header.clear();
+        write(header, 0);
+    }
+
+    /**
+     * Writes the pixels of some consecutive columns of the image. The rows are
+     * gone through ROWS_AT_ONCE at a time, and each column of them is read from
+     * the planes in one go, since the planes are stored column by column. If
+     * the columns are the whole image, the rows are next to each other in the
+     * file and each strip of them is written at once.
+     *
+     * @param x The x-coordinate of the first column.
+     * @param columns The columns. Their height must be the height of the
+     * image, and they must have the colors of the file in the order of
+     * BitmapIO.
+     * @throws IOException
+     */
+    public void writeColumns(int x, ImagePlanes columns) throws IOException {
+        int columnCount = columns.getWidth();
+        boolean wholeRows = x == 0 && columnCount == width;
+        int stride = wholeRows ? rowSize : colors * columnCount;
+        ByteBuffer rows = ByteBuffer.allocate(ROWS_AT_ONCE * stride);
+        byte[] bytes = rows.array();
+
+        for (int top = 0; top < height; top += ROWS_AT_ONCE) {
+            int count = Math.min(ROWS_AT_ONCE, height - top);
+            // The rows are from the bottom up, so the row y is the row top + count - 1 - y of the strip.
+            for (int color = 0; color < colors; color++) {
+                byte[] plane = columns.getPlane(color);
+                for (int i = 0; i < columnCount; i++) {
+                    int index = columns.columnOffset(i) + top;
+                    int target = (count - 1) * stride + colors * i + color;
+                    for (int k = 0; k < count; k++) {
+                        bytes[target] = (byte) (plane[index++] ^ 0x80); // The value + 128
+                        target -= stride;
+                    }
+                }
+            }
+
+            long lowestRow = pixelStart + (long) (height - top - count) * rowSize;
+            if (wholeRows) {
+                rows.limit(count * stride).position(0);
+                write(rows, lowestRow);
+            } else {
+                for (int k = 0; k < count; k++) {
+                    rows.limit((k + 1) * stride).position(k * stride);
+                    write(rows, lowestRow + (long) k * rowSize + (long) colors * x);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the pixels of some consecutive rows of the image, given in the
+     * row-major layout of ImagePlanes. The colors of each row are put
+     * together in one pass from left to right, and ROWS_AT_ONCE rows, which
+     * are next to each other in the file, are written at a time.
+     *
+     * @param y The y-coordinate of the first row.
+     * @param rows The rows as the columns of the transposed image, see
+     * BmpReader.readRows. Their length must be the width of the image.
+     * @throws IOException
+     */
+    public void writeRows(int y, ImagePlanes rows) throws IOException {
+        int rowCount = rows.getWidth();
+        ByteBuffer strip = ByteBuffer.allocate(Math.min(ROWS_AT_ONCE, rowCount) * rowSize);
+        byte[] bytes = strip.array();
+
+        for (int top = 0; top < rowCount; top += ROWS_AT_ONCE) {
+            int count = Math.min(ROWS_AT_ONCE, rowCount - top);
+            for (int k = 0; k < count; k++) {
+                int offset = rows.columnOffset(top + k);
+                int rowStart = (count - 1 - k) * rowSize; // From the bottom up
+                for (int color = 0; color < colors; color++) {
+                    byte[] plane = rows.getPlane(color);
+                    int target = rowStart + color;
+                    for (int x = 0; x < width; x++) {
+                        bytes[target] = (byte) (plane[offset + x] ^ 0x80); // The value + 128
+                        target += colors;
+                    }
+                }
+            }
+            strip.limit(count * rowSize).position(0);
+            write(strip, pixelStart + (long) (height - y - top - count) * rowSize);
+        }
+    }
+
+    /**
+     * An auxiliary method that writes the whole buffer at the position.
+     */
+    private void write(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Closes the file.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,180 @@
+package compression;
+
+/**
+ * The coefficients of a transform, one plane per color. Each plane is a single
+ * int array. For the column and two-dimensional transforms the plane consists
+ * of lines of the same length one after another, so the k:th coefficient of
+ * the line m is at index m * lineLength + k. The tiled transform has the
+ * tiles one after another instead, in the order and with the sizes told by
+ * the class Tiling.
+ *
+ * This holds the same data as the array transform[c][m][k] used elsewhere,
+ * but with one array per color instead of one per line. The methods
+ * fromJagged and toJagged convert between the two.
+ */
+public class CoefficientPlanes {
+
+    private int colors;
+    private int lines;
+    private int lineLength;
+    private int[][] planes;
+    private boolean colorTransformed;
+    private boolean rowMajor;
+
+    /**
+     * Creates planes that consist of lines of the same length.
+     *
+     * @param colors The number of colors.
+     * @param lines The number of lines per color.
+     * @param lineLength The length of a line.
+     */
+    public CoefficientPlanes(int colors, int lines, int lineLength) {
+        this.colors = colors;
+        this.lines = lines;
+        this.lineLength = lineLength;
+        planes = new int[colors][lines * lineLength];
+    }
+
+    /**
+     * Creates planes that have the coefficients of the tiles of a tiled
+     * transform. The tiles are found with the methods of the tiling.
+     *
+     * @param colors The number of colors.
+     * @param tiling The tiling of the transform.
+     */
+    public CoefficientPlanes(int colors, Tiling tiling) {
+        this.colors = colors;
+        this.lines = tiling.getTiles();
+        this.lineLength = 0;
+        planes = new int[colors][tiling.tileOffset(tiling.getTiles())];
+    }
+
+    /**
+     * Copies a transform in the form transform[c][m][k] into planes.
+     *
+     * @param transform The transform, whose lines must be of the same length.
+     * @return The same transform as planes.
+     */
+    public static CoefficientPlanes fromJagged(int[][][] transform) {
+        int lineLength = transform[0][0].length;
+        CoefficientPlanes planes = new CoefficientPlanes(transform.length, transform[0].length, lineLength);
+        for (int c = 0; c < transform.length; c++) {
+            for (int m = 0; m < transform[c].length; m++) {
+                System.arraycopy(transform[c][m], 0, planes.planes[c], m * lineLength, lineLength);
+            }
+        }
+        return planes;
+    }
+
+    /**
+     * Copies a tiled transform in the form transform[c][tile] into planes.
+     *
+     * @param transform The transform.
+     * @param tiling The tiling of the transform.
+     * @return The same transform as planes.
+     */
+    public static CoefficientPlanes fromJagged(int[][][] transform, Tiling tiling) {
+        CoefficientPlanes planes = new CoefficientPlanes(transform.length, tiling);
+        for (int c = 0; c < transform.length; c++) {
+            for (int tile = 0; tile < tiling.getTiles(); tile++) {
+                System.arraycopy(transform[c][tile], 0, planes.planes[c], tiling.tileOffset(tile),
+                        transform[c][tile].length);
+            }
+        }
+        return planes;
+    }
+
+    /**
+     * Copies the planes into an array of the form transform[c][m][k]. For
+     * tiled planes m is the number of the tile and the array transform[c][m]
+     * holds the whole tile.
+     *
+     * @param tiling The tiling of a tiled transform, null for the others.
+     * @return The transform.
+     */
+    public int[][][] toJagged(Tiling tiling) {
+        int[][][] transform = new int[colors][lines][];
+        for (int c = 0; c < colors; c++) {
+            for (int m = 0; m < lines; m++) {
+                int start = tiling == null ? m * lineLength : tiling.tileOffset(m);
+                int end = tiling == null ? start + lineLength : tiling.tileOffset(m + 1);
+                transform[c][m] = new int[end - start];
+                System.arraycopy(planes[c], start, transform[c][m], 0, end - start);
+            }
+        }
+        return transform;
+    }
+
+    /**
+     * @return The number of colors.
+     */
+    public int getColors() {
+        return colors;
+    }
+
+    /**
+     * @return The number of lines, or tiles, per color.
+     */
+    public int getLines() {
+        return lines;
+    }
+
+    /**
+     * @return The length of a line, or 0 if the planes hold tiles.
+     */
+    public int getLineLength() {
+        return lineLength;
+    }
+
+    /**
+     * @param color The color.
+     * @return The array that holds the coefficients of the color.
+     */
+    public int[] getPlane(int color) {
+        return planes[color];
+    }
+
+    /**
+     * @return True if the colors are Y, Co and Cg of the class
+     * ColorTransform instead of the blue, green and red.
+     */
+    public boolean isColorTransformed() {
+        return colorTransformed;
+    }
+
+    /**
+     * Tells whether the colors have been transformed, see
+     * isColorTransformed. The methods of ColorTransform set this.
+     *
+     * @param colorTransformed True for Y, Co and Cg.
+     */
+    public void setColorTransformed(boolean colorTransformed) {
+        this.colorTransformed = colorTransformed;
+    }
+
+    /**
+     * @return True if this is the transform of an image in the row-major
+     * layout of ImagePlanes, so that its lines are the rows of the image.
+     */
+    public boolean isRowMajor() {
+        return rowMajor;
+    }
+
+    /**
+     * Tells whether this is the transform of an image in the row-major
+     * layout, see isRowMajor.
+     *
+     * @param rowMajor True if the lines are the rows of the image.
+     */
+    public void setRowMajor(boolean rowMajor) {
+        this.rowMajor = rowMajor;
+    }
+
+    /**
+     * @param line The number of a line.
+     * @return The index in a plane where the line begins.
+     */
+    public int lineOffset(int line) {
+        return line * lineLength;
+    }
+}
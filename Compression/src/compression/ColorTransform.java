@@ -0,0 +1,131 @@
+package compression;
+
+/**
+ * The reversible color transform YCoCg-R. It turns the blue, green and red of
+ * a pixel into the luma Y and the two chromas Co and Cg with integer lifting
+ * steps, so it can be undone exactly:
+ *
+ * Co = R - B, t = B + (Co >> 1), Cg = G - t, Y = t + (Cg >> 1)
+ *
+ * In photos the three colors follow each other closely, so most of the
+ * detail moves into Y and the chromas are smooth. Their differences are then
+ * smaller and code into fewer bits, and the eye doesn't miss them as much as
+ * those of the luma, so the chromas can be given a higher level of loss, see
+ * dropChroma.
+ *
+ * The colors are transformed in the coefficients of the wavelet transform,
+ * not in the pixels: the planes of an image hold bytes, but Co and Cg need
+ * nine bits. Since the transform is done coefficient by coefficient and is
+ * exactly undone, this works for all the transforms. For the column
+ * transform, whose coefficients are sums and differences of the pixels, it
+ * gives the same coefficients as transforming the pixels first, except for
+ * the rounding of the shifts.
+ *
+ * The colors 0, 1 and 2 of the planes are the blue, green and red of
+ * BitmapIO. After the transform they hold Y, Co and Cg. A fourth color, the
+ * alpha, is left as it is. A wtf-file of a transform whose colors have been
+ * transformed tells it in its header (see WTFIO.hasColorTransform), and the
+ * colors must be turned back with inverse before the inverse wavelet
+ * transform.
+ */
+public class ColorTransform {
+
+    public static final int LUMA = 0;
+    public static final int CHROMA_ORANGE = 1;
+    public static final int CHROMA_GREEN = 2;
+
+    /**
+     * Tells whether the colors of the planes can be transformed.
+     *
+     * @param colors The number of colors.
+     * @return True for images with the blue, green and red, with or without
+     * alpha.
+     */
+    public static boolean applies(int colors) {
+        return colors == 3 || colors == 4;
+    }
+
+    /**
+     * Turns the blue, green and red of the coefficients into Y, Co and Cg, and
+     * marks the planes as transformed.
+     *
+     * @param transform The coefficients, which are changed.
+     */
+    public static void forward(CoefficientPlanes transform) {
+        if (!applies(transform.getColors())) {
+            throw new IllegalArgumentException("The colors can be transformed only in images of 3 or 4 colors.");
+        }
+        int[] blue = transform.getPlane(0);
+        int[] green = transform.getPlane(1);
+        int[] red = transform.getPlane(2);
+
+        for (int i = 0; i < blue.length; i++) {
+            int co = red[i] - blue[i];
+            int t = blue[i] + (co >> 1);
+            int cg = green[i] - t;
+            blue[i] = t + (cg >> 1);
+            green[i] = co;
+            red[i] = cg;
+        }
+        transform.setColorTransformed(true);
+    }
+
+    /**
+     * Turns Y, Co and Cg back into the blue, green and red, and marks the
+     * planes as not transformed.
+     *
+     * @param transform The coefficients, which are changed.
+     */
+    public static void inverse(CoefficientPlanes transform) {
+        int[] luma = transform.getPlane(LUMA);
+        int[] chromaOrange = transform.getPlane(CHROMA_ORANGE);
+        int[] chromaGreen = transform.getPlane(CHROMA_GREEN);
+
+        for (int i = 0; i < luma.length; i++) {
+            int t = luma[i] - (chromaGreen[i] >> 1);
+            int g = chromaGreen[i] + t;
+            int b = t - (chromaOrange[i] >> 1);
+            int r = b + chromaOrange[i];
+            luma[i] = b;
+            chromaOrange[i] = g;
+            chromaGreen[i] = r;
+        }
+        transform.setColorTransformed(false);
+    }
+
+    /**
+     * Gives the chromas of a column transform a higher level of loss than
+     * the luma. The coefficients that a transform with the higher level of
+     * loss wouldn't have are set to zero, so the chromas of the decoded image
+     * are as if they had been transformed with the higher level of loss. The
+     * zeros cost little in the coded forms of WTFIO.
+     *
+     * @param transform The coefficients of a column transform, whose colors
+     * have been transformed with forward.
+     * @param originalHeight The height of the image.
+     * @param levelOfLoss The level of loss of the transform.
+     * @param extraLoss How many levels more the chromas lose.
+     */
+    public static void dropChroma(CoefficientPlanes transform, int originalHeight, int levelOfLoss,
+            int extraLoss) {
+        if (extraLoss <= 0) {
+            return;
+        }
+        boolean[] kept = new boolean[transform.getLineLength()];
+        for (int position : HaarTransform.coarserPositions(originalHeight, levelOfLoss, levelOfLoss + extraLoss)) {
+            kept[position] = true;
+        }
+
+        for (int color = CHROMA_ORANGE; color <= CHROMA_GREEN; color++) {
+            int[] plane = transform.getPlane(color);
+            for (int line = 0; line < transform.getLines(); line++) {
+                int offset = transform.lineOffset(line);
+                for (int k = 0; k < kept.length; k++) {
+                    if (!kept[k]) {
+                        plane[offset + k] = 0;
+                    }
+                }
+            }
+        }
+    }
+}
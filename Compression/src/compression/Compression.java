@@ -5,6 +5,14 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class Compression {
 
@@ -12,6 +20,36 @@ public class Compression {
     private static String STATS_TEMP_BMP_FILE_NAME = "statTempBmpFile.wtf";
     private static int STATS_MIN_LOL = 0;
     private static int STATS_MAX_LOL = 20;
+    private static String THREADS_OPTION = "-threads=";
+    private static String TWO_D_OPTION = "-2d";
+    private static String TILES_OPTION = "-tiles=";
+    private static String MEMORY_OPTION = "-memory=";
+    private static String INDEXED_OPTION = "-indexed";
+    private static String ENTROPY_OPTION = "-entropy";
+    private static String RICE_OPTION = "-rice";
+    private static String ZERO_RUN_OPTION = "-zeroruns";
+    private static String PROGRESSIVE_OPTION = "-progressive";
+    private static String BYTES_OPTION = "-bytes=";
+    private static String THUMBNAIL_OPTION = "-thumbnail=";
+    private static String CROP_OPTION = "-crop=";
+    private static String COLOR_TRANSFORM_OPTION = "-ycocg";
+    private static String CHROMA_LOSS_OPTION = "-chroma=";
+    private static String ROWS_OPTION = "-rows";
+    private static ForkJoinPool pool = new ForkJoinPool();
+    private static boolean twoDimensional = false;
+    private static int tileSize = 0;
+    private static long memoryBudget = 0;
+    private static boolean indexed = false;
+    private static boolean entropyCoded = false;
+    private static boolean riceCoded = false;
+    private static boolean zeroRunCoded = false;
+    private static boolean progressive = false;
+    private static long bytesToRead = 0;
+    private static int thumbnailScale = 0;
+    private static int[] crop = null; // x, y, width and height
+    private static boolean colorTransform = false;
+    private static int chromaLoss = 0;
+    private static boolean rowMajor = false;
 
     /**
      * Launches the gui or chooses the action according to the command line
@@ -22,6 +60,51 @@ public class Compression {
      */
     public static void main(String[] args) throws IOException {
 
+        while (args.length > 0 && args[0].trim().startsWith("-")) {
+            String option = args[0].trim();
+            if (option.startsWith(THREADS_OPTION)) {
+                setParallelism(Integer.parseInt(option.substring(THREADS_OPTION.length())));
+            } else if (option.equals(TWO_D_OPTION)) {
+                setTwoDimensional(true);
+            } else if (option.startsWith(TILES_OPTION)) {
+                setTileSize(Integer.parseInt(option.substring(TILES_OPTION.length())));
+            } else if (option.startsWith(MEMORY_OPTION)) {
+                setMemoryBudget(Long.parseLong(option.substring(MEMORY_OPTION.length())) << 20);
+            } else if (option.equals(INDEXED_OPTION)) {
+                setIndexed(true);
+            } else if (option.equals(ENTROPY_OPTION)) {
+                setEntropyCoded(true);
+            } else if (option.equals(RICE_OPTION)) {
+                setRiceCoded(true);
+            } else if (option.equals(ZERO_RUN_OPTION)) {
+                setZeroRunCoded(true);
+            } else if (option.equals(PROGRESSIVE_OPTION)) {
+                setProgressive(true);
+            } else if (option.startsWith(BYTES_OPTION)) {
+                setBytesToRead(Long.parseLong(option.substring(BYTES_OPTION.length())));
+            } else if (option.startsWith(THUMBNAIL_OPTION)) {
+                setThumbnailScale(Integer.parseInt(option.substring(THUMBNAIL_OPTION.length())));
+            } else if (option.startsWith(CROP_OPTION)) {
+                String[] numbers = option.substring(CROP_OPTION.length()).split(",");
+                if (numbers.length != 4) {
+                    System.out.println("Syntax error.");
+                    return;
+                }
+                setCrop(Integer.parseInt(numbers[0]), Integer.parseInt(numbers[1]), Integer.parseInt(numbers[2]),
+                        Integer.parseInt(numbers[3]));
+            } else if (option.equals(COLOR_TRANSFORM_OPTION)) {
+                setColorTransform(true);
+            } else if (option.startsWith(CHROMA_LOSS_OPTION)) {
+                setChromaLoss(Integer.parseInt(option.substring(CHROMA_LOSS_OPTION.length())));
+            } else if (option.equals(ROWS_OPTION)) {
+                setRowMajor(true);
+            } else {
+                System.out.println("Unknown option " + option);
+                return;
+            }
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+
         switch (args.length) {
             case 0:
                 launchGui();
@@ -73,14 +156,30 @@ public class Compression {
         int levelOfLoss = Integer.parseInt(args[0]);
         File inputFile = new File(args[1]);
         File outputFile = new File(args[2]);
+        if (chromaLossRejected()) {
+            return;
+        }
+
+        if (writtenInStrips()) {
+            System.out.println("Converting in strips of at most " + (memoryBudget >> 20) + " MB...");
+            StreamingEncoder.encode(inputFile, outputFile, levelOfLoss, tileSize, memoryBudget, pool);
+            time = System.currentTimeMillis() - time;
+            System.out.println("Ready. Took " + time + " milliseconds.");
+            return;
+        }
 
         System.out.println("Reading data...");
-        byte[][][] data = BitmapIO.readFileIntoByteData(inputFile);
-        int originalHeight = data[0][0].length; // This hopefully lets the garbage collector destroy the data array.
+        ImagePlanes data = readImage(inputFile);
+        if (chromaLossRejected(data)) {
+            return;
+        }
+        int originalWidth = data.getWidth();
+        int originalHeight = data.getHeight(); // This hopefully lets the garbage collector destroy the data array.
         System.out.println("Calculating transform...");
-        int[][][] transform = HaarTransform.lossyTransfrom(data, levelOfLoss);
+        NarrowCoefficients transform = transform(data, levelOfLoss);
+        transform.setRowMajor(rowMajor);
         System.out.println("Writing to file " + args[2] + " ...");
-        WTFIO.writeMixedData(transform, originalHeight, levelOfLoss, outputFile);
+        writeTransform(transform, originalWidth, originalHeight, levelOfLoss, outputFile);
 
         time = System.currentTimeMillis() - time;
         System.out.println("Ready. Took " + time + " milliseconds.");
@@ -103,17 +202,30 @@ public class Compression {
         int lowest = Integer.parseInt(args[0]);
         int highest = Integer.parseInt(args[1]);
         String objectName = args[3].trim();
+        if (chromaLossRejected()) {
+            return;
+        }
 
         System.out.println("Reading data...");
-        byte[][][] data = BitmapIO.readFileIntoByteData(new File(args[2].trim()));
-        int origHeight = data[0][0].length;
+        ImagePlanes data = readImage(new File(args[2].trim()));
+        if (chromaLossRejected(data)) {
+            return;
+        }
+        int origWidth = data.getWidth();
+        int origHeight = data.getHeight();
 
-        for (int i = lowest; i <= highest; i++) {
-            System.out.println("Calculating transform, lol = " + i + "...");
-            int[][][] transform = HaarTransform.lossyTransfrom(data, i);
-            System.out.println("Writing file " + objectName + i + ".wtf...");
-            WTFIO.writeMixedData(transform, origHeight, i, new File(objectName + i + ".wtf"));
+        System.out.println("Calculating transforms, lol = " + lowest + "..." + highest + "...");
+        NarrowCoefficients[] series = transformSeries(data, lowest, highest);
+        data = null; // Only the transforms are needed from now on.
+        for (NarrowCoefficients transform : series) {
+            transform.setRowMajor(rowMajor);
+        }
+        System.out.println("Writing files " + objectName + lowest + ".wtf..." + objectName + highest + ".wtf...");
+        File[] files = new File[series.length];
+        for (int i = 0; i < series.length; i++) {
+            files[i] = new File(objectName + (lowest + i) + ".wtf");
         }
+        writeSeries(series, origWidth, origHeight, lowest, files);
 
         time = System.currentTimeMillis() - time;
         System.out.println("Ready. Took " + time + " milliseconds.");
@@ -147,11 +259,11 @@ public class Compression {
         for (int i = lowest; i <= highest; i++) {
             System.out.println("Reading file " + protoInput + i + "wtf...");
             WTFIO pic = new WTFIO(new File(protoInput + i + ".wtf"));
-            int[][][] transform = pic.readData();
+            NarrowCoefficients transform = pic.readNarrowData();
             System.out.println("Retrieving image data...");
-            byte[][][] data = HaarTransform.inverseLossyTransform(transform, pic.getOriginalHeight(), pic.getLevelOfLoss());
+            ImagePlanes data = inverse(transform, pic);
             System.out.println("Writing file " + protoOutput + i + ".bmp...");
-            BitmapIO.writeByteDataIntoBitmap(data, new File(protoOutput + i + ".bmp"));
+            writeImage(data, pic, new File(protoOutput + i + ".bmp"));
         }
 
         time = System.currentTimeMillis() - time;
@@ -172,20 +284,581 @@ public class Compression {
         File inputFile = new File(args[0]);
         File outputFile = new File(args[1]);
 
-        System.out.println("Reading file " + args[0] + " ...");
         WTFIO read = new WTFIO(inputFile);
-        int[][][] transform = read.readData();
-        int originalHeight = read.getOriginalHeight();  // This is to let garbage collector to...
-        int levelOfLoss = read.getLevelOfLoss();        // ..destroy the object read.
-        System.out.println("Retrieving image data...");
-        byte[][][] data = HaarTransform.inverseLossyTransform(transform, originalHeight, levelOfLoss);
+        if (thumbnailScale > 0) {
+            if (read.getTiling() != null || read.getTypeOfFile() == WTFIO.TYPE_MIXED_2D) {
+                read.close();
+                System.out.println("Thumbnails can only be made of the files of the column transform.");
+                return;
+            }
+            System.out.println("Reading the coarse coefficients of " + args[0] + " ...");
+            int coarserLevel = Math.max(read.getLevelOfLoss(), thumbnailScale);
+            CoefficientPlanes transform = read.readCoarserPlanes(coarserLevel, pool);
+            if (read.hasColorTransform()) {
+                ColorTransform.inverse(transform);
+            }
+            System.out.println("Retrieving the thumbnail...");
+            ImagePlanes thumbnail = ParallelTransform.inverseThumbnail(transform, read.getOriginalHeight(),
+                    coarserLevel, thumbnailScale, pool);
+            System.out.println("Writing file " + args[1]);
+            writeImage(thumbnail, read, outputFile);
+            time = System.currentTimeMillis() - time;
+            System.out.println("Ready. Took " + time + " milliseconds.");
+            return;
+        }
+        if (crop != null) {
+            if (read.getTiling() != null || read.getTypeOfFile() == WTFIO.TYPE_MIXED_2D) {
+                read.close();
+                System.out.println("Rectangles can only be cut from the files of the column transform.");
+                return;
+            }
+            System.out.println("Reading the columns of the rectangle from " + args[0] + " ...");
+            // The lines of a row-major file are the rows, so the rectangle is transposed:
+            int[] lines = read.isRowMajor() ? new int[]{crop[1], crop[0], crop[3], crop[2]} : crop;
+            CoefficientPlanes transform = read.readRegion(lines[0], lines[1], lines[2], lines[3], pool);
+            if (read.hasColorTransform()) {
+                ColorTransform.inverse(transform);
+            }
+            System.out.println("Retrieving the rectangle...");
+            ImagePlanes region = ParallelTransform.inverseRegion(transform, read.getOriginalHeight(),
+                    read.getLevelOfLoss(), lines[1], lines[3], pool);
+            System.out.println("Writing file " + args[1]);
+            writeImage(region, read, outputFile);
+            time = System.currentTimeMillis() - time;
+            System.out.println("Ready. Took " + time + " milliseconds.");
+            return;
+        }
+        if (memoryBudget > 0 && StreamingDecoder.canDecode(read)) {
+            read.close();
+            System.out.println("Converting in strips of at most " + (memoryBudget >> 20) + " MB...");
+            StreamingDecoder.decode(inputFile, outputFile, memoryBudget, pool);
+            time = System.currentTimeMillis() - time;
+            System.out.println("Ready. Took " + time + " milliseconds.");
+            return;
+        }
+
+        System.out.println("Reading file " + args[0] + " ...");
+        ImagePlanes data;
+        byte type = read.getTypeOfFile();
+        if (type == WTFIO.TYPE_PROGRESSIVE) {
+            CoefficientPlanes transform = read.readProgressive(bytesToRead > 0 ? bytesToRead : Long.MAX_VALUE);
+            System.out.println("Retrieving image data...");
+            data = inverse(transform, read);
+        } else if (read.canReadSparse()) {
+            System.out.println("Retrieving image data line by line...");
+            data = read.readSparseImage(pool);
+        } else if (type == WTFIO.TYPE_INDEXED || type == WTFIO.TYPE_ENTROPY || type == WTFIO.TYPE_RICE
+                || type == WTFIO.TYPE_ZERO_RUN) {
+            CoefficientPlanes transform = read.readPlanes(pool);
+            System.out.println("Retrieving image data...");
+            data = inverse(transform, read);
+        } else {
+            NarrowCoefficients transform = read.readNarrowData();
+            System.out.println("Retrieving image data...");
+            data = inverse(transform, read);
+        }
         System.out.println("Writing file " + args[1]);
-        BitmapIO.writeByteDataIntoBitmap(data, outputFile);
+        writeImage(data, read, outputFile);
 
         time = System.currentTimeMillis() - time;
         System.out.println("Ready. Took " + time + " milliseconds.");
     }
 
+    /**
+     * An auxiliary method for commandLineFromBmpToWtf. Tells whether the image
+     * is converted in strips with StreamingEncoder when there is a memory
+     * budget. It writes only the mixed files of the column and the tiled
+     * transforms, so with the options that need anything else the image is
+     * transformed all at once.
+     *
+     * @return True if the image is converted in strips.
+     */
+    private static boolean writtenInStrips() {
+        return memoryBudget > 0 && !twoDimensional && !colorTransform && !rowMajor && !indexed
+                && !entropyCoded && !riceCoded && !zeroRunCoded && !progressive;
+    }
+
+    /**
+     * An auxiliary method for commandLineFromBmpToWtf and commandLineSeries.
+     * The chromas can be given more loss than the luma (see setChromaLoss)
+     * only when the colors are transformed and the transform is the column
+     * transform, so for the other options this tells it and refuses.
+     *
+     * @return True if the chosen options can't be used together.
+     */
+    private static boolean chromaLossRejected() {
+        if (chromaLoss > 0 && (!colorTransform || twoDimensional || tileSize > 0)) {
+            System.out.println("The chromas can be given more loss only with '" + COLOR_TRANSFORM_OPTION
+                    + "' and the column transform.");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Like chromaLossRejected(), but for the image that was read: a grayscale
+     * image has no chromas.
+     *
+     * @param data The image data.
+     * @return True if the chromas of the image can't be given more loss.
+     */
+    private static boolean chromaLossRejected(ImagePlanes data) {
+        if (chromaLoss > 0 && !ColorTransform.applies(data.getColors())) {
+            System.out.println("A grayscale image has no chromas to give more loss.");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads an image in the layout chosen with setRowMajor.
+     *
+     * @param file The image file.
+     * @return The image data, or the data of the transposed image in the
+     * row-major layout.
+     * @throws IOException
+     */
+    private static ImagePlanes readImage(File file) throws IOException {
+        return rowMajor ? BitmapIO.readFileIntoRows(file) : BitmapIO.readFileIntoPlanes(file);
+    }
+
+    /**
+     * Writes the image data retrieved from a wtf-file into a bmp-file in the
+     * layout the file tells, see WTFIO.isRowMajor.
+     *
+     * @param data The image data.
+     * @param file The wtf-file it was retrieved from.
+     * @param output The bmp-file to be written.
+     * @throws IOException
+     */
+    private static void writeImage(ImagePlanes data, WTFIO file, File output) throws IOException {
+        if (file.isRowMajor()) {
+            BitmapIO.writeRowsIntoBitmap(data, output);
+        } else {
+            BitmapIO.writePlanesIntoBitmap(data, output);
+        }
+    }
+
+    /**
+     * Transforms the image data with the chosen transform: column by column,
+     * tile by tile if a tile size is set with setTileSize, or two-dimensionally
+     * if that is set with setTwoDimensional. If setColorTransform is on, the
+     * colors are transformed too (see transformColors). The transform is
+     * stored narrowly, so it takes only about as much memory as it will take
+     * in the file.
+     *
+     * @param data The image data.
+     * @param levelOfLoss The level of loss.
+     * @return The transform.
+     */
+    private static NarrowCoefficients transform(ImagePlanes data, int levelOfLoss) {
+        if (tileSize > 0) {
+            Tiling tiling = new Tiling(data.getWidth(), data.getHeight(), tileSize, levelOfLoss);
+            return NarrowCoefficients.fromPlanes(transformColors(
+                    HaarTransform.lossyTransformTiled(data, levelOfLoss, tileSize, pool)), tiling, pool);
+        }
+        if (twoDimensional) {
+            return NarrowCoefficients.fromPlanes(
+                    transformColors(HaarTransform.lossyTransform2D(data, levelOfLoss, pool)), null, pool);
+        }
+        if (colorTransform && ColorTransform.applies(data.getColors())) {
+            CoefficientPlanes transform = transformColors(ParallelTransform.lossyTransform(data, levelOfLoss, pool));
+            ColorTransform.dropChroma(transform, data.getHeight(), levelOfLoss, chromaLoss);
+            return NarrowCoefficients.fromPlanes(transform, null, pool);
+        }
+        return ParallelTransform.lossyTransformNarrow(data, levelOfLoss, pool);
+    }
+
+    /**
+     * An auxiliary method for transform. Turns the colors of the
+     * coefficients into Y, Co and Cg with ColorTransform if setColorTransform
+     * is on and the image has the blue, green and red.
+     *
+     * @param transform The coefficients, which are changed.
+     * @return The same coefficients.
+     */
+    private static CoefficientPlanes transformColors(CoefficientPlanes transform) {
+        if (colorTransform && ColorTransform.applies(transform.getColors())) {
+            ColorTransform.forward(transform);
+        }
+        return transform;
+    }
+
+    /**
+     * Transforms the image data with all the levels of loss from lowest to
+     * highest. The column transform is calculated only once and the others are
+     * derived from it (see ParallelTransform.lossyTransformSeries). The
+     * two-dimensional and tiled transforms, and the transforms whose colors
+     * are transformed, are calculated once per level.
+     *
+     * @param data The image data.
+     * @param lowest The smallest level of loss.
+     * @param highest The biggest level of loss.
+     * @return The transforms, the one with the level of loss lowest + i at
+     * the index i.
+     */
+    private static NarrowCoefficients[] transformSeries(ImagePlanes data, int lowest, int highest) {
+        if (tileSize == 0 && !twoDimensional && !colorTransform) {
+            return ParallelTransform.lossyTransformSeries(data, lowest, highest, pool);
+        }
+        NarrowCoefficients[] series = new NarrowCoefficients[highest - lowest + 1];
+        for (int i = 0; i < series.length; i++) {
+            series[i] = transform(data, lowest + i);
+        }
+        return series;
+    }
+
+    /**
+     * Writes the transforms of transformSeries into wtf-files at the same
+     * time with the threads of the pool.
+     *
+     * @param series The transforms.
+     * @param originalWidth The width of the image.
+     * @param originalHeight The height of the image.
+     * @param lowest The level of loss of the first transform.
+     * @param files The files to be written, one for each transform.
+     * @throws IOException if any of the files can't be written.
+     */
+    private static void writeSeries(final NarrowCoefficients[] series, final int originalWidth,
+            final int originalHeight, final int lowest, final File[] files) throws IOException {
+        List<Callable<Void>> writers = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < series.length; i++) {
+            final int index = i;
+            writers.add(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    writeTransform(series[index], originalWidth, originalHeight, lowest + index, files[index]);
+                    series[index] = null; // Written, so the memory can be freed.
+                    return null;
+                }
+            });
+        }
+
+        for (Future<Void> written : pool.invokeAll(writers)) {
+            try {
+                written.get();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Writes a transform produced by the method transform into a wtf-file of
+     * the corresponding type.
+     *
+     * @param transform The transform.
+     * @param originalWidth The width of the image.
+     * @param originalHeight The height of the image.
+     * @param levelOfLoss The level of loss.
+     * @param file The file to be written.
+     * @throws IOException
+     */
+    private static void writeTransform(NarrowCoefficients transform, int originalWidth, int originalHeight,
+            int levelOfLoss, File file) throws IOException {
+        Tiling tiling = tileSize > 0 ? new Tiling(originalWidth, originalHeight, tileSize, levelOfLoss) : null;
+        if (entropyCoded && !twoDimensional) {
+            WTFIO.writeEntropyData(transform.toPlanes(tiling, pool), originalWidth, originalHeight, levelOfLoss,
+                    tileSize, file, pool);
+        } else if (riceCoded && !twoDimensional) {
+            WTFIO.writeRiceData(transform.toPlanes(tiling, pool), originalWidth, originalHeight, levelOfLoss,
+                    tileSize, file, pool);
+        } else if (zeroRunCoded && !twoDimensional) {
+            WTFIO.writeZeroRunData(transform.toPlanes(tiling, pool), originalWidth, originalHeight, levelOfLoss,
+                    tileSize, file, pool);
+        } else if (progressive && !twoDimensional) {
+            WTFIO.writeProgressiveData(transform.toPlanes(tiling, pool), originalWidth, originalHeight, levelOfLoss,
+                    tileSize, file);
+        } else if (indexed && !twoDimensional) {
+            WTFIO.writeIndexedData(transform, originalWidth, originalHeight, levelOfLoss, tileSize, file);
+        } else if (tileSize > 0) {
+            WTFIO.writeMixedDataTiled(transform, originalWidth, originalHeight, levelOfLoss, tileSize, file);
+        } else if (twoDimensional) {
+            WTFIO.writeMixedData2D(transform, originalWidth, originalHeight, levelOfLoss, file);
+        } else {
+            WTFIO.writeMixedData(transform, originalHeight, levelOfLoss, file);
+        }
+    }
+
+    /**
+     * Retrieves the image data from a transform read from a wtf-file. The type
+     * of the file tells which inverse transform is used.
+     *
+     * @param transform The transform read from the file.
+     * @param file The file it was read from.
+     * @return The image data.
+     */
+    private static ImagePlanes inverse(NarrowCoefficients transform, WTFIO file) {
+        if (file.hasColorTransform()) {
+            return inverse(transform.toPlanes(file.getTiling(), pool), file);
+        }
+        if (file.getTiling() != null) {
+            return HaarTransform.inverseLossyTransformTiled(transform.toPlanes(file.getTiling(), pool),
+                    file.getOriginalWidth(), file.getOriginalHeight(), file.getLevelOfLoss(),
+                    file.getTileSize(), pool);
+        }
+        if (file.getTypeOfFile() == WTFIO.TYPE_MIXED_2D) {
+            return HaarTransform.inverseLossyTransform2D(transform.toPlanes(null, pool), file.getOriginalWidth(),
+                    file.getOriginalHeight(), file.getLevelOfLoss(), pool);
+        }
+        return ParallelTransform.inverseLossyTransform(transform, file.getOriginalHeight(),
+                file.getLevelOfLoss(), pool);
+    }
+
+    /**
+     * Retrieves the image data from a transform that was read into planes from
+     * an indexed, entropy coded, Rice coded or progressive wtf-file, see
+     * WTFIO.readPlanes(ForkJoinPool), or of any file whose colors have been
+     * transformed. Those are turned back first.
+     *
+     * @param transform The transform read from the file.
+     * @param file The file it was read from.
+     * @return The image data.
+     */
+    private static ImagePlanes inverse(CoefficientPlanes transform, WTFIO file) {
+        if (file.hasColorTransform()) {
+            ColorTransform.inverse(transform);
+        }
+        if (file.getTiling() != null) {
+            return HaarTransform.inverseLossyTransformTiled(transform, file.getOriginalWidth(),
+                    file.getOriginalHeight(), file.getLevelOfLoss(), file.getTileSize(), pool);
+        }
+        if (file.getTypeOfFile() == WTFIO.TYPE_MIXED_2D) {
+            return HaarTransform.inverseLossyTransform2D(transform, file.getOriginalWidth(),
+                    file.getOriginalHeight(), file.getLevelOfLoss(), pool);
+        }
+        return ParallelTransform.inverseLossyTransform(transform, file.getOriginalHeight(), file.getLevelOfLoss(),
+                pool);
+    }
+
+    /**
+     * Chooses whether images are transformed column by column (false, the
+     * default) or two-dimensionally (true). Wtf-files are read the right way
+     * in both cases.
+     *
+     * @param twoD True for the two-dimensional transform.
+     */
+    public static void setTwoDimensional(boolean twoD) {
+        twoDimensional = twoD;
+    }
+
+    /**
+     * Tells whether images are transformed two-dimensionally.
+     *
+     * @return True for the two-dimensional transform.
+     */
+    public static boolean isTwoDimensional() {
+        return twoDimensional;
+    }
+
+    /**
+     * Sets the size of the tiles of the tiled transform. With 0 (the default)
+     * the picture isn't split into tiles.
+     *
+     * @param size The width and height of the tiles, or 0.
+     */
+    public static void setTileSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException();
+        }
+        tileSize = size;
+    }
+
+    /**
+     * Chooses how many bytes of memory the conversion of an image into a
+     * wtf-file and back may use. If it's more than 0, the files are converted
+     * in strips by the classes StreamingEncoder and StreamingDecoder, except
+     * with the two-dimensional transform. Images whose colors are transformed
+     * (see setColorTransform) or that are read row by row (see setRowMajor)
+     * are transformed all at once, but their files are converted back in
+     * strips. So are images written into indexed, entropy coded, Rice coded,
+     * zero run coded or progressive files (see setIndexed, setEntropyCoded,
+     * setRiceCoded, setZeroRunCoded and setProgressive), and the entropy coded
+     * and the progressive files are converted back all at once too.
+     *
+     * @param bytes The memory budget in bytes, 0 for no budget.
+     */
+    public static void setMemoryBudget(long bytes) {
+        memoryBudget = bytes;
+    }
+
+    /**
+     * Chooses whether wtf-files are written as indexed files (type 4), which
+     * can be read from any line and decoded by several threads at the same
+     * time. This works with the column and the tiled transforms.
+     *
+     * @param index True for indexed files.
+     */
+    public static void setIndexed(boolean index) {
+        indexed = index;
+    }
+
+    /**
+     * Chooses whether wtf-files are written entropy coded (type 5), which
+     * makes them smaller but slower to write and read. This works with the
+     * column and the tiled transforms, and it goes before setIndexed.
+     *
+     * @param coded True for entropy coded files.
+     */
+    public static void setEntropyCoded(boolean coded) {
+        entropyCoded = coded;
+    }
+
+    /**
+     * Chooses whether wtf-files are written Rice coded (type 6), which makes
+     * them smaller but keeps them at least as fast to read as the mixed ones.
+     * This works with the column and the tiled transforms. Entropy coding
+     * goes before it, and it goes before setIndexed.
+     *
+     * @param coded True for Rice coded files.
+     */
+    public static void setRiceCoded(boolean coded) {
+        riceCoded = coded;
+    }
+
+    /**
+     * Chooses whether wtf-files are written with runs of zeros coded (type 7),
+     * which makes them smaller with high levels of loss and images with flat
+     * areas. This works with the column and the tiled transforms. Entropy and
+     * Rice coding go before it, and it goes before setIndexed.
+     *
+     * @param coded True for zero run coded files.
+     */
+    public static void setZeroRunCoded(boolean coded) {
+        zeroRunCoded = coded;
+    }
+
+    /**
+     * Chooses whether wtf-files are written progressive (type 8), so that the
+     * beginning of a file can be converted into a coarser image, see
+     * setBytesToRead. This works with the column and the tiled transforms.
+     * Entropy, Rice and zero run coding go before it, and it goes before
+     * setIndexed.
+     *
+     * @param coded True for progressive files.
+     */
+    public static void setProgressive(boolean coded) {
+        progressive = coded;
+    }
+
+    /**
+     * Chooses how many bytes of a progressive wtf-file are read when it's
+     * converted into an image. The other types of files are always read
+     * whole.
+     *
+     * @param bytes The number of bytes from the beginning of the file, 0 for
+     * the whole file.
+     */
+    public static void setBytesToRead(long bytes) {
+        bytesToRead = bytes;
+    }
+
+    /**
+     * Chooses whether wtf-files are converted into thumbnails, i.e. images
+     * made smaller by 2^scale in each direction, see
+     * ParallelTransform.inverseThumbnail. This works with the files of the
+     * column transform.
+     *
+     * @param scale How many times the image is made smaller by 2, 0 for the
+     * whole image.
+     */
+    public static void setThumbnailScale(int scale) {
+        if (scale < 0) {
+            throw new IllegalArgumentException();
+        }
+        thumbnailScale = scale;
+    }
+
+    /**
+     * Chooses a rectangle of the image that wtf-files are converted into
+     * instead of the whole image, see WTFIO.readRegion. This works with the
+     * files of the column transform.
+     *
+     * @param x The first column of the rectangle.
+     * @param y The first row of the rectangle.
+     * @param width The width of the rectangle, 0 for the whole image.
+     * @param height The height of the rectangle.
+     */
+    public static void setCrop(int x, int y, int width, int height) {
+        crop = width > 0 ? new int[]{x, y, width, height} : null;
+    }
+
+    /**
+     * Chooses whether the blue, green and red of images are turned into Y, Co
+     * and Cg with ColorTransform before they are written. This is lossless,
+     * and the wtf-files tell it in their header, so they are read the right
+     * way in both cases. Grayscale images are written as they are.
+     *
+     * @param transform True to transform the colors.
+     */
+    public static void setColorTransform(boolean transform) {
+        colorTransform = transform;
+    }
+
+    /**
+     * Chooses whether images are read into the row-major layout of
+     * ImagePlanes (true) instead of the column-major one (false, the
+     * default). The bmp-files are then read and written row after row without
+     * jumping, and the transforms go along the rows first: the column
+     * transform transforms the rows, and the two-dimensional and tiled ones
+     * start with the rows. The wtf-files tell the layout in their header, so
+     * they are converted back the right way in both cases.
+     *
+     * @param rows True for the row-major layout.
+     */
+    public static void setRowMajor(boolean rows) {
+        rowMajor = rows;
+    }
+
+    /**
+     * Chooses how many levels of loss more the chromas Co and Cg get than the
+     * luma when the colors are transformed, see ColorTransform.dropChroma.
+     * This works only with setColorTransform and the column transform, and
+     * with the other options the images aren't converted at all. The dropped
+     * coefficients are stored as zeros, so the files get much smaller mostly
+     * with the coded types (Rice, zero run, entropy or progressive). The
+     * mixed type still spends a byte on each zero.
+     *
+     * @param levels The extra levels of loss, 0 (the default) for the same as
+     * the luma.
+     */
+    public static void setChromaLoss(int levels) {
+        if (levels < 0) {
+            throw new IllegalArgumentException();
+        }
+        chromaLoss = levels;
+    }
+
+    /**
+     * Sets the number of threads that are used for the transforms.
+     *
+     * @param threads The number of threads, at least 1.
+     */
+    public static void setParallelism(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException();
+        }
+        if (threads != pool.getParallelism()) {
+            pool.shutdown();
+            pool = new ForkJoinPool(threads);
+        }
+    }
+
+    /**
+     * Tells the number of threads that are used for the transforms. By default
+     * it's the number of processors.
+     *
+     * @return The number of threads.
+     */
+    public static int getParallelism() {
+        return pool.getParallelism();
+    }
+
     /**
      * Prints the help text.
      */
@@ -224,6 +897,52 @@ public class Compression {
         System.out.println("p2 = n");
         System.out.println("p3 = 'transf'");
         System.out.println("p4 = 'img");
+        System.out.println("");
+        System.out.println("The transforms use as many threads as there are processors. To use n threads");
+        System.out.println("instead, put '" + THREADS_OPTION + "n' before the other parameters.");
+        System.out.println("To transform the rows of the image too, and not only the columns, put");
+        System.out.println("'" + TWO_D_OPTION + "' before the other parameters. The files are smaller, and they");
+        System.out.println("are converted back to images the same way as the others.");
+        System.out.println("To split big images into n x n tiles that are transformed two-dimensionally");
+        System.out.println("one at a time, put '" + TILES_OPTION + "n' before the other parameters.");
+        System.out.println("Tiles of 256 x 256 fit in the cache of most processors.");
+        System.out.println("To convert an image that doesn't fit into memory, put '" + MEMORY_OPTION + "n' before");
+        System.out.println("the other parameters. The image or the wtf file is then read and transformed in");
+        System.out.println("strips of at most n megabytes. This works with the column and the tiled transforms.");
+        System.out.println("To write wtf files with an index of their lines, put '" + INDEXED_OPTION + "' before the");
+        System.out.println("other parameters. They are read back with several threads. This works with the");
+        System.out.println("column and the tiled transforms. With '" + MEMORY_OPTION + "n' the image is then transformed");
+        System.out.println("all at once, but the file is converted back in strips.");
+        System.out.println("To make the wtf files smaller with entropy coding, put '" + ENTROPY_OPTION + "' before");
+        System.out.println("the other parameters. This too works with the column and the tiled transforms, but");
+        System.out.println("not in strips: with '" + MEMORY_OPTION + "n' the image and the file are converted all at once.");
+        System.out.println("For smaller wtf files that are still fast to read, put '" + RICE_OPTION + "' before the");
+        System.out.println("other parameters. This works with the column and the tiled transforms, and they");
+        System.out.println("can be converted back to images in strips. With '" + MEMORY_OPTION + "n' the image itself is");
+        System.out.println("transformed all at once.");
+        System.out.println("For high levels of loss or images with flat areas, '" + ZERO_RUN_OPTION + "' codes the runs of");
+        System.out.println("zeros in the wtf file in a byte or a few. It works like '" + RICE_OPTION + "'.");
+        System.out.println("To write wtf files that can be cut short, put '" + PROGRESSIVE_OPTION + "' before the other");
+        System.out.println("parameters. To convert only the first n bytes of such a file into a coarser image,");
+        System.out.println("put '" + BYTES_OPTION + "n' before the other parameters. This works with the column and");
+        System.out.println("the tiled transforms, but not in strips: with '" + MEMORY_OPTION + "n' the image and the file");
+        System.out.println("are converted all at once.");
+        System.out.println("To convert a wtf file into a thumbnail that is 2^n times smaller in each direction,");
+        System.out.println("put '" + THUMBNAIL_OPTION + "n' before the other parameters. Only the coarse part of the");
+        System.out.println("file is decoded, and of an indexed file only it is read. This works with the column");
+        System.out.println("transform.");
+        System.out.println("To convert only the rectangle of width w and height h whose upper left corner is at");
+        System.out.println("x, y, put '" + CROP_OPTION + "x,y,w,h' before the other parameters. Only the columns of the");
+        System.out.println("rectangle are decoded. This too works with the column transform.");
+        System.out.println("To turn the colors of the image into the luma and two chromas, which usually");
+        System.out.println("makes the wtf files of photos smaller, put '" + COLOR_TRANSFORM_OPTION + "' before the other");
+        System.out.println("parameters. It's lossless, and the files are converted back the same way as the");
+        System.out.println("others. To give the chromas n levels of loss more than the luma, put also");
+        System.out.println("'" + CHROMA_LOSS_OPTION + "n' before them. This works only with the column transform, and");
+        System.out.println("the files get much smaller mostly with the coded types, e.g. '" + RICE_OPTION + "'.");
+        System.out.println("To transform the rows of the image instead of its columns, put '" + ROWS_OPTION + "' before");
+        System.out.println("the other parameters. The image is then read and written row by row, which is how");
+        System.out.println("bmp files store it. The files are converted back the same way as the others.");
         System.out.println("=======End of help=====");
     }
 
@@ -248,19 +967,27 @@ public class Compression {
 
         long time = System.currentTimeMillis();
         File img = new File(imgName);
-        byte[][][] data = BitmapIO.readFileIntoByteData(img);
+        ImagePlanes data = BitmapIO.readFileIntoPlanes(img);
         time = System.currentTimeMillis() - time;
 
         writer.write("\nReading data took " + time + " milliseconds. ");
         writer.write("Original file size "+(img.length()/1000)+" kb. ");
-        writer.write("Dimensions "+data[0].length + " x " +data[0][0].length+" (width x height)");
+        writer.write("Dimensions "+data.getWidth() + " x " +data.getHeight()+" (width x height)");
         writer.write("\n=====================================================================================================");
-        writer.write("\nlol \twtf size\tTransform \tWriting wtf\treading wtf \tinverse transform \twriting bmp");
+
+        time = System.currentTimeMillis();
+        NarrowCoefficients[] series = transformSeries(data, STATS_MIN_LOL, STATS_MAX_LOL - 1);
+        time = System.currentTimeMillis() - time;
+
+        writer.write("\nTransforming with all the levels of loss took " + time + " milliseconds.");
+        writer.write("\n=====================================================================================================");
+        writer.write("\nlol \twtf size\tWriting wtf\treading wtf \tinverse transform \twriting bmp");
 
         for (int lol = STATS_MIN_LOL; lol < STATS_MAX_LOL; lol++) {
-            long[] stats = convertAndAnalyze(data, lol);
+            long[] stats = convertAndAnalyze(data, lol, series[lol - STATS_MIN_LOL]);
+            series[lol - STATS_MIN_LOL] = null;
             writer.write("\n" + lol + "\t" + (stats[5]/1000) + " kb.");
-            for (int i = 0; i < 5; i++) {
+            for (int i = 1; i < 5; i++) {
                 writer.write("\t" + stats[i] + " ms.\t");
             }
         }
@@ -280,36 +1007,36 @@ public class Compression {
      * 
      * @param data The data to be transformed
      * @param lol The level of loss
+     * @param transform The transform of the data with the level of loss. It's
+     * calculated beforehand for all the levels, so the time of the transform
+     * is always 0.
      * @return 
      * @throws FileNotFoundException
      * @throws IOException 
      */
     
-    private static long[] convertAndAnalyze(byte[][][] data, int lol) throws FileNotFoundException, IOException {
+    private static long[] convertAndAnalyze(ImagePlanes data, int lol, NarrowCoefficients transform)
+            throws FileNotFoundException, IOException {
         long[] stats = new long[6];
+        int originalHeight = data.getHeight();
         long time = System.currentTimeMillis();
-        int originalHeight = data[0][0].length;
-
-        int[][][] transform = HaarTransform.lossyTransfrom(data, lol);
-        stats[0] = System.currentTimeMillis() - time;
-        time = System.currentTimeMillis();
 
         File tempWtf = new File(STATS_TEMP_WTF_FILE_NAME);
-        WTFIO.writeMixedData(transform, originalHeight, lol, tempWtf);
+        writeTransform(transform, data.getWidth(), originalHeight, lol, tempWtf);
         stats[1] = System.currentTimeMillis() - time;
         time = System.currentTimeMillis();
 
         WTFIO readWtf = new WTFIO(tempWtf);
-        int[][][] readTransform = readWtf.readData();
+        NarrowCoefficients readTransform = readWtf.readNarrowData();
         stats[2] = System.currentTimeMillis() - time;
         time = System.currentTimeMillis();
 
-        byte[][][] newData = HaarTransform.inverseLossyTransform(readTransform, readWtf.getOriginalHeight(), readWtf.getLevelOfLoss());
+        ImagePlanes newData = inverse(readTransform, readWtf);
         stats[3] = System.currentTimeMillis() - time;
         time = System.currentTimeMillis();
 
         File tempBmp = new File(STATS_TEMP_BMP_FILE_NAME);
-        BitmapIO.writeByteDataIntoBitmap(data, tempBmp);
+        BitmapIO.writePlanesIntoBitmap(data, tempBmp);
         stats[4] = System.currentTimeMillis() - time;
         
         stats[5] = tempWtf.length();
@@ -0,0 +1,368 @@
+package compression;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Codes lines of coefficients with an adaptive binary range coder, the same
+ * kind of arithmetic coder that LZMA uses. This is used for the entropy coded
+ * wtf-files of type 5, see the class WTFIO.
+ *
+ * Each coefficient v is first mapped to the unsigned number u = 2|v| or
+ * 2|v| - 1 (zigzag), so that the coefficients near zero get small numbers.
+ * The numbers below 16 are coded as tokens of their own, and the bigger ones
+ * as a token that tells the number of their bits, followed by the bits below
+ * the highest one as such. The six bits of a token are coded with a binary
+ * tree of adaptive probabilities.
+ *
+ * The coefficients of different levels of the transform are of very different
+ * sizes: the finest differences are mostly near zero, while the sums at the
+ * end are large. So each level has its own tree of probabilities. A line is
+ * split into blocks whose lengths are powers of two, biggest first, like the
+ * transforms of HaarTransform, and the level of a coefficient is told by how
+ * far it is from the end of its block. The probabilities start from 1/2 in
+ * each call of encode and decode, so the blocks of lines coded with different
+ * calls are independent of each other and can be coded at the same time.
+ *
+ * The coder can also be used for coding single bits with contexts of one's
+ * own, see bitEncoder and bitDecoder. This is what BitPlaneCoder does.
+ */
+class EntropyCoder {
+
+    static int LEVEL_CONTEXTS = 24;
+    private static int TOKEN_BITS = 6;
+    static int BIT_CONTEXTS = LEVEL_CONTEXTS << TOKEN_BITS; // For encodeBit and decodeBit
+    private static int SMALL_NUMBERS = 16; // Coded as tokens of their own
+    private static int SMALL_BITS = 5; // The bit length of the first big number
+    private static int PROBABILITY_BITS = 11;
+    private static int ADAPTATION_SHIFT = 5;
+
+    private short[] probabilities = new short[LEVEL_CONTEXTS << TOKEN_BITS];
+    private int[] contexts = new int[0]; // Of the lines of the length contextLength
+    private int contextLength = -1;
+    private int range = -1; // Unsigned
+
+    // For encoding:
+    private byte[] output;
+    private int size;
+    private long low;
+    private int cache;
+    private long cacheSize = 1;
+
+    // For decoding:
+    private ByteBuffer input;
+    private int code;
+    private boolean exhausted; // True when the input has run out
+
+    private EntropyCoder() {
+        Arrays.fill(probabilities, (short) (1 << (PROBABILITY_BITS - 1)));
+    }
+
+    /**
+     * Creates a coder for coding bits one at a time with encodeBit and
+     * encodeDirectBits. The coded bits are got with finish.
+     *
+     * @return The coder.
+     */
+    static EntropyCoder bitEncoder() {
+        EntropyCoder coder = new EntropyCoder();
+        coder.output = new byte[1 << 16];
+        return coder;
+    }
+
+    /**
+     * Creates a coder for decoding bits coded with a bitEncoder. The input may
+     * be cut anywhere: past its end the coder reads zeros and tells it with
+     * isExhausted.
+     *
+     * @param source The buffer whose position is where the coded bits begin.
+     * @return The coder.
+     */
+    static EntropyCoder bitDecoder(ByteBuffer source) {
+        EntropyCoder coder = new EntropyCoder();
+        coder.input = source;
+        for (int i = 0; i < 5; i++) {
+            coder.code = (coder.code << 8) | coder.nextByte();
+        }
+        return coder;
+    }
+
+    /**
+     * Ends the coding of a bitEncoder.
+     *
+     * @return The coded bits.
+     */
+    byte[] finish() {
+        for (int i = 0; i < 5; i++) {
+            shiftLow();
+        }
+        return Arrays.copyOf(output, size);
+    }
+
+    /**
+     * Tells whether a decoder has needed bytes past the end of its input. The
+     * bits decoded before that are right, but the ones after it aren't.
+     *
+     * @return True if the input has run out.
+     */
+    boolean isExhausted() {
+        return exhausted;
+    }
+
+    /**
+     * Codes consecutive lines of coefficients.
+     *
+     * @param data The array where the lines are, one after another.
+     * @param start The index where the first line begins.
+     * @param lineLengths The lengths of the lines.
+     * @return The coded lines.
+     */
+    static byte[] encode(int[] data, int start, int[] lineLengths) {
+        EntropyCoder coder = new EntropyCoder();
+        int coefficients = 0;
+        for (int length : lineLengths) {
+            coefficients += length;
+        }
+        coder.output = new byte[16 + coefficients];
+        for (int length : lineLengths) {
+            int[] lineContexts = coder.contexts(length);
+            for (int i = 0; i < length; i++) {
+                coder.encodeCoefficient(data[start + i], lineContexts[i]);
+            }
+            start += length;
+        }
+        for (int i = 0; i < 5; i++) {
+            coder.shiftLow();
+        }
+        return Arrays.copyOf(coder.output, coder.size);
+    }
+
+    /**
+     * Decodes lines coded with encode.
+     *
+     * @param source The buffer whose position is where the coded lines
+     * begin. The position is moved past them.
+     * @param target The array into which the coefficients are written.
+     * @param start The index where the first line will begin in the array.
+     * @param lineLengths The lengths of the lines.
+     */
+    static void decode(ByteBuffer source, int[] target, int start, int[] lineLengths) {
+        EntropyCoder coder = new EntropyCoder();
+        coder.input = source;
+        for (int i = 0; i < 5; i++) {
+            coder.code = (coder.code << 8) | (source.get() & 0xFF);
+        }
+        for (int length : lineLengths) {
+            int[] lineContexts = coder.contexts(length);
+            for (int i = 0; i < length; i++) {
+                target[start + i] = coder.decodeCoefficient(lineContexts[i]);
+            }
+            start += length;
+        }
+    }
+
+    /**
+     * Tells the level context of each coefficient of a line, see the
+     * description of this class. The contexts of the last length are kept.
+     */
+    private int[] contexts(int length) {
+        if (length != contextLength) {
+            contexts = levelContexts(length);
+            contextLength = length;
+        }
+        return contexts;
+    }
+
+    /**
+     * Tells the level of each coefficient of a line, see the description of
+     * this class. The level is 0 for the sums, 1 for the coarsest differences
+     * and so on, but at most LEVEL_CONTEXTS - 1.
+     *
+     * @param length The length of the line.
+     * @return The levels.
+     */
+    static int[] levelContexts(int length) {
+        int[] levels = new int[length];
+        int blockStart = 0;
+        while (blockStart < length) {
+            int blockEnd = blockStart + Integer.highestOneBit(length - blockStart);
+            for (int i = blockStart; i < blockEnd; i++) {
+                int fromEnd = blockEnd - 1 - i; // 0 for the sum, 1 for the coarsest difference etc.
+                levels[i] = Math.min(LEVEL_CONTEXTS - 1, 32 - Integer.numberOfLeadingZeros(fromEnd));
+            }
+            blockStart = blockEnd;
+        }
+        return levels;
+    }
+
+    /**
+     * Codes one coefficient with the tree of probabilities of its context.
+     */
+    private void encodeCoefficient(int value, int context) {
+        int number = (value << 1) ^ (value >> 31);
+        int bits = 32 - Integer.numberOfLeadingZeros(number);
+        boolean small = bits < SMALL_BITS; // The number may be above Integer.MAX_VALUE
+        int token = small ? number : SMALL_NUMBERS + bits - SMALL_BITS;
+
+        int tree = context << TOKEN_BITS;
+        int node = 1;
+        for (int i = TOKEN_BITS - 1; i >= 0; i--) {
+            int bit = (token >>> i) & 1;
+            encodeBit(tree + node, bit);
+            node = (node << 1) | bit;
+        }
+        if (!small) {
+            encodeDirectBits(number, bits - 1);
+        }
+    }
+
+    /**
+     * Decodes one coefficient, see encodeCoefficient.
+     */
+    private int decodeCoefficient(int context) {
+        int tree = context << TOKEN_BITS;
+        int node = 1;
+        for (int i = 0; i < TOKEN_BITS; i++) {
+            node = (node << 1) | decodeBit(tree + node);
+        }
+        int number = node - (1 << TOKEN_BITS);
+        if (number >= SMALL_NUMBERS) {
+            int bits = number - SMALL_NUMBERS + SMALL_BITS;
+            number = (1 << (bits - 1)) | decodeDirectBits(bits - 1);
+        }
+        return (number >>> 1) ^ -(number & 1);
+    }
+
+    /**
+     * Codes a bit with the probability at the index and adapts the
+     * probability.
+     *
+     * @param index The context of the bit, from 0 to BIT_CONTEXTS - 1.
+     * @param bit The bit.
+     */
+    void encodeBit(int index, int bit) {
+        int probability = probabilities[index];
+        int bound = (range >>> PROBABILITY_BITS) * probability;
+        if (bit == 0) {
+            range = bound;
+            probabilities[index] = (short) (probability
+                    + (((1 << PROBABILITY_BITS) - probability) >>> ADAPTATION_SHIFT));
+        } else {
+            low += bound & 0xFFFFFFFFL;
+            range -= bound;
+            probabilities[index] = (short) (probability - (probability >>> ADAPTATION_SHIFT));
+        }
+        if ((range & 0xFF000000) == 0) {
+            range <<= 8;
+            shiftLow();
+        }
+    }
+
+    /**
+     * Codes the lowest bits of the value with the probability 1/2 each.
+     *
+     * @param value The value.
+     * @param bits The number of its lowest bits that are coded.
+     */
+    void encodeDirectBits(int value, int bits) {
+        for (int i = bits - 1; i >= 0; i--) {
+            range >>>= 1;
+            if (((value >>> i) & 1) == 1) {
+                low += range;
+            }
+            if ((range & 0xFF000000) == 0) {
+                range <<= 8;
+                shiftLow();
+            }
+        }
+    }
+
+    /**
+     * Moves the highest byte of low to the output. A byte 0xFF may still
+     * change with a carry, so it's kept in the cache until it's known.
+     */
+    private void shiftLow() {
+        int carry = (int) (low >>> 32);
+        if (carry != 0 || low < 0xFF000000L) {
+            int temp = cache;
+            do {
+                write(temp + carry);
+                temp = 0xFF;
+            } while (--cacheSize != 0);
+            cache = ((int) low) >>> 24;
+        }
+        cacheSize++;
+        low = (low & 0xFFFFFF) << 8;
+    }
+
+    /**
+     * An auxiliary method for shiftLow.
+     */
+    private void write(int b) {
+        if (size == output.length) {
+            output = Arrays.copyOf(output, 2 * size);
+        }
+        output[size++] = (byte) b;
+    }
+
+    /**
+     * Decodes a bit coded with encodeBit.
+     *
+     * @param index The context of the bit.
+     * @return The bit.
+     */
+    int decodeBit(int index) {
+        int probability = probabilities[index];
+        int bound = (range >>> PROBABILITY_BITS) * probability;
+        int bit;
+        if ((code ^ 0x80000000) < (bound ^ 0x80000000)) {
+            range = bound;
+            probabilities[index] = (short) (probability
+                    + (((1 << PROBABILITY_BITS) - probability) >>> ADAPTATION_SHIFT));
+            bit = 0;
+        } else {
+            range -= bound;
+            code -= bound;
+            probabilities[index] = (short) (probability - (probability >>> ADAPTATION_SHIFT));
+            bit = 1;
+        }
+        if ((range & 0xFF000000) == 0) {
+            code = (code << 8) | nextByte();
+            range <<= 8;
+        }
+        return bit;
+    }
+
+    /**
+     * An auxiliary method for decoding. Reads the next byte of the input, or
+     * 0 if there are none left.
+     */
+    private int nextByte() {
+        if (input.hasRemaining()) {
+            return input.get() & 0xFF;
+        }
+        exhausted = true;
+        return 0;
+    }
+
+    /**
+     * Decodes bits coded with encodeDirectBits.
+     *
+     * @param bits The number of the bits.
+     * @return The bits as a number.
+     */
+    int decodeDirectBits(int bits) {
+        int result = 0;
+        for (int i = 0; i < bits; i++) {
+            range >>>= 1;
+            int t = (code - range) >>> 31;
+            code -= range & (t - 1);
+            result = (result << 1) | (1 - t);
+            if ((range & 0xFF000000) == 0) {
+                code = (code << 8) | nextByte();
+                range <<= 8;
+            }
+        }
+        return result;
+    }
+}
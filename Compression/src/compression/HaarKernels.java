@@ -0,0 +1,218 @@
+package compression;
+
+/**
+ * The simple loops of the methods sumTree, lossyTransformPowerOfTwo and
+ * addDivideConvert of the class HaarTransform: summing the leaves, summing
+ * and subtracting pairs of numbers, and adding, dividing and converting a
+ * whole array. Also the loops of liftingInverse, which the files are
+ * converted back into images with: rebuilding the sums of a level from the
+ * coarser sums and the differences, and converting the leaves into bytes.
+ * This class does them one number at a time.
+ *
+ * The transform that the images are converted into files with,
+ * liftingTransform, isn't done with these kernels: it keeps the sums of each
+ * level in place in an order that only a loop of one number at a time can
+ * follow, so the kernels chosen here make no difference to it.
+ *
+ * The subclass VectorKernels in the source folder 'vector' does them with the
+ * vectors of the module jdk.incubator.vector, many numbers at a time. It needs
+ * Java 16 or newer, so it isn't compiled with the rest of the program: the
+ * build script compiles it only when the JDK is new enough, and the program
+ * must be run with '--add-modules jdk.incubator.vector' for it to be used.
+ * If the class or the module is missing, the method get returns an object of
+ * this class instead, so the program works the same everywhere. The property
+ * -Dcompression.kernels=scalar chooses this class even if the vectors are
+ * available.
+ */
+public class HaarKernels {
+
+    public static final String KERNELS_PROPERTY = "compression.kernels";
+    private static final String VECTOR_KERNELS = "compression.VectorKernels";
+    private static volatile HaarKernels kernels;
+
+    /**
+     * Tells which kernels are used by the class HaarTransform. The first call
+     * chooses them as explained in the description of this class. It's called
+     * for every column that is converted back, so after the first call it
+     * doesn't lock.
+     *
+     * @return The kernels.
+     */
+    public static HaarKernels get() {
+        HaarKernels chosen = kernels;
+        if (chosen == null) {
+            synchronized (HaarKernels.class) {
+                if (kernels == null) {
+                    kernels = load();
+                }
+                chosen = kernels;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Chooses the kernels used by the class HaarTransform, for example for
+     * comparing them in a benchmark.
+     *
+     * @param newKernels The kernels to be used.
+     */
+    public static synchronized void set(HaarKernels newKernels) {
+        kernels = newKernels;
+    }
+
+    /**
+     * An auxiliary method for get. Loads VectorKernels if it's allowed and
+     * available.
+     *
+     * @return The vector kernels, or scalar ones if they can't be loaded.
+     */
+    private static HaarKernels load() {
+        if (!"scalar".equals(System.getProperty(KERNELS_PROPERTY))) {
+            try {
+                return (HaarKernels) Class.forName(VECTOR_KERNELS).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
+                // The class wasn't compiled (ClassNotFoundException), or it couldn't be created
+                // (NoSuchMethodException, InvocationTargetException etc.), fall back to the scalar kernels.
+            } catch (LinkageError e) {
+                // The module jdk.incubator.vector is missing.
+            }
+        }
+        return new HaarKernels();
+    }
+
+    /**
+     * @return The name of the kernels, for the benchmarks.
+     */
+    public String getName() {
+        return "scalar";
+    }
+
+    /**
+     * Sums the leaves of a sum tree: leaves[l] is the sum of the numbers
+     * data[l * leafSize],..., data[(l + 1) * leafSize - 1].
+     *
+     * @param data The data.
+     * @param leafSize How many numbers are summed into one leaf.
+     * @param leaves The array into which the leaves are written.
+     * @param count The number of the leaves.
+     */
+    public void sumLeaves(byte[] data, int leafSize, int[] leaves, int count) {
+        if (leafSize == 1) { // A plain loop, which the compiler handles better
+            for (int leaf = 0; leaf < count; leaf++) {
+                leaves[leaf] = data[leaf];
+            }
+            return;
+        }
+        int readPointer = 0;
+        for (int leaf = 0; leaf < count; leaf++) {
+            int sum = 0;
+            for (int i = 0; i < leafSize; i++) {
+                sum += data[readPointer++];
+            }
+            leaves[leaf] = sum;
+        }
+    }
+
+    /**
+     * Sums the pairs of consecutive numbers: target[targetOffset + j] is
+     * source[sourceOffset + 2j] + source[sourceOffset + 2j + 1]. The arrays
+     * may be the same if the parts don't overlap.
+     *
+     * @param source The array of the pairs.
+     * @param sourceOffset The index of the first pair.
+     * @param target The array into which the sums are written.
+     * @param targetOffset The index of the first sum.
+     * @param pairs The number of the pairs.
+     */
+    public void sumPairs(int[] source, int sourceOffset, int[] target, int targetOffset, int pairs) {
+        for (int j = 0; j < pairs; j++) {
+            target[targetOffset + j] = source[sourceOffset + 2 * j] + source[sourceOffset + 2 * j + 1];
+        }
+    }
+
+    /**
+     * Like sumPairs, but writes the differences source[2j] - source[2j + 1].
+     */
+    public void differencesOfPairs(int[] source, int sourceOffset, int[] target, int targetOffset, int pairs) {
+        for (int j = 0; j < pairs; j++) {
+            target[targetOffset + j] = source[sourceOffset + 2 * j] - source[sourceOffset + 2 * j + 1];
+        }
+    }
+
+    /**
+     * Adds a number to every entry of the data, divides the result and
+     * converts it into a byte: result[i] = (byte) ((data[i] + addThis) / divideByThis).
+     *
+     * @param data The data.
+     * @param addThis The number to be added.
+     * @param divideByThis The divisor.
+     * @param result The array into which the results are written.
+     */
+    public void addDivideConvert(int[] data, int addThis, int divideByThis, byte[] result) {
+        for (int i = 0; i < data.length; i++) {
+            result[i] = (byte) ((data[i] + addThis) / divideByThis);
+        }
+    }
+
+    /**
+     * Rebuilds the sums of a level of a tree from the sums of the coarser
+     * level and the differences: the sum s = sums[sumsOffset + i] and the
+     * difference d = differences[differencesOffset + i] become (s + d) / 2
+     * and (s - d) / 2 at sums[sumsOffset + 2i] and sums[sumsOffset + 2i + 1].
+     * The sums are rebuilt in place from the last one to the first. The
+     * arrays may be the same if the differences are before the sums.
+     *
+     * @param sums The array of the coarser sums, into which the finer ones are
+     * written.
+     * @param sumsOffset The index of the first sum.
+     * @param differences The array of the differences.
+     * @param differencesOffset The index of the first difference.
+     * @param count The number of the coarser sums.
+     */
+    public void splitSums(int[] sums, int sumsOffset, int[] differences, int differencesOffset, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            int sum = sums[sumsOffset + i];
+            int difference = differences[differencesOffset + i];
+            sums[sumsOffset + 2 * i] = (sum + difference) / 2;
+            sums[sumsOffset + 2 * i + 1] = (sum - difference) / 2;
+        }
+    }
+
+    /**
+     * Converts the leaves of a tree into the numbers of the data: each leaf
+     * is divided by the number of the numbers it's the sum of, clamped into a
+     * byte and written copies times.
+     *
+     * @param leaves The array of the leaves.
+     * @param leavesOffset The index of the first leaf.
+     * @param count The number of the leaves.
+     * @param summed The divisor.
+     * @param copies How many times each number is written.
+     * @param result The array into which the numbers are written.
+     * @param resultOffset The index of the first number.
+     */
+    public void leavesToBytes(int[] leaves, int leavesOffset, int count, int summed, int copies, byte[] result,
+            int resultOffset) {
+        if (summed == 1 && copies == 1) { // Lossless, no need to divide
+            for (int leaf = 0; leaf < count; leaf++) {
+                result[resultOffset + leaf] = clampToByte(leaves[leavesOffset + leaf]);
+            }
+            return;
+        }
+        int writePointer = resultOffset;
+        for (int leaf = 0; leaf < count; leaf++) {
+            byte value = clampToByte(leaves[leavesOffset + leaf] / summed);
+            for (int i = 0; i < copies; i++) {
+                result[writePointer++] = value;
+            }
+        }
+    }
+
+    /**
+     * An auxiliary method for leavesToBytes.
+     */
+    private static byte clampToByte(int value) {
+        return (byte) Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, value));
+    }
+}
@@ -1,6 +1,7 @@
 package compression;
 
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  *
@@ -11,12 +12,13 @@ import java.util.Arrays;
 
 public class HaarTransform {
 
-    
+    private static int MARKED_LIMIT = 4; // See sparseInverse
+
     /**
      * Creates a binary sum tree whose depth is predetermined. It is assumed
      * that the length of the data-array is 2^n for some n. LeafSize tells how
      * many entries of the data-array is summed to be one leaf of the resulting 
-     * tree. 
+     * tree. The sums are calculated with the kernels of HaarKernels.get().
      * @param leafSize The size of leaves in the resulting array. Must be 2^n
      * for some n=0,1,2,..,log_2(data.size).
      * @return The tree with the leaves as first entries, their parents after it
@@ -32,7 +34,7 @@ public class HaarTransform {
         if (leafSize >= data.length) {
             int[] sumTree = {0};
             for (int i = 0; i < data.length; i++) {
-                sumTree[0] += data.length;
+                sumTree[0] += data[i];
             }
             return sumTree;
         }
@@ -41,19 +43,15 @@ public class HaarTransform {
         int leaves = data.length / leafSize;
         int[] tree = new int[2*leaves -1];
         
+        HaarKernels kernels = HaarKernels.get();
+        
         // Create the leaves:
-        for (int leaf = 0; leaf < leaves; leaf++) {
-            for (int i = 0; i < leafSize; i++) {
-                tree[leaf] += data[leafSize * leaf +i];
-            }
-        }
+        kernels.sumLeaves(data, leafSize, tree, leaves);
         
         // And the rest of the tree:
         int pointer = leaves; // points to the start of new level in the tree
         for (int i = leaves/2; i >= 1; i = i/2) { // Write one level at time
-            for (int j = 0; j < i; j++) {
-                tree[pointer+j] = tree[pointer -2*i + 2*j] + tree[pointer -2*i + 2*j+1];;
-            }
+            kernels.sumPairs(tree, pointer - 2*i, tree, pointer, i);
             pointer += i;
         }
         
@@ -72,9 +70,8 @@ public class HaarTransform {
         int[] sumTree = sumTree(data, pow(2,levelOfLoss));
         int[] transform = new int[(sumTree.length +1)/2];
         
-        for (int i = 0; i < transform.length - 1; i++) {
-            transform[i] = sumTree[2*i] - sumTree[2*i+1];
-        }
+        // The pairs never cross the levels, since every level but the root has an even length:
+        HaarKernels.get().differencesOfPairs(sumTree, 0, transform, 0, transform.length - 1);
         
         // The last entry is the sum of all the data:
         transform[transform.length - 1] = sumTree[sumTree.length -1];
@@ -90,39 +87,219 @@ public class HaarTransform {
      * 
      * The data is split into subarrays whose lengths are powers of two and each
      * of them has the maximum length that can be chosen of the remaining array-
-     * Then the method lossyTransformPowerOfTwo is applied to the subarrays. The
-     * results are given back glued together in the same order in one array.
+     * Then the subarrays are transformed as in the method lossyTransformPowerOfTwo.
+     * The results are given back glued together in the same order in one array.
+     * The work is done by the method liftingTransform.
      *
      * @param data The data to be transformed.
      * @param levelOfLoss How many levels of the coefficients will be omitted.
      * @return The transform.
      */
     public static int[] lossyTransformArbitraryLength(byte[] data, int levelOfLoss) {
-        int subSize = supPowerOfTwo(data.length);    // the biggest power of two that can be fitted in the remaingn data length
-        int remainingSize = data.length;             // The length of data yet to be transformed.
-        int[] transform = null;                       // The result of the transform
-        int pointer = 0;                             // Where the untransformed data begins
+        int[] transform = new int[compressedLength(data.length, levelOfLoss)];
+        liftingTransform(data, levelOfLoss, transform);
+        return transform;
+    }
+
+    /**
+     * Performs the same transform as lossyTransformArbitraryLength, but writes
+     * the result into an array given by the caller. No other memory is used:
+     * the coefficients are calculated in place with the lifting scheme, one
+     * level at a time, and each subarray of length 2^n costs O(2^n) work.
+     *
+     * While a level is being calculated, its sums are kept in the part of the
+     * transform array that later will hold the coarser coefficients. They are
+     * arranged (see the method placement) so that every pair of sums is read
+     * from exactly the two places where its difference and sum are written,
+     * so nothing is overwritten before it has been read. When the root is
+     * reached the array has the layout of lossyTransformPowerOfTwo: the finest
+     * kept differences first, then the coarser ones and the sum of all the
+     * data last.
+     *
+     * @param data The data to be transformed.
+     * @param levelOfLoss How many levels of the coefficients will be omitted.
+     * @param transform The array into which the transform is written. Its
+     * length must be at least compressedLength(data.length, levelOfLoss).
+     * @return How many entries of the transform array were written.
+     */
+    public static int liftingTransform(byte[] data, int levelOfLoss, int[] transform) {
+        return liftingTransform(data, 0, data.length, levelOfLoss, transform, 0);
+    }
+
+    /**
+     * Performs the transform of liftingTransform(byte[], int, int[]) on a part
+     * of an array and writes it into a part of another, so that a whole plane
+     * of ImagePlanes can be transformed into a plane of CoefficientPlanes one
+     * line at a time.
+     *
+     * @param data The array that holds the data to be transformed.
+     * @param dataOffset The index of the first number to be transformed.
+     * @param length How many numbers are transformed.
+     * @param levelOfLoss How many levels of the coefficients will be omitted.
+     * @param transform The array into which the transform is written.
+     * @param transformOffset The index where the transform begins. There must
+     * be room for compressedLength(length, levelOfLoss) entries after it.
+     * @return How many entries of the transform array were written.
+     */
+    public static int liftingTransform(byte[] data, int dataOffset, int length, int levelOfLoss,
+            int[] transform, int transformOffset) {
+        int leafSize = pow(2, levelOfLoss);
+        int subSize = supPowerOfTwo(length);
+        int remainingSize = length;
+        int readPointer = dataOffset;       // Where the untransformed data begins
+        int writePointer = transformOffset; // Where the transform of the next subarray begins
 
-        // This will create a transform of the biggest array of length 2^n that fits inside 
-        // the untransformed part of the data array. It is put at the end of the transform array.
         while (remainingSize > 1 && subSize > 1) {
-            byte[] subArray = Arrays.copyOfRange(data, pointer, pointer + subSize);
-            int[] partialTransform = lossyTransformPowerOfTwo(subArray, levelOfLoss);
-            transform = joinArrays(transform, partialTransform);
-            pointer += subSize;
+            int leaves = Math.max(1, subSize / leafSize);
+            int summed = subSize / leaves; // How many numbers are summed into one leaf
+
+            // The leaves, i.e. the sums of the omitted levels:
+            for (int leaf = 0; leaf < leaves; leaf++) {
+                int sum = 0;
+                for (int i = 0; i < summed; i++) {
+                    sum += data[readPointer++];
+                }
+                transform[writePointer + placement(leaf, leaves)] = sum;
+            }
+
+            liftLevels(transform, writePointer, leaves, false);
+
+            writePointer += leaves;
             remainingSize -= subSize;
             subSize = supPowerOfTwo(remainingSize);
         }
 
         // If the last number is not transformed, it is copied:
         if (remainingSize == 1) {
-            int[] lastPixel = {data[data.length - 1]};
-            transform = joinArrays(transform, lastPixel);
+            transform[writePointer++] = data[dataOffset + length - 1];
         }
 
-        return transform;
+        return writePointer - transformOffset;
     }
-    
+
+    /**
+     * An auxiliary method for liftingTransform and averageLiftingTransform.
+     * Calculates the differences and sums (or averages) of all the levels of a
+     * tree whose leaves are stored in the array as told by the method placement.
+     *
+     * @param transform The array that holds the leaves. The result is written
+     * on them.
+     * @param start The index of the first leaf.
+     * @param leaves The number of the leaves. Must be a power of two.
+     * @param averages If true, a pair a, b is replaced by a - b and the
+     * average b + (a - b) / 2 rounded down, otherwise by a - b and a + b.
+     */
+    private static void liftLevels(int[] transform, int start, int leaves, boolean averages) {
+        for (int size = leaves; size > 1; size /= 2) {
+            int half = size / 2;
+            for (int i = 0; i < half; i++) {
+                int left = start + i;
+                int right = start + half + placement(i, half);
+                int a = transform[left];
+                int b = transform[right];
+                transform[left] = a - b;  // The difference is at its final place...
+                transform[right] = averages ? b + ((a - b) >> 1) : a + b; // ...and the sum where the next level wants it.
+            }
+            start += half;
+        }
+    }
+
+    /**
+     * An auxiliary method for liftingTransform. Tells where the sum with the
+     * given index is kept among the sums of one level: the even ones are in
+     * order in the first half, and the odd ones are arranged recursively in the
+     * second half in the same manner. For consecutive indices this takes O(1)
+     * steps on average.
+     *
+     * @param index The index of the sum on its level.
+     * @param size The number of the sums on the level. Must be a power of two.
+     * @return The position of the sum relative to the first sum of the level.
+     */
+    private static int placement(int index, int size) {
+        int position = 0;
+        while ((index & 1) == 1) {
+            size /= 2;
+            position += size;
+            index >>= 1;
+        }
+        return position + index / 2;
+    }
+
+    /**
+     * Derives a transform with a bigger level of loss from a transform made by
+     * liftingTransform. The transform of every subarray of length 2^n has the
+     * differences of the finest kept level first, then those of the coarser
+     * levels and the sum last, and the coarser levels don't depend on how many
+     * finer ones were kept. So the transform with more loss is just the end of
+     * the transform of each subarray, and it's copied instead of summing the
+     * data again.
+     *
+     * @param transform The array that holds the transform.
+     * @param transformOffset The index where the transform begins.
+     * @param originalSize The length of the data before the transform.
+     * @param levelOfLoss The level of loss of the transform.
+     * @param newLevelOfLoss The level of loss of the derived transform. Must
+     * not be smaller than levelOfLoss.
+     * @param target The array into which the derived transform is written.
+     * There must be room for compressedLength(originalSize, newLevelOfLoss)
+     * entries.
+     * @param targetOffset The index where the derived transform begins.
+     * @return How many entries of the target array were written.
+     */
+    public static int coarserTransform(int[] transform, int transformOffset, int originalSize, int levelOfLoss,
+            int newLevelOfLoss, int[] target, int targetOffset) {
+        int leafSize = pow(2, levelOfLoss);
+        int newLeafSize = pow(2, newLevelOfLoss);
+        int subSize = supPowerOfTwo(originalSize);
+        int remainingSize = originalSize;
+        int readPointer = transformOffset;
+        int writePointer = targetOffset;
+
+        while (remainingSize > 1 && subSize > 1) {
+            int leaves = Math.max(1, subSize / leafSize);
+            int newLeaves = Math.max(1, subSize / newLeafSize);
+            System.arraycopy(transform, readPointer + leaves - newLeaves, target, writePointer, newLeaves);
+            readPointer += leaves;
+            writePointer += newLeaves;
+            remainingSize -= subSize;
+            subSize = supPowerOfTwo(remainingSize);
+        }
+
+        // The last number that wasn't transformed:
+        if (remainingSize == 1) {
+            target[writePointer++] = transform[readPointer];
+        }
+
+        return writePointer - targetOffset;
+    }
+
+    /**
+     * Tells how long a transform of the methods lossyTransformArbitraryLength
+     * and liftingTransform is.
+     *
+     * @param originalSize The length of the data before the transform.
+     * @param levelOfLoss How many levels of the coefficients will be omitted.
+     * @return The length of the transform.
+     */
+    public static int compressedLength(int originalSize, int levelOfLoss) {
+        int leafSize = pow(2, levelOfLoss);
+        int subSize = supPowerOfTwo(originalSize);
+        int remainingSize = originalSize;
+        int length = 0;
+
+        while (remainingSize > 1 && subSize > 1) {
+            length += Math.max(1, subSize / leafSize);
+            remainingSize -= subSize;
+            subSize = supPowerOfTwo(remainingSize);
+        }
+
+        if (remainingSize == 1) {
+            length++;
+        }
+
+        return length;
+    }
+
     /**
      * Performs a transform on a 3D data array. The
      * parameter levelOfLoss tells how much data is lost. If it's 0, the
@@ -136,12 +313,12 @@ public class HaarTransform {
     public static int[][][] lossyTransfrom(byte[][][] data, int levelOfLoss) {
         int dim0 = data.length;
         int dim1 = data[0].length;
-        int dim2 = data[0][0].length;
+        int dim2 = compressedLength(data[0][0].length, levelOfLoss);
         int[][][] transform = new int[dim0][dim1][dim2];
 
         for (int i = 0; i < dim0; i++) {
             for (int j = 0; j < dim1; j++) {
-                transform[i][j] = lossyTransformArbitraryLength(data[i][j], levelOfLoss);
+                liftingTransform(data[i][j], levelOfLoss, transform[i][j]);
             }
         }
 
@@ -160,9 +337,7 @@ public class HaarTransform {
      */
     public static byte[] addDivideConvert(int[] data, int addThis, int divideByThis) {
         byte[] d = new byte[data.length];
-        for (int i = 0; i < d.length; i++) {
-            d[i] = (byte) ((data[i] + addThis) / divideByThis);
-        }
+        HaarKernels.get().addDivideConvert(data, addThis, divideByThis, d);
         return d;
     }
 
@@ -175,6 +350,23 @@ public class HaarTransform {
      * @return The (approximate) original data.
      */
     public static byte[] inverseLossyPowerOfTwo(int[] transform, int levelOfLoss) {
+        byte[] inverse = new byte[transform.length * pow(2, levelOfLoss)];
+        liftingInverse(transform, levelOfLoss, inverse, new int[transform.length]);
+        return inverse;
+    }
+
+    /**
+     * Retrieves the (approximate) original data of a lossy transform by adding
+     * every coefficient to all the numbers under its wavelet. This takes
+     * O(n log n) steps; the method liftingInverse gives the same result in
+     * O(n) and is used instead. This one is kept for comparison. It is assumed
+     * that the original data's length was a power of two (and consequently the
+     * tranform's length is also).
+     * @param transform The transform.
+     * @param levelOfLoss How many levels of coefficients were lost in the transform.
+     * @return The (approximate) original data.
+     */
+    public static byte[] inverseBySupports(int[] transform, int levelOfLoss) {
 
         if (transform.length == 1) {
             byte[] result = {(byte) transform[0]};
@@ -207,39 +399,491 @@ public class HaarTransform {
     }
 
     /**
-     * Retrieves the (approximate) original data of a lossy transform. It is assumed 
-     * that the transform is of the form produced by the method lossyTransformArbitraryLength.
-     * 
+     * Retrieves the (approximate) original data of a lossy transform of the
+     * form produced by the methods lossyTransformArbitraryLength and
+     * liftingTransform, and writes it into an array given by the caller.
+     *
+     * For each subarray the sums of the leaves are rebuilt from the root
+     * towards the finest level: on every level a sum s and its difference d
+     * give the sums (s + d) / 2 and (s - d) / 2 of the two halves. Each
+     * number of the data is then its leaf's sum divided by the size of the
+     * leaf. This is the same as what the method inverseBySupports gives, but
+     * takes only O(n) steps and goes through the arrays in order.
+     *
      * @param transform The transform.
-     * @parma originalSize The size of the data array before the compression.
      * @param levelOfLoss How many levels of coefficients were lost in the transform.
-     * @return The (approximate) original data.
+     * @param inverse The array into which the data is written. Its length must
+     * be the length of the data before the transform.
+     * @param work An array for the sums of the leaves. Its length must be at
+     * least the length of the longest subarray's transform, which is never more
+     * than the length of the transform.
      */
-    public static byte[] inverseLossyArbitraryLength(int[] transform, int originalSize, int levelOfLoss) {
+    public static void liftingInverse(int[] transform, int levelOfLoss, byte[] inverse, int[] work) {
+        liftingInverse(transform, 0, levelOfLoss, inverse, 0, inverse.length, work);
+    }
+
+    /**
+     * Retrieves the data like liftingInverse(int[], int, byte[], int[]), but
+     * reads the transform from a part of an array and writes the data into a
+     * part of another.
+     *
+     * @param transform The array that holds the transform.
+     * @param transformOffset The index where the transform begins.
+     * @param levelOfLoss How many levels of coefficients were lost in the transform.
+     * @param inverse The array into which the data is written.
+     * @param inverseOffset The index where the data will begin.
+     * @param length The length of the data before the transform.
+     * @param work An array for the sums of the leaves, see above.
+     */
+    public static void liftingInverse(int[] transform, int transformOffset, int levelOfLoss,
+            byte[] inverse, int inverseOffset, int length, int[] work) {
+        int leafSize = pow(2, levelOfLoss);
+        int subSize = supPowerOfTwo(length);
+        int remainingSize = length;
+        int readPointer = transformOffset; // Points to the transform of the next subarray.
+        int writePointer = inverseOffset;  // Points to the place where next data will be written.
+
+        while (remainingSize > 1 && subSize > 1) {
+            int leaves = Math.max(1, subSize / leafSize);
+            int summed = subSize / leaves;
+            inverseSubarray(transform, readPointer, leaves, summed, summed, inverse, writePointer, work, 0);
+
+            readPointer += leaves;
+            writePointer += subSize;
+            remainingSize -= subSize;
+            subSize = supPowerOfTwo(remainingSize);
+        }
+
+        if (remainingSize == 1) {
+            inverse[inverseOffset + length - 1] = clampToByte(transform[readPointer]);
+        }
+    }
+
+    /**
+     * Tells how long a column of a thumbnail is, see thumbnailInverse.
+     *
+     * @param originalSize The length of the column before the transform.
+     * @param scale How many times the column is made smaller by 2.
+     * @return The length divided by 2^scale and rounded up.
+     */
+    public static int thumbnailLength(int originalSize, int scale) {
+        return (originalSize + pow(2, scale) - 1) / pow(2, scale);
+    }
+
+    /**
+     * Retrieves a column of a thumbnail, i.e. of the image made smaller by
+     * 2^scale in each direction, from the transform of a column. Each number
+     * of the thumbnail is the average of 2^scale numbers of the column, and
+     * the last one of the numbers that are left over. Those are the sums of
+     * the transform with the level of loss scale, i.e. the coarsest
+     * coefficients at the end of the transform of each subarray (see
+     * coarserTransform), so only they are read and only their sums are
+     * rebuilt. The subarrays shorter than 2^scale are all at the end of the
+     * column, and their sums are added up into the last number. If the level
+     * of loss is bigger than the scale, the numbers that the transform has are
+     * repeated.
+     *
+     * The transform may also be the sum of the transforms of several columns
+     * next to each other, and then their average column is retrieved. The sum
+     * of the transforms is the transform of the sum of the columns.
+     *
+     * @param transform The array that holds the transform.
+     * @param transformOffset The index where the transform begins.
+     * @param levelOfLoss How many levels of coefficients were lost in the transform.
+     * @param scale How many times the column is made smaller by 2.
+     * @param columns How many columns were summed into the transform.
+     * @param thumbnail The array into which the thumbnail column is written.
+     * @param thumbnailOffset The index where the thumbnail column will begin.
+     * Its length is thumbnailLength(length, scale).
+     * @param length The length of the column before the transform.
+     * @param work An array for the sums of the leaves, as long as the
+     * transform.
+     */
+    public static void thumbnailInverse(int[] transform, int transformOffset, int levelOfLoss, int scale,
+            int columns, byte[] thumbnail, int thumbnailOffset, int length, int[] work) {
+        int leafSize = pow(2, levelOfLoss);
+        int subSize = supPowerOfTwo(length);
+        int remainingSize = length;
+        int readPointer = transformOffset;
+        int writePointer = thumbnailOffset;
+
+        while (remainingSize > 1 && subSize >= pow(2, scale)) {
+            int leaves = Math.max(1, subSize / leafSize);
+            int numbers = subSize >> scale; // The numbers of the thumbnail from this subarray
+            int used = Math.min(leaves, numbers);
+            inverseSubarray(transform, readPointer + leaves - used, used, columns * (subSize / used),
+                    numbers / used, thumbnail, writePointer, work, 0);
+
+            readPointer += leaves;
+            writePointer += numbers;
+            remainingSize -= subSize;
+            subSize = supPowerOfTwo(remainingSize);
+        }
+
+        if (remainingSize > 0) {
+            int rest = remainingSize;
+            int sum = 0;
+            while (remainingSize > 1) {
+                int leaves = Math.max(1, subSize / leafSize);
+                sum += transform[readPointer + leaves - 1]; // The root, the sum of the subarray
+                readPointer += leaves;
+                remainingSize -= subSize;
+                subSize = supPowerOfTwo(remainingSize);
+            }
+            if (remainingSize == 1) {
+                sum += transform[readPointer];
+            }
+            thumbnail[writePointer] = clampToByte(sum / (columns * rest));
+        }
+    }
+
+    /**
+     * Retrieves only the numbers from..to - 1 of the data of a transform made
+     * by liftingTransform, like liftingInverse but without the rest. In each
+     * subarray that the window overlaps, the sums are rebuilt from the root
+     * like in liftingInverse, but on each level only those whose numbers
+     * overlap the window. So a window of w numbers takes about 2w + 2 log n
+     * steps, and only the coefficients told by cropPositions are read.
+     *
+     * @param transform The array that holds the transform.
+     * @param transformOffset The index where the transform begins.
+     * @param levelOfLoss How many levels of coefficients were lost in the transform.
+     * @param length The length of the data before the transform.
+     * @param from The first number of the window.
+     * @param to The number after the last one of the window.
+     * @param inverse The array into which the numbers of the window are
+     * written.
+     * @param inverseOffset The index where the number from is written.
+     * @param work An array for the sums, at least (to - from) + 2 long.
+     */
+    public static void cropInverse(int[] transform, int transformOffset, int levelOfLoss, int length, int from,
+            int to, byte[] inverse, int inverseOffset, int[] work) {
+        int leafSize = pow(2, levelOfLoss);
+        int subSize = supPowerOfTwo(length);
+        int remainingSize = length;
+        int readPointer = transformOffset;
+        int start = 0; // Where the subarray begins in the data
+
+        while (remainingSize > 1 && subSize > 1 && start < to) {
+            int leaves = Math.max(1, subSize / leafSize);
+            int summed = subSize / leaves;
+            if (start + subSize > from) {
+                int first = Math.max(from, start);
+                int last = Math.min(to, start + subSize); // The numbers first,...,last - 1 are in the window
+                int firstLeaf = (first - start) / summed;
+                int lastLeaf = (last - 1 - start) / summed;
 
+                // work[i - low] is the sum i of the current level, for i = low,...,high:
+                work[0] = transform[readPointer + leaves - 1];
+                int low = 0;
+                int high = 0;
+                for (int size = 1; size < leaves; size *= 2) {
+                    int differences = readPointer + leaves - 2 * size;
+                    int newLow = firstLeaf / (leaves / (2 * size));
+                    int newHigh = lastLeaf / (leaves / (2 * size));
+                    for (int i = high; i >= low; i--) {
+                        int sum = work[i - low];
+                        int difference = transform[differences + i];
+                        if (2 * i + 1 <= newHigh) {
+                            work[2 * i + 1 - newLow] = (sum - difference) / 2;
+                        }
+                        if (2 * i >= newLow) {
+                            work[2 * i - newLow] = (sum + difference) / 2;
+                        }
+                    }
+                    low = newLow;
+                    high = newHigh;
+                }
+
+                for (int y = first; y < last; y++) {
+                    inverse[inverseOffset + y - from] = clampToByte(work[(y - start) / summed - firstLeaf] / summed);
+                }
+            }
+
+            readPointer += leaves;
+            start += subSize;
+            remainingSize -= subSize;
+            subSize = supPowerOfTwo(remainingSize);
+        }
+
+        if (remainingSize == 1 && from <= length - 1 && length - 1 < to) {
+            inverse[inverseOffset + length - 1 - from] = clampToByte(transform[readPointer]);
+        }
+    }
+
+    /**
+     * Tells which coefficients of a transform made by liftingTransform are
+     * needed for retrieving the numbers from..to - 1 with cropInverse.
+     *
+     * @param length The length of the data before the transform.
+     * @param levelOfLoss How many levels of coefficients were lost in the transform.
+     * @param from The first number of the window.
+     * @param to The number after the last one of the window.
+     * @return The indices of the coefficients in the transform.
+     */
+    public static int[] cropPositions(int length, int levelOfLoss, int from, int to) {
+        int[] positions = new int[16];
+        int count = 0;
+        int leafSize = pow(2, levelOfLoss);
+        int subSize = supPowerOfTwo(length);
+        int remainingSize = length;
+        int readPointer = 0;
+        int start = 0;
+
+        while (remainingSize > 1 && subSize > 1 && start < to) {
+            int leaves = Math.max(1, subSize / leafSize);
+            int summed = subSize / leaves;
+            if (start + subSize > from) {
+                int firstLeaf = (Math.max(from, start) - start) / summed;
+                int lastLeaf = (Math.min(to, start + subSize) - 1 - start) / summed;
+                if (count + 2 * (lastLeaf - firstLeaf) + 64 > positions.length) {
+                    positions = Arrays.copyOf(positions, 2 * positions.length + 2 * (lastLeaf - firstLeaf) + 64);
+                }
+                positions[count++] = readPointer + leaves - 1;
+                for (int size = 1; size < leaves; size *= 2) {
+                    int differences = readPointer + leaves - 2 * size;
+                    for (int i = firstLeaf / (leaves / size); i <= lastLeaf / (leaves / size); i++) {
+                        positions[count++] = differences + i;
+                    }
+                }
+            }
+            readPointer += leaves;
+            start += subSize;
+            remainingSize -= subSize;
+            subSize = supPowerOfTwo(remainingSize);
+        }
+
+        if (remainingSize == 1 && from <= length - 1 && length - 1 < to) {
+            positions = Arrays.copyOf(positions, count + 1);
+            positions[count++] = readPointer;
+        }
+        return Arrays.copyOf(positions, count);
+    }
+
+    /**
+     * Tells where the coefficients of a transform with a bigger level of loss
+     * are in a transform made by liftingTransform, see coarserTransform.
+     *
+     * @param originalSize The length of the data before the transform.
+     * @param levelOfLoss The level of loss of the transform.
+     * @param newLevelOfLoss The bigger level of loss.
+     * @return The index in the transform of each coefficient of the transform
+     * with the bigger level of loss, in order.
+     */
+    public static int[] coarserPositions(int originalSize, int levelOfLoss, int newLevelOfLoss) {
+        int[] positions = new int[compressedLength(originalSize, newLevelOfLoss)];
+        int leafSize = pow(2, levelOfLoss);
+        int newLeafSize = pow(2, newLevelOfLoss);
         int subSize = supPowerOfTwo(originalSize);
         int remainingSize = originalSize;
-        byte[] inverse = new byte[originalSize];
-        int readPointer = 0; // Points to the data that is read.
-        int writePointer = 0; // Points to the place where next data will be written.
-
-        // This is similar to the transform of the arbitrary length: split into right subarrays and do the
-        // inverse transform to each of them.
-        while (remainingSize > 1) {
-            int keptSize = Math.max(1, subSize / pow(2, levelOfLoss)); // Tells how much of the original data was kept
-            int[] partialTransform = Arrays.copyOfRange(transform, readPointer, readPointer + keptSize);
-            byte[] partialInverse = inverseLossyPowerOfTwo(partialTransform, levelOfLoss);
-            copyValuesTo(partialInverse, inverse, writePointer);
-            readPointer += keptSize;
+        int readPointer = 0;
+        int writePointer = 0;
+
+        while (remainingSize > 1 && subSize > 1) {
+            int leaves = Math.max(1, subSize / leafSize);
+            int newLeaves = Math.max(1, subSize / newLeafSize);
+            for (int i = 0; i < newLeaves; i++) {
+                positions[writePointer++] = readPointer + leaves - newLeaves + i;
+            }
+            readPointer += leaves;
+            remainingSize -= subSize;
+            subSize = supPowerOfTwo(remainingSize);
+        }
+
+        if (remainingSize == 1) {
+            positions[writePointer] = readPointer;
+        }
+        return positions;
+    }
+
+    /**
+     * An auxiliary method for liftingInverse, sparseInverse and
+     * thumbnailInverse. Retrieves the data of one subarray whose length is a
+     * power of two. The loops are done with the kernels of HaarKernels.get().
+     *
+     * @param transform The array that holds the transform of the subarray.
+     * @param readPointer The index where the transform of the subarray begins.
+     * @param leaves The length of the transform of the subarray.
+     * @param summed How many numbers of the data a leaf is the sum of.
+     * @param copies How many times each leaf divided by summed is written,
+     * summed for the whole data.
+     * @param inverse The array into which the data is written.
+     * @param writePointer The index where the data will begin.
+     * @param work The array for the sums of the leaves.
+     * @param workOffset The index where the sums will begin in it.
+     */
+    private static void inverseSubarray(int[] transform, int readPointer, int leaves, int summed, int copies,
+            byte[] inverse, int writePointer, int[] work, int workOffset) {
+        HaarKernels kernels = HaarKernels.get();
+        // Rebuild the sums, coarsest level first. The root is the last entry:
+        work[workOffset] = transform[readPointer + leaves - 1];
+        for (int size = 1; size < leaves; size *= 2) {
+            // The differences of this level are before those of the coarser ones:
+            kernels.splitSums(work, workOffset, transform, readPointer + leaves - 2 * size, size);
+        }
+        kernels.leavesToBytes(work, workOffset, leaves, summed, copies, inverse, writePointer);
+    }
+
+    /**
+     * Retrieves the (approximate) original data of a lossy transform held in a
+     * SparseLine, like inverseLossyPowerOfTwo(int[], int). It is assumed that
+     * the original data's length was a power of two.
+     * @param transform The transform.
+     * @param levelOfLoss How many levels of coefficients were lost in the transform.
+     * @return The (approximate) original data.
+     */
+    public static byte[] inverseLossyPowerOfTwo(SparseLine transform, int levelOfLoss) {
+        byte[] inverse = new byte[transform.getLength() * pow(2, levelOfLoss)];
+        sparseInverse(transform, levelOfLoss, inverse, 0, inverse.length, new int[2 * transform.getLength()]);
+        return inverse;
+    }
+
+    /**
+     * Retrieves the data like liftingInverse, but from a transform held in a
+     * SparseLine, and without going through the zero differences one by one.
+     *
+     * The sums are rebuilt from the root like in liftingInverse, but only in
+     * the parts of the wavelet tree that have differences that aren't zero.
+     * If all the differences under a sum are zero, every number under it is
+     * the sum divided by the number of its numbers, so they are filled in at
+     * once. The nodes that have differences that aren't zero under them are
+     * first marked by going up from each such difference to the root. This
+     * pays off only when few of the nodes get marked, so if more than one in
+     * MARKED_LIMIT of the nodes of a subarray are marked, its sums are
+     * rebuilt like in liftingInverse.
+     *
+     * @param transform The transform of the whole data.
+     * @param levelOfLoss How many levels of coefficients were lost in the transform.
+     * @param inverse The array into which the data is written.
+     * @param inverseOffset The index where the data will begin.
+     * @param length The length of the data before the transform.
+     * @param work An array of zeros at least twice as long as the transform.
+     * It's left full of zeros.
+     */
+    public static void sparseInverse(SparseLine transform, int levelOfLoss, byte[] inverse, int inverseOffset,
+            int length, int[] work) {
+        int leafSize = pow(2, levelOfLoss);
+        int subSize = supPowerOfTwo(length);
+        int remainingSize = length;
+        int readPointer = 0; // Points to the transform of the next subarray.
+        int writePointer = inverseOffset;
+        int next = 0; // The next coefficient of the transform that isn't zero
+
+        while (remainingSize > 1 && subSize > 1) {
+            int leaves = Math.max(1, subSize / leafSize);
+            int summed = subSize / leaves;
+
+            // The differences go to work[0,...,leaves - 2] and their marks after them.
+            int first = next;
+            int sum = 0;
+            int marked = 0;
+            for (; next < transform.getCount() && transform.getPosition(next) < readPointer + leaves; next++) {
+                int position = transform.getPosition(next) - readPointer;
+                if (position == leaves - 1) {
+                    sum = transform.getValue(next);
+                } else {
+                    work[position] = transform.getValue(next);
+                    if (marked * MARKED_LIMIT <= leaves) { // No need to go on once there are too many
+                        marked += mark(work, leaves, position, 1);
+                    }
+                }
+            }
+
+            if (marked * MARKED_LIMIT > leaves) {
+                // The differences are all in the work array, so the sums are rebuilt after them.
+                work[leaves - 1] = sum;
+                inverseSubarray(work, 0, leaves, summed, summed, inverse, writePointer, work, leaves);
+                Arrays.fill(work, 0, 2 * leaves, 0);
+            } else {
+                fillSums(work, leaves, summed, 1, 0, sum, inverse, writePointer);
+                for (int k = first; k < next; k++) {
+                    int position = transform.getPosition(k) - readPointer;
+                    if (position < leaves - 1) {
+                        work[position] = 0;
+                        mark(work, leaves, position, 0);
+                    }
+                }
+            }
+
+            readPointer += leaves;
             writePointer += subSize;
             remainingSize -= subSize;
             subSize = supPowerOfTwo(remainingSize);
         }
 
         if (remainingSize == 1) {
-            inverse[inverse.length - 1] = (byte) transform[transform.length - 1];
+            boolean last = next < transform.getCount() && transform.getPosition(next) == readPointer;
+            inverse[inverseOffset + length - 1] = clampToByte(last ? transform.getValue(next) : 0);
+        }
+    }
+
+    /**
+     * An auxiliary method for sparseInverse. Sets the mark of the difference at
+     * the position of a subarray's transform and of the ones above it, until
+     * one is already as wanted. The differences of the level with size sums
+     * are at the positions leaves - 2 * size,..., leaves - size - 1, and the
+     * mark of the position p is at leaves + p. Returns the number of the
+     * marks that were changed.
+     */
+    private static int mark(int[] work, int leaves, int position, int value) {
+        int size = Integer.highestOneBit(leaves - 1 - position);
+        int changed = 0;
+        while (work[leaves + position] != value) {
+            work[leaves + position] = value;
+            changed++;
+            if (size == 1) {
+                break;
+            }
+            int index = position - (leaves - 2 * size);
+            size /= 2;
+            position = leaves - 2 * size + index / 2;
         }
+        return changed;
+    }
 
+    /**
+     * An auxiliary method for sparseInverse. Writes the data under the sum
+     * number index of the level that has size sums.
+     */
+    private static void fillSums(int[] work, int leaves, int summed, int size, int index, int sum, byte[] inverse,
+            int writePointer) {
+        int numbers = leaves / size * summed;
+        if (size == leaves) {
+            Arrays.fill(inverse, writePointer, writePointer + numbers, clampToByte(sum / summed));
+            return;
+        }
+        int position = leaves - 2 * size + index;
+        if (work[leaves + position] == 0) {
+            // Halving the sum again and again gives the same as dividing it at once.
+            byte value = clampToByte(sum / numbers);
+            for (int i = writePointer; i < writePointer + numbers; i++) {
+                inverse[i] = value;
+            }
+            return;
+        }
+        int difference = work[position];
+        if (2 * size == leaves && summed == 1) {
+            inverse[writePointer] = clampToByte((sum + difference) / 2);
+            inverse[writePointer + 1] = clampToByte((sum - difference) / 2);
+            return;
+        }
+        fillSums(work, leaves, summed, 2 * size, 2 * index, (sum + difference) / 2, inverse, writePointer);
+        fillSums(work, leaves, summed, 2 * size, 2 * index + 1, (sum - difference) / 2, inverse,
+                writePointer + numbers / 2);
+    }
+
+    /**
+     * Retrieves the (approximate) original data of a lossy transform. It is assumed 
+     * that the transform is of the form produced by the method lossyTransformArbitraryLength.
+     * 
+     * @param transform The transform.
+     * @parma originalSize The size of the data array before the compression.
+     * @param levelOfLoss How many levels of coefficients were lost in the transform.
+     * @return The (approximate) original data.
+     */
+    public static byte[] inverseLossyArbitraryLength(int[] transform, int originalSize, int levelOfLoss) {
+        byte[] inverse = new byte[originalSize];
+        liftingInverse(transform, levelOfLoss, inverse, new int[transform.length]);
         return inverse;
     }
     
@@ -259,10 +903,11 @@ public class HaarTransform {
         int dim1 = transform[0].length;
         int dim2 = originalHeight; // This isn't evident from the size of transform[0][0].
         byte[][][] inverse = new byte[dim0][dim1][dim2];
+        int[] work = new int[transform[0][0].length]; // Shared by all the lines
 
         for (int i = 0; i < dim0; i++) {
             for (int j = 0; j < dim1; j++) {
-                inverse[i][j] = inverseLossyArbitraryLength(transform[i][j], originalHeight, levelOfLoss);
+                liftingInverse(transform[i][j], levelOfLoss, inverse[i][j], work);
             }
         }
 
@@ -270,6 +915,465 @@ public class HaarTransform {
 
     }
     
+    /**
+     * Performs a transform like liftingTransform, but instead of the sums of
+     * the pairs it keeps their averages, rounded down. Since the averages
+     * don't grow from level to level, the coefficients stay small also when
+     * the transform is applied again to coefficients, which is what the
+     * two-dimensional transform does. A pair a, b is replaced by d = a - b and
+     * s = b + (d >> 1), from which a and b are retrieved exactly, so the
+     * transform is lossless when levelOfLoss is 0. The leaves of a lossy
+     * transform are the averages of the omitted numbers, rounded down.
+     *
+     * @param data The data to be transformed.
+     * @param dataOffset The index of the first number to be transformed.
+     * @param length How many numbers of the data array are transformed.
+     * @param levelOfLoss How many levels of the coefficients will be omitted.
+     * @param transform The array into which the transform is written.
+     * @param transformOffset The index where the transform begins. There must
+     * be room for compressedLength(length, levelOfLoss) entries after it.
+     * @return How many entries of the transform array were written.
+     */
+    public static int averageLiftingTransform(int[] data, int dataOffset, int length, int levelOfLoss,
+            int[] transform, int transformOffset) {
+        int leafSize = pow(2, levelOfLoss);
+        int subSize = supPowerOfTwo(length);
+        int remainingSize = length;
+        int readPointer = dataOffset;
+        int writePointer = transformOffset;
+
+        while (remainingSize > 1 && subSize > 1) {
+            int leaves = Math.max(1, subSize / leafSize);
+            int summed = subSize / leaves;
+            int shift = Integer.numberOfTrailingZeros(summed); // Dividing by summed, rounding down
+
+            for (int leaf = 0; leaf < leaves; leaf++) {
+                int sum = 0;
+                for (int i = 0; i < summed; i++) {
+                    sum += data[readPointer++];
+                }
+                transform[writePointer + placement(leaf, leaves)] = sum >> shift;
+            }
+
+            liftLevels(transform, writePointer, leaves, true);
+
+            writePointer += leaves;
+            remainingSize -= subSize;
+            subSize = supPowerOfTwo(remainingSize);
+        }
+
+        if (remainingSize == 1) {
+            transform[writePointer++] = data[dataOffset + length - 1];
+        }
+
+        return writePointer - transformOffset;
+    }
+
+    /**
+     * Retrieves the (approximate) original data of a transform produced by the
+     * method averageLiftingTransform. The averages are rebuilt from the root
+     * towards the finest level, and every number gets the value of its leaf.
+     *
+     * @param transform The transform.
+     * @param transformOffset The index where the transform begins.
+     * @param levelOfLoss How many levels of coefficients were lost in the transform.
+     * @param inverse The array into which the data is written.
+     * @param inverseOffset The index where the data will begin.
+     * @param length The length of the data before the transform.
+     * @param work An array for the leaves. Its length must be at least the
+     * length of the transform.
+     */
+    public static void averageLiftingInverse(int[] transform, int transformOffset, int levelOfLoss,
+            int[] inverse, int inverseOffset, int length, int[] work) {
+        int leafSize = pow(2, levelOfLoss);
+        int subSize = supPowerOfTwo(length);
+        int remainingSize = length;
+        int readPointer = transformOffset;
+        int writePointer = inverseOffset;
+
+        while (remainingSize > 1 && subSize > 1) {
+            int leaves = Math.max(1, subSize / leafSize);
+            int summed = subSize / leaves;
+
+            work[0] = transform[readPointer + leaves - 1];
+            for (int size = 1; size < leaves; size *= 2) {
+                int differences = readPointer + leaves - 2 * size;
+                for (int i = size - 1; i >= 0; i--) {
+                    int difference = transform[differences + i];
+                    int b = work[i] - (difference >> 1);
+                    work[2 * i] = b + difference;
+                    work[2 * i + 1] = b;
+                }
+            }
+
+            for (int leaf = 0; leaf < leaves; leaf++) {
+                int value = work[leaf];
+                for (int i = 0; i < summed; i++) {
+                    inverse[writePointer++] = value;
+                }
+            }
+
+            readPointer += leaves;
+            remainingSize -= subSize;
+            subSize = supPowerOfTwo(remainingSize);
+        }
+
+        if (remainingSize == 1) {
+            inverse[inverseOffset + length - 1] = transform[readPointer];
+        }
+    }
+
+    /**
+     * Performs a two-dimensional transform on a 3D data array data[c][x][y].
+     * This is an adapter for lossyTransform2D(ImagePlanes, int, ForkJoinPool).
+     *
+     * @param data The data to be transformed.
+     * @param levelOfLoss How many levels of the coefficients will be omitted
+     * in each direction.
+     * @param pool The pool whose threads do the work.
+     * @return The transform in the form t[c][m][k].
+     */
+    public static int[][][] lossyTransform2D(byte[][][] data, int levelOfLoss, ForkJoinPool pool) {
+        return lossyTransform2D(ImagePlanes.fromJagged(data), levelOfLoss, pool).toJagged(null);
+    }
+
+    /**
+     * Performs a two-dimensional transform on an image. First every column is
+     * transformed with averageLiftingTransform, and then every row of the
+     * result, i.e. the k:th coefficients of all the columns of a color. The
+     * levelOfLoss is applied in both directions.
+     *
+     * The result has compressedLength(width, levelOfLoss) lines of length
+     * compressedLength(height, levelOfLoss) per color: the line m holds the
+     * m:th coefficients of the rows, for each row k. The columns are
+     * transformed in parallel, and after them the rows. A row is read from
+     * the plane with the stride compressedHeight.
+     *
+     * @param image The image to be transformed.
+     * @param levelOfLoss How many levels of the coefficients will be omitted
+     * in each direction.
+     * @param pool The pool whose threads do the work.
+     * @return The transform.
+     */
+    public static CoefficientPlanes lossyTransform2D(final ImagePlanes image, final int levelOfLoss,
+            ForkJoinPool pool) {
+        final int colors = image.getColors();
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int compressedHeight = compressedLength(height, levelOfLoss);
+        final int compressedWidth = compressedLength(width, levelOfLoss);
+        final int[][] columns = new int[colors][width * compressedHeight];
+
+        ParallelTransform.forEachLine(new ParallelTransform.LineJob() {
+            @Override
+            void process(int first, int last) {
+                int[] column = new int[height];
+                for (int line = first; line < last; line++) {
+                    byte[] source = image.getPlane(line / width);
+                    int start = image.columnOffset(line % width);
+                    for (int y = 0; y < height; y++) {
+                        column[y] = source[start + y];
+                    }
+                    averageLiftingTransform(column, 0, height, levelOfLoss, columns[line / width],
+                            (line % width) * compressedHeight);
+                }
+            }
+        }, colors * width, pool);
+
+        // The rows are transformed in place; only the first compressedWidth
+        // coefficients of each row are kept.
+        ParallelTransform.forEachLine(new ParallelTransform.LineJob() {
+            @Override
+            void process(int first, int last) {
+                int[] row = new int[width];
+                int[] rowTransform = new int[compressedWidth];
+                for (int line = first; line < last; line++) {
+                    int[] plane = columns[line / compressedHeight];
+                    int k = line % compressedHeight;
+                    for (int x = 0; x < width; x++) {
+                        row[x] = plane[x * compressedHeight + k];
+                    }
+                    averageLiftingTransform(row, 0, width, levelOfLoss, rowTransform, 0);
+                    for (int m = 0; m < compressedWidth; m++) {
+                        plane[m * compressedHeight + k] = rowTransform[m];
+                    }
+                }
+            }
+        }, colors * compressedHeight, pool);
+
+        CoefficientPlanes transform = new CoefficientPlanes(colors, compressedWidth, compressedHeight);
+        for (int c = 0; c < colors; c++) {
+            System.arraycopy(columns[c], 0, transform.getPlane(c), 0, compressedWidth * compressedHeight);
+        }
+        return transform;
+    }
+
+    /**
+     * Retrieves the (approximate) original data from a transform t[c][m][k]
+     * produced by the method lossyTransform2D. This is an adapter for
+     * inverseLossyTransform2D(CoefficientPlanes, int, int, int, ForkJoinPool).
+     *
+     * @param transform The transform to be inverted.
+     * @param originalWidth The width of the original picture.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of coefficients were lost in each direction.
+     * @param pool The pool whose threads do the work.
+     * @return The (approximate) original data.
+     */
+    public static byte[][][] inverseLossyTransform2D(int[][][] transform, int originalWidth,
+            int originalHeight, int levelOfLoss, ForkJoinPool pool) {
+        return inverseLossyTransform2D(CoefficientPlanes.fromJagged(transform), originalWidth,
+                originalHeight, levelOfLoss, pool).toJagged();
+    }
+
+    /**
+     * Retrieves the (approximate) original image from a transform produced by
+     * the method lossyTransform2D. The rows are inverted first, in parallel,
+     * and then the columns.
+     *
+     * @param transform The transform to be inverted.
+     * @param originalWidth The width of the original picture.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of coefficients were lost in each direction.
+     * @param pool The pool whose threads do the work.
+     * @return The (approximate) original image.
+     */
+    public static ImagePlanes inverseLossyTransform2D(final CoefficientPlanes transform, final int originalWidth,
+            final int originalHeight, final int levelOfLoss, ForkJoinPool pool) {
+        final int colors = transform.getColors();
+        final int compressedWidth = transform.getLines();
+        final int compressedHeight = transform.getLineLength();
+        final int[][] columns = new int[colors][originalWidth * compressedHeight];
+        final ImagePlanes inverse = new ImagePlanes(colors, originalWidth, originalHeight);
+
+        ParallelTransform.forEachLine(new ParallelTransform.LineJob() {
+            @Override
+            void process(int first, int last) {
+                int[] rowTransform = new int[compressedWidth];
+                int[] row = new int[originalWidth];
+                int[] work = new int[compressedWidth];
+                for (int line = first; line < last; line++) {
+                    int c = line / compressedHeight;
+                    int k = line % compressedHeight;
+                    int[] plane = transform.getPlane(c);
+                    for (int m = 0; m < compressedWidth; m++) {
+                        rowTransform[m] = plane[m * compressedHeight + k];
+                    }
+                    averageLiftingInverse(rowTransform, 0, levelOfLoss, row, 0, originalWidth, work);
+                    for (int x = 0; x < originalWidth; x++) {
+                        columns[c][x * compressedHeight + k] = row[x];
+                    }
+                }
+            }
+        }, colors * compressedHeight, pool);
+
+        ParallelTransform.forEachLine(new ParallelTransform.LineJob() {
+            @Override
+            void process(int first, int last) {
+                int[] column = new int[originalHeight];
+                int[] work = new int[compressedHeight];
+                for (int line = first; line < last; line++) {
+                    int c = line / originalWidth;
+                    int x = line % originalWidth;
+                    averageLiftingInverse(columns[c], x * compressedHeight, levelOfLoss, column, 0,
+                            originalHeight, work);
+                    byte[] result = inverse.getPlane(c);
+                    int start = inverse.columnOffset(x);
+                    for (int y = 0; y < originalHeight; y++) {
+                        result[start + y] = clampToByte(column[y]);
+                    }
+                }
+            }
+        }, colors * originalWidth, pool);
+
+        return inverse;
+    }
+
+    /**
+     * Performs a tiled transform on a 3D data array data[c][x][y]. This is an
+     * adapter for lossyTransformTiled(ImagePlanes, int, int, ForkJoinPool).
+     *
+     * @param data The data to be transformed.
+     * @param levelOfLoss How many levels of the coefficients will be omitted
+     * in each direction.
+     * @param tileSize The width and height of the tiles.
+     * @param pool The pool whose threads do the work.
+     * @return The transform in the form t[c][tile]: the array t[c][tile]
+     * holds the compressedTileWidth lines of length compressedTileHeight of
+     * the tile one after another.
+     */
+    public static int[][][] lossyTransformTiled(byte[][][] data, int levelOfLoss, int tileSize,
+            ForkJoinPool pool) {
+        Tiling tiling = new Tiling(data[0].length, data[0][0].length, tileSize, levelOfLoss);
+        return lossyTransformTiled(ImagePlanes.fromJagged(data), levelOfLoss, tileSize, pool).toJagged(tiling);
+    }
+
+    /**
+     * Performs a tiled transform on an image. The picture is split into tiles
+     * of tileSize x tileSize numbers as told by the class Tiling, and every
+     * tile is transformed two-dimensionally like in the method
+     * lossyTransform2D, but on its own. A tile is read, transformed and
+     * written in one go, so with a small enough tile size its numbers stay in
+     * the processor's cache the whole time. The tiles are transformed in
+     * parallel.
+     *
+     * The transform of a tile is written into its own part of the plane, which
+     * begins at tiling.tileOffset(tile): its compressedTileWidth lines of
+     * length compressedTileHeight one after another.
+     *
+     * @param image The image to be transformed.
+     * @param levelOfLoss How many levels of the coefficients will be omitted
+     * in each direction.
+     * @param tileSize The width and height of the tiles.
+     * @param pool The pool whose threads do the work.
+     * @return The transform.
+     */
+    public static CoefficientPlanes lossyTransformTiled(final ImagePlanes image, final int levelOfLoss,
+            final int tileSize, ForkJoinPool pool) {
+        final Tiling tiling = new Tiling(image.getWidth(), image.getHeight(), tileSize, levelOfLoss);
+        final int tiles = tiling.getTiles();
+        final CoefficientPlanes transform = new CoefficientPlanes(image.getColors(), tiling);
+
+        ParallelTransform.forEachLine(new ParallelTransform.LineJob() {
+            @Override
+            void process(int first, int last) {
+                int maxCompressed = tiling.maxCompressedLength();
+                int[] line = new int[tileSize];
+                int[] lineTransform = new int[maxCompressed];
+                int[] columns = new int[tileSize * maxCompressed]; // The transforms of the columns of the tile
+
+                for (int index = first; index < last; index++) {
+                    byte[] source = image.getPlane(index / tiles);
+                    int[] result = transform.getPlane(index / tiles);
+                    int tile = index % tiles;
+                    int x0 = tiling.tileX(tile);
+                    int y0 = tiling.tileY(tile);
+                    int width = tiling.tileWidth(tile);
+                    int height = tiling.tileHeight(tile);
+                    int compressedWidth = tiling.compressedTileWidth(tile);
+                    int compressedHeight = tiling.compressedTileHeight(tile);
+                    int offset = tiling.tileOffset(tile);
+
+                    for (int x = 0; x < width; x++) {
+                        int start = image.columnOffset(x0 + x) + y0;
+                        for (int y = 0; y < height; y++) {
+                            line[y] = source[start + y];
+                        }
+                        averageLiftingTransform(line, 0, height, levelOfLoss, columns, x * compressedHeight);
+                    }
+
+                    for (int k = 0; k < compressedHeight; k++) {
+                        for (int x = 0; x < width; x++) {
+                            line[x] = columns[x * compressedHeight + k];
+                        }
+                        averageLiftingTransform(line, 0, width, levelOfLoss, lineTransform, 0);
+                        for (int m = 0; m < compressedWidth; m++) {
+                            result[offset + m * compressedHeight + k] = lineTransform[m];
+                        }
+                    }
+                }
+            }
+        }, image.getColors() * tiles, 1, pool);
+
+        return transform;
+    }
+
+    /**
+     * Retrieves the (approximate) original data from a transform t[c][tile]
+     * produced by the method lossyTransformTiled. This is an adapter for
+     * inverseLossyTransformTiled(CoefficientPlanes, int, int, int, int, ForkJoinPool).
+     *
+     * @param transform The transform to be inverted.
+     * @param originalWidth The width of the original picture.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of coefficients were lost in each direction.
+     * @param tileSize The width and height of the tiles.
+     * @param pool The pool whose threads do the work.
+     * @return The (approximate) original data.
+     */
+    public static byte[][][] inverseLossyTransformTiled(int[][][] transform, int originalWidth,
+            int originalHeight, int levelOfLoss, int tileSize, ForkJoinPool pool) {
+        Tiling tiling = new Tiling(originalWidth, originalHeight, tileSize, levelOfLoss);
+        return inverseLossyTransformTiled(CoefficientPlanes.fromJagged(transform, tiling), originalWidth,
+                originalHeight, levelOfLoss, tileSize, pool).toJagged();
+    }
+
+    /**
+     * Retrieves the (approximate) original image from a transform produced by
+     * the method lossyTransformTiled. The tiles are inverted in parallel.
+     *
+     * @param transform The transform to be inverted.
+     * @param originalWidth The width of the original picture.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of coefficients were lost in each direction.
+     * @param tileSize The width and height of the tiles.
+     * @param pool The pool whose threads do the work.
+     * @return The (approximate) original image.
+     */
+    public static ImagePlanes inverseLossyTransformTiled(final CoefficientPlanes transform, int originalWidth,
+            int originalHeight, final int levelOfLoss, final int tileSize, ForkJoinPool pool) {
+        final Tiling tiling = new Tiling(originalWidth, originalHeight, tileSize, levelOfLoss);
+        final int tiles = tiling.getTiles();
+        final ImagePlanes inverse = new ImagePlanes(transform.getColors(), originalWidth, originalHeight);
+
+        ParallelTransform.forEachLine(new ParallelTransform.LineJob() {
+            @Override
+            void process(int first, int last) {
+                int maxCompressed = tiling.maxCompressedLength();
+                int[] line = new int[tileSize];
+                int[] lineTransform = new int[maxCompressed];
+                int[] work = new int[maxCompressed];
+                int[] columns = new int[tileSize * maxCompressed];
+
+                for (int index = first; index < last; index++) {
+                    byte[] result = inverse.getPlane(index / tiles);
+                    int[] source = transform.getPlane(index / tiles);
+                    int tile = index % tiles;
+                    int x0 = tiling.tileX(tile);
+                    int y0 = tiling.tileY(tile);
+                    int width = tiling.tileWidth(tile);
+                    int height = tiling.tileHeight(tile);
+                    int compressedWidth = tiling.compressedTileWidth(tile);
+                    int compressedHeight = tiling.compressedTileHeight(tile);
+                    int offset = tiling.tileOffset(tile);
+
+                    for (int k = 0; k < compressedHeight; k++) {
+                        for (int m = 0; m < compressedWidth; m++) {
+                            lineTransform[m] = source[offset + m * compressedHeight + k];
+                        }
+                        averageLiftingInverse(lineTransform, 0, levelOfLoss, line, 0, width, work);
+                        for (int x = 0; x < width; x++) {
+                            columns[x * compressedHeight + k] = line[x];
+                        }
+                    }
+
+                    for (int x = 0; x < width; x++) {
+                        averageLiftingInverse(columns, x * compressedHeight, levelOfLoss, line, 0, height, work);
+                        int start = inverse.columnOffset(x0 + x) + y0;
+                        for (int y = 0; y < height; y++) {
+                            result[start + y] = clampToByte(line[y]);
+                        }
+                    }
+                }
+            }
+        }, transform.getColors() * tiles, 1, pool);
+
+        return inverse;
+    }
+
+    /**
+     * An auxiliary method for the inverses. Rounding in the lossy case may
+     * take a value just over the limits of a byte, and so may chromas that
+     * have lost more than the luma (see ColorTransform.dropChroma), so it is
+     * cut to the nearest value a byte can have.
+     *
+     * @param value The value to be converted.
+     * @return The value as a byte.
+     */
+    private static byte clampToByte(int value) {
+        return (byte) Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, value));
+    }
+
     /**
      * An auxiliary method that raises an integer to the power of another. 
      * The power must be 0,1,2,...,21. 
@@ -0,0 +1,155 @@
+package compression;
+
+/**
+ * The pixel data of a picture, one plane per color. Each plane is a single
+ * byte array in which the columns of the picture are one after another: the
+ * shade of the pixel (x,y) is at index x * height + y, so a column is a
+ * contiguous part of the array. The shades are stored like in the class
+ * BitmapIO, i.e. shade - 128.
+ *
+ * This holds the same data as the array data[c][x][y] used elsewhere, but
+ * with one array per color instead of one per column. The methods fromJagged
+ * and toJagged convert between the two.
+ *
+ * The planes of the transposed image hold a picture row by row instead: the
+ * shade of (x,y) is at index y * width + x, so a row is contiguous like in a
+ * bmp-file or a BufferedImage. This row-major layout is read and written with
+ * BitmapIO.readFileIntoRows and writeRowsIntoBitmap, and the transforms of
+ * it transform the rows first, see Compression.setRowMajor.
+ */
+public class ImagePlanes {
+
+    private static int BLOCK_SIZE = 64; // The squares copied at a time by transposed
+
+    private int colors;
+    private int width;
+    private int height;
+    private byte[][] planes;
+
+    /**
+     * Creates an image whose every shade is 0 (i.e. -128 + 128).
+     *
+     * @param colors The number of colors.
+     * @param width The width of the picture.
+     * @param height The height of the picture.
+     */
+    public ImagePlanes(int colors, int width, int height) {
+        this.colors = colors;
+        this.width = width;
+        this.height = height;
+        planes = new byte[colors][width * height];
+    }
+
+    /**
+     * Copies data in the form data[c][x][y] into planes.
+     *
+     * @param data The data.
+     * @return The same data as planes.
+     */
+    public static ImagePlanes fromJagged(byte[][][] data) {
+        int height = data[0][0].length;
+        ImagePlanes image = new ImagePlanes(data.length, data[0].length, height);
+        for (int c = 0; c < data.length; c++) {
+            for (int x = 0; x < data[c].length; x++) {
+                System.arraycopy(data[c][x], 0, image.planes[c], x * height, height);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Copies the planes into an array of the form data[c][x][y].
+     *
+     * @return The data.
+     */
+    public byte[][][] toJagged() {
+        byte[][][] data = new byte[colors][width][height];
+        for (int c = 0; c < colors; c++) {
+            for (int x = 0; x < width; x++) {
+                System.arraycopy(planes[c], x * height, data[c][x], 0, height);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Copies the image into the planes of the transposed image, whose
+     * columns are the rows of this one. So the row-major and the column-major
+     * layouts are turned into each other with this. The copying is done in
+     * squares of BLOCK_SIZE x BLOCK_SIZE pixels, so that both the reads and the
+     * writes stay in the cache.
+     *
+     * @return The transposed image.
+     */
+    public ImagePlanes transposed() {
+        ImagePlanes transposed = new ImagePlanes(colors, height, width);
+        for (int c = 0; c < colors; c++) {
+            byte[] source = planes[c];
+            byte[] target = transposed.planes[c];
+            for (int left = 0; left < width; left += BLOCK_SIZE) {
+                int right = Math.min(width, left + BLOCK_SIZE);
+                for (int top = 0; top < height; top += BLOCK_SIZE) {
+                    int bottom = Math.min(height, top + BLOCK_SIZE);
+                    for (int y = top; y < bottom; y++) {
+                        int index = y * width + left;
+                        for (int x = left; x < right; x++) {
+                            target[index++] = source[x * height + y];
+                        }
+                    }
+                }
+            }
+        }
+        return transposed;
+    }
+
+    /**
+     * @return The number of colors.
+     */
+    public int getColors() {
+        return colors;
+    }
+
+    /**
+     * @return The width of the picture.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return The height of the picture.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @param color The color.
+     * @return The array that holds the shades of the color.
+     */
+    public byte[] getPlane(int color) {
+        return planes[color];
+    }
+
+    /**
+     * @param x The x-coordinate of a column.
+     * @return The index in a plane where the column begins.
+     */
+    public int columnOffset(int x) {
+        return x * height;
+    }
+
+    /**
+     * @return The shade of the color at the pixel (x,y).
+     */
+    public byte get(int color, int x, int y) {
+        return planes[color][x * height + y];
+    }
+
+    /**
+     * Sets the shade of the color at the pixel (x,y).
+     */
+    public void set(int color, int x, int y, byte shade) {
+        planes[color][x * height + y] = shade;
+    }
+}
@@ -0,0 +1,36 @@
+package compression;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A way to code the lines of the wtf-files whose lines begin with their
+ * length in bytes, i.e. the Rice coded files of type 6 (RiceCoder) and the
+ * zero run coded files of type 7 (ZeroRunCodec). WTFIO reads and writes both
+ * of them the same way through this.
+ */
+interface LineCoder {
+
+    /**
+     * Writes a coded line at the position of the buffer and moves the position
+     * past it. The line begins with an int that tells how many bytes come
+     * after it.
+     *
+     * @param data An array that contains the line.
+     * @param start The index where the line begins.
+     * @param length The number of coefficients on the line.
+     * @param target The buffer. It must have enough bytes remaining.
+     * @return The number of bytes written.
+     */
+    int encode(int[] data, int start, int length, ByteBuffer target);
+
+    /**
+     * Reads a coded line from the position of the buffer and moves the
+     * position past it.
+     *
+     * @param source The buffer.
+     * @param target The array into which the coefficients are written.
+     * @param start The index where the line will begin in the array.
+     * @param length The number of coefficients on the line.
+     */
+    void decode(ByteBuffer source, int[] target, int start, int length);
+}
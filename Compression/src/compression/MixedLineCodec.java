@@ -0,0 +1,243 @@
+package compression;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Encodes lines of coefficients into the mixed form of the class WTFIO and
+ * decodes them, straight into and out of a ByteBuffer, e.g. a buffer of a
+ * FileChannel or a mapped file. The bytes are copied with the bulk methods of
+ * the buffer through an array of the codec, and the shorts and ints with the
+ * bulk methods of its short and int views. The arrays are reused, and so are
+ * the views: the codec keeps those of the last buffer it was given and only
+ * moves their positions and limits for each line. So nothing is allocated per
+ * line once the arrays are long enough, as long as the lines of a file are
+ * encoded into (or decoded from) the same buffer.
+ *
+ * The result is exactly the same as with WTFIO.createLineOfMixedData and
+ * WTFIO.decodeLineOfMixedData. A codec must not be used by several threads
+ * at the same time.
+ */
+public class MixedLineCodec {
+
+    private byte[] bytes = new byte[0];
+    private short[] shorts = new short[0];
+    // The views of the buffer viewed. A view can only begin at whole shorts
+    // or ints from where it begins, so there is one for each remainder of the
+    // position divided by 2 and by 4. They are created when first needed.
+    private ByteBuffer viewed;
+    private ByteOrder viewedOrder;
+    private final ShortBuffer[] shortViews = new ShortBuffer[2];
+    private final IntBuffer[] intViews = new IntBuffer[4];
+
+    /**
+     * Tells how many bytes a line may take at most in the mixed form.
+     *
+     * @param length The number of coefficients on the line.
+     * @return The length of the line with its offsets if all the coefficients
+     * are ints.
+     */
+    public static int maxEncodedLength(int length) {
+        return 8 + 4 * length;
+    }
+
+    /**
+     * Writes a line in the mixed form at the position of the buffer and
+     * moves the position past it.
+     *
+     * @param data An array that contains the line.
+     * @param start The index where the line begins.
+     * @param length The number of coefficients on the line.
+     * @param target The buffer. It must have at least maxEncodedLength(length)
+     * bytes remaining.
+     * @return The number of bytes written.
+     */
+    public int encode(int[] data, int start, int length, ByteBuffer target) {
+        // The offsets, see WTFIO.calculateOffsets:
+        int shortOffset = length;
+        int intOffset = length;
+        for (int i = 0; i < length; i++) {
+            int read = data[start + i];
+            if (shortOffset == length && (read < Byte.MIN_VALUE || read > Byte.MAX_VALUE)) {
+                shortOffset = i;
+            }
+            if (read < Short.MIN_VALUE || read > Short.MAX_VALUE) {
+                intOffset = i;
+                break;
+            }
+        }
+        int noOfShorts = intOffset - shortOffset;
+        int noOfInts = length - intOffset;
+        ensureCapacity(shortOffset, noOfShorts);
+
+        target.putInt(shortOffset);
+        target.putInt(intOffset);
+
+        for (int i = 0; i < shortOffset; i++) {
+            bytes[i] = (byte) data[start + i];
+        }
+        target.put(bytes, 0, shortOffset);
+
+        for (int i = 0; i < noOfShorts; i++) {
+            shorts[i] = (short) data[start + shortOffset + i];
+        }
+        shortView(target).put(shorts, 0, noOfShorts);
+        target.position(target.position() + 2 * noOfShorts);
+
+        intView(target).put(data, start + intOffset, noOfInts);
+        target.position(target.position() + 4 * noOfInts);
+
+        return 8 + shortOffset + 2 * noOfShorts + 4 * noOfInts;
+    }
+
+    /**
+     * Reads a line in the mixed form from the position of the buffer and
+     * moves the position past it.
+     *
+     * @param source The buffer.
+     * @param target The array into which the coefficients are written.
+     * @param start The index where the line will begin in the array.
+     * @param length The number of coefficients on the line.
+     */
+    public void decode(ByteBuffer source, int[] target, int start, int length) {
+        int shortOffset = source.getInt();
+        int intOffset = source.getInt();
+        int noOfShorts = intOffset - shortOffset;
+        int noOfInts = length - intOffset;
+        ensureCapacity(shortOffset, noOfShorts);
+
+        source.get(bytes, 0, shortOffset);
+        for (int i = 0; i < shortOffset; i++) {
+            target[start + i] = bytes[i];
+        }
+
+        shortView(source).get(shorts, 0, noOfShorts);
+        source.position(source.position() + 2 * noOfShorts);
+        for (int i = 0; i < noOfShorts; i++) {
+            target[start + shortOffset + i] = shorts[i];
+        }
+
+        intView(source).get(target, start + intOffset, noOfInts);
+        source.position(source.position() + 4 * noOfInts);
+    }
+
+    /**
+     * Reads some coefficients of a line in the mixed form without decoding
+     * the others. The position of a coefficient is found from the offsets, so
+     * only the bytes of the coefficients asked for are read.
+     *
+     * @param source The buffer. Its position isn't moved.
+     * @param lineStart The index of the buffer where the line begins, i.e.
+     * where its offsets are.
+     * @param positions The numbers of the coefficients on the line.
+     * @param target The array into which the coefficients are written in the
+     * order of the positions.
+     * @param start The index where the first one will be written.
+     */
+    public static void decodeAt(ByteBuffer source, int lineStart, int[] positions, int[] target, int start) {
+        int shortOffset = source.getInt(lineStart);
+        int intOffset = source.getInt(lineStart + 4);
+        int shorts = lineStart + 8 + shortOffset; // Where the shorts begin
+        int ints = shorts + 2 * (intOffset - shortOffset);
+        for (int k = 0; k < positions.length; k++) {
+            int i = positions[k];
+            if (i < shortOffset) {
+                target[start + k] = source.get(lineStart + 8 + i);
+            } else if (i < intOffset) {
+                target[start + k] = source.getShort(shorts + 2 * (i - shortOffset));
+            } else {
+                target[start + k] = source.getInt(ints + 4 * (i - intOffset));
+            }
+        }
+    }
+
+    /**
+     * Tells how many bytes the coefficients of a line take in the mixed form,
+     * without the offsets.
+     *
+     * @param shortOffset The short offset of the line.
+     * @param intOffset The int offset of the line.
+     * @param length The number of coefficients on the line.
+     * @return The length of the line in bytes without the offsets.
+     */
+    public static int encodedLength(int shortOffset, int intOffset, int length) {
+        return shortOffset + 2 * (intOffset - shortOffset) + 4 * (length - intOffset);
+    }
+
+    /**
+     * Gives a short view of the buffer whose position is that of the buffer
+     * and whose limit is that of the buffer, like buffer.asShortBuffer()
+     * would, without creating a new view each time.
+     */
+    private ShortBuffer shortView(ByteBuffer buffer) {
+        view(buffer);
+        int base = buffer.position() % 2;
+        ShortBuffer view = shortViews[base];
+        if (view == null) {
+            view = viewFrom(buffer, base).asShortBuffer();
+            shortViews[base] = view;
+        }
+        view.limit((buffer.limit() - base) / 2);
+        view.position((buffer.position() - base) / 2);
+        return view;
+    }
+
+    /**
+     * Gives an int view of the buffer, see shortView.
+     */
+    private IntBuffer intView(ByteBuffer buffer) {
+        view(buffer);
+        int base = buffer.position() % 4;
+        IntBuffer view = intViews[base];
+        if (view == null) {
+            view = viewFrom(buffer, base).asIntBuffer();
+            intViews[base] = view;
+        }
+        view.limit((buffer.limit() - base) / 4);
+        view.position((buffer.position() - base) / 4);
+        return view;
+    }
+
+    /**
+     * An auxiliary method that forgets the views if they aren't views of the
+     * buffer, e.g. when the codec is given another buffer or the byte order of
+     * the buffer has been changed.
+     */
+    private void view(ByteBuffer buffer) {
+        if (buffer != viewed || buffer.order() != viewedOrder) {
+            viewed = buffer;
+            viewedOrder = buffer.order();
+            for (int i = 0; i < shortViews.length; i++) {
+                shortViews[i] = null;
+            }
+            for (int i = 0; i < intViews.length; i++) {
+                intViews[i] = null;
+            }
+        }
+    }
+
+    /**
+     * An auxiliary method that gives the buffer from the index base to its
+     * capacity, from which the views are created.
+     */
+    private static ByteBuffer viewFrom(ByteBuffer buffer, int base) {
+        ByteBuffer whole = buffer.duplicate().order(buffer.order());
+        whole.clear();
+        whole.position(base);
+        return whole.slice().order(buffer.order());
+    }
+
+    /**
+     * An auxiliary method that makes the arrays long enough.
+     */
+    private void ensureCapacity(int noOfBytes, int noOfShorts) {
+        if (bytes.length < noOfBytes) {
+            bytes = new byte[noOfBytes];
+        }
+        if (shorts.length < noOfShorts) {
+            shorts = new short[noOfShorts];
+        }
+    }
+}
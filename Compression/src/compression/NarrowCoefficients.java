@@ -0,0 +1,271 @@
+package compression;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The coefficients of a transform stored as narrowly as possible. Every line
+ * is kept in the mixed form of the class WTFIO: the offsets, then bytes until
+ * the first coefficient that doesn't fit into a byte, then shorts until the
+ * first one that doesn't fit into a short, and ints after it. Since the fine
+ * coefficients at the start of a line are small, a coefficient takes usually
+ * one or two bytes instead of the four of an int, and the lines can be
+ * written into a file as they are.
+ *
+ * The lines of a color are numbered one after another. For the column and
+ * two-dimensional transforms they all have the same length. For the tiled
+ * transform the lines of the first tile come first, then those of the second
+ * tile and so on, so their lengths vary.
+ */
+public class NarrowCoefficients {
+
+    private int colors;
+    private int lines;
+    private int[] lineStarts;
+    private byte[][][] mixedLines;
+    private boolean colorTransformed;
+    private boolean rowMajor;
+
+    /**
+     * Creates an empty store for lines of the same length.
+     *
+     * @param colors The number of colors.
+     * @param lines The number of lines per color.
+     * @param lineLength The length of a line.
+     */
+    public NarrowCoefficients(int colors, int lines, int lineLength) {
+        this.colors = colors;
+        this.lines = lines;
+        lineStarts = new int[lines + 1];
+        for (int line = 0; line <= lines; line++) {
+            lineStarts[line] = line * lineLength;
+        }
+        mixedLines = new byte[colors][lines][];
+    }
+
+    /**
+     * Creates an empty store for the lines of the tiles of a tiled transform.
+     *
+     * @param colors The number of colors.
+     * @param tiling The tiling of the transform.
+     */
+    public NarrowCoefficients(int colors, Tiling tiling) {
+        this.colors = colors;
+        lines = 0;
+        for (int tile = 0; tile < tiling.getTiles(); tile++) {
+            lines += tiling.compressedTileWidth(tile);
+        }
+        lineStarts = new int[lines + 1];
+        int line = 0;
+        for (int tile = 0; tile < tiling.getTiles(); tile++) {
+            for (int j = 0; j < tiling.compressedTileWidth(tile); j++) {
+                lineStarts[line + 1] = lineStarts[line] + tiling.compressedTileHeight(tile);
+                line++;
+            }
+        }
+        mixedLines = new byte[colors][lines][];
+    }
+
+    /**
+     * Stores the transform in the planes narrowly.
+     *
+     * @param planes The transform.
+     * @param tiling The tiling of a tiled transform, null for the others.
+     * @param pool The pool whose threads do the work, or null to do it in this
+     * thread.
+     * @return The same transform in a narrow store.
+     */
+    public static NarrowCoefficients fromPlanes(final CoefficientPlanes planes, Tiling tiling, ForkJoinPool pool) {
+        final NarrowCoefficients narrow = tiling == null
+                ? new NarrowCoefficients(planes.getColors(), planes.getLines(), planes.getLineLength())
+                : new NarrowCoefficients(planes.getColors(), tiling);
+
+        forEachLine(new ParallelTransform.LineJob() {
+            @Override
+            void process(int first, int last) {
+                for (int index = first; index < last; index++) {
+                    int color = index / narrow.lines;
+                    int line = index % narrow.lines;
+                    narrow.setLine(color, line, planes.getPlane(color), narrow.lineStarts[line]);
+                }
+            }
+        }, narrow.allLines(), pool);
+
+        narrow.colorTransformed = planes.isColorTransformed();
+        narrow.rowMajor = planes.isRowMajor();
+        return narrow;
+    }
+
+    /**
+     * Copies the coefficients into planes. The planes of a tiled transform
+     * hold the tiles as told by the tiling.
+     *
+     * @param tiling The tiling of a tiled transform, null for the others.
+     * @param pool The pool whose threads do the work, or null to do it in this
+     * thread.
+     * @return The transform as planes.
+     */
+    public CoefficientPlanes toPlanes(Tiling tiling, ForkJoinPool pool) {
+        final CoefficientPlanes planes = tiling == null
+                ? new CoefficientPlanes(colors, lines, getLineLength(0))
+                : new CoefficientPlanes(colors, tiling);
+
+        forEachLine(new ParallelTransform.LineJob() {
+            @Override
+            void process(int first, int last) {
+                for (int index = first; index < last; index++) {
+                    int color = index / lines;
+                    int line = index % lines;
+                    getLine(color, line, planes.getPlane(color), lineStarts[line]);
+                }
+            }
+        }, allLines(), pool);
+
+        planes.setColorTransformed(colorTransformed);
+        planes.setRowMajor(rowMajor);
+        return planes;
+    }
+
+    /**
+     * An auxiliary method for fromPlanes and toPlanes.
+     *
+     * @return The number of the lines of all the colors.
+     */
+    private int allLines() {
+        return colors * lines;
+    }
+
+    /**
+     * An auxiliary method that does the job to the lines with the threads of
+     * the pool, or in this thread if there is no pool.
+     */
+    private static void forEachLine(ParallelTransform.LineJob job, int lines, ForkJoinPool pool) {
+        if (pool == null) {
+            job.process(0, lines);
+        } else {
+            ParallelTransform.forEachLine(job, lines, pool);
+        }
+    }
+
+    /**
+     * Stores a line. Different lines can be stored by different threads at
+     * the same time.
+     *
+     * @param color The color.
+     * @param line The number of the line.
+     * @param data An array that has the coefficients of the line.
+     * @param start The index where the line begins in the array.
+     */
+    public void setLine(int color, int line, int[] data, int start) {
+        mixedLines[color][line] = WTFIO.createLineOfMixedData(data, start, getLineLength(line));
+    }
+
+    /**
+     * Copies the coefficients of a line into an array.
+     *
+     * @param color The color.
+     * @param line The number of the line.
+     * @param target The array into which the coefficients are written.
+     * @param targetOffset The index where the line will begin.
+     */
+    public void getLine(int color, int line, int[] target, int targetOffset) {
+        WTFIO.decodeLineOfMixedData(mixedLines[color][line], target, targetOffset, getLineLength(line));
+    }
+
+    /**
+     * Gives a line in the mixed form, as it will be written into a file.
+     *
+     * @param color The color.
+     * @param line The number of the line.
+     * @return The line with its offsets.
+     */
+    public byte[] getMixedLine(int color, int line) {
+        return mixedLines[color][line];
+    }
+
+    /**
+     * Stores a line that is already in the mixed form, e.g. read from a file.
+     *
+     * @param color The color.
+     * @param line The number of the line.
+     * @param mixedLine The line with its offsets.
+     */
+    public void setMixedLine(int color, int line, byte[] mixedLine) {
+        mixedLines[color][line] = mixedLine;
+    }
+
+    /**
+     * @return The number of colors.
+     */
+    public int getColors() {
+        return colors;
+    }
+
+    /**
+     * @return True if the colors are Y, Co and Cg, see
+     * CoefficientPlanes.isColorTransformed.
+     */
+    public boolean isColorTransformed() {
+        return colorTransformed;
+    }
+
+    /**
+     * @param colorTransformed True if the colors are Y, Co and Cg.
+     */
+    public void setColorTransformed(boolean colorTransformed) {
+        this.colorTransformed = colorTransformed;
+    }
+
+    /**
+     * @return True if the lines are the rows of the image, see
+     * CoefficientPlanes.isRowMajor.
+     */
+    public boolean isRowMajor() {
+        return rowMajor;
+    }
+
+    /**
+     * @param rowMajor True if the lines are the rows of the image.
+     */
+    public void setRowMajor(boolean rowMajor) {
+        this.rowMajor = rowMajor;
+    }
+
+    /**
+     * @return The number of lines per color.
+     */
+    public int getLines() {
+        return lines;
+    }
+
+    /**
+     * @param line The number of a line.
+     * @return The number of coefficients on the line.
+     */
+    public int getLineLength(int line) {
+        return lineStarts[line + 1] - lineStarts[line];
+    }
+
+    /**
+     * Tells how many bytes the stored lines take, without the overhead of the
+     * arrays. The same coefficients would take 4 * getCoefficients() bytes
+     * as ints.
+     *
+     * @return The total length of the lines in the mixed form.
+     */
+    public long getSizeInBytes() {
+        long size = 0;
+        for (int c = 0; c < colors; c++) {
+            for (int line = 0; line < lines; line++) {
+                size += mixedLines[c][line].length;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return The number of the coefficients of all the colors.
+     */
+    public long getCoefficients() {
+        return (long) colors * lineStarts[lines];
+    }
+}
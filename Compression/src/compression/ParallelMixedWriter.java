@@ -0,0 +1,223 @@
+package compression;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Encodes the lines of a transform into the mixed form with the threads of a
+ * pool and writes them into a FileChannel in the right order. This is what
+ * the writing methods of WTFIO do when they are given a pool. The lines of
+ * Rice coded and zero run coded files are coded the same way, only with
+ * RiceCoder or ZeroRunCodec instead of MixedLineCodec.
+ *
+ * The lines of all the colors are numbered one after another and split into
+ * batches that fit into a buffer of BATCH_SIZE bytes. Each batch is encoded by
+ * one thread with its own codec. The calling thread waits for the
+ * batches in order and writes all the ones that are ready at once with a
+ * gathering write. At most WINDOW_PER_THREAD batches per thread are encoded
+ * or waiting at a time, and the buffers of the written batches are reused for
+ * the next ones, so the memory needed doesn't depend on the size of the
+ * transform. The file is exactly the same as when the lines are written one
+ * by one.
+ */
+class ParallelMixedWriter {
+
+    private static int BATCH_SIZE = 1 << 18;
+    private static int WINDOW_PER_THREAD = 2;
+
+    private CoefficientPlanes transform;
+    private int[] lineLengths;
+    private int[] lineStarts;
+    private byte type; // WTFIO.TYPE_RICE, WTFIO.TYPE_ZERO_RUN, or 0 for the mixed form
+    private ArrayDeque<ByteBuffer> freeBuffers = new ArrayDeque<ByteBuffer>();
+    private int windowSize;
+
+    /**
+     * Writes the lines of the transform at the position of the channel.
+     *
+     * @param channel The channel into which the lines are written.
+     * @param transform The transform. The lines of a color are one after
+     * another in its plane.
+     * @param lineLengths The lengths of the lines of a color.
+     * @param index If not null, the position of each line in the file is
+     * written here, the lines of all the colors one after another.
+     * @param pool The pool whose threads encode the lines.
+     * @throws IOException
+     */
+    static void write(FileChannel channel, CoefficientPlanes transform, int[] lineLengths, long[] index,
+            ForkJoinPool pool) throws IOException {
+        new ParallelMixedWriter(transform, lineLengths, (byte) 0, pool.getParallelism()).write(channel, index, pool);
+    }
+
+    /**
+     * Codes the lines of the transform like the lines of a file of type 6 or 7
+     * and writes them at the position of the channel.
+     *
+     * @param channel The channel into which the lines are written.
+     * @param transform The transform. The lines of a color are one after
+     * another in its plane.
+     * @param lineLengths The lengths of the lines of a color.
+     * @param type WTFIO.TYPE_RICE or WTFIO.TYPE_ZERO_RUN.
+     * @param pool The pool whose threads code the lines.
+     * @throws IOException
+     */
+    static void writeCoded(FileChannel channel, CoefficientPlanes transform, int[] lineLengths, byte type,
+            ForkJoinPool pool) throws IOException {
+        new ParallelMixedWriter(transform, lineLengths, type, pool.getParallelism()).write(channel, null, pool);
+    }
+
+    private ParallelMixedWriter(CoefficientPlanes transform, int[] lineLengths, byte type, int threads) {
+        this.transform = transform;
+        this.lineLengths = lineLengths;
+        this.type = type;
+        lineStarts = new int[lineLengths.length];
+        for (int line = 1; line < lineLengths.length; line++) {
+            lineStarts[line] = lineStarts[line - 1] + lineLengths[line - 1];
+        }
+        windowSize = WINDOW_PER_THREAD * threads;
+    }
+
+    /**
+     * Encodes and writes the batches, see the description of this class.
+     */
+    private void write(FileChannel channel, long[] index, ForkJoinPool pool) throws IOException {
+        int lines = transform.getColors() * lineLengths.length;
+        ArrayDeque<Batch> window = new ArrayDeque<Batch>();
+        long position = channel.position();
+        int line = 0;
+
+        while (line < lines || !window.isEmpty()) {
+            while (line < lines && window.size() < windowSize) {
+                Batch batch = nextBatch(line, lines);
+                batch.task = pool.submit(batch);
+                window.addLast(batch);
+                line = batch.last;
+            }
+
+            // Wait for the first batch, then take all the ones ready after it.
+            Iterator<Batch> batches = window.iterator();
+            waitFor(batches.next());
+            int ready = 1;
+            while (batches.hasNext()) {
+                Batch batch = batches.next();
+                if (!batch.task.isDone()) {
+                    break;
+                }
+                waitFor(batch);
+                ready++;
+            }
+
+            ByteBuffer[] encoded = new ByteBuffer[ready];
+            for (int i = 0; i < ready; i++) {
+                Batch batch = window.pollFirst();
+                encoded[i] = batch.buffer;
+                if (index != null) {
+                    for (int k = batch.first; k < batch.last; k++) {
+                        index[k] = position;
+                        position += batch.encodedLengths[k - batch.first];
+                    }
+                }
+            }
+            long remaining = 0;
+            for (ByteBuffer buffer : encoded) {
+                remaining += buffer.remaining();
+            }
+            while (remaining > 0) {
+                remaining -= channel.write(encoded);
+            }
+            for (ByteBuffer buffer : encoded) {
+                buffer.clear();
+                freeBuffers.addLast(buffer);
+            }
+        }
+    }
+
+    /**
+     * An auxiliary method for write. Takes as many lines from the line first
+     * on as fit into a buffer, but at least one line.
+     */
+    private Batch nextBatch(int first, int lines) {
+        ByteBuffer buffer = freeBuffers.pollFirst();
+        int capacity = buffer == null ? BATCH_SIZE : buffer.capacity();
+        int last = first;
+        int size = 0;
+        while (last < lines) {
+            int length = maxEncodedLength(lineLengths[last % lineLengths.length]);
+            if (last > first && size + length > capacity) {
+                break;
+            }
+            size += length;
+            last++;
+        }
+        if (buffer == null || buffer.capacity() < size) {
+            buffer = ByteBuffer.allocateDirect(Math.max(BATCH_SIZE, size));
+        }
+        return new Batch(first, last, buffer);
+    }
+
+    /**
+     * An auxiliary method for nextBatch. Tells how many bytes a line may take
+     * at most.
+     */
+    private int maxEncodedLength(int length) {
+        return type == 0 ? MixedLineCodec.maxEncodedLength(length) : WTFIO.maxCodedLength(type, length);
+    }
+
+    /**
+     * An auxiliary method for write. Waits until a batch is encoded.
+     */
+    private static void waitFor(Batch batch) throws IOException {
+        try {
+            batch.task.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * The lines from first to last - 1 and the buffer into which they are
+     * encoded. When the batch is done, the buffer is ready to be written.
+     */
+    private class Batch implements Callable<Void> {
+
+        private int first;
+        private int last;
+        private ByteBuffer buffer;
+        private int[] encodedLengths;
+        private ForkJoinTask<Void> task;
+
+        public Batch(int first, int last, ByteBuffer buffer) {
+            this.first = first;
+            this.last = last;
+            this.buffer = buffer;
+            encodedLengths = new int[last - first];
+        }
+
+        @Override
+        public Void call() {
+            MixedLineCodec codec = type == 0 ? new MixedLineCodec() : null;
+            LineCoder coder = type == 0 ? null : WTFIO.newLineCoder(type);
+            for (int k = first; k < last; k++) {
+                int line = k % lineLengths.length;
+                int[] plane = transform.getPlane(k / lineLengths.length);
+                if (type == 0) {
+                    encodedLengths[k - first] = codec.encode(plane, lineStarts[line], lineLengths[line], buffer);
+                } else {
+                    encodedLengths[k - first] = coder.encode(plane, lineStarts[line], lineLengths[line], buffer);
+                }
+            }
+            buffer.flip();
+            return null;
+        }
+    }
+}
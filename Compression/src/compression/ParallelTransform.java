@@ -0,0 +1,394 @@
+package compression;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Performs the same transforms as the methods lossyTransfrom and
+ * inverseLossyTransform of the class HaarTransform, but with several threads.
+ * Every column of the image is transformed independently of the others, so
+ * the columns of all the colors are numbered one after another as lines and
+ * the tasks are split into ranges of lines until a range has at most
+ * LINES_PER_TASK lines.
+ * The result is exactly the same as with the sequential methods.
+ */
+public class ParallelTransform {
+
+    private static int LINES_PER_TASK = 16;
+
+    /**
+     * Performs a transform on a 3D data array with the threads of the pool.
+     * See HaarTransform.lossyTransfrom. This is an adapter for
+     * lossyTransform(ImagePlanes, int, ForkJoinPool).
+     *
+     * @param data The data to be transformed.
+     * @param levelOfLoss How many levels of the coefficients will be omitted.
+     * @param pool The pool whose threads do the work.
+     * @return The transform.
+     */
+    public static int[][][] lossyTransform(byte[][][] data, int levelOfLoss, ForkJoinPool pool) {
+        return lossyTransform(ImagePlanes.fromJagged(data), levelOfLoss, pool).toJagged(null);
+    }
+
+    /**
+     * Transforms every column of the image with the threads of the pool. The
+     * line x of a color of the result is the transform of the column x.
+     *
+     * @param image The image to be transformed.
+     * @param levelOfLoss How many levels of the coefficients will be omitted.
+     * @param pool The pool whose threads do the work.
+     * @return The transform.
+     */
+    public static CoefficientPlanes lossyTransform(final ImagePlanes image, final int levelOfLoss,
+            ForkJoinPool pool) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final CoefficientPlanes transform = new CoefficientPlanes(image.getColors(), width,
+                HaarTransform.compressedLength(height, levelOfLoss));
+
+        forEachLine(new LineJob() {
+            @Override
+            void process(int first, int last) {
+                for (int line = first; line < last; line++) {
+                    int x = line % width;
+                    HaarTransform.liftingTransform(image.getPlane(line / width), image.columnOffset(x), height,
+                            levelOfLoss, transform.getPlane(line / width), transform.lineOffset(x));
+                }
+            }
+        }, image.getColors() * width, pool);
+
+        return transform;
+    }
+
+    /**
+     * Transforms every column of the image like lossyTransform(ImagePlanes,
+     * int, ForkJoinPool), but stores the lines narrowly as soon as they are
+     * transformed. Only one line per task is ever kept as ints.
+     *
+     * @param image The image to be transformed.
+     * @param levelOfLoss How many levels of the coefficients will be omitted.
+     * @param pool The pool whose threads do the work.
+     * @return The transform.
+     */
+    public static NarrowCoefficients lossyTransformNarrow(final ImagePlanes image, final int levelOfLoss,
+            ForkJoinPool pool) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int lineLength = HaarTransform.compressedLength(height, levelOfLoss);
+        final NarrowCoefficients transform = new NarrowCoefficients(image.getColors(), width, lineLength);
+
+        forEachLine(new LineJob() {
+            @Override
+            void process(int first, int last) {
+                int[] buffer = new int[lineLength]; // Shared by the lines of this task
+                for (int line = first; line < last; line++) {
+                    int x = line % width;
+                    HaarTransform.liftingTransform(image.getPlane(line / width), image.columnOffset(x), height,
+                            levelOfLoss, buffer, 0);
+                    transform.setLine(line / width, x, buffer, 0);
+                }
+            }
+        }, image.getColors() * width, pool);
+
+        return transform;
+    }
+
+    /**
+     * Transforms every column of the image with all the levels of loss from
+     * lowest to highest. Each column is transformed only once, with the lowest
+     * level of loss, and the other levels are derived from it with
+     * HaarTransform.coarserTransform. The transforms are the same as those of
+     * lossyTransformNarrow.
+     *
+     * @param image The image to be transformed.
+     * @param lowest The smallest level of loss.
+     * @param highest The biggest level of loss.
+     * @param pool The pool whose threads do the work.
+     * @return The transforms, the one with the level of loss lowest + i at
+     * the index i.
+     */
+    public static NarrowCoefficients[] lossyTransformSeries(final ImagePlanes image, final int lowest,
+            final int highest, ForkJoinPool pool) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final NarrowCoefficients[] series = new NarrowCoefficients[highest - lowest + 1];
+        for (int lol = lowest; lol <= highest; lol++) {
+            series[lol - lowest] = new NarrowCoefficients(image.getColors(), width,
+                    HaarTransform.compressedLength(height, lol));
+        }
+
+        forEachLine(new LineJob() {
+            @Override
+            void process(int first, int last) {
+                int[] finest = new int[HaarTransform.compressedLength(height, lowest)];
+                int[] coarser = new int[finest.length];
+                for (int line = first; line < last; line++) {
+                    int color = line / width;
+                    int x = line % width;
+                    HaarTransform.liftingTransform(image.getPlane(color), image.columnOffset(x), height,
+                            lowest, finest, 0);
+                    series[0].setLine(color, x, finest, 0);
+                    for (int lol = lowest + 1; lol <= highest; lol++) {
+                        HaarTransform.coarserTransform(finest, 0, height, lowest, lol, coarser, 0);
+                        series[lol - lowest].setLine(color, x, coarser, 0);
+                    }
+                }
+            }
+        }, image.getColors() * width, pool);
+
+        return series;
+    }
+
+    /**
+     * Retrieves the (approximate) original data from a lossy transform with the
+     * threads of the pool. See HaarTransform.inverseLossyTransform. This is an
+     * adapter for inverseLossyTransform(CoefficientPlanes, int, int, ForkJoinPool).
+     *
+     * @param transform The transform to be inverted.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of coefficients were lost in the transform.
+     * @param pool The pool whose threads do the work.
+     * @return The (approximate) original data.
+     */
+    public static byte[][][] inverseLossyTransform(int[][][] transform, int originalHeight,
+            int levelOfLoss, ForkJoinPool pool) {
+        return inverseLossyTransform(CoefficientPlanes.fromJagged(transform), originalHeight,
+                levelOfLoss, pool).toJagged();
+    }
+
+    /**
+     * Retrieves the (approximate) original image from a transform produced by
+     * lossyTransform(ImagePlanes, int, ForkJoinPool) with the threads of the pool.
+     *
+     * @param transform The transform to be inverted.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of coefficients were lost in the transform.
+     * @param pool The pool whose threads do the work.
+     * @return The (approximate) original image.
+     */
+    public static ImagePlanes inverseLossyTransform(final CoefficientPlanes transform, final int originalHeight,
+            final int levelOfLoss, ForkJoinPool pool) {
+        final int width = transform.getLines();
+        final ImagePlanes inverse = new ImagePlanes(transform.getColors(), width, originalHeight);
+
+        forEachLine(new LineJob() {
+            @Override
+            void process(int first, int last) {
+                int[] work = new int[transform.getLineLength()]; // Shared by the lines of this task
+                for (int line = first; line < last; line++) {
+                    int x = line % width;
+                    HaarTransform.liftingInverse(transform.getPlane(line / width), transform.lineOffset(x),
+                            levelOfLoss, inverse.getPlane(line / width), inverse.columnOffset(x),
+                            originalHeight, work);
+                }
+            }
+        }, transform.getColors() * width, pool);
+
+        return inverse;
+    }
+
+    /**
+     * Retrieves a thumbnail of the image from a transform produced by
+     * lossyTransform(ImagePlanes, int, ForkJoinPool), i.e. the image made
+     * smaller by 2^scale in each direction. The transforms of each 2^scale
+     * columns next to each other are summed, but only their coefficients that
+     * HaarTransform.thumbnailInverse needs, and the thumbnail column is
+     * retrieved from the sum. So only about one in 2^scale of the
+     * coefficients is read, and the work of the inverse is about one in
+     * 4^scale of that of inverseLossyTransform. The transform may also be one
+     * read with WTFIO.readCoarserPlanes, which has only those coefficients.
+     *
+     * @param transform The transform.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of coefficients were lost in the transform.
+     * @param scale How many times the image is made smaller by 2.
+     * @param pool The pool whose threads do the work.
+     * @return The thumbnail, whose width is the width of the image divided by
+     * 2^scale and rounded up, and whose height is the height of the image
+     * divided the same way, see HaarTransform.thumbnailLength.
+     */
+    public static ImagePlanes inverseThumbnail(final CoefficientPlanes transform, final int originalHeight,
+            final int levelOfLoss, final int scale, ForkJoinPool pool) {
+        final int width = transform.getLines();
+        final int group = 1 << scale; // The number of the columns of a thumbnail column
+        final int thumbnailWidth = (width + group - 1) >> scale;
+        final ImagePlanes thumbnail = new ImagePlanes(transform.getColors(), thumbnailWidth,
+                HaarTransform.thumbnailLength(originalHeight, scale));
+        final int coarserLevel = Math.max(levelOfLoss, scale);
+        final int[] positions = HaarTransform.coarserPositions(originalHeight, levelOfLoss, coarserLevel);
+
+        forEachLine(new LineJob() {
+            @Override
+            void process(int first, int last) {
+                int[] sum = new int[positions.length];
+                int[] work = new int[positions.length];
+                for (int line = first; line < last; line++) {
+                    int[] plane = transform.getPlane(line / thumbnailWidth);
+                    int x = line % thumbnailWidth;
+                    int columns = Math.min(group, width - x * group);
+                    Arrays.fill(sum, 0);
+                    for (int column = x * group; column < x * group + columns; column++) {
+                        int offset = transform.lineOffset(column);
+                        for (int i = 0; i < positions.length; i++) {
+                            sum[i] += plane[offset + positions[i]];
+                        }
+                    }
+                    HaarTransform.thumbnailInverse(sum, 0, coarserLevel, scale, columns,
+                            thumbnail.getPlane(line / thumbnailWidth), thumbnail.columnOffset(x), originalHeight,
+                            work);
+                }
+            }
+        }, transform.getColors() * thumbnailWidth, pool);
+
+        return thumbnail;
+    }
+
+    /**
+     * Retrieves a rectangle of the image from the columns of a transform
+     * produced by lossyTransform(ImagePlanes, int, ForkJoinPool), e.g. those
+     * read with WTFIO.readRegion. Only the numbers of the rows y,...,y +
+     * height - 1 are retrieved from each column, with
+     * HaarTransform.cropInverse.
+     *
+     * @param transform The transforms of the columns of the rectangle.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of coefficients were lost in the transform.
+     * @param y The first row of the rectangle.
+     * @param height The height of the rectangle.
+     * @param pool The pool whose threads do the work.
+     * @return The rectangle.
+     */
+    public static ImagePlanes inverseRegion(final CoefficientPlanes transform, final int originalHeight,
+            final int levelOfLoss, final int y, final int height, ForkJoinPool pool) {
+        final int width = transform.getLines();
+        final ImagePlanes region = new ImagePlanes(transform.getColors(), width, height);
+
+        forEachLine(new LineJob() {
+            @Override
+            void process(int first, int last) {
+                int[] work = new int[height + 2];
+                for (int line = first; line < last; line++) {
+                    int x = line % width;
+                    HaarTransform.cropInverse(transform.getPlane(line / width), transform.lineOffset(x),
+                            levelOfLoss, originalHeight, y, y + height, region.getPlane(line / width),
+                            region.columnOffset(x), work);
+                }
+            }
+        }, transform.getColors() * width, pool);
+
+        return region;
+    }
+
+    /**
+     * Retrieves the (approximate) original image from a transform produced by
+     * lossyTransformNarrow. The lines are decoded one at a time into a buffer
+     * of the task.
+     *
+     * @param transform The transform to be inverted.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of coefficients were lost in the transform.
+     * @param pool The pool whose threads do the work.
+     * @return The (approximate) original image.
+     */
+    public static ImagePlanes inverseLossyTransform(final NarrowCoefficients transform, final int originalHeight,
+            final int levelOfLoss, ForkJoinPool pool) {
+        final int width = transform.getLines();
+        final ImagePlanes inverse = new ImagePlanes(transform.getColors(), width, originalHeight);
+
+        forEachLine(new LineJob() {
+            @Override
+            void process(int first, int last) {
+                int[] buffer = new int[transform.getLineLength(0)];
+                int[] work = new int[buffer.length];
+                for (int line = first; line < last; line++) {
+                    int x = line % width;
+                    transform.getLine(line / width, x, buffer, 0);
+                    HaarTransform.liftingInverse(buffer, 0, levelOfLoss, inverse.getPlane(line / width),
+                            inverse.columnOffset(x), originalHeight, work);
+                }
+            }
+        }, transform.getColors() * width, pool);
+
+        return inverse;
+    }
+
+    /**
+     * Does the job to the lines 0,1,...,lines - 1 with the threads of the pool.
+     * The lines are split into ranges of at most LINES_PER_TASK lines and the
+     * method returns when all of them are processed.
+     *
+     * @param job The job to be done.
+     * @param lines The number of lines.
+     * @param pool The pool whose threads do the work.
+     */
+    static void forEachLine(LineJob job, int lines, ForkJoinPool pool) {
+        forEachLine(job, lines, LINES_PER_TASK, pool);
+    }
+
+    /**
+     * Does the job to the lines 0,1,...,lines - 1 with the threads of the pool,
+     * at most linesPerTask lines at a time. A "line" can be anything that is
+     * numbered, for example a tile of a picture. If the pool has only one
+     * thread, the calling thread does the job to all the lines at once, since
+     * handing them to the pool would only cost time.
+     *
+     * @param job The job to be done.
+     * @param lines The number of lines.
+     * @param linesPerTask The size of the smallest range of lines.
+     * @param pool The pool whose threads do the work.
+     */
+    static void forEachLine(LineJob job, int lines, int linesPerTask, ForkJoinPool pool) {
+        if (pool.getParallelism() == 1) {
+            job.process(0, lines);
+            return;
+        }
+        pool.invoke(new LineTask(job, 0, lines, linesPerTask));
+    }
+
+    /**
+     * Something that is done to every line of some data, one range of lines at
+     * a time. Different ranges may be processed at the same time by different
+     * threads, so a job may change only the data of its own lines. Buffers can
+     * be allocated once per range.
+     */
+    abstract static class LineJob {
+
+        /**
+         * Processes the lines first, first + 1,..., last - 1.
+         */
+        abstract void process(int first, int last);
+    }
+
+    /**
+     * Does the job to the lines from first to last - 1, splitting the range in
+     * two until it's small enough.
+     */
+    private static class LineTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private LineJob job;
+        private int first;
+        private int last;
+        private int linesPerTask;
+
+        public LineTask(LineJob job, int first, int last, int linesPerTask) {
+            this.job = job;
+            this.first = first;
+            this.last = last;
+            this.linesPerTask = linesPerTask;
+        }
+
+        @Override
+        protected void compute() {
+            if (last - first <= linesPerTask) {
+                job.process(first, last);
+                return;
+            }
+            int middle = (first + last) >>> 1;
+            invokeAll(new LineTask(job, first, middle, linesPerTask),
+                    new LineTask(job, middle, last, linesPerTask));
+        }
+    }
+}
@@ -0,0 +1,633 @@
+package compression;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Codes lines of coefficients for the wtf-files of type 6 (see the class
+ * WTFIO), with Golomb-Rice codes or packed into a few bits each. The files
+ * are smaller than the mixed ones of type 1 and at least as fast to decode.
+ *
+ * The levels of the transform are told apart like in the class EntropyCoder,
+ * and every level of a line has its own parameter, which tells how the level
+ * is coded. The line is written in spans, each of which is the runs of
+ * coefficients next to each other whose levels have the same parameter, so
+ * the decoder reads the line from the beginning to the end without having to
+ * know the levels, and decodes each span at once.
+ *
+ * The parameters 0,...,31 are Rice codes: each coefficient v is mapped to
+ * the unsigned number u = 2|v| or 2|v| - 1 (zigzag), and u is coded with the
+ * parameter k as the number u >>> k in unary (that many 0-bits and a 1-bit)
+ * followed by the k lowest bits of u. If u >>> k is ESCAPE or more, ESCAPE
+ * 0-bits are written instead, followed by all the 32 bits of u, so one big
+ * coefficient doesn't make the rest of the line longer.
+ *
+ * The parameter PACKED + w means that the coefficients of the level are
+ * packed into w = 0, 4, 8, 12, 16 or 32 bits each, as two's complement
+ * numbers. The ones that don't fit are exceptions, whose places are left 0
+ * and which come after the spans as varints (see ZeroRunCodec): the
+ * distance from the previous exception (or from the beginning of the line)
+ * and the zigzag number. Packed coefficients are decoded with loops that
+ * just widen bytes and shorts, like the mixed form, whereas Rice codes have
+ * to be read bit by bit. So a level is Rice coded only if that takes at most
+ * half as many bits as packing it, and exceptions are reckoned to take more
+ * than their bytes, since patching them in is slow too.
+ *
+ * A coded line is
+ * -------------------------
+ * int The number of bytes after this int
+ * the spans from the beginning of the line, each of which is
+ *     byte The parameter
+ *     varint The number of coefficients in the span
+ *     the packed coefficients if the parameter is PACKED + w. The bytes of
+ *     a span of nibbles have the first half of the span in their high 4
+ *     bits and the second half in their low 4 bits. A span of 12 or 16 bits
+ *     is the bytes of the 8 highest bits and then the rest of the bits like
+ *     a span of 4 or 8 bits, so that they too are decoded with loops over
+ *     bytes.
+ * varint The number of exceptions, and the exceptions
+ * the Rice codes of the spans that have them, the last byte padded with 0-bits
+ * ======================
+ * The Rice codes of a span all have the same parameter. With the
+ * small Rice parameters it looks the next 12 bits up in a table that tells
+ * how many whole codes (at most 3) there are in them and what they are, so
+ * several coefficients are decoded at a time. A coder must not be used by
+ * several threads at the same time.
+ */
+public class RiceCoder implements LineCoder {
+
+    private static int ESCAPE = 24;
+    private static int TABLE_BITS = 12;
+    private static int TABLE_PARAMETERS = 4; // The parameters 0,...,3 have tables
+    private static int PACKED = 64; // Plus the width, the parameter of a packed level
+    private static int[] WIDTHS = {0, 4, 8, 12, 16, 32}; // Of the packed levels
+    private static int EXCEPTION_COST = 64; // The bits an exception is reckoned to take
+    private static int[][] TABLES = createTables();
+
+    // The runs of the same level on the lines of the length runsLength:
+    private int runsLength = -1;
+    private int[] runStarts;
+    private int[] runLevels;
+    private int levels;
+    private int[][] histogram = new int[EntropyCoder.LEVEL_CONTEXTS][33];
+    private int[] parameters = new int[EntropyCoder.LEVEL_CONTEXTS];
+
+    // For encoding:
+    private long bitsToWrite;
+    private int noOfBitsToWrite;
+
+    // For decoding:
+    private byte[] bytes = new byte[0]; // The line after its length
+    private ByteBuffer lineBuffer = ByteBuffer.wrap(bytes); // The same bytes
+    private int position; // The index of the next byte of the spans and the exceptions
+    private int[] riceSpans = new int[3 * 8]; // The beginning, end and parameter of each span of Rice codes
+    private ByteBuffer source;
+    private long bitPosition; // The index of the next bit in the buffer
+    private int end;
+
+    /**
+     * Tells how many bytes a line may take at most when it's coded.
+     *
+     * @param length The number of coefficients on the line.
+     * @return The length of the line if every coefficient is a span of its
+     * own, takes a short and is an exception with the longest varints, which
+     * is more than an escaped Rice code takes, plus the bytes that may be
+     * padded.
+     */
+    public static int maxEncodedLength(int length) {
+        return 4 + 6 * length + 5 + 13 * length + 1;
+    }
+
+    /**
+     * Writes a coded line at the position of the buffer and moves the position
+     * past it.
+     *
+     * @param data An array that contains the line.
+     * @param start The index where the line begins.
+     * @param length The number of coefficients on the line.
+     * @param target The buffer. It must have at least maxEncodedLength(length)
+     * bytes remaining.
+     * @return The number of bytes written.
+     */
+    @Override
+    public int encode(int[] data, int start, int length, ByteBuffer target) {
+        findRuns(length);
+        chooseParameters(data, start, length);
+
+        int lineStart = target.position();
+        target.putInt(0);
+        int exceptions = 0;
+        for (int run = 0, next; run < runLevels.length; run = next) {
+            next = spanEnd(run);
+            int k = parameters[runLevels[run]];
+            int count = runStarts[next] - runStarts[run];
+            target.put((byte) k);
+            ZeroRunCodec.putVarint(count, target);
+            if (k >= PACKED) {
+                exceptions += putPacked(data, start + runStarts[run], count, k - PACKED, target);
+            }
+        }
+        ZeroRunCodec.putVarint(exceptions, target);
+        int previous = 0;
+        for (int run = 0; run + 1 < runStarts.length; run++) {
+            int k = parameters[runLevels[run]];
+            for (int i = runStarts[run]; k >= PACKED && i < runStarts[run + 1]; i++) {
+                if (!fits(data[start + i], k - PACKED)) {
+                    int value = data[start + i];
+                    ZeroRunCodec.putVarint(i - previous, target);
+                    ZeroRunCodec.putVarint((value << 1) ^ (value >> 31), target);
+                    previous = i;
+                }
+            }
+        }
+
+        for (int run = 0; run + 1 < runStarts.length; run++) {
+            int k = parameters[runLevels[run]];
+            for (int i = runStarts[run]; k < PACKED && i < runStarts[run + 1]; i++) {
+                int value = data[start + i];
+                int number = (value << 1) ^ (value >> 31);
+                int quotient = number >>> k;
+                if (quotient >= 0 && quotient < ESCAPE) { // Negative only for 32-bit numbers with k = 0
+                    writeBits(1, quotient + 1);
+                    writeBits(number, k);
+                } else {
+                    writeBits(0, ESCAPE);
+                    writeBits(number, 32);
+                }
+                flushBits(target);
+            }
+        }
+        if (noOfBitsToWrite > 0) {
+            writeBits(0, 8 - noOfBitsToWrite);
+            flushBits(target);
+        }
+        int written = target.position() - lineStart;
+        target.putInt(lineStart, written - 4);
+        return written;
+    }
+
+    /**
+     * Reads a coded line from the position of the buffer and moves the
+     * position past it.
+     *
+     * @param source The buffer.
+     * @param target The array into which the coefficients are written.
+     * @param start The index where the line will begin in the array.
+     * @param length The number of coefficients on the line.
+     */
+    @Override
+    public void decode(ByteBuffer source, int[] target, int start, int length) {
+        // The line is copied at once, so that the spans don't each cost a call to the buffer.
+        int lineLength = source.getInt();
+        if (bytes.length < lineLength) {
+            bytes = new byte[lineLength];
+            lineBuffer = ByteBuffer.wrap(bytes);
+        }
+        source.get(bytes, 0, lineLength);
+        position = 0;
+
+        int riceCoded = 0; // The number of spans of Rice codes
+        for (int i = start; i < start + length;) {
+            int k = bytes[position++];
+            int count = getVarint();
+            if (k >= PACKED) {
+                getPacked(target, i, count, k - PACKED);
+            } else {
+                if (3 * riceCoded == riceSpans.length) {
+                    riceSpans = Arrays.copyOf(riceSpans, 2 * riceSpans.length);
+                }
+                riceSpans[3 * riceCoded] = i;
+                riceSpans[3 * riceCoded + 1] = i + count;
+                riceSpans[3 * riceCoded + 2] = k;
+                riceCoded++;
+            }
+            i += count;
+        }
+        int exceptions = getVarint();
+        int i = start;
+        for (int e = 0; e < exceptions; e++) {
+            i += getVarint();
+            int number = getVarint();
+            target[i] = (number >>> 1) ^ -(number & 1);
+        }
+
+        if (riceCoded > 0) {
+            this.source = lineBuffer;
+            bitPosition = 8L * position;
+            end = lineLength;
+            for (int span = 0; span < riceCoded; span++) {
+                decodeRun(target, riceSpans[3 * span], riceSpans[3 * span + 1], riceSpans[3 * span + 2]);
+            }
+        }
+    }
+
+    /**
+     * An auxiliary method for encode. Packs a span of coefficients into the
+     * width, with 0 in the places of the ones that don't fit, and returns
+     * the number of those.
+     */
+    private static int putPacked(int[] data, int i, int count, int width, ByteBuffer target) {
+        int exceptions = 0;
+        for (int j = i; j < i + count; j++) {
+            if (!fits(data[j], width)) {
+                exceptions++;
+            }
+        }
+        if (width == 12 || width == 16) {
+            for (int j = i; j < i + count; j++) {
+                target.put((byte) (packedValue(data[j], width) >> (width - 8)));
+            }
+        }
+        if (width == 4 || width == 12) {
+            int half = (count + 1) / 2;
+            for (int j = 0; j < half; j++) {
+                int high = packedValue(data[i + j], width);
+                int low = j + half < count ? packedValue(data[i + half + j], width) : 0;
+                target.put((byte) ((high << 4) | (low & 15)));
+            }
+        } else if (width == 8 || width == 16) {
+            for (int j = i; j < i + count; j++) {
+                target.put((byte) packedValue(data[j], width));
+            }
+        } else if (width == 32) {
+            for (int j = i; j < i + count; j++) {
+                target.putInt(data[j]);
+            }
+        }
+        return exceptions;
+    }
+
+    /**
+     * An auxiliary method for decode. Unpacks a span of coefficients packed
+     * into the width from the bytes of the line, with loops that just widen
+     * and shift like those of MixedLineCodec. Each width has a method of its
+     * own, since the compiler makes faster code of the short loops that way.
+     */
+    private void getPacked(int[] target, int i, int count, int width) {
+        if (width == 0) {
+            Arrays.fill(target, i, i + count, 0);
+        } else if (width == 4) {
+            getPacked4(target, i, count);
+        } else if (width == 8) {
+            getPacked8(target, i, count);
+        } else if (width == 12) {
+            getPacked12(target, i, count);
+        } else if (width == 16) {
+            getPacked16(target, i, count);
+        } else {
+            int p = position;
+            for (int j = 0; j < count; j++) {
+                target[i + j] = lineBuffer.getInt(p + 4 * j);
+            }
+            position = p + 4 * count;
+        }
+    }
+
+    /**
+     * An auxiliary method for getPacked. Unpacks a span of nibbles. The bytes
+     * are widened first and the ints shifted after that, since the compiler
+     * makes much faster code of that than of shifting the bytes as they are
+     * read.
+     */
+    private void getPacked4(int[] target, int i, int count) {
+        int p = position;
+        int half = (count + 1) / 2;
+        for (int j = 0; j < half; j++) {
+            target[i + j] = bytes[p + j];
+        }
+        for (int j = 0; j < count - half; j++) {
+            target[i + half + j] = (target[i + j] << 28) >> 28;
+        }
+        for (int j = 0; j < half; j++) {
+            target[i + j] >>= 4;
+        }
+        position = p + half;
+    }
+
+    /**
+     * An auxiliary method for getPacked. Widens a span of bytes.
+     */
+    private void getPacked8(int[] target, int i, int count) {
+        int p = position;
+        for (int j = 0; j < count; j++) {
+            target[i + j] = bytes[p + j];
+        }
+        position = p + count;
+    }
+
+    /**
+     * An auxiliary method for getPacked. Unpacks a span of 12 bits from the
+     * bytes of the highest bits and the nibbles of the lowest ones.
+     */
+    private void getPacked12(int[] target, int i, int count) {
+        int p = position;
+        int half = (count + 1) / 2;
+        int q = p + count; // The lowest 4 bits
+        for (int j = 0; j < half; j++) {
+            target[i + j] = (bytes[p + j] << 4) | ((bytes[q + j] >> 4) & 15);
+        }
+        for (int j = 0; j < count - half; j++) {
+            target[i + half + j] = (bytes[p + half + j] << 4) | (bytes[q + j] & 15);
+        }
+        position = q + half;
+    }
+
+    /**
+     * An auxiliary method for getPacked. Unpacks a span of 16 bits from the
+     * bytes of the highest bits and those of the lowest ones.
+     */
+    private void getPacked16(int[] target, int i, int count) {
+        int p = position;
+        int q = p + count; // The lowest 8 bits
+        for (int j = 0; j < count; j++) {
+            target[i + j] = (bytes[p + j] << 8) | (bytes[q + j] & 0xFF);
+        }
+        position = q + count;
+    }
+
+    /**
+     * An auxiliary method for decode. Reads a varint of the spans or the
+     * exceptions, see ZeroRunCodec.
+     */
+    private int getVarint() {
+        int number = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = bytes[position++];
+            number |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return number;
+    }
+
+    /**
+     * Tells whether a coefficient fits into the width as a two's complement
+     * number, i.e. whether its zigzag number has at most that many bits.
+     */
+    private static boolean fits(int value, int width) {
+        return width == 32 || ((value << 1) ^ (value >> 31)) >>> width == 0;
+    }
+
+    /**
+     * An auxiliary method for putPacked. Gives what is packed in the place of
+     * a coefficient.
+     */
+    private static int packedValue(int value, int width) {
+        return fits(value, width) ? value : 0;
+    }
+
+
+
+    /**
+     * An auxiliary method for decode. Decodes the coefficients from the index
+     * i to runEnd - 1 that have the parameter k.
+     *
+     * The next bits are kept in a window whose highest bit is the next one.
+     * The window is filled with 8 bytes read at once and shifted, and always
+     * has at least 56 bits after it's filled, enough for any code or for four
+     * lookups of the table. So the window is filled only once for several
+     * coefficients, up to 12 with the small parameters.
+     */
+    private void decodeRun(int[] target, int i, int runEnd, int k) {
+        long window = 0;
+        int bits = 0; // The number of bits in the window
+        long position = bitPosition; // The index of the first bit not in the window
+        int[] table = k < TABLE_PARAMETERS ? TABLES[k] : null;
+
+        while (i < runEnd) {
+            int byteIndex = (int) (position >>> 3);
+            window |= ((byteIndex <= end - 8 ? source.getLong(byteIndex) : lastBytes(byteIndex))
+                    << (position & 7)) >>> bits;
+            int added = 56 - bits;
+            position += added;
+            bits += added;
+
+            if (table != null) {
+                int lookups = 0;
+                while (lookups < 4 && runEnd - i >= 3) {
+                    int entry = table[(int) (window >>> (64 - TABLE_BITS))];
+                    int count = entry & 3;
+                    if (count == 0) {
+                        break;
+                    }
+                    int used = (entry >>> 2) & 63;
+                    window <<= used;
+                    bits -= used;
+                    target[i] = (byte) (entry >>> 8);
+                    target[i + 1] = (byte) (entry >>> 16);
+                    target[i + 2] = (byte) (entry >>> 24);
+                    i += count;
+                    lookups++;
+                }
+                if (lookups > 0) {
+                    continue;
+                }
+            }
+
+            // Decode codes one by one as long as they are wholly in the window.
+            do {
+                int zeros = Long.numberOfLeadingZeros(window);
+                int number;
+                if (zeros < ESCAPE) {
+                    int length = zeros + 1 + k;
+                    if (length > bits) {
+                        break;
+                    }
+                    number = (zeros << k) | (int) ((window << zeros << 1) >>> (63 - k) >>> 1);
+                    window <<= length;
+                    bits -= length;
+                } else {
+                    if (ESCAPE + 32 > bits) {
+                        break;
+                    }
+                    number = (int) (window >>> (32 - ESCAPE));
+                    window <<= ESCAPE + 32;
+                    bits -= ESCAPE + 32;
+                }
+                target[i++] = (number >>> 1) ^ -(number & 1);
+            } while (i < runEnd && table == null);
+        }
+        bitPosition = position - bits;
+    }
+
+    /**
+     * An auxiliary method for decodeRun. Reads the 8 bytes from the index on
+     * like getLong, but the bytes past the end of the line are 0.
+     */
+    private long lastBytes(int byteIndex) {
+        long bytes = 0;
+        for (int j = byteIndex; j < byteIndex + 8; j++) {
+            bytes = (bytes << 8) | (j < end ? source.get(j) & 0xFF : 0);
+        }
+        return bytes;
+    }
+
+    /**
+     * An auxiliary method for encode. Adds the n lowest bits of the value to
+     * the bits to be written.
+     */
+    private void writeBits(int value, int n) {
+        if (n > 0) {
+            bitsToWrite = (bitsToWrite << n) | (value & (-1L >>> (64 - n)));
+            noOfBitsToWrite += n;
+        }
+    }
+
+    /**
+     * An auxiliary method for encode. Writes all the whole bytes of the bits
+     * to be written.
+     */
+    private void flushBits(ByteBuffer target) {
+        while (noOfBitsToWrite >= 8) {
+            noOfBitsToWrite -= 8;
+            target.put((byte) (bitsToWrite >>> noOfBitsToWrite));
+        }
+    }
+
+    /**
+     * An auxiliary method for encode. Chooses the parameter of each level from
+     * a histogram of the bit lengths of its numbers, so that a few big
+     * numbers don't make the parameter too big for the rest. The best Rice
+     * code and the best width of packing are found, and the Rice code is
+     * taken only if it takes at most half as many bits. An exception is
+     * reckoned to take EXCEPTION_COST bits, about as long as it takes to
+     * decode, so a level gets a wider packing rather than many exceptions.
+     */
+    private void chooseParameters(int[] data, int start, int length) {
+        for (int level = 0; level < levels; level++) {
+            Arrays.fill(histogram[level], 0);
+        }
+        for (int run = 0; run + 1 < runStarts.length; run++) {
+            int[] counts = histogram[runLevels[run]];
+            for (int i = start + runStarts[run]; i < start + runStarts[run + 1]; i++) {
+                int value = data[i];
+                counts[32 - Integer.numberOfLeadingZeros((value << 1) ^ (value >> 31))]++;
+            }
+        }
+
+        for (int level = 0; level < levels; level++) {
+            int[] counts = histogram[level];
+            int maxBits = 32;
+            while (maxBits > 0 && counts[maxBits] == 0) {
+                maxBits--;
+            }
+            // A parameter bigger than the longest number only makes the codes longer.
+            long bestCost = Long.MAX_VALUE;
+            int bestK = 0;
+            for (int k = 0; k <= Math.min(31, maxBits); k++) {
+                long cost = 0;
+                for (int bits = 0; bits <= maxBits; bits++) {
+                    if (counts[bits] == 0) {
+                        continue;
+                    }
+                    // A number of more than k bits has a quotient of about 1.5 * 2^(bits - 1 - k).
+                    long codeLength = bits <= k ? k + 1
+                            : Math.min(ESCAPE + 32, k + 1 + ((3L << (bits - 1 - k)) >>> 1));
+                    cost += codeLength * counts[bits];
+                }
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestK = k;
+                }
+            }
+
+            long packedCost = Long.MAX_VALUE;
+            for (int width : WIDTHS) {
+                long cost = 0;
+                for (int bits = 0; bits <= maxBits; bits++) {
+                    cost += counts[bits] * (bits <= width ? width : width + EXCEPTION_COST);
+                }
+                if (cost < packedCost) {
+                    packedCost = cost;
+                    parameters[level] = PACKED + width;
+                }
+            }
+            if (2 * bestCost <= packedCost) {
+                parameters[level] = bestK;
+            }
+        }
+    }
+
+    /**
+     * An auxiliary method that gives the index of the first run after the
+     * run whose level has another parameter, i.e. the end of its span.
+     */
+    private int spanEnd(int run) {
+        int k = parameters[runLevels[run]];
+        int end = run + 1;
+        while (end < runLevels.length && parameters[runLevels[end]] == k) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * An auxiliary method that splits a line into runs of coefficients of the
+     * same level. The levels are those of EntropyCoder.levelContexts, but
+     * they are found a run at a time: in a block whose length is a power of
+     * two, the coefficients whose distances from the end of the block have
+     * the bit length b are next to each other. The runs of the last length
+     * are kept.
+     */
+    private void findRuns(int length) {
+        if (length == runsLength) {
+            return;
+        }
+        int[] starts = new int[32 * EntropyCoder.LEVEL_CONTEXTS + 1];
+        int[] startLevels = new int[32 * EntropyCoder.LEVEL_CONTEXTS];
+        int runs = 0;
+        levels = 0;
+        int blockStart = 0;
+        while (blockStart < length) {
+            int blockLength = Integer.highestOneBit(length - blockStart);
+            for (int bits = 32 - Integer.numberOfLeadingZeros(blockLength - 1); bits >= 0; bits--) {
+                int level = Math.min(EntropyCoder.LEVEL_CONTEXTS - 1, bits);
+                if (runs == 0 || startLevels[runs - 1] != level) {
+                    // The distances 2^(bits - 1),...,2^bits - 1 begin here.
+                    starts[runs] = blockStart + blockLength - (1 << bits);
+                    startLevels[runs++] = level;
+                }
+                levels = Math.max(levels, level + 1);
+            }
+            blockStart += blockLength;
+        }
+        runStarts = Arrays.copyOf(starts, runs + 1);
+        runStarts[runs] = length;
+        runLevels = Arrays.copyOf(startLevels, runs);
+        runsLength = length;
+    }
+
+    /**
+     * Creates the tables of the decoder. An entry tells how many whole codes
+     * (0 to 3) there are in the 12 bits of its index, how many bits they
+     * take, and the coefficients they stand for, as bytes.
+     */
+    private static int[][] createTables() {
+        int[][] tables = new int[TABLE_PARAMETERS][1 << TABLE_BITS];
+        for (int k = 0; k < TABLE_PARAMETERS; k++) {
+            for (int bits = 0; bits < (1 << TABLE_BITS); bits++) {
+                int used = 0;
+                int count = 0;
+                int entry = 0;
+                while (count < 3) {
+                    int zeros = 0;
+                    while (used + zeros < TABLE_BITS && ((bits >>> (TABLE_BITS - 1 - used - zeros)) & 1) == 0) {
+                        zeros++;
+                    }
+                    if (used + zeros + 1 + k > TABLE_BITS) {
+                        break;
+                    }
+                    int remainder = (bits >>> (TABLE_BITS - used - zeros - 1 - k)) & ((1 << k) - 1);
+                    int number = (zeros << k) | remainder;
+                    int value = (number >>> 1) ^ -(number & 1);
+                    entry |= (value & 0xFF) << (8 * (count + 1));
+                    used += zeros + 1 + k;
+                    count++;
+                }
+                tables[k][bits] = entry | (used << 2) | count;
+            }
+        }
+        return tables;
+    }
+}
@@ -0,0 +1,116 @@
+package compression;
+
+import java.util.Arrays;
+
+/**
+ * A line of a transform that holds only the coefficients that aren't zero,
+ * with their positions on the line in increasing order. Lines of zero run
+ * coded files can be decoded into these with ZeroRunCodec, and they can be
+ * inverse transformed with HaarTransform.sparseInverse, which doesn't go
+ * through the zeros one by one. The arrays grow when needed and are reused
+ * when the line is cleared.
+ */
+public class SparseLine {
+
+    private int length;
+    private int count;
+    private int[] positions = new int[16];
+    private int[] values = new int[16];
+
+    /**
+     * Creates an empty line of the length 0.
+     */
+    public SparseLine() {
+    }
+
+    /**
+     * Creates a sparse line that holds the same coefficients as a part of an
+     * array.
+     *
+     * @param data The array.
+     * @param start The index where the line begins.
+     * @param length The number of coefficients on the line.
+     * @return The line.
+     */
+    public static SparseLine fromDense(int[] data, int start, int length) {
+        SparseLine line = new SparseLine();
+        line.clear(length);
+        for (int i = 0; i < length; i++) {
+            if (data[start + i] != 0) {
+                line.add(i, data[start + i]);
+            }
+        }
+        return line;
+    }
+
+    /**
+     * Removes all the coefficients and sets the length of the line.
+     *
+     * @param length The new length.
+     */
+    public void clear(int length) {
+        this.length = length;
+        count = 0;
+    }
+
+    /**
+     * Adds a coefficient after the ones already on the line.
+     *
+     * @param position The position of the coefficient, bigger than the
+     * positions of the ones already on the line.
+     * @param value The coefficient.
+     */
+    public void add(int position, int value) {
+        if (count == positions.length) {
+            positions = Arrays.copyOf(positions, 2 * count);
+            values = Arrays.copyOf(values, 2 * count);
+        }
+        positions[count] = position;
+        values[count++] = value;
+    }
+
+    /**
+     * Writes the line with its zeros into an array.
+     *
+     * @param target The array.
+     * @param start The index where the line will begin in the array.
+     */
+    public void toDense(int[] target, int start) {
+        Arrays.fill(target, start, start + length, 0);
+        for (int k = 0; k < count; k++) {
+            target[start + positions[k]] = values[k];
+        }
+    }
+
+    /**
+     * @return The length of the line, the zeros included.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return The number of coefficients that aren't zero.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @param k The number of a coefficient that isn't zero, from 0 to
+     * getCount() - 1.
+     * @return Its position on the line.
+     */
+    public int getPosition(int k) {
+        return positions[k];
+    }
+
+    /**
+     * @param k The number of a coefficient that isn't zero, from 0 to
+     * getCount() - 1.
+     * @return Its value.
+     */
+    public int getValue(int k) {
+        return values[k];
+    }
+}
@@ -0,0 +1,117 @@
+package compression;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Converts a wtf-file into a bmp-file without having the whole transform or
+ * the whole image in memory. This is the inverse of StreamingEncoder: the
+ * lines are read one at a time, a strip of columns (or of columns of tiles)
+ * at a time, and each strip is inverse transformed and written with a
+ * BmpWriter before the next one is read.
+ *
+ * Every color is read from its own WTFIO, which is first moved to the first
+ * line of the color with skipLines, so the file is read only once more than
+ * with WTFIO.readData. The two-dimensional transform needs the whole
+ * transform, so files of type 2 can't be converted this way, and neither can
+ * the entropy coded files of type 5 or the progressive files of type 8. If
+ * the colors of the file have been transformed with ColorTransform, they are
+ * turned back strip by strip. The strips of a row-major file are bands of
+ * rows of the image, which are written with BmpWriter.writeRows.
+ */
+public class StreamingDecoder {
+
+    /**
+     * Tells whether a file can be converted a strip at a time.
+     *
+     * @param file The file.
+     * @return True for all the types except the two-dimensional one, the
+     * entropy coded one and the progressive one, which can't be read a line
+     * at a time.
+     */
+    public static boolean canDecode(WTFIO file) {
+        byte type = file.getTypeOfFile();
+        return type != WTFIO.TYPE_MIXED_2D && type != WTFIO.TYPE_ENTROPY && type != WTFIO.TYPE_PROGRESSIVE;
+    }
+
+    /**
+     * Converts a wtf-file into a bmp-file in strips.
+     *
+     * @param input The wtf-file.
+     * @param output The bmp-file to be written.
+     * @param memoryBudget How many bytes a strip may take. The strips are as
+     * wide as with StreamingEncoder.stripWidth.
+     * @param pool The pool whose threads do the inverse transforms.
+     * @throws IOException
+     */
+    public static void decode(File input, File output, long memoryBudget, ForkJoinPool pool) throws IOException {
+        WTFIO header = new WTFIO(input);
+        if (!canDecode(header)) {
+            header.close();
+            throw new IllegalArgumentException("This type of file can't be decoded in strips.");
+        }
+        int colors = header.getNoOfColors();
+        int width = header.getOriginalWidth();
+        int height = header.getOriginalHeight();
+        int levelOfLoss = header.getLevelOfLoss();
+        int tileSize = header.getTileSize();
+
+        WTFIO[] cursors = new WTFIO[colors];
+        cursors[0] = header;
+        for (int c = 1; c < colors; c++) {
+            cursors[c] = new WTFIO(input);
+            cursors[c].skipLines(c * header.getLines());
+        }
+
+        int stripWidth = StreamingEncoder.stripWidth(height, colors, tileSize, memoryBudget);
+        BmpWriter writer = header.isRowMajor() ? new BmpWriter(output, height, width, colors)
+                : new BmpWriter(output, width, height, colors);
+
+        for (int x = 0; x < width; x += stripWidth) {
+            int columns = Math.min(stripWidth, width - x);
+            ImagePlanes strip;
+            if (tileSize > 0) {
+                Tiling tiling = new Tiling(columns, height, tileSize, levelOfLoss);
+                CoefficientPlanes transform = new CoefficientPlanes(colors, tiling);
+                readLines(cursors, transform, tiling.compressedLineLengths().length);
+                if (header.hasColorTransform()) {
+                    ColorTransform.inverse(transform);
+                }
+                strip = HaarTransform.inverseLossyTransformTiled(transform, columns, height, levelOfLoss,
+                        tileSize, pool);
+            } else {
+                CoefficientPlanes transform = new CoefficientPlanes(colors, columns, header.getCompressedHeight());
+                readLines(cursors, transform, columns);
+                if (header.hasColorTransform()) {
+                    ColorTransform.inverse(transform);
+                }
+                strip = ParallelTransform.inverseLossyTransform(transform, height, levelOfLoss, pool);
+            }
+            if (header.isRowMajor()) {
+                writer.writeRows(x, strip);
+            } else {
+                writer.writeColumns(x, strip);
+            }
+        }
+
+        writer.close();
+        for (WTFIO cursor : cursors) {
+            cursor.close();
+        }
+    }
+
+    /**
+     * An auxiliary method for decode. Reads the next lines of every color
+     * one after another into the planes.
+     */
+    private static void readLines(WTFIO[] cursors, CoefficientPlanes transform, int lines) throws IOException {
+        for (int c = 0; c < cursors.length; c++) {
+            int[] plane = transform.getPlane(c);
+            int offset = 0;
+            for (int line = 0; line < lines; line++) {
+                offset += cursors[c].nextLine(plane, offset);
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package compression;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Converts an image into a wtf-file without having the whole image or the
+ * whole transform in memory. The image is read in vertical strips of whole
+ * columns, and each strip is transformed and written with a WTFWriter before
+ * the next one is read. 24-bit bmp-files are read with BmpReader straight
+ * from the mapped file, other images with the readers of ImageIO. The columns are transformed independently of each
+ * other, and so are the columns of tiles of the tiled transform, so the file
+ * is exactly the same as when the whole image is transformed at once.
+ *
+ * The width of the strips is chosen so that a strip with its transform takes
+ * at most the given number of bytes. A strip has at least one column (or one
+ * column of tiles), so for very tall images the memory budget may be
+ * exceeded. The two-dimensional transform needs the whole image, so it can't
+ * be done in strips.
+ */
+public class StreamingEncoder {
+
+    public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+    // A strip is kept in memory as an image of at most 4 bytes per pixel...
+    private static int IMAGE_BYTES_PER_PIXEL = 4;
+    // ...and as planes of bytes and their transforms as ints:
+    private static int BYTES_PER_PIXEL_AND_COLOR = 1 + 4;
+
+    /**
+     * Tells how wide strips fit into the memory budget.
+     *
+     * @param height The height of the image.
+     * @param colors The number of colors.
+     * @param tileSize The size of the tiles of the tiled transform, or 0 for
+     * the column transform.
+     * @param memoryBudget The number of bytes a strip may take.
+     * @return The width of the strips: at least 1, and a multiple of tileSize
+     * for the tiled transform.
+     */
+    public static int stripWidth(int height, int colors, int tileSize, long memoryBudget) {
+        long bytesPerColumn = (long) height * (IMAGE_BYTES_PER_PIXEL + colors * BYTES_PER_PIXEL_AND_COLOR);
+        long columns = Math.max(1, memoryBudget / bytesPerColumn);
+        if (tileSize > 0) {
+            columns = Math.max(1, columns / tileSize) * tileSize;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, columns);
+    }
+
+    /**
+     * Converts an image into a wtf-file of type 1 (column transform) or type
+     * 3 (tiled transform) a strip at a time. The file has as many colors as
+     * BitmapIO.channels gives for the image.
+     *
+     * @param input The image, e.g. a bmp-file.
+     * @param output The wtf-file to be written.
+     * @param levelOfLoss The level of loss.
+     * @param tileSize The size of the tiles, or 0 for the column transform.
+     * @param memoryBudget How many bytes a strip may take, see stripWidth.
+     * @param pool The pool whose threads transform the strips.
+     * @throws IOException
+     */
+    public static void encode(File input, File output, int levelOfLoss, int tileSize, long memoryBudget,
+            ForkJoinPool pool) throws IOException {
+        BmpReader bmp = BmpReader.open(input);
+        ImageReader reader = bmp == null ? imageReader(input) : null;
+        int width = bmp != null ? bmp.getWidth() : reader.getWidth(0);
+        int height = bmp != null ? bmp.getHeight() : reader.getHeight(0);
+        int colors = bmp != null ? bmp.getColors()
+                : BitmapIO.channels(reader.getImageTypes(0).next().getColorModel());
+        int stripWidth = stripWidth(height, colors, tileSize, memoryBudget);
+        WTFWriter writer = tileSize > 0
+                ? WTFWriter.tiled(output, colors, width, height, levelOfLoss, tileSize)
+                : WTFWriter.mixed(output, colors, width, height, levelOfLoss);
+
+        for (int x = 0; x < width; x += stripWidth) {
+            int columns = Math.min(stripWidth, width - x);
+            ImagePlanes strip;
+            if (bmp != null) {
+                strip = bmp.readColumns(x, columns);
+            } else {
+                ImageReadParam region = reader.getDefaultReadParam();
+                region.setSourceRegion(new Rectangle(x, 0, columns, height));
+                strip = BitmapIO.imageToPlanes(reader.read(0, region));
+            }
+            if (tileSize > 0) {
+                writeTiles(strip, levelOfLoss, tileSize, writer, pool);
+            } else {
+                writeColumns(strip, levelOfLoss, writer, pool);
+            }
+        }
+
+        writer.close();
+        if (bmp != null) {
+            bmp.close();
+        } else {
+            ImageInputStream stream = (ImageInputStream) reader.getInput();
+            reader.dispose();
+            stream.close();
+        }
+    }
+
+    /**
+     * An auxiliary method for encode. Opens an image that BmpReader doesn't
+     * read with ImageIO.
+     */
+    private static ImageReader imageReader(File input) throws IOException {
+        ImageInputStream stream = ImageIO.createImageInputStream(input);
+        if (stream == null) {
+            throw new IOException("Can't read " + input);
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+        if (!readers.hasNext()) {
+            stream.close();
+            throw new IOException("Unknown image format: " + input);
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(stream, true, true);
+        return reader;
+    }
+
+    /**
+     * An auxiliary method for encode. Transforms the columns of a strip and
+     * writes them.
+     */
+    private static void writeColumns(ImagePlanes strip, int levelOfLoss, WTFWriter writer, ForkJoinPool pool)
+            throws IOException {
+        CoefficientPlanes transform = ParallelTransform.lossyTransform(strip, levelOfLoss, pool);
+        for (int c = 0; c < transform.getColors(); c++) {
+            for (int m = 0; m < transform.getLines(); m++) {
+                writer.writeLine(c, transform.getPlane(c), transform.lineOffset(m), transform.getLineLength());
+            }
+        }
+    }
+
+    /**
+     * An auxiliary method for encode. Transforms the tiles of a strip and
+     * writes them. The strip is a whole number of columns of tiles, except
+     * maybe at the right edge, so its tiles are in the same order as in the
+     * whole image.
+     */
+    private static void writeTiles(ImagePlanes strip, int levelOfLoss, int tileSize, WTFWriter writer,
+            ForkJoinPool pool) throws IOException {
+        Tiling tiling = new Tiling(strip.getWidth(), strip.getHeight(), tileSize, levelOfLoss);
+        CoefficientPlanes transform = HaarTransform.lossyTransformTiled(strip, levelOfLoss, tileSize, pool);
+        for (int c = 0; c < transform.getColors(); c++) {
+            for (int tile = 0; tile < tiling.getTiles(); tile++) {
+                int lineLength = tiling.compressedTileHeight(tile);
+                for (int j = 0; j < tiling.compressedTileWidth(tile); j++) {
+                    writer.writeLine(c, transform.getPlane(c), tiling.tileOffset(tile) + j * lineLength, lineLength);
+                }
+            }
+        }
+    }
+}
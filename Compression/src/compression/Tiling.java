@@ -0,0 +1,147 @@
+package compression;
+
+/**
+ * Tells how a picture is split into square tiles for the tiled transform. The
+ * tiles are numbered column by column: tile t is the (t % tilesDown):th tile
+ * from the top in the (t / tilesDown):th column of tiles. The tiles on the
+ * right and bottom edges are smaller if the tile size doesn't divide the
+ * width or height of the picture.
+ */
+public class Tiling {
+
+    private int width;
+    private int height;
+    private int tileSize;
+    private int levelOfLoss;
+    private int tilesAcross;
+    private int tilesDown;
+    private int[] offsets;
+    private int maxCompressedLength;
+
+    /**
+     * @param width The width of the picture.
+     * @param height The height of the picture.
+     * @param tileSize The width and height of a tile.
+     * @param levelOfLoss The level of loss of the transform of the tiles.
+     */
+    public Tiling(int width, int height, int tileSize, int levelOfLoss) {
+        if (tileSize < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.levelOfLoss = levelOfLoss;
+        tilesAcross = (width + tileSize - 1) / tileSize;
+        tilesDown = (height + tileSize - 1) / tileSize;
+
+        offsets = new int[getTiles() + 1];
+        for (int tile = 0; tile < getTiles(); tile++) {
+            offsets[tile + 1] = offsets[tile] + compressedTileWidth(tile) * compressedTileHeight(tile);
+            maxCompressedLength = Math.max(maxCompressedLength,
+                    Math.max(compressedTileWidth(tile), compressedTileHeight(tile)));
+        }
+    }
+
+    /**
+     * @return The number of tiles.
+     */
+    public int getTiles() {
+        return tilesAcross * tilesDown;
+    }
+
+    /**
+     * @return The width and height of a tile.
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * @return The x-coordinate of the left edge of the tile.
+     */
+    public int tileX(int tile) {
+        return (tile / tilesDown) * tileSize;
+    }
+
+    /**
+     * @return The y-coordinate of the upper edge of the tile.
+     */
+    public int tileY(int tile) {
+        return (tile % tilesDown) * tileSize;
+    }
+
+    /**
+     * @return The width of the tile.
+     */
+    public int tileWidth(int tile) {
+        return Math.min(tileSize, width - tileX(tile));
+    }
+
+    /**
+     * @return The height of the tile.
+     */
+    public int tileHeight(int tile) {
+        return Math.min(tileSize, height - tileY(tile));
+    }
+
+    /**
+     * @return The number of lines in the transform of the tile.
+     */
+    public int compressedTileWidth(int tile) {
+        return HaarTransform.compressedLength(tileWidth(tile), levelOfLoss);
+    }
+
+    /**
+     * @return The length of the lines in the transform of the tile.
+     */
+    public int compressedTileHeight(int tile) {
+        return HaarTransform.compressedLength(tileHeight(tile), levelOfLoss);
+    }
+
+    /**
+     * Tells how long a line or a column of the transform of a tile can be.
+     * The compressed length isn't monotonic in the length, so a tile on the
+     * edge may need more room than a whole tile.
+     *
+     * @return The biggest compressedTileWidth or compressedTileHeight of the
+     * tiles.
+     */
+    public int maxCompressedLength() {
+        return maxCompressedLength;
+    }
+
+    /**
+     * Tells where the transform of the tile begins when the transforms of all
+     * the tiles of a color are one after another, like in the class
+     * CoefficientPlanes. The offset of the tile getTiles() is the total length
+     * of the transforms.
+     *
+     * @return The index of the first coefficient of the tile.
+     */
+    public int tileOffset(int tile) {
+        return offsets[tile];
+    }
+
+    /**
+     * Lists the lengths of the lines of the transforms of all the tiles in
+     * order: the lines of the first tile, then those of the second and so on.
+     * This is the order of the lines of a tiled wtf-file.
+     *
+     * @return The lengths of the lines.
+     */
+    public int[] compressedLineLengths() {
+        int lines = 0;
+        for (int tile = 0; tile < getTiles(); tile++) {
+            lines += compressedTileWidth(tile);
+        }
+        int[] lengths = new int[lines];
+        int line = 0;
+        for (int tile = 0; tile < getTiles(); tile++) {
+            for (int j = 0; j < compressedTileWidth(tile); j++) {
+                lengths[line++] = compressedTileHeight(tile);
+            }
+        }
+        return lengths;
+    }
+}
@@ -1,13 +1,21 @@
 package compression;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This is for reading and writing the compressed pictures, a.k.a. wtf-files.
@@ -15,12 +23,17 @@ import java.nio.ByteBuffer;
  * The file header has the following information 
  * ------------------------- 
  * byte Type of the file, tells how the rest of the information is coded 
- * short No of colors = 3 // for possible alterations 
+ * short No of colors = 3 // plus the flags COLOR_TRANSFORM_FLAG and ROW_MAJOR_FLAG 
  * int Width of the original picture 
  * int height of the original picture 
  * short level of loss 
  * int length of one line in the compressed form. 
  * ====================== 
+ * With ROW_MAJOR_FLAG the file holds the transform of an image in the
+ * row-major layout of ImagePlanes, i.e. of the transposed image, so its lines
+ * are the rows of the image, and the width and height in the header are
+ * those of the transposed image. Otherwise the lines are the columns.
+ *
  * The Integer form has all the data
  * written as integers: t[0][0][0], t[0][0][1], t[0][0][2], t[0][0][3],... It's
  * file type (the first byte of the file) is 0.
@@ -30,228 +43,2069 @@ import java.nio.ByteBuffer;
  * how manyth is the first coefficient that is of the type int. The data will be
  * bytes until the index shortOffset is reached, then shorts until intOffset is
  * reached, and all the rest are integers. Mixed form's file type is 1.
+ *
+ * The two-dimensional form holds a transform of the method
+ * HaarTransform.lossyTransform2D written as mixed data. There are only
+ * HaarTransform.compressedLength(width, level of loss) lines per color, but
+ * the header still tells the width of the original picture. Its file type is 2.
+ *
+ * The tiled form holds a transform of the method
+ * HaarTransform.lossyTransformTiled. The header has one more entry
+ * ------------------------- 
+ * int The width and height of the tiles
+ * ======================
+ * and the int telling the length of a line is the length of the lines of
+ * the tiles that are not on the bottom edge. After the header come the tiles
+ * of the first color in the order told by the class Tiling, then those of
+ * the second color and so on. Each tile is written as mixed data, line by
+ * line. Its file type is 3.
+ *
+ * The indexed form holds a column transform or a tiled transform, written
+ * like in the forms 1 and 3, but it tells where each line begins. The header
+ * has one more entry
+ * -------------------------
+ * int The width and height of the tiles, 0 for the column transform
+ * ======================
+ * and after it comes a table of longs, one for each line of each color in
+ * the order of the lines, that tells how many bytes from the beginning of
+ * the file the line begins. With it any line can be read without reading the
+ * lines before it (see readLineAt), and the lines can be decoded by several
+ * threads at the same time (see readPlanes(ForkJoinPool)). Its file type is 4.
+ *
+ * The entropy coded form holds a column transform or a tiled transform coded
+ * with the class EntropyCoder. The lines of each color are coded in blocks of
+ * about the same number of coefficients, and each block is coded on its own,
+ * so the blocks can be coded and decoded by several threads at the same
+ * time. The header has more entries
+ * -------------------------
+ * int The width and height of the tiles, 0 for the column transform
+ * int How many coefficients there are at least in a block
+ * int The number of blocks
+ * ======================
+ * and after it comes a table of longs that tells how many bytes from the
+ * beginning of the file each block begins. A block begins with the first
+ * line of a color, or after the line where its coefficients reach the number
+ * in the header. Its file type is 5. The file can only be read all at once.
+ *
+ * The Rice coded form holds a column transform or a tiled transform like
+ * the forms 1 and 3, but every line is coded with the class RiceCoder. The
+ * header has one more entry
+ * -------------------------
+ * int The width and height of the tiles, 0 for the column transform
+ * ======================
+ * The files are smaller than those of the mixed form and at least as fast
+ * to read. Its file type is 6.
+ *
+ * The zero run coded form is like the Rice coded form, but the lines are
+ * coded with the class ZeroRunCodec, which codes runs of zeros in a byte or a
+ * few. It's meant for high levels of loss and images with flat areas, where
+ * most of the differences are zero. Its file type is 7.
+ *
+ * The progressive form holds a column transform or a tiled transform coded
+ * with the class BitPlaneCoder, which writes the bits of all the
+ * coefficients from the most important ones to the least important ones.
+ * The header has more entries
+ * -------------------------
+ * int The width and height of the tiles, 0 for the column transform
+ * int The number of groups of coefficients
+ * int for each group, the number of bits of its biggest coefficient
+ * ======================
+ * and after it comes the stream of BitPlaneCoder. The file can be cut after
+ * any byte, and the beginning still decodes to a coarser transform (see
+ * readProgressive). Its file type is 8. It can only be read all at once.
+ *
+ * A file can be read all at once with the methods readData, readPlanes etc.,
+ * or one line at a time with the methods nextLine and skipLines. The lines of
+ * the first color come first, then those of the second and so on. The two
+ * ways can't be mixed, and a file can be read only once with one object, but
+ * several objects can read the same file at the same time, e.g. one color
+ * each.
+ *
+ * Whole files are read from a memory-mapped buffer and written through a
+ * FileChannel with MixedLineCodec, so nothing is allocated per line. The
+ * older way with the streams of java.io is used instead if the property
+ * -Dcompression.io=stream is set, if it's chosen with setMappedIO, or if a
+ * file is too big to be mapped at once. Both ways give the same results.
  */
 public class WTFIO {
 
+    public static final byte TYPE_INTEGER = 0;
+    public static final byte TYPE_MIXED = 1;
+    public static final byte TYPE_MIXED_2D = 2;
+    public static final byte TYPE_MIXED_TILED = 3;
+    public static final byte TYPE_INDEXED = 4;
+    public static final byte TYPE_ENTROPY = 5;
+    public static final byte TYPE_RICE = 6;
+    public static final byte TYPE_ZERO_RUN = 7;
+    public static final byte TYPE_PROGRESSIVE = 8;
+    public static final String IO_PROPERTY = "compression.io";
+    public static final int COLOR_TRANSFORM_FLAG = 0x100; // In the number of colors, see ColorTransform
+    public static final int ROW_MAJOR_FLAG = 0x200; // In the number of colors, see isRowMajor
+    private static int HEADER_SIZE = 17; // And 4 more in a tiled or indexed file
+    private static int WRITE_BUFFER_SIZE = 1 << 20;
+    private static int ENTROPY_BLOCK_SIZE = 1 << 16;
+    private static int SPARSE_LIMIT = 5; // See readSparseImage
+    private static boolean mappedIO = !"stream".equals(System.getProperty(IO_PROPERTY));
+
+    private File file;
     private DataInputStream reader;
     private byte typeOfFile;
     private short noOfColors;
+    private boolean colorTransform;
+    private boolean rowMajor;
     private int originalWidth;
     private int originalHeight;
     private short levelOfLoss;
     private int compressedHeight;
+    private int tileSize;
+    private int[] lineLengths; // Of a color of a tiled file, see getLineLength
+    private int linesRead;
+    private long[] index; // Where the lines of an indexed file begin
+    private RandomAccessFile randomAccess; // For readLineAt
+    private int blockSize; // Of an entropy coded file
+    private long[] blockIndex; // Where the blocks of an entropy coded file begin
+    private MixedLineCodec codec = new MixedLineCodec();
+    private LineCoder lineCoder; // Of a Rice or zero run coded file
+    private int[] highestBits; // Of the groups of a progressive file
+    private ByteBuffer lineBuffer = ByteBuffer.allocate(0); // For nextLine
+
+    /**
+     * This is for creating a new WTFIO-object, which has to be done only when
+     * reading data. To write down data you can use the static methods.
+     *
+     * @param file The file from which the data will be read.
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public WTFIO(File file) throws FileNotFoundException, IOException {
+        this.file = file;
+        reader = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        typeOfFile = reader.readByte();
+        short colorsField = reader.readShort();
+        noOfColors = (short) (colorsField & 0xFF);
+        colorTransform = (colorsField & COLOR_TRANSFORM_FLAG) != 0;
+        rowMajor = (colorsField & ROW_MAJOR_FLAG) != 0;
+        originalWidth = reader.readInt();
+        originalHeight = reader.readInt();
+        levelOfLoss = reader.readShort();
+        compressedHeight = reader.readInt();
+        if (typeOfFile == TYPE_MIXED_TILED || typeOfFile == TYPE_INDEXED || typeOfFile == TYPE_ENTROPY
+                || isLengthPrefixed() || typeOfFile == TYPE_PROGRESSIVE) {
+            tileSize = reader.readInt();
+        }
+        if (typeOfFile == TYPE_PROGRESSIVE) {
+            highestBits = new int[reader.readInt()];
+            for (int i = 0; i < highestBits.length; i++) {
+                highestBits[i] = reader.readInt();
+            }
+        }
+        if (isLengthPrefixed()) {
+            lineCoder = newLineCoder(typeOfFile);
+        }
+        if (typeOfFile == TYPE_ENTROPY) {
+            blockSize = reader.readInt();
+            blockIndex = new long[reader.readInt()];
+            for (int i = 0; i < blockIndex.length; i++) {
+                blockIndex[i] = reader.readLong();
+            }
+        }
+        if (typeOfFile == TYPE_INDEXED) {
+            index = new long[noOfColors * getLines()];
+            for (int i = 0; i < index.length; i++) {
+                index[i] = reader.readLong();
+            }
+        }
+    }
+
+    /**
+     * Chooses how whole files are read and written, see the description of
+     * this class.
+     *
+     * @param mapped True for mapped files and channels (the default), false
+     * for the streams.
+     */
+    public static void setMappedIO(boolean mapped) {
+        mappedIO = mapped;
+    }
+
+    /**
+     * @return True if whole files are read and written with mapped files and
+     * channels.
+     */
+    public static boolean isMappedIO() {
+        return mappedIO;
+    }
+
+    /**
+     * This writes a wtf-file on the hard disk as "integer data", which is
+     * specified in the description of this class. It corresponds to file type 0.
+     * Every coefficient of the transform will be written down as an integer, so
+     * this is a particularly wasteful way to do it.
+     *
+     * @param transform The transform to be written down.
+     * @param originalHeight The height of the original picture before the
+     * transform. In more general use, this is the length of the compressed data
+     * array.
+     * @param levelOfLoss The loss coefficient: how many levels of wavelets is
+     * omitted in the transform.
+     * @param outputFile The file to which the data will be written.
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public static void writeIntegerData(int[][][] transform, int originalHeight,
+            int levelOfLoss, File outputFile) throws FileNotFoundException, IOException {
+        writeIntegerData(CoefficientPlanes.fromJagged(transform), originalHeight, levelOfLoss, outputFile);
+    }
+
+    /**
+     * Writes a transform that is stored in planes as integer data. See
+     * writeIntegerData(int[][][], int, int, File).
+     *
+     * @param transform The transform to be written down.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of wavelets are omitted.
+     * @param outputFile The file to which the data will be written.
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public static void writeIntegerData(CoefficientPlanes transform, int originalHeight,
+            int levelOfLoss, File outputFile) throws FileNotFoundException, IOException {
+
+        DataOutputStream writer = new DataOutputStream(new FileOutputStream(outputFile));
+        createHeader(colorsField(transform), transform.getLines(), originalHeight, levelOfLoss,
+                transform.getLineLength(), writer, TYPE_INTEGER);
+
+        for (int i = 0; i < transform.getColors(); i++) {
+            int[] plane = transform.getPlane(i);
+            for (int k = 0; k < transform.getLines() * transform.getLineLength(); k++) {
+                writer.writeInt(plane[k]);
+            }
+        }
+
+        writer.flush();
+        writer.close();
+
+    }
+
+    /**
+     * This writes a wtf-file on the hard disk as "mixed data", which is
+     * specified in the description of this class. Each line of the transform
+     * will be written down as bytes, shorts and ints in that order, so that
+     * after the first short only shorts and ints occur, and after the first int
+     * only ints.
+     *
+     * @param transform The transform to be written down.
+     * @param originalHeight The height of the original picture before the
+     * transform. In more general use, this is the length of the compressed data
+     * array.
+     * @param levelOfLoss The loss coefficient: how many levels of wavelets is
+     * omitted in the transform.
+     * @param outputFile The file to which the data will be written.
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public static void writeMixedData(int[][][] transform, int originalHeight,
+            int levelOfLoss, File file) throws FileNotFoundException, IOException {
+        writeMixedData(CoefficientPlanes.fromJagged(transform), originalHeight, levelOfLoss, file);
+    }
+
+    /**
+     * Writes a transform that is stored in planes as mixed data. See
+     * writeMixedData(int[][][], int, int, File).
+     *
+     * @param transform The transform to be written down.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of wavelets are omitted.
+     * @param file The file to which the data will be written.
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public static void writeMixedData(CoefficientPlanes transform, int originalHeight,
+            int levelOfLoss, File file) throws FileNotFoundException, IOException {
+        writeMixedData(transform, originalHeight, levelOfLoss, file, null);
+    }
+
+    /**
+     * Writes a transform that is stored in planes as mixed data, the lines
+     * encoded by the threads of the pool (see ParallelMixedWriter). See
+     * writeMixedData(int[][][], int, int, File).
+     *
+     * @param transform The transform to be written down.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of wavelets are omitted.
+     * @param file The file to which the data will be written.
+     * @param pool The pool whose threads encode the lines, or null to encode
+     * them with this thread.
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public static void writeMixedData(CoefficientPlanes transform, int originalHeight,
+            int levelOfLoss, File file, ForkJoinPool pool) throws FileNotFoundException, IOException {
+
+        byte[] header = headerBytes(colorsField(transform), transform.getLines(), originalHeight, levelOfLoss,
+                transform.getLineLength(), TYPE_MIXED, 0);
+        writeMixedFile(file, header, transform, sameLengths(transform), false, pool);
+    }
+
+    /**
+     * This writes a two-dimensional transform, produced by the method
+     * HaarTransform.lossyTransform2D, on the hard disk as mixed data. The file
+     * type is 2.
+     *
+     * @param transform The transform to be written down.
+     * @param originalWidth The width of the original picture.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of wavelets are omitted in each direction.
+     * @param file The file to which the data will be written.
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public static void writeMixedData2D(int[][][] transform, int originalWidth, int originalHeight,
+            int levelOfLoss, File file) throws FileNotFoundException, IOException {
+        writeMixedData2D(CoefficientPlanes.fromJagged(transform), originalWidth, originalHeight, levelOfLoss, file);
+    }
+
+    /**
+     * Writes a two-dimensional transform that is stored in planes. See
+     * writeMixedData2D(int[][][], int, int, int, File).
+     *
+     * @param transform The transform to be written down.
+     * @param originalWidth The width of the original picture.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of wavelets are omitted in each direction.
+     * @param file The file to which the data will be written.
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public static void writeMixedData2D(CoefficientPlanes transform, int originalWidth, int originalHeight,
+            int levelOfLoss, File file) throws FileNotFoundException, IOException {
+        writeMixedData2D(transform, originalWidth, originalHeight, levelOfLoss, file, null);
+    }
+
+    /**
+     * Writes a two-dimensional transform that is stored in planes, the lines
+     * encoded by the threads of the pool. See writeMixedData2D(int[][][], int,
+     * int, int, File).
+     *
+     * @param transform The transform to be written down.
+     * @param originalWidth The width of the original picture.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of wavelets are omitted in each direction.
+     * @param file The file to which the data will be written.
+     * @param pool The pool whose threads encode the lines, or null.
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public static void writeMixedData2D(CoefficientPlanes transform, int originalWidth, int originalHeight,
+            int levelOfLoss, File file, ForkJoinPool pool) throws FileNotFoundException, IOException {
+
+        byte[] header = headerBytes(colorsField(transform), originalWidth, originalHeight, levelOfLoss,
+                transform.getLineLength(), TYPE_MIXED_2D, 0);
+        writeMixedFile(file, header, transform, sameLengths(transform), false, pool);
+    }
+
+    /**
+     * This writes a tiled transform, produced by the method
+     * HaarTransform.lossyTransformTiled, on the hard disk. The file type is 3.
+     *
+     * @param transform The transform to be written down.
+     * @param originalWidth The width of the original picture.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of wavelets are omitted in each direction.
+     * @param tileSize The width and height of the tiles.
+     * @param file The file to which the data will be written.
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public static void writeMixedDataTiled(int[][][] transform, int originalWidth, int originalHeight,
+            int levelOfLoss, int tileSize, File file) throws FileNotFoundException, IOException {
+        Tiling tiling = new Tiling(originalWidth, originalHeight, tileSize, levelOfLoss);
+        writeMixedDataTiled(CoefficientPlanes.fromJagged(transform, tiling), originalWidth, originalHeight,
+                levelOfLoss, tileSize, file);
+    }
+
+    /**
+     * Writes a tiled transform that is stored in planes. See
+     * writeMixedDataTiled(int[][][], int, int, int, int, File).
+     *
+     * @param transform The transform to be written down.
+     * @param originalWidth The width of the original picture.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of wavelets are omitted in each direction.
+     * @param tileSize The width and height of the tiles.
+     * @param file The file to which the data will be written.
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public static void writeMixedDataTiled(CoefficientPlanes transform, int originalWidth, int originalHeight,
+            int levelOfLoss, int tileSize, File file) throws FileNotFoundException, IOException {
+        writeMixedDataTiled(transform, originalWidth, originalHeight, levelOfLoss, tileSize, file, null);
+    }
+
+    /**
+     * Writes a tiled transform that is stored in planes, the lines encoded by
+     * the threads of the pool. See writeMixedDataTiled(int[][][], int, int,
+     * int, int, File).
+     *
+     * @param transform The transform to be written down.
+     * @param originalWidth The width of the original picture.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of wavelets are omitted in each direction.
+     * @param tileSize The width and height of the tiles.
+     * @param file The file to which the data will be written.
+     * @param pool The pool whose threads encode the lines, or null.
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public static void writeMixedDataTiled(CoefficientPlanes transform, int originalWidth, int originalHeight,
+            int levelOfLoss, int tileSize, File file, ForkJoinPool pool) throws FileNotFoundException, IOException {
+
+        Tiling tiling = new Tiling(originalWidth, originalHeight, tileSize, levelOfLoss);
+        byte[] header = headerBytes(colorsField(transform), originalWidth, originalHeight, levelOfLoss,
+                tiling.compressedTileHeight(0), TYPE_MIXED_TILED, tileSize);
+        writeMixedFile(file, header, transform, tiling.compressedLineLengths(), false, pool);
+    }
+
+    /**
+     * Writes a column transform or a tiled transform as an indexed file,
+     * i.e. a file of type 4.
+     *
+     * @param transform The transform to be written down, produced by
+     * ParallelTransform.lossyTransform or HaarTransform.lossyTransformTiled.
+     * @param originalWidth The width of the original picture.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of wavelets are omitted.
+     * @param tileSize The width and height of the tiles, or 0 for the column
+     * transform.
+     * @param file The file to which the data will be written.
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public static void writeIndexedData(CoefficientPlanes transform, int originalWidth, int originalHeight,
+            int levelOfLoss, int tileSize, File file) throws FileNotFoundException, IOException {
+        writeIndexedData(transform, originalWidth, originalHeight, levelOfLoss, tileSize, file, null);
+    }
+
+    /**
+     * Writes a column transform or a tiled transform as an indexed file, the
+     * lines encoded by the threads of the pool. See
+     * writeIndexedData(CoefficientPlanes, int, int, int, int, File).
+     *
+     * @param transform The transform to be written down.
+     * @param originalWidth The width of the original picture.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of wavelets are omitted.
+     * @param tileSize The width and height of the tiles, or 0.
+     * @param file The file to which the data will be written.
+     * @param pool The pool whose threads encode the lines, or null.
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public static void writeIndexedData(CoefficientPlanes transform, int originalWidth, int originalHeight,
+            int levelOfLoss, int tileSize, File file, ForkJoinPool pool) throws FileNotFoundException, IOException {
+
+        int[] lineLengths;
+        int compressedLength;
+        if (tileSize > 0) {
+            Tiling tiling = new Tiling(originalWidth, originalHeight, tileSize, levelOfLoss);
+            lineLengths = tiling.compressedLineLengths();
+            compressedLength = tiling.compressedTileHeight(0);
+        } else {
+            lineLengths = sameLengths(transform);
+            compressedLength = transform.getLineLength();
+        }
+        byte[] header = headerBytes(colorsField(transform), originalWidth, originalHeight, levelOfLoss,
+                compressedLength, TYPE_INDEXED, tileSize);
+        writeMixedFile(file, header, transform, lineLengths, true, pool);
+    }
+
+    /**
+     * Writes a transform that is stored narrowly as mixed data. The lines are
+     * already in the mixed form, so they are written as they are. See
+     * writeMixedData(int[][][], int, int, File).
+     *
+     * @param transform The transform to be written down.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of wavelets are omitted.
+     * @param file The file to which the data will be written.
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public static void writeMixedData(NarrowCoefficients transform, int originalHeight,
+            int levelOfLoss, File file) throws FileNotFoundException, IOException {
+
+        DataOutputStream writer = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        createHeader(colorsField(transform), transform.getLines(), originalHeight, levelOfLoss,
+                transform.getLineLength(0), writer, TYPE_MIXED);
+        writeMixedLines(transform, writer);
+        writer.close();
+    }
+
+    /**
+     * Writes a two-dimensional transform that is stored narrowly. See
+     * writeMixedData2D(int[][][], int, int, int, File).
+     *
+     * @param transform The transform to be written down.
+     * @param originalWidth The width of the original picture.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of wavelets are omitted in each direction.
+     * @param file The file to which the data will be written.
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public static void writeMixedData2D(NarrowCoefficients transform, int originalWidth, int originalHeight,
+            int levelOfLoss, File file) throws FileNotFoundException, IOException {
+
+        DataOutputStream writer = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        createHeader(colorsField(transform), originalWidth, originalHeight, levelOfLoss,
+                transform.getLineLength(0), writer, TYPE_MIXED_2D);
+        writeMixedLines(transform, writer);
+        writer.close();
+    }
+
+    /**
+     * Writes a tiled transform that is stored narrowly. See
+     * writeMixedDataTiled(int[][][], int, int, int, int, File).
+     *
+     * @param transform The transform to be written down.
+     * @param originalWidth The width of the original picture.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of wavelets are omitted in each direction.
+     * @param tileSize The width and height of the tiles.
+     * @param file The file to which the data will be written.
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public static void writeMixedDataTiled(NarrowCoefficients transform, int originalWidth, int originalHeight,
+            int levelOfLoss, int tileSize, File file) throws FileNotFoundException, IOException {
+
+        DataOutputStream writer = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        createHeader(colorsField(transform), originalWidth, originalHeight, levelOfLoss,
+                transform.getLineLength(0), writer, TYPE_MIXED_TILED);
+        writer.writeInt(tileSize);
+        writeMixedLines(transform, writer);
+        writer.close();
+    }
+
+    /**
+     * Writes a transform that is stored narrowly as an indexed file. The
+     * lines are already in the mixed form, so the index can be calculated
+     * before they are written. See writeIndexedData(CoefficientPlanes, int,
+     * int, int, int, File).
+     *
+     * @param transform The transform to be written down.
+     * @param originalWidth The width of the original picture.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of wavelets are omitted.
+     * @param tileSize The width and height of the tiles, or 0 for the column
+     * transform.
+     * @param file The file to which the data will be written.
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public static void writeIndexedData(NarrowCoefficients transform, int originalWidth, int originalHeight,
+            int levelOfLoss, int tileSize, File file) throws FileNotFoundException, IOException {
+
+        DataOutputStream writer = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        createHeader(colorsField(transform), originalWidth, originalHeight, levelOfLoss,
+                transform.getLineLength(0), writer, TYPE_INDEXED);
+        writer.writeInt(tileSize);
+        long position = HEADER_SIZE + 4 + 8L * transform.getColors() * transform.getLines();
+        for (int i = 0; i < transform.getColors(); i++) {
+            for (int j = 0; j < transform.getLines(); j++) {
+                writer.writeLong(position);
+                position += transform.getMixedLine(i, j).length;
+            }
+        }
+        writeMixedLines(transform, writer);
+        writer.close();
+    }
+
+    /**
+     * Writes a column transform or a tiled transform as an entropy coded file,
+     * i.e. a file of type 5. See writeEntropyData(CoefficientPlanes, int, int,
+     * int, int, File, ForkJoinPool).
+     *
+     * @param transform The transform to be written down.
+     * @param originalWidth The width of the original picture.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of wavelets are omitted.
+     * @param tileSize The width and height of the tiles, or 0.
+     * @param file The file to which the data will be written.
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public static void writeEntropyData(CoefficientPlanes transform, int originalWidth, int originalHeight,
+            int levelOfLoss, int tileSize, File file) throws FileNotFoundException, IOException {
+        writeEntropyData(transform, originalWidth, originalHeight, levelOfLoss, tileSize, file, null);
+    }
+
+    /**
+     * Writes a column transform or a tiled transform as an entropy coded file,
+     * the blocks coded by the threads of the pool. The coded blocks are kept in
+     * memory until they are all ready.
+     *
+     * @param transform The transform to be written down, produced by
+     * ParallelTransform.lossyTransform or HaarTransform.lossyTransformTiled.
+     * @param originalWidth The width of the original picture.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of wavelets are omitted.
+     * @param tileSize The width and height of the tiles, or 0 for the column
+     * transform.
+     * @param file The file to which the data will be written.
+     * @param pool The pool whose threads code the blocks, or null to code them
+     * with this thread.
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public static void writeEntropyData(final CoefficientPlanes transform, int originalWidth, int originalHeight,
+            int levelOfLoss, int tileSize, File file, ForkJoinPool pool) throws FileNotFoundException, IOException {
+
+        int compressedLength;
+        final int[] lineLengths;
+        if (tileSize > 0) {
+            Tiling tiling = new Tiling(originalWidth, originalHeight, tileSize, levelOfLoss);
+            lineLengths = tiling.compressedLineLengths();
+            compressedLength = tiling.compressedTileHeight(0);
+        } else {
+            lineLengths = sameLengths(transform);
+            compressedLength = transform.getLineLength();
+        }
+        final int[] lineStarts = lineStarts(lineLengths);
+        final int[] blockStarts = entropyBlocks(transform.getColors(), lineLengths, ENTROPY_BLOCK_SIZE);
+        final byte[][] blocks = new byte[blockStarts.length - 1][];
+
+        ParallelTransform.LineJob job = new ParallelTransform.LineJob() {
+            @Override
+            void process(int first, int last) {
+                for (int block = first; block < last; block++) {
+                    int line = blockStarts[block] % lineLengths.length;
+                    int lines = blockStarts[block + 1] - blockStarts[block];
+                    blocks[block] = EntropyCoder.encode(transform.getPlane(blockStarts[block] / lineLengths.length),
+                            lineStarts[line], Arrays.copyOfRange(lineLengths, line, line + lines));
+                }
+            }
+        };
+        if (pool != null) {
+            ParallelTransform.forEachLine(job, blocks.length, 1, pool);
+        } else {
+            job.process(0, blocks.length);
+        }
+
+        DataOutputStream writer = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        createHeader(colorsField(transform), originalWidth, originalHeight, levelOfLoss, compressedLength,
+                writer, TYPE_ENTROPY);
+        writer.writeInt(tileSize);
+        writer.writeInt(ENTROPY_BLOCK_SIZE);
+        writer.writeInt(blocks.length);
+        long position = HEADER_SIZE + 12 + 8L * blocks.length;
+        for (byte[] block : blocks) {
+            writer.writeLong(position);
+            position += block.length;
+        }
+        for (byte[] block : blocks) {
+            writer.write(block);
+        }
+        writer.close();
+    }
+
+    /**
+     * Writes a column transform or a tiled transform as a Rice coded file,
+     * i.e. a file of type 6. The lines are coded with RiceCoder into a direct
+     * buffer, which is written with a FileChannel whenever it's full.
+     *
+     * @param transform The transform to be written down, produced by
+     * ParallelTransform.lossyTransform or HaarTransform.lossyTransformTiled.
+     * @param originalWidth The width of the original picture.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of wavelets are omitted.
+     * @param tileSize The width and height of the tiles, or 0 for the column
+     * transform.
+     * @param file The file to which the data will be written.
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public static void writeRiceData(CoefficientPlanes transform, int originalWidth, int originalHeight,
+            int levelOfLoss, int tileSize, File file) throws FileNotFoundException, IOException {
+        writeCodedData(transform, originalWidth, originalHeight, levelOfLoss, tileSize, file, TYPE_RICE, null);
+    }
+
+    /**
+     * Writes a column transform or a tiled transform as a Rice coded file like
+     * writeRiceData, but the lines are coded by the threads of the pool with
+     * ParallelMixedWriter.
+     *
+     * @param transform The transform to be written down, produced by
+     * ParallelTransform.lossyTransform or HaarTransform.lossyTransformTiled.
+     * @param originalWidth The width of the original picture.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of wavelets are omitted.
+     * @param tileSize The width and height of the tiles, or 0 for the column
+     * transform.
+     * @param file The file to which the data will be written.
+     * @param pool The pool whose threads code the lines, or null to code them
+     * with this thread.
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public static void writeRiceData(CoefficientPlanes transform, int originalWidth, int originalHeight,
+            int levelOfLoss, int tileSize, File file, ForkJoinPool pool) throws FileNotFoundException, IOException {
+        writeCodedData(transform, originalWidth, originalHeight, levelOfLoss, tileSize, file, TYPE_RICE, pool);
+    }
+
+    /**
+     * Writes a column transform or a tiled transform as a zero run coded file,
+     * i.e. a file of type 7, like writeRiceData but with ZeroRunCodec.
+     *
+     * @param transform The transform to be written down, produced by
+     * ParallelTransform.lossyTransform or HaarTransform.lossyTransformTiled.
+     * @param originalWidth The width of the original picture.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of wavelets are omitted.
+     * @param tileSize The width and height of the tiles, or 0 for the column
+     * transform.
+     * @param file The file to which the data will be written.
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public static void writeZeroRunData(CoefficientPlanes transform, int originalWidth, int originalHeight,
+            int levelOfLoss, int tileSize, File file) throws FileNotFoundException, IOException {
+        writeCodedData(transform, originalWidth, originalHeight, levelOfLoss, tileSize, file, TYPE_ZERO_RUN, null);
+    }
+
+    /**
+     * Writes a column transform or a tiled transform as a zero run coded file
+     * like writeZeroRunData, but the lines are coded by the threads of the
+     * pool with ParallelMixedWriter.
+     *
+     * @param transform The transform to be written down, produced by
+     * ParallelTransform.lossyTransform or HaarTransform.lossyTransformTiled.
+     * @param originalWidth The width of the original picture.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of wavelets are omitted.
+     * @param tileSize The width and height of the tiles, or 0 for the column
+     * transform.
+     * @param file The file to which the data will be written.
+     * @param pool The pool whose threads code the lines, or null to code them
+     * with this thread.
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public static void writeZeroRunData(CoefficientPlanes transform, int originalWidth, int originalHeight,
+            int levelOfLoss, int tileSize, File file, ForkJoinPool pool) throws FileNotFoundException, IOException {
+        writeCodedData(transform, originalWidth, originalHeight, levelOfLoss, tileSize, file, TYPE_ZERO_RUN, pool);
+    }
+
+    /**
+     * An auxiliary method for writeRiceData and writeZeroRunData. The lines
+     * are coded by the threads of the pool if it isn't null.
+     */
+    private static void writeCodedData(CoefficientPlanes transform, int originalWidth, int originalHeight,
+            int levelOfLoss, int tileSize, File file, byte type, ForkJoinPool pool)
+            throws FileNotFoundException, IOException {
+
+        int compressedLength;
+        int[] lineLengths;
+        if (tileSize > 0) {
+            Tiling tiling = new Tiling(originalWidth, originalHeight, tileSize, levelOfLoss);
+            lineLengths = tiling.compressedLineLengths();
+            compressedLength = tiling.compressedTileHeight(0);
+        } else {
+            lineLengths = sameLengths(transform);
+            compressedLength = transform.getLineLength();
+        }
+        byte[] header = headerBytes(colorsField(transform), originalWidth, originalHeight, levelOfLoss,
+                compressedLength, type, tileSize);
+
+        FileOutputStream output = new FileOutputStream(file);
+        FileChannel channel = output.getChannel();
+        if (pool != null) {
+            ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+            while (headerBuffer.hasRemaining()) {
+                channel.write(headerBuffer);
+            }
+            ParallelMixedWriter.writeCoded(channel, transform, lineLengths, type, pool);
+            output.close();
+            return;
+        }
+
+        int longest = 0;
+        for (int length : lineLengths) {
+            longest = Math.max(longest, length);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(
+                Math.max(WRITE_BUFFER_SIZE, header.length + maxCodedLength(type, longest)));
+        LineCoder coder = newLineCoder(type);
+
+        buffer.put(header);
+        for (int i = 0; i < transform.getColors(); i++) {
+            int offset = 0;
+            for (int length : lineLengths) {
+                if (buffer.remaining() < maxCodedLength(type, length)) {
+                    flush(buffer, channel);
+                }
+                coder.encode(transform.getPlane(i), offset, length, buffer);
+                offset += length;
+            }
+        }
+        flush(buffer, channel);
+        output.close();
+    }
+
+    /**
+     * Writes a column transform or a tiled transform as a progressive file,
+     * i.e. a file of type 8. The whole transform is coded into one stream
+     * with BitPlaneCoder, so this takes longer than the other types.
+     *
+     * @param transform The transform to be written down, produced by
+     * ParallelTransform.lossyTransform or HaarTransform.lossyTransformTiled.
+     * @param originalWidth The width of the original picture.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of wavelets are omitted.
+     * @param tileSize The width and height of the tiles, or 0 for the column
+     * transform.
+     * @param file The file to which the data will be written.
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public static void writeProgressiveData(CoefficientPlanes transform, int originalWidth, int originalHeight,
+            int levelOfLoss, int tileSize, File file) throws FileNotFoundException, IOException {
+
+        int compressedLength;
+        int[] lineLengths;
+        if (tileSize > 0) {
+            Tiling tiling = new Tiling(originalWidth, originalHeight, tileSize, levelOfLoss);
+            lineLengths = tiling.compressedLineLengths();
+            compressedLength = tiling.compressedTileHeight(0);
+        } else {
+            lineLengths = sameLengths(transform);
+            compressedLength = transform.getLineLength();
+        }
+        int[] bits = BitPlaneCoder.highestBits(transform, lineLengths);
+        byte[] stream = BitPlaneCoder.encode(transform, lineLengths, bits);
+
+        DataOutputStream writer = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        createHeader(colorsField(transform), originalWidth, originalHeight, levelOfLoss, compressedLength,
+                writer, TYPE_PROGRESSIVE);
+        writer.writeInt(tileSize);
+        writer.writeInt(bits.length);
+        for (int b : bits) {
+            writer.writeInt(b);
+        }
+        writer.write(stream);
+        writer.close();
+    }
+
+    /**
+     * An auxiliary method that creates a coder for the lines of a file of
+     * type 6 or 7.
+     */
+    static LineCoder newLineCoder(byte type) {
+        return type == TYPE_RICE ? new RiceCoder() : new ZeroRunCodec();
+    }
+
+    /**
+     * An auxiliary method that tells how long a coded line of a file of type 6
+     * or 7 may be at most.
+     */
+    static int maxCodedLength(byte type, int length) {
+        return type == TYPE_RICE ? RiceCoder.maxEncodedLength(length) : ZeroRunCodec.maxEncodedLength(length);
+    }
+
+    /**
+     * An auxiliary method that splits the lines of all the colors into the
+     * blocks of an entropy coded file, see the description of this class.
+     *
+     * @param colors The number of colors.
+     * @param lineLengths The lengths of the lines of a color.
+     * @param blockSize How many coefficients there are at least in a block
+     * that isn't the last one of its color.
+     * @return The numbers of the first lines of the blocks, the lines of all
+     * the colors numbered one after another, and the number of all the lines
+     * last.
+     */
+    private static int[] entropyBlocks(int colors, int[] lineLengths, int blockSize) {
+        int[] starts = new int[colors * lineLengths.length + 1];
+        int blocks = 0;
+        for (int c = 0; c < colors; c++) {
+            int coefficients = blockSize;
+            for (int line = 0; line < lineLengths.length; line++) {
+                if (coefficients >= blockSize) {
+                    starts[blocks++] = c * lineLengths.length + line;
+                    coefficients = 0;
+                }
+                coefficients += lineLengths[line];
+            }
+        }
+        starts[blocks++] = colors * lineLengths.length;
+        return Arrays.copyOf(starts, blocks);
+    }
+
+    /**
+     * An auxiliary method that tells where each line begins in the plane of
+     * its color.
+     */
+    private static int[] lineStarts(int[] lineLengths) {
+        int[] starts = new int[lineLengths.length];
+        for (int line = 1; line < lineLengths.length; line++) {
+            starts[line] = starts[line - 1] + lineLengths[line - 1];
+        }
+        return starts;
+    }
+
+    /**
+     * An auxiliary method that writes every line of a narrow store.
+     *
+     * @param transform The transform to be written down.
+     * @param writer The output stream into which the lines will be written.
+     * @throws IOException
+     */
+    private static void writeMixedLines(NarrowCoefficients transform, DataOutputStream writer) throws IOException {
+        for (int i = 0; i < transform.getColors(); i++) {
+            for (int j = 0; j < transform.getLines(); j++) {
+                writer.write(transform.getMixedLine(i, j));
+            }
+        }
+    }
+
+    /**
+     * An auxiliary method that writes the header and every line of the
+     * transform as mixed data. The lines of a color are one after another in
+     * its plane. They are encoded with MixedLineCodec into a direct buffer,
+     * which is written with a FileChannel whenever it's full, or by the
+     * threads of the pool with ParallelMixedWriter.
+     *
+     * @param file The file to which the data will be written.
+     * @param header The header of the file, see headerBytes.
+     * @param transform The transform to be written down.
+     * @param lineLengths The lengths of the lines of a color.
+     * @param indexed True if the header is followed by the table of the
+     * beginnings of the lines, as in an indexed file. The table is written
+     * last, when the lines are known.
+     * @param pool The pool whose threads encode the lines, or null. It isn't
+     * used with the streams.
+     * @throws IOException
+     */
+    private static void writeMixedFile(File file, byte[] header, CoefficientPlanes transform, int[] lineLengths,
+            boolean indexed, ForkJoinPool pool) throws IOException {
+        long[] index = new long[indexed ? transform.getColors() * lineLengths.length : 0];
+        long position = header.length + 8L * index.length;
+        int line = 0;
+
+        if (!mappedIO) {
+            DataOutputStream writer = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            writer.write(header);
+            writer.write(new byte[8 * index.length]);
+            for (int i = 0; i < transform.getColors(); i++) {
+                int offset = 0;
+                for (int length : lineLengths) {
+                    byte[] mixed = createLineOfMixedData(transform.getPlane(i), offset, length);
+                    writer.write(mixed);
+                    if (indexed) {
+                        index[line++] = position;
+                        position += mixed.length;
+                    }
+                    offset += length;
+                }
+            }
+            writer.close();
+            if (indexed) {
+                writeIndex(file, header.length, index);
+            }
+            return;
+        }
+
+        FileOutputStream output = new FileOutputStream(file);
+        FileChannel channel = output.getChannel();
+        ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+        while (headerBuffer.hasRemaining()) {
+            channel.write(headerBuffer);
+        }
+        channel.position(position); // Past the table of an indexed file
+
+        if (pool != null) {
+            ParallelMixedWriter.write(channel, transform, lineLengths, indexed ? index : null, pool);
+        } else {
+            int longest = 0;
+            for (int length : lineLengths) {
+                longest = Math.max(longest, length);
+            }
+            ByteBuffer buffer = ByteBuffer.allocateDirect(
+                    Math.max(WRITE_BUFFER_SIZE, MixedLineCodec.maxEncodedLength(longest)));
+            MixedLineCodec codec = new MixedLineCodec();
+            for (int i = 0; i < transform.getColors(); i++) {
+                int offset = 0;
+                for (int length : lineLengths) {
+                    if (buffer.remaining() < MixedLineCodec.maxEncodedLength(length)) {
+                        flush(buffer, channel);
+                    }
+                    int written = codec.encode(transform.getPlane(i), offset, length, buffer);
+                    if (indexed) {
+                        index[line++] = position;
+                        position += written;
+                    }
+                    offset += length;
+                }
+            }
+            flush(buffer, channel);
+        }
+        output.close();
+        if (indexed) {
+            writeIndex(file, header.length, index);
+        }
+    }
+
+    /**
+     * An auxiliary method for writeMixedFile. Writes the table of an indexed
+     * file in its place after the header.
+     */
+    private static void writeIndex(File file, int position, long[] index) throws IOException {
+        ByteBuffer table = ByteBuffer.allocate(8 * index.length);
+        table.asLongBuffer().put(index);
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        FileChannel channel = output.getChannel();
+        while (table.hasRemaining()) {
+            channel.write(table, position + table.position());
+        }
+        output.close();
+    }
+
+    /**
+     * An auxiliary method for writeMixedFile. Writes the buffer into the
+     * channel and empties it.
+     */
+    private static void flush(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * An auxiliary method that lists the lengths of the lines of planes whose
+     * lines all have the same length.
+     */
+    private static int[] sameLengths(CoefficientPlanes transform) {
+        int[] lengths = new int[transform.getLines()];
+        Arrays.fill(lengths, transform.getLineLength());
+        return lengths;
+    }
+
+    /**
+     * Creates the header of a file like createHeader, with the tile size
+     * after it in a tiled file.
+     *
+     * @return The header as it will be written in the file.
+     * @throws IOException
+     */
+    private static byte[] headerBytes(int noOfColors, int width, int originalHeight, int levelOfLoss,
+            int compressedLength, byte type, int tileSize) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream writer = new DataOutputStream(bytes);
+        createHeader(noOfColors, width, originalHeight, levelOfLoss, compressedLength, writer, type);
+        if (type == TYPE_MIXED_TILED || type == TYPE_INDEXED || type == TYPE_RICE || type == TYPE_ZERO_RUN) {
+            writer.writeInt(tileSize);
+        }
+        writer.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Gives the number of colors as it is written into the header: with
+     * COLOR_TRANSFORM_FLAG if the colors have been transformed with
+     * ColorTransform, and with ROW_MAJOR_FLAG if the lines are the rows of
+     * the image.
+     *
+     * @param transform The transform to be written down.
+     * @return The entry of the header.
+     */
+    static int colorsField(CoefficientPlanes transform) {
+        return colorsField(transform.getColors(), transform.isColorTransformed(), transform.isRowMajor());
+    }
+
+    /**
+     * See colorsField(CoefficientPlanes).
+     *
+     * @param transform The transform to be written down.
+     * @return The entry of the header.
+     */
+    static int colorsField(NarrowCoefficients transform) {
+        return colorsField(transform.getColors(), transform.isColorTransformed(), transform.isRowMajor());
+    }
+
+    /**
+     * See colorsField(CoefficientPlanes).
+     *
+     * @param colors The number of colors.
+     * @param colorTransformed True if the colors are Y, Co and Cg.
+     * @param rowMajor True if the lines are the rows of the image.
+     * @return The entry of the header.
+     */
+    static int colorsField(int colors, boolean colorTransformed, boolean rowMajor) {
+        return colors | (colorTransformed ? COLOR_TRANSFORM_FLAG : 0) | (rowMajor ? ROW_MAJOR_FLAG : 0);
+    }
+
+    /**
+     * This is an auxiliary method for writing the header of the wtf-file.
+     *
+     * @param noOfColors The number of colors in the picture, with
+     * COLOR_TRANSFORM_FLAG if they are Y, Co and Cg (see colorsField).
+     * @param width The width of the original picture.
+     * @param originalHeight The original height of the picture, or more
+     * generally, the length of the line that was compressed.
+     * @param levelOfLoss The level of loss in the compression.
+     * @param compressedLength The length of one line of the transform.
+     * @param writer The output stream into which the header will be written.
+     * @param type The type of the wtf-file.
+     * @throws IOException
+     */
+    static void createHeader(int noOfColors, int width, int originalHeight, int levelOfLoss,
+            int compressedLength, DataOutputStream writer, byte type) throws IOException {
+
+        writer.writeByte(type);
+        writer.writeShort((short) noOfColors);
+        writer.writeInt(width);
+        writer.writeInt(originalHeight);
+        writer.writeShort((short) levelOfLoss);
+        writer.writeInt(compressedLength);
+    }
+
+    /**
+     * Tells the type of the wtf-file. Different types are described in the
+     * description of this class.
+     *
+     * @return The type of the wtf-file
+     */
+    public byte getTypeOfFile() {
+        return typeOfFile;
+    }
+
+    /**
+     *
+     * @return number of colors in the transformed picture.
+     */
+    public short getNoOfColors() {
+        return noOfColors;
+    }
+
+    /**
+     * Tells whether the colors of the transform are Y, Co and Cg of the class
+     * ColorTransform. The coefficients are read as they are, so then they
+     * must be turned back with ColorTransform.inverse before the inverse
+     * wavelet transform.
+     *
+     * @return True if the header has COLOR_TRANSFORM_FLAG.
+     */
+    public boolean hasColorTransform() {
+        return colorTransform;
+    }
+
+    /**
+     * Tells whether the file holds the transform of an image in the row-major
+     * layout of ImagePlanes. Then the lines are the rows of the image, the
+     * width and the height of the file are those of the transposed image, and
+     * the image retrieved from the transform is row-major too, see
+     * BitmapIO.writeRowsIntoBitmap.
+     *
+     * @return True if the header has ROW_MAJOR_FLAG.
+     */
+    public boolean isRowMajor() {
+        return rowMajor;
+    }
+
+    /**
+     *
+     * @return The width of the transformed picture.
+     */
+    public int getOriginalWidth() {
+        return originalWidth;
+    }
+
+    /**
+     *
+     * @return The height of the transformed picture.
+     */
+    public int getOriginalHeight() {
+        return originalHeight;
+    }
+
+    /**
+     *
+     * @return The level of loss of the transform.
+     */
+    public short getLevelOfLoss() {
+        return levelOfLoss;
+    }
+
+    /**
+     *
+     * @return The width and height of the tiles in a tiled file, 0 in others.
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     *
+     * @return The length of the compressed line.
+     */
+    public int getCompressedHeight() {
+        return compressedHeight;
+    }
+
+    /**
+     * Tells how many lines per color there are in the file. This is the width
+     * of the original picture, except for the two-dimensional transform.
+     *
+     * @return The number of lines per color.
+     */
+    public int getCompressedWidth() {
+        if (typeOfFile == TYPE_MIXED_2D) {
+            return HaarTransform.compressedLength(originalWidth, levelOfLoss);
+        }
+        return originalWidth;
+    }
+
+    /**
+     * Tells how the picture of a tiled file is split into tiles.
+     *
+     * @return The tiling of a tiled file or of an indexed file with tiles, null
+     * for the other files.
+     */
+    public Tiling getTiling() {
+        if (isTiled()) {
+            return new Tiling(originalWidth, originalHeight, tileSize, levelOfLoss);
+        }
+        return null;
+    }
+
+    /**
+     * Tells how many lines per color there are in the file. For a tiled file
+     * these are the lines of all the tiles.
+     *
+     * @return The number of lines per color.
+     */
+    public int getLines() {
+        if (isTiled()) {
+            return getLineLengths().length;
+        }
+        return getCompressedWidth();
+    }
+
+    /**
+     * Tells the length of a line. All the lines have the same length, except
+     * in a tiled file where the lines of the tiles on the bottom edge may be
+     * shorter.
+     *
+     * @param line The number of the line within its color.
+     * @return The number of coefficients on the line.
+     */
+    public int getLineLength(int line) {
+        if (isTiled()) {
+            return getLineLengths()[line];
+        }
+        return compressedHeight;
+    }
+
+    /**
+     * An auxiliary method for readPlanes(ForkJoinPool) and readRegion. Finds
+     * the positions of the lines of a Rice or zero run coded file from the lengths in front
+     * of them.
+     */
+    private long[] codedLineBeginnings(ByteBuffer data, int dataStart) {
+        long[] beginnings = new long[noOfColors * getLines()];
+        int position = 0;
+        for (int k = 0; k < beginnings.length; k++) {
+            beginnings[k] = dataStart + position;
+            position += 4 + data.getInt(position);
+        }
+        return beginnings;
+    }
+
+    /**
+     * @return True if the file holds a tiled transform.
+     */
+    private boolean isTiled() {
+        return typeOfFile == TYPE_MIXED_TILED || (tileSize > 0 && (typeOfFile == TYPE_INDEXED
+                || typeOfFile == TYPE_ENTROPY || isLengthPrefixed() || typeOfFile == TYPE_PROGRESSIVE));
+    }
+
+    /**
+     * @return True if the lines of the file begin with their lengths in bytes,
+     * i.e. if it's Rice or zero run coded.
+     */
+    private boolean isLengthPrefixed() {
+        return typeOfFile == TYPE_RICE || typeOfFile == TYPE_ZERO_RUN;
+    }
+
+    /**
+     * An auxiliary method that lists the lengths of the lines of a color of a
+     * tiled file.
+     */
+    private int[] getLineLengths() {
+        if (lineLengths == null) {
+            lineLengths = getTiling().compressedLineLengths();
+        }
+        return lineLengths;
+    }
+
+    /**
+     * @return True if there are lines left to be read with nextLine.
+     */
+    public boolean hasNextLine() {
+        return linesRead < noOfColors * getLines();
+    }
+
+    /**
+     * Reads and decodes the next line of the file.
+     *
+     * @param target The array into which the coefficients are written.
+     * @param offset The index where the line will begin in the array.
+     * @return The number of coefficients on the line.
+     * @throws IOException
+     */
+    public int nextLine(int[] target, int offset) throws IOException {
+        checkLineByLine();
+        int length = getLineLength(linesRead % getLines());
+        if (typeOfFile == TYPE_INTEGER) {
+            for (int k = 0; k < length; k++) {
+                target[offset + k] = reader.readInt();
+            }
+        } else if (isLengthPrefixed()) {
+            int bytes = reader.readInt();
+            if (lineBuffer.capacity() < 4 + bytes) {
+                lineBuffer = ByteBuffer.allocate(4 + bytes);
+            }
+            lineBuffer.clear();
+            lineBuffer.putInt(0, bytes);
+            reader.readFully(lineBuffer.array(), 4, bytes);
+            lineCoder.decode(lineBuffer, target, offset, length);
+        } else {
+            if (lineBuffer.capacity() < MixedLineCodec.maxEncodedLength(length)) {
+                lineBuffer = ByteBuffer.allocate(MixedLineCodec.maxEncodedLength(length));
+            }
+            byte[] line = lineBuffer.array();
+            reader.readFully(line, 0, 8);
+            lineBuffer.clear();
+            reader.readFully(line, 8, MixedLineCodec.encodedLength(lineBuffer.getInt(0), lineBuffer.getInt(4), length));
+            codec.decode(lineBuffer, target, offset, length);
+        }
+        linesRead++;
+        return length;
+    }
+
+    /**
+     * Skips lines without decoding them, e.g. to get to the first line of a
+     * color.
+     *
+     * @param count The number of lines to be skipped.
+     * @throws IOException
+     */
+    public void skipLines(int count) throws IOException {
+        checkLineByLine();
+        if (index != null) {
+            skipFully(lineBeginning(linesRead + count) - lineBeginning(linesRead));
+            linesRead += count;
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            int length = getLineLength(linesRead % getLines());
+            if (typeOfFile == TYPE_INTEGER) {
+                skipFully(4 * length);
+            } else if (isLengthPrefixed()) {
+                skipFully(reader.readInt());
+            } else {
+                skipFully(mixedLength(readOffsets(), length));
+            }
+            linesRead++;
+        }
+    }
+
+    /**
+     * An auxiliary method for nextLine and skipLines.
+     *
+     * @throws IllegalStateException if the file can't be read a line at a
+     * time.
+     */
+    private void checkLineByLine() {
+        if (typeOfFile == TYPE_ENTROPY) {
+            throw new IllegalStateException("An entropy coded file can't be read a line at a time.");
+        }
+        if (typeOfFile == TYPE_PROGRESSIVE) {
+            throw new IllegalStateException("A progressive file can't be read a line at a time.");
+        }
+    }
+
+    /**
+     * An auxiliary method for skipLines.
+     */
+    private void skipFully(long bytes) throws IOException {
+        while (bytes > 0) {
+            long skipped = reader.skip(bytes);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            bytes -= skipped;
+        }
+    }
+
+    /**
+     * An auxiliary method that tells where a line of an indexed file begins.
+     * The lines are numbered over all the colors, and the line after the last
+     * one begins at the end of the file.
+     */
+    private long lineBeginning(int line) {
+        return line < index.length ? index[line] : file.length();
+    }
+
+    /**
+     * Reads and decodes any line of an indexed file without reading the lines
+     * before it. This can be used together with nextLine.
+     *
+     * @param color The color of the line.
+     * @param line The number of the line within its color, e.g. the number of
+     * the column of the column transform.
+     * @param target The array into which the coefficients are written.
+     * @param offset The index where the line will begin in the array.
+     * @return The number of coefficients on the line.
+     * @throws IOException
+     * @throws IllegalStateException if the file isn't of type 4.
+     */
+    public int readLineAt(int color, int line, int[] target, int offset) throws IOException {
+        if (index == null) {
+            throw new IllegalStateException("Only an indexed file can be read from any line.");
+        }
+        if (randomAccess == null) {
+            randomAccess = new RandomAccessFile(file, "r");
+        }
+        int length = getLineLength(line);
+        int number = color * getLines() + line;
+        long position = index[number];
+        int bytes = (int) (lineBeginning(number + 1) - position);
+        if (lineBuffer.capacity() < bytes) {
+            lineBuffer = ByteBuffer.allocate(MixedLineCodec.maxEncodedLength(length));
+        }
+        lineBuffer.clear();
+        lineBuffer.limit(bytes);
+        FileChannel channel = randomAccess.getChannel();
+        while (lineBuffer.hasRemaining()) {
+            if (channel.read(lineBuffer, position + lineBuffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        lineBuffer.flip();
+        codec.decode(lineBuffer, target, offset, length);
+        return length;
+    }
 
     /**
-     * This is for creating a new WTFIO-object, which has to be done only when
-     * reading data. To write down data you can use the static methods.
+     * Closes the file. The methods that read the whole file close it
+     * themselves.
      *
-     * @param file The file from which the data will be read.
-     * @throws FileNotFoundException
      * @throws IOException
      */
-    public WTFIO(File file) throws FileNotFoundException, IOException {
-        reader = new DataInputStream(new FileInputStream(file));
-        typeOfFile = reader.readByte();
-        noOfColors = reader.readShort();
-        originalWidth = reader.readInt();
-        originalHeight = reader.readInt();
-        levelOfLoss = reader.readShort();
-        compressedHeight = reader.readInt();
+    public void close() throws IOException {
+        reader.close();
+        if (randomAccess != null) {
+            randomAccess.close();
+        }
     }
 
     /**
-     * This writes a wtf-file on the hard disk as "integer data", which is
-     * specified in the description of this class. It corresponds to file type 0.
-     * Every coefficient of the transform will be written down as an integer, so
-     * this is a particularly wasteful way to do it.
+     * Reads a wtf-file that is written down as "integer data", i.e. that has
+     * type 0, as explained in the description of this class.
      *
-     * @param transform The transform to be written down.
-     * @param originalHeight The height of the original picture before the
-     * transform. In more general use, this is the length of the compressed data
-     * array.
-     * @param levelOfLoss The loss coefficient: how many levels of wavelets is
-     * omitted in the transform.
-     * @param outputFile The file to which the data will be written.
-     * @throws FileNotFoundException
+     * @return the transform that is the content of the file.
      * @throws IOException
      */
-    public static void writeIntegerData(int[][][] transform, int originalHeight,
-            int levelOfLoss, File outputFile) throws FileNotFoundException, IOException {
+    public int[][][] readIntegerData() throws IOException {
+        return readIntegerPlanes().toJagged(null);
+    }
 
-        DataOutputStream writer = new DataOutputStream(new FileOutputStream(outputFile));
-        createHeader(transform, originalHeight, levelOfLoss, writer, (byte) 0);
+    /**
+     * Reads a wtf-file of type 0 into planes.
+     *
+     * @return the transform that is the content of the file.
+     * @throws IOException
+     */
+    private CoefficientPlanes readIntegerPlanes() throws IOException {
+        CoefficientPlanes transformData = new CoefficientPlanes(noOfColors, originalWidth, compressedHeight);
+        readAllLines(transformData);
+        return transformData;
+    }
 
-        for (int i = 0; i < transform.length; i++) {
-            for (int j = 0; j < transform[0].length; j++) {
-                for (int k = 0; k < transform[0][0].length; k++) {
-                    writer.writeInt(transform[i][j][k]);
-                }
-            }
-        }
+    /**
+     * Reads a wtf-file that is written down as "mixed data", i.e. that has
+     * type 1 or 2 as explained in the description of this class.
+     *
+     * @return the transform that is the content of the file.
+     * @throws IOException
+     */
 
-        writer.flush();
-        writer.close();
+    public int[][][] readMixedData() throws IOException {
+        return readMixedPlanes().toJagged(null);
+    }
 
+    /**
+     * Reads a wtf-file of type 1 or 2 into planes.
+     *
+     * @return the transform that is the content of the file.
+     * @throws IOException
+     */
+    private CoefficientPlanes readMixedPlanes() throws IOException {
+        CoefficientPlanes transformData = new CoefficientPlanes(noOfColors, getCompressedWidth(), compressedHeight);
+        readAllLines(transformData);
+        return transformData;
     }
 
     /**
-     * This writes a wtf-file on the hard disk as "mixed data", which is
-     * specified in the description of this class. Each line of the transform
-     * will be written down as bytes, shorts and ints in that order, so that
-     * after the first short only shorts and ints occur, and after the first int
-     * only ints.
+     * Reads a wtf-file that is written down as tiled mixed data, i.e. that has
+     * type 3 as explained in the description of this class.
      *
-     * @param transform The transform to be written down.
-     * @param originalHeight The height of the original picture before the
-     * transform. In more general use, this is the length of the compressed data
-     * array.
-     * @param levelOfLoss The loss coefficient: how many levels of wavelets is
-     * omitted in the transform.
-     * @param outputFile The file to which the data will be written.
-     * @throws FileNotFoundException
+     * @return the transform that is the content of the file, in the form
+     * produced by the method HaarTransform.lossyTransformTiled.
      * @throws IOException
      */
-    public static void writeMixedData(int[][][] transform, int originalHeight,
-            int levelOfLoss, File file) throws FileNotFoundException, IOException {
+    public int[][][] readTiledData() throws IOException {
+        return readTiledPlanes().toJagged(getTiling());
+    }
 
-        DataOutputStream writer = new DataOutputStream(new FileOutputStream(file));
-        createHeader(transform, originalHeight, levelOfLoss, writer, (byte) 1);
+    /**
+     * Reads a wtf-file of type 3 into planes.
+     *
+     * @return the transform that is the content of the file.
+     * @throws IOException
+     */
+    private CoefficientPlanes readTiledPlanes() throws IOException {
+        CoefficientPlanes transformData = new CoefficientPlanes(noOfColors, getTiling());
+        readAllLines(transformData);
+        return transformData;
+    }
 
-        for (int i = 0; i < transform.length; i++) {
-            for (int j = 0; j < transform[0].length; j++) {
+    /**
+     * An auxiliary method for the methods that read the whole file. Reads all
+     * the lines into the planes, the lines of a color one after another, and
+     * closes the file. The file is mapped into memory if possible, otherwise
+     * the lines are read with nextLine.
+     *
+     * @param transformData The planes into which the lines are read.
+     * @throws IOException
+     */
+    private void readAllLines(CoefficientPlanes transformData) throws IOException {
+        long dataSize = file.length() - headerSize();
+        if (!mappedIO || dataSize > Integer.MAX_VALUE) {
+            for (int i = 0; i < noOfColors; i++) {
+                int[] plane = transformData.getPlane(i);
+                int offset = 0;
+                for (int line = 0; line < getLines(); line++) {
+                    offset += nextLine(plane, offset);
+                }
+            }
+            reader.close();
+            return;
+        }
 
-                byte[] line = createLineOfMixedData(transform[i][j]);
-                writer.write(line);
+        reader.close();
 
+        RandomAccessFile mappedFile = new RandomAccessFile(file, "r");
+        ByteBuffer data = mappedFile.getChannel().map(FileChannel.MapMode.READ_ONLY, headerSize(), dataSize);
+        mappedFile.close(); // The mapping stays valid.
+        for (int i = 0; i < noOfColors; i++) {
+            int[] plane = transformData.getPlane(i);
+            if (typeOfFile == TYPE_INTEGER) {
+                data.asIntBuffer().get(plane);
+                data.position(data.position() + 4 * plane.length);
+                continue;
+            }
+            int offset = 0;
+            for (int line = 0; line < getLines(); line++) {
+                int length = getLineLength(line);
+                if (isLengthPrefixed()) {
+                    lineCoder.decode(data, plane, offset, length);
+                } else {
+                    codec.decode(data, plane, offset, length);
+                }
+                offset += length;
             }
         }
-
     }
 
     /**
-     * This is an auxiliary method for writing the header of the wtf-file.
+     * Reads the data in the file into planes like readPlanes(), but the lines
+     * of an indexed file are decoded by the threads of the pool. The file is
+     * mapped into memory once, and each thread decodes its own range of
+     * lines from its own view of the mapped buffer, starting from the
+     * beginnings told by the index. The blocks of an entropy coded file are
+     * decoded the same way, and so are the lines of Rice and zero run coded
+     * files, whose beginnings are found by hopping over the lines with their
+     * lengths. The other types of files, files too big to be mapped at once
+     * and the files of all but the entropy coded type read with a pool of one
+     * thread, which gains nothing from the hopping, are read with
+     * readPlanes().
      *
-     * @param transform The content of the transform
-     * @param originalHeight The original height of the picture, or more
-     * generally, the length of the line that was compressed.
-     * @param levelOfLoss The level of loss in the compression.
-     * @param writer The output stream into which the header will be written.
-     * @param type The type of the wtf-file.
+     * @param pool The pool whose threads decode the lines.
+     * @return The transform data contained in the wtf file.
      * @throws IOException
      */
-    private static void createHeader(int[][][] transform,
-            int originalHeight, int levelOfLoss, DataOutputStream writer, byte type) throws IOException {
+    public CoefficientPlanes readPlanes(ForkJoinPool pool) throws IOException {
+        if (typeOfFile == TYPE_ENTROPY) {
+            return readEntropyPlanes(pool);
+        }
+        long dataSize = file.length() - headerSize();
+        final boolean coded = isLengthPrefixed();
+        if ((index == null && !coded) || !mappedIO || dataSize > Integer.MAX_VALUE
+                || pool.getParallelism() == 1) {
+            return readPlanes();
+        }
+        reader.close();
 
-        int noOfColors = transform.length;
-        int width = transform[0].length;
-        int compressedLength = transform[0][0].length;
+        final CoefficientPlanes transformData = isTiled()
+                ? new CoefficientPlanes(noOfColors, getTiling())
+                : new CoefficientPlanes(noOfColors, originalWidth, compressedHeight);
+        final int lines = getLines();
+        final int[] lineLengths = new int[lines];
+        for (int line = 0; line < lines; line++) {
+            lineLengths[line] = getLineLength(line);
+        }
+        final int[] lineStarts = lineStarts(lineLengths);
+        final int dataStart = headerSize();
 
-        writer.writeByte(type);
-        writer.writeShort((short) transform.length);
-        writer.writeInt(width);
-        writer.writeInt(originalHeight);
-        writer.writeShort((short) levelOfLoss);
-        writer.writeInt(compressedLength);
+        RandomAccessFile mappedFile = new RandomAccessFile(file, "r");
+        final ByteBuffer data = mappedFile.getChannel().map(FileChannel.MapMode.READ_ONLY, dataStart, dataSize);
+        mappedFile.close();
+        final long[] lineBeginnings = coded ? codedLineBeginnings(data, dataStart) : index;
+
+        ParallelTransform.forEachLine(new ParallelTransform.LineJob() {
+            @Override
+            void process(int first, int last) {
+                ByteBuffer view = data.duplicate();
+                MixedLineCodec lineCodec = coded ? null : new MixedLineCodec();
+                LineCoder coder = coded ? newLineCoder(typeOfFile) : null;
+                for (int k = first; k < last; k++) {
+                    int line = k % lines;
+                    int[] plane = transformData.getPlane(k / lines);
+                    view.position((int) (lineBeginnings[k] - dataStart));
+                    if (coded) {
+                        coder.decode(view, plane, lineStarts[line], lineLengths[line]);
+                    } else {
+                        lineCodec.decode(view, plane, lineStarts[line], lineLengths[line]);
+                    }
+                }
+            }
+        }, noOfColors * lines, pool);
+        return transformData;
     }
 
     /**
-     * Tells the type of the wtf-file. Different types are described in the
-     * description of this class.
+     * Tells whether the image of the file can be read with readSparseImage.
      *
-     * @return The type of the wtf-file
+     * @return True for a zero run coded file of the column transform whose
+     * colors haven't been transformed.
      */
-    public byte getTypeOfFile() {
-        return typeOfFile;
+    public boolean canReadSparse() {
+        return typeOfFile == TYPE_ZERO_RUN && !isTiled() && !colorTransform;
     }
 
     /**
+     * Reads a zero run coded file of the column transform and retrieves the
+     * image from it, like readPlanes(ForkJoinPool) followed by
+     * ParallelTransform.inverseLossyTransform, but without the planes of the
+     * transform. Every coefficient that isn't zero takes at least a byte, so
+     * a line whose coded length is at most one in SPARSE_LIMIT of its
+     * coefficients is sparse enough to be decoded into a SparseLine and
+     * inverse transformed with HaarTransform.sparseInverse, which skips the
+     * zeros. The other lines are decoded into an array and go through
+     * liftingInverse, which is faster for them. The lines are done by the
+     * threads of the pool. Files too big to be mapped at once are read with
+     * readPlanes().
      *
-     * @return number of colors in the transformed picture.
+     * @param pool The pool whose threads decode the lines and do the inverse
+     * transforms.
+     * @return The (approximate) original image, row-major if the file is.
+     * @throws IOException
+     * @throws IllegalStateException if canReadSparse() is false.
      */
-    public short getNoOfColors() {
-        return noOfColors;
+    public ImagePlanes readSparseImage(ForkJoinPool pool) throws IOException {
+        if (!canReadSparse()) {
+            reader.close();
+            throw new IllegalStateException("Only a zero run coded file of the column transform can be read sparse.");
+        }
+        long dataSize = file.length() - headerSize();
+        if (!mappedIO || dataSize > Integer.MAX_VALUE) {
+            return ParallelTransform.inverseLossyTransform(readPlanes(), originalHeight, levelOfLoss, pool);
+        }
+        reader.close();
+
+        final int lines = getLines();
+        final int length = compressedHeight;
+        final int dataStart = headerSize();
+        final ImagePlanes image = new ImagePlanes(noOfColors, lines, originalHeight);
+
+        RandomAccessFile mappedFile = new RandomAccessFile(file, "r");
+        final ByteBuffer data = mappedFile.getChannel().map(FileChannel.MapMode.READ_ONLY, dataStart, dataSize);
+        mappedFile.close();
+        final long[] lineBeginnings = codedLineBeginnings(data, dataStart);
+
+        ParallelTransform.forEachLine(new ParallelTransform.LineJob() {
+            @Override
+            void process(int first, int last) {
+                ByteBuffer view = data.duplicate();
+                ZeroRunCodec coder = new ZeroRunCodec();
+                SparseLine line = new SparseLine();
+                int[] dense = new int[length];
+                int[] sums = new int[length]; // For liftingInverse
+                int[] work = new int[2 * length]; // For sparseInverse, which leaves it full of zeros
+                for (int k = first; k < last; k++) {
+                    byte[] plane = image.getPlane(k / lines);
+                    int offset = image.columnOffset(k % lines);
+                    int lineStart = (int) (lineBeginnings[k] - dataStart);
+                    view.position(lineStart);
+                    if ((long) data.getInt(lineStart) * SPARSE_LIMIT <= length) {
+                        coder.decode(view, line, length);
+                        HaarTransform.sparseInverse(line, levelOfLoss, plane, offset, originalHeight, work);
+                    } else {
+                        coder.decode(view, dense, 0, length);
+                        HaarTransform.liftingInverse(dense, 0, levelOfLoss, plane, offset, originalHeight, sums);
+                    }
+                }
+            }
+        }, noOfColors * lines, pool);
+        return image;
     }
 
     /**
+     * Reads a file of the column transform as if it had been written with a
+     * bigger level of loss, i.e. only the coarse coefficients at the end of
+     * the transform of each subarray (see HaarTransform.coarserTransform).
+     * These are what a thumbnail needs, see
+     * ParallelTransform.inverseThumbnail. In an indexed file the
+     * coefficients are found from the index and the offsets of the lines, so
+     * only they are read from the mapped file and decoded, by the threads of
+     * the pool. The other files are read whole and the coefficients are picked
+     * from them.
      *
-     * @return The width of the transformed picture.
+     * @param newLevelOfLoss The bigger level of loss.
+     * @param pool The pool whose threads decode the lines.
+     * @return The transform with the bigger level of loss.
+     * @throws IOException
+     * @throws IllegalStateException if the file doesn't hold a column
+     * transform.
+     * @throws IllegalArgumentException if the new level of loss is smaller
+     * than that of the file.
      */
-    public int getOriginalWidth() {
-        return originalWidth;
+    public CoefficientPlanes readCoarserPlanes(int newLevelOfLoss, ForkJoinPool pool) throws IOException {
+        if (isTiled() || typeOfFile == TYPE_MIXED_2D) {
+            reader.close();
+            throw new IllegalStateException("Only a file of the column transform can be read coarser.");
+        }
+        if (newLevelOfLoss < levelOfLoss) {
+            reader.close();
+            throw new IllegalArgumentException("The level of loss can't be made smaller.");
+        }
+        final int[] positions = HaarTransform.coarserPositions(originalHeight, levelOfLoss, newLevelOfLoss);
+        final CoefficientPlanes coarser = new CoefficientPlanes(noOfColors, originalWidth, positions.length);
+
+        final int dataStart = headerSize();
+        long dataSize = file.length() - dataStart;
+        if (typeOfFile != TYPE_INDEXED || !mappedIO || dataSize > Integer.MAX_VALUE) {
+            CoefficientPlanes transform = readPlanes(pool);
+            for (int c = 0; c < noOfColors; c++) {
+                for (int line = 0; line < originalWidth; line++) {
+                    int from = transform.lineOffset(line);
+                    int to = coarser.lineOffset(line);
+                    for (int i = 0; i < positions.length; i++) {
+                        coarser.getPlane(c)[to + i] = transform.getPlane(c)[from + positions[i]];
+                    }
+                }
+            }
+            return coarser;
+        }
+        reader.close();
+
+        RandomAccessFile mappedFile = new RandomAccessFile(file, "r");
+        final ByteBuffer data = mappedFile.getChannel().map(FileChannel.MapMode.READ_ONLY, dataStart, dataSize);
+        mappedFile.close();
+
+        ParallelTransform.forEachLine(new ParallelTransform.LineJob() {
+            @Override
+            void process(int first, int last) {
+                for (int k = first; k < last; k++) {
+                    MixedLineCodec.decodeAt(data, (int) (index[k] - dataStart), positions,
+                            coarser.getPlane(k / originalWidth), coarser.lineOffset(k % originalWidth));
+                }
+            }
+        }, noOfColors * originalWidth, pool);
+        return coarser;
     }
 
     /**
+     * Reads the columns of a rectangle of the image from a file of the column
+     * transform, so that ParallelTransform.inverseRegion can retrieve the
+     * rectangle. The file is mapped into memory, and the lines of the columns
+     * are found without decoding the others: from the index of an indexed
+     * file, from the offsets of the lines of a mixed file and from the lengths
+     * in front of the lines of a Rice or zero run coded file. Of the lines in
+     * the mixed form, and of the integer form, only the coefficients told by
+     * HaarTransform.cropPositions are read, so the work depends on the size of
+     * the rectangle and not on the size of the image. Entropy coded and
+     * progressive files are read whole, and so are the files when the streams
+     * are chosen with setMappedIO.
      *
-     * @return The height of the transformed picture.
+     * @param x The first column of the rectangle.
+     * @param y The first row of the rectangle.
+     * @param width The width of the rectangle.
+     * @param height The height of the rectangle.
+     * @param pool The pool whose threads decode the lines.
+     * @return The transforms of the columns x,...,x + width - 1. The
+     * coefficients that aren't needed for the rows of the rectangle may be
+     * left zero.
+     * @throws IOException
+     * @throws IllegalStateException if the file doesn't hold a column
+     * transform.
+     * @throws IllegalArgumentException if the rectangle isn't inside the image.
      */
-    public int getOriginalHeight() {
-        return originalHeight;
+    public CoefficientPlanes readRegion(final int x, int y, final int width, int height, ForkJoinPool pool)
+            throws IOException {
+        if (isTiled() || typeOfFile == TYPE_MIXED_2D) {
+            reader.close();
+            throw new IllegalStateException("Only a rectangle of a file of the column transform can be read.");
+        }
+        if (x < 0 || y < 0 || width < 1 || height < 1 || x + width > originalWidth || y + height > originalHeight) {
+            reader.close();
+            throw new IllegalArgumentException("The rectangle isn't inside the image.");
+        }
+        final CoefficientPlanes region = new CoefficientPlanes(noOfColors, width, compressedHeight);
+        final int[] positions = HaarTransform.cropPositions(originalHeight, levelOfLoss, y, y + height);
+
+        final int dataStart = headerSize();
+        long dataSize = file.length() - dataStart;
+        if (typeOfFile == TYPE_ENTROPY || typeOfFile == TYPE_PROGRESSIVE || !mappedIO
+                || dataSize > Integer.MAX_VALUE) {
+            CoefficientPlanes transform = readPlanes(pool);
+            for (int c = 0; c < noOfColors; c++) {
+                System.arraycopy(transform.getPlane(c), transform.lineOffset(x), region.getPlane(c), 0,
+                        width * compressedHeight);
+            }
+            return region;
+        }
+        reader.close();
+
+        RandomAccessFile mappedFile = new RandomAccessFile(file, "r");
+        final ByteBuffer data = mappedFile.getChannel().map(FileChannel.MapMode.READ_ONLY, dataStart, dataSize);
+        mappedFile.close();
+        final long[] lineBeginnings = typeOfFile == TYPE_INDEXED ? index
+                : isLengthPrefixed() ? codedLineBeginnings(data, dataStart) : mixedLineBeginnings(data, dataStart);
+
+        ParallelTransform.forEachLine(new ParallelTransform.LineJob() {
+            @Override
+            void process(int first, int last) {
+                LineCoder coder = isLengthPrefixed() ? newLineCoder(typeOfFile) : null;
+                ByteBuffer view = data.duplicate();
+                int[] values = new int[positions.length];
+                for (int k = first; k < last; k++) {
+                    int[] plane = region.getPlane(k / width);
+                    int offset = region.lineOffset(k % width);
+                    int lineStart = (int) (lineBeginnings[(k / width) * originalWidth + x + k % width] - dataStart);
+                    if (coder != null) {
+                        view.position(lineStart);
+                        coder.decode(view, plane, offset, compressedHeight);
+                        continue;
+                    }
+                    if (typeOfFile == TYPE_INTEGER) {
+                        for (int i = 0; i < positions.length; i++) {
+                            values[i] = data.getInt(lineStart + 4 * positions[i]);
+                        }
+                    } else {
+                        MixedLineCodec.decodeAt(data, lineStart, positions, values, 0);
+                    }
+                    for (int i = 0; i < positions.length; i++) {
+                        plane[offset + positions[i]] = values[i];
+                    }
+                }
+            }
+        }, noOfColors * width, pool);
+        return region;
     }
 
     /**
-     *
-     * @return The level of loss of the transform.
+     * An auxiliary method for readRegion. Finds the positions of the lines of
+     * a file of type 0 or 1, the latter from the offsets of the lines.
      */
-    public short getLevelOfLoss() {
-        return levelOfLoss;
+    private long[] mixedLineBeginnings(ByteBuffer data, int dataStart) {
+        long[] beginnings = new long[noOfColors * getLines()];
+        int position = 0;
+        for (int k = 0; k < beginnings.length; k++) {
+            beginnings[k] = dataStart + position;
+            if (typeOfFile == TYPE_INTEGER) {
+                position += 4 * compressedHeight;
+            } else {
+                position += 8 + MixedLineCodec.encodedLength(data.getInt(position), data.getInt(position + 4),
+                        compressedHeight);
+            }
+        }
+        return beginnings;
     }
 
     /**
+     * Reads an entropy coded file into planes. The blocks are decoded by the
+     * threads of the pool from their own views of the mapped file, or one after
+     * another from the stream if the pool is null, the file is too big to be
+     * mapped or the streams are chosen with setMappedIO.
      *
-     * @return The length of the compressed line.
+     * @param pool The pool whose threads decode the blocks, or null.
+     * @return the transform that is the content of the file.
+     * @throws IOException
      */
-    public int getCompressedHeight() {
-        return compressedHeight;
+    private CoefficientPlanes readEntropyPlanes(ForkJoinPool pool) throws IOException {
+        final CoefficientPlanes transformData = isTiled()
+                ? new CoefficientPlanes(noOfColors, getTiling())
+                : new CoefficientPlanes(noOfColors, originalWidth, compressedHeight);
+        final int lines = getLines();
+        final int[] lineLengths = new int[lines];
+        for (int line = 0; line < lines; line++) {
+            lineLengths[line] = getLineLength(line);
+        }
+        final int[] lineStarts = lineStarts(lineLengths);
+        final int[] blockStarts = entropyBlocks(noOfColors, lineLengths, blockSize);
+        if (blockStarts.length - 1 != blockIndex.length) {
+            reader.close();
+            throw new IOException("The blocks of the file don't match its header.");
+        }
+
+        final int dataStart = headerSize();
+        long dataSize = file.length() - dataStart;
+        if (pool == null || !mappedIO || dataSize > Integer.MAX_VALUE) {
+            for (int block = 0; block < blockIndex.length; block++) {
+                long end = block + 1 < blockIndex.length ? blockIndex[block + 1] : file.length();
+                byte[] coded = new byte[(int) (end - blockIndex[block])];
+                reader.readFully(coded);
+                decodeBlock(ByteBuffer.wrap(coded), transformData, blockStarts[block], blockStarts[block + 1],
+                        lineLengths, lineStarts);
+            }
+            reader.close();
+            return transformData;
+        }
+        reader.close();
+
+        RandomAccessFile mappedFile = new RandomAccessFile(file, "r");
+        final ByteBuffer data = mappedFile.getChannel().map(FileChannel.MapMode.READ_ONLY, dataStart, dataSize);
+        mappedFile.close();
+
+        ParallelTransform.forEachLine(new ParallelTransform.LineJob() {
+            @Override
+            void process(int first, int last) {
+                ByteBuffer view = data.duplicate();
+                for (int block = first; block < last; block++) {
+                    view.position((int) (blockIndex[block] - dataStart));
+                    decodeBlock(view, transformData, blockStarts[block], blockStarts[block + 1], lineLengths,
+                            lineStarts);
+                }
+            }
+        }, blockIndex.length, 1, pool);
+        return transformData;
     }
 
     /**
-     * Reads a wtf-file that is written down as "integer data", i.e. that has
-     * type 0, as explained in the description of this class.
+     * Reads the beginning of a progressive file, i.e. a file of type 8, as if
+     * the file had been cut after the given number of bytes. The fewer bytes
+     * are read, the coarser the transform is, but the whole file gives the
+     * transform that was written. A file that really has been cut can be read
+     * too.
      *
-     * @return the transform that is the content of the file.
+     * @param bytes How many bytes from the beginning of the file are read,
+     * the header included.
+     * @return The transform decoded from the bytes.
      * @throws IOException
+     * @throws IllegalStateException if the file isn't of type 8.
      */
-    public int[][][] readIntegerData() throws IOException {
-        int[][][] transformData = new int[noOfColors][originalWidth][compressedHeight];
-        for (int i = 0; i < noOfColors; i++) {
-            for (int j = 0; j < originalWidth; j++) {
-                for (int k = 0; k < compressedHeight; k++) {
-                    transformData[i][j][k] = reader.readInt();
-                }
-            }
+    public CoefficientPlanes readProgressive(long bytes) throws IOException {
+        if (typeOfFile != TYPE_PROGRESSIVE) {
+            reader.close();
+            throw new IllegalStateException("Only a progressive file can be read from its beginning.");
         }
-
+        CoefficientPlanes transformData = isTiled()
+                ? new CoefficientPlanes(noOfColors, getTiling())
+                : new CoefficientPlanes(noOfColors, originalWidth, compressedHeight);
+        int[] lengths = new int[getLines()];
+        for (int line = 0; line < lengths.length; line++) {
+            lengths[line] = getLineLength(line);
+        }
+        long dataSize = Math.max(0, Math.min(bytes, file.length()) - headerSize());
+        if (dataSize > Integer.MAX_VALUE) {
+            reader.close();
+            throw new IOException("The file is too big to be read at once.");
+        }
+        byte[] stream = new byte[(int) dataSize];
+        reader.readFully(stream);
         reader.close();
+        BitPlaneCoder.decode(ByteBuffer.wrap(stream), transformData, lengths, highestBits);
         return transformData;
     }
 
     /**
-     * Reads a wtf-file that is written down as "mixed data", i.e. that has
-     * type 1 as explained in the description of this class.
+     * An auxiliary method for readEntropyPlanes. Decodes the lines from first
+     * to last - 1, numbered over all the colors, that make up a block.
+     */
+    private static void decodeBlock(ByteBuffer source, CoefficientPlanes transformData, int first, int last,
+            int[] lineLengths, int[] lineStarts) {
+        int line = first % lineLengths.length;
+        EntropyCoder.decode(source, transformData.getPlane(first / lineLengths.length), lineStarts[line],
+                Arrays.copyOfRange(lineLengths, line, line + last - first));
+    }
+
+    /**
+     * @return The length of the header of the file in bytes, with the index
+     * of an indexed file and the table of the blocks of an entropy coded file.
+     */
+    private int headerSize() {
+        if (typeOfFile == TYPE_INDEXED) {
+            return HEADER_SIZE + 4 + 8 * index.length;
+        }
+        if (typeOfFile == TYPE_ENTROPY) {
+            return HEADER_SIZE + 12 + 8 * blockIndex.length;
+        }
+        if (typeOfFile == TYPE_PROGRESSIVE) {
+            return HEADER_SIZE + 8 + 4 * highestBits.length;
+        }
+        return typeOfFile == TYPE_MIXED_TILED || isLengthPrefixed() ? HEADER_SIZE + 4 : HEADER_SIZE;
+    }
+
+    /**
+     * Reads a wtf-file of type 1, 2, 3 or 4 into a narrow store. The lines
+     * are kept in the mixed form as they are read, so nothing is decoded.
+     * Files of type 0, 5, 6, 7 and 8 are read into planes and then stored
+     * narrowly.
      *
      * @return the transform that is the content of the file.
      * @throws IOException
      */
-
-    public int[][][] readMixedData() throws IOException {
-
-        int[][][] transformData = new int[noOfColors][originalWidth][compressedHeight];
+    public NarrowCoefficients readNarrowData() throws IOException {
+        if (typeOfFile == TYPE_INTEGER) {
+            return NarrowCoefficients.fromPlanes(readIntegerPlanes(), null, null);
+        }
+        if (typeOfFile == TYPE_ENTROPY || isLengthPrefixed() || typeOfFile == TYPE_PROGRESSIVE) {
+            return NarrowCoefficients.fromPlanes(readPlanes(), getTiling(), null);
+        }
+        NarrowCoefficients transformData = isTiled()
+                ? new NarrowCoefficients(noOfColors, getTiling())
+                : new NarrowCoefficients(noOfColors, getCompressedWidth(), compressedHeight);
 
         for (int i = 0; i < noOfColors; i++) {
-            for (int j = 0; j < originalWidth; j++) {
-
+            for (int j = 0; j < transformData.getLines(); j++) {
                 int[] offSets = readOffsets();
-                ByteBuffer buffer = readLine(offSets);
-                decodeRawMixedDataLine(buffer, transformData[i][j], offSets);
-
+                int length = mixedLength(offSets, transformData.getLineLength(j));
+                byte[] line = new byte[8 + length];
+                ByteBuffer.wrap(line).putInt(offSets[0]).putInt(offSets[1]);
+                reader.readFully(line, 8, length);
+                transformData.setMixedLine(i, j, line);
             }
         }
 
         reader.close();
         return transformData;
-
     }
-    
+
     /**
      * An auxiliary method to read offsets from the start of a line in mixed data.
      * @return The offsets as an array {shortOffset, intOffset}.
@@ -278,17 +2132,39 @@ public class WTFIO {
      * @throws IOException 
      */
     public ByteBuffer readLine(int[] offSets) throws IOException {
+        return readLine(offSets, compressedHeight);
+    }
+
+    /**
+     * Reads a line of mixed data that has lineLength coefficients.
+     * @param offSets The short and int offsets of the line.
+     * @param lineLength The number of coefficients on the line.
+     * @return The line of compressed data in a ByteBuffer.
+     * @throws IOException 
+     */
+    private ByteBuffer readLine(int[] offSets, int lineLength) throws IOException {
 
-        int length = offSets[0] + 2 * (offSets[1] - offSets[0]) + 4 * (compressedHeight - offSets[1]);
+        int length = mixedLength(offSets, lineLength);
 
         byte[] readLine = new byte[length];
-        reader.read(readLine);
+        reader.readFully(readLine);
         ByteBuffer buffer = ByteBuffer.allocate(length);
         buffer.put(readLine);
         
         return buffer;
     }
    
+    /**
+     * Tells how many bytes the coefficients of a line of mixed data take,
+     * without the offsets.
+     * @param offSets The short and int offsets of the line.
+     * @param lineLength The number of coefficients on the line.
+     * @return The length of the line in bytes.
+     */
+    private static int mixedLength(int[] offSets, int lineLength) {
+        return MixedLineCodec.encodedLength(offSets[0], offSets[1], lineLength);
+    }
+
     /**
      * Decodesa line of raw mixed data to the approprite data types.
      * @param buffer The ByteBuffer where the raw data is stored.
@@ -297,16 +2173,29 @@ public class WTFIO {
      * numbers are stored as bytes, after it as shorts, and after offSets[1] as ints.
      */
     public void decodeRawMixedDataLine(ByteBuffer buffer, int[] transformDataLine, int[] offSets){
-        
+        decodeRawMixedDataLine(buffer, transformDataLine, 0, compressedHeight, offSets);
+    }
+
+    /**
+     * Decodes a line of raw mixed data into a part of an array.
+     * @param buffer The ByteBuffer where the raw data is stored.
+     * @param transformData The array to which the decoded information is stored.
+     * @param start The index where the line begins in the array.
+     * @param lineLength The number of coefficients on the line.
+     * @param offSets The offsets of short and integer data types.
+     */
+    private static void decodeRawMixedDataLine(ByteBuffer buffer, int[] transformData, int start,
+            int lineLength, int[] offSets) {
+
                 buffer.position(0);
                 for (int k = 0; k < offSets[0]; k++) {
-                    transformDataLine[k] = (int) buffer.get();
+                    transformData[start + k] = (int) buffer.get();
                 }
                 for (int k = offSets[0]; k < offSets[1]; k++) {
-                    transformDataLine[k] = (int) buffer.getShort();
+                    transformData[start + k] = (int) buffer.getShort();
                 }
-                for (int k = offSets[1]; k < compressedHeight; k++) {
-                    transformDataLine[k] = (int) buffer.getInt();
+                for (int k = offSets[1]; k < lineLength; k++) {
+                    transformData[start + k] = (int) buffer.getInt();
                 }
     }
     
@@ -316,11 +2205,35 @@ public class WTFIO {
      * @throws IOException 
      */
     public int[][][] readData() throws IOException {
+        CoefficientPlanes planes = readPlanes();
+        return planes == null ? null : planes.toJagged(getTiling());
+    }
+
+    /**
+     * Reads the data in the file into planes. This method figures out by itself
+     * how the data is written. The planes of a tiled file hold the tiles as
+     * told by getTiling.
+     * @return The transform data contained in the wtf file.
+     * @throws IOException 
+     */
+    public CoefficientPlanes readPlanes() throws IOException {
         switch (typeOfFile) {
-            case 0:
-                return readIntegerData();
-            case 1:
-                return readMixedData();
+            case TYPE_INTEGER:
+                return readIntegerPlanes();
+            case TYPE_MIXED:
+            case TYPE_MIXED_2D:
+                return readMixedPlanes();
+            case TYPE_MIXED_TILED:
+                return readTiledPlanes();
+            case TYPE_INDEXED:
+                return isTiled() ? readTiledPlanes() : readMixedPlanes();
+            case TYPE_ENTROPY:
+                return readEntropyPlanes(null);
+            case TYPE_RICE:
+            case TYPE_ZERO_RUN:
+                return isTiled() ? readTiledPlanes() : readMixedPlanes();
+            case TYPE_PROGRESSIVE:
+                return readProgressive(file.length());
         }
 
         return null;
@@ -336,10 +2249,23 @@ public class WTFIO {
      * @return The offsets of shorts and integers respectively.
      */
     public static int[] calculateOffsets(int[] data) {
+        return calculateOffsets(data, 0, data.length);
+    }
+
+    /**
+     * Calculates the offsets like calculateOffsets(int[]) for the line that
+     * has length numbers starting from the index start of the array.
+     *
+     * @param data An array that contains a line of the compressed data.
+     * @param start The index where the line begins.
+     * @param length The length of the line.
+     * @return The offsets of shorts and integers relative to the start of the line.
+     */
+    public static int[] calculateOffsets(int[] data, int start, int length) {
 
         int[] offsets = new int[2];
-        offsets[0] = data.length;
-        offsets[1] = data.length;
+        offsets[0] = length;
+        offsets[1] = length;
         boolean shortFound = false;
         boolean intFound = false;
         int minByte = (int) Byte.MIN_VALUE;
@@ -347,8 +2273,8 @@ public class WTFIO {
         int minShort = (int) Short.MIN_VALUE;
         int maxShort = (int) Short.MAX_VALUE;
 
-        for (int i = 0; i < data.length; i++) {
-            int read = data[i];
+        for (int i = 0; i < length; i++) {
+            int read = data[start + i];
             if (!shortFound && (read < minByte || read > maxByte)) {
                 offsets[0] = i;
                 shortFound = true;
@@ -372,17 +2298,29 @@ public class WTFIO {
      */
     
     public static byte[] createLineOfMixedData(int[] data){
+        return createLineOfMixedData(data, 0, data.length);
+    }
+
+    /**
+     * Creates a line of mixed data complete with the offsets from the line that
+     * has length numbers starting from the index start of the array.
+     * @param data An array that contains the line.
+     * @param start The index where the line begins.
+     * @param length The length of the line.
+     * @return The data as it will written in the file.
+     */
+    public static byte[] createLineOfMixedData(int[] data, int start, int length){
         
         
-        int[] offSets = calculateOffsets(data);
+        int[] offSets = calculateOffsets(data, start, length);
 
         // Calculate the length of the result array:
         int noOfBytes = offSets[0];
         int noOfShorts = offSets[1] - offSets[0];
-        int noOfInts = data.length - offSets[1];
-        int length = 8 + noOfBytes + 2 * noOfShorts + 4 * noOfInts;
+        int noOfInts = length - offSets[1];
+        int bufferLength = 8 + noOfBytes + 2 * noOfShorts + 4 * noOfInts;
         
-        ByteBuffer buffer = ByteBuffer.allocate(length);
+        ByteBuffer buffer = ByteBuffer.allocate(bufferLength);
         
         // Write down the offsets, the bytes, the shorts and the ints:
         for (int i = 0; i < 2; i++) {
@@ -390,18 +2328,32 @@ public class WTFIO {
         }
         
         for (int i = 0; i < offSets[0]; i++) {
-            buffer.put( (byte) data[i]);
+            buffer.put( (byte) data[start + i]);
         }
         
         for (int i = offSets[0]; i < offSets[1]; i++) {
-            buffer.putShort((short) data[i]);
+            buffer.putShort((short) data[start + i]);
         }
         
-        for (int i = offSets[1]; i < data.length; i++) {
-            buffer.putInt(data[i]);
+        for (int i = offSets[1]; i < length; i++) {
+            buffer.putInt(data[start + i]);
         }
        
         return buffer.array();
     }
 
+    /**
+     * Decodes a line of mixed data complete with the offsets, i.e. the inverse
+     * of createLineOfMixedData.
+     * @param line The line as it is written in the file.
+     * @param data The array to which the coefficients are written.
+     * @param start The index where the line will begin in the array.
+     * @param length The number of coefficients on the line.
+     */
+    public static void decodeLineOfMixedData(byte[] line, int[] data, int start, int length) {
+        ByteBuffer buffer = ByteBuffer.wrap(line);
+        int[] offSets = {buffer.getInt(), buffer.getInt()};
+        decodeRawMixedDataLine(buffer.slice(), data, start, length, offSets);
+    }
+
 }
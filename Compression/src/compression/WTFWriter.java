@@ -0,0 +1,140 @@
+package compression;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Writes a wtf-file of the mixed types one line at a time, so that the whole
+ * transform never has to be in memory. See the class WTFIO for the format.
+ *
+ * In the file all the lines of the first color come before those of the
+ * second one, but an image is usually transformed a part at a time, all the
+ * colors of the part together. So only the lines of the first color are
+ * written into the file as they come. The others are written into temporary
+ * files in the same folder, and the method close appends them to the file and
+ * deletes them. The lines of each color must be given in the order in which
+ * they are in the file.
+ */
+public class WTFWriter {
+
+    private static int BUFFER_SIZE = 1 << 16;
+
+    private DataOutputStream[] outputs;
+    private File[] parts;
+
+    /**
+     * Creates a writer for a file of the type 1, the column transform. See
+     * WTFIO.writeMixedData.
+     *
+     * @param file The file to be written.
+     * @param colors The number of colors.
+     * @param originalWidth The width of the original picture.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of wavelets are omitted.
+     * @return The writer.
+     * @throws IOException
+     */
+    public static WTFWriter mixed(File file, int colors, int originalWidth, int originalHeight, int levelOfLoss)
+            throws IOException {
+        WTFWriter writer = new WTFWriter(file, colors);
+        WTFIO.createHeader(colors, originalWidth, originalHeight, levelOfLoss,
+                HaarTransform.compressedLength(originalHeight, levelOfLoss), writer.outputs[0], WTFIO.TYPE_MIXED);
+        return writer;
+    }
+
+    /**
+     * Creates a writer for a file of the type 3, the tiled transform. The
+     * tiles are written line by line in the order told by the class Tiling.
+     * See WTFIO.writeMixedDataTiled.
+     *
+     * @param file The file to be written.
+     * @param colors The number of colors.
+     * @param originalWidth The width of the original picture.
+     * @param originalHeight The height of the original picture.
+     * @param levelOfLoss How many levels of wavelets are omitted in each direction.
+     * @param tileSize The width and height of the tiles.
+     * @return The writer.
+     * @throws IOException
+     */
+    public static WTFWriter tiled(File file, int colors, int originalWidth, int originalHeight, int levelOfLoss,
+            int tileSize) throws IOException {
+        WTFWriter writer = new WTFWriter(file, colors);
+        Tiling tiling = new Tiling(originalWidth, originalHeight, tileSize, levelOfLoss);
+        WTFIO.createHeader(colors, originalWidth, originalHeight, levelOfLoss, tiling.compressedTileHeight(0),
+                writer.outputs[0], WTFIO.TYPE_MIXED_TILED);
+        writer.outputs[0].writeInt(tileSize);
+        return writer;
+    }
+
+    /**
+     * Opens the file and the temporary files of the colors other than the
+     * first.
+     */
+    private WTFWriter(File file, int colors) throws IOException {
+        outputs = new DataOutputStream[colors];
+        parts = new File[colors];
+        outputs[0] = open(file);
+        for (int c = 1; c < colors; c++) {
+            parts[c] = File.createTempFile("color" + c + "-", ".part", file.getAbsoluteFile().getParentFile());
+            outputs[c] = open(parts[c]);
+        }
+    }
+
+    /**
+     * An auxiliary method that opens a buffered stream into a file.
+     */
+    private static DataOutputStream open(File file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+    }
+
+    /**
+     * Writes the next line of a color as mixed data.
+     *
+     * @param color The color.
+     * @param data An array that has the coefficients of the line.
+     * @param start The index where the line begins in the array.
+     * @param length The number of coefficients on the line.
+     * @throws IOException
+     */
+    public void writeLine(int color, int[] data, int start, int length) throws IOException {
+        outputs[color].write(WTFIO.createLineOfMixedData(data, start, length));
+    }
+
+    /**
+     * Writes the next line of a color that is already in the mixed form, e.g.
+     * a line of NarrowCoefficients.
+     *
+     * @param color The color.
+     * @param mixedLine The line with its offsets.
+     * @throws IOException
+     */
+    public void writeMixedLine(int color, byte[] mixedLine) throws IOException {
+        outputs[color].write(mixedLine);
+    }
+
+    /**
+     * Appends the lines of the other colors to the file after those of the
+     * first one and closes it. The temporary files are deleted.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (int c = 1; c < outputs.length; c++) {
+            outputs[c].close();
+            InputStream part = new FileInputStream(parts[c]);
+            int read;
+            while ((read = part.read(buffer)) > 0) {
+                outputs[0].write(buffer, 0, read);
+            }
+            part.close();
+            parts[c].delete();
+        }
+        outputs[0].close();
+    }
+}
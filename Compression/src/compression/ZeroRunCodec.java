@@ -0,0 +1,200 @@
+package compression;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Codes lines of coefficients as runs of zeros and the coefficients between
+ * them, for the wtf-files of type 7 (see the class WTFIO). With high levels
+ * of loss and in flat parts of an image most of the differences are zero,
+ * and a run of them takes at most a byte or a few instead of a byte each.
+ *
+ * A coded line is
+ * -------------------------
+ * int The number of bytes after this int
+ * tokens, each a run of zeros followed by a coefficient that isn't zero
+ * ======================
+ * A token is either one byte 0rrrvvvv, i.e. a run of r = 0,...,7 zeros and
+ * the coefficient whose zigzag number (see RiceCoder) is v + 1, so -8,...,8,
+ * or a byte 1rrrrrrr followed by varints. Then the run is r = 0,...,126 zeros,
+ * or 127 plus the varint after the byte, and after it comes the zigzag
+ * number of the coefficient as a varint. A varint is a number in bytes of 7
+ * bits, the lowest first, and the highest bit of every byte but the last is
+ * 1. The zeros at the end of a line are a run without a coefficient.
+ *
+ * The lines can be decoded into arrays like the other forms or into a
+ * SparseLine, which holds only the coefficients that aren't zero. A codec
+ * has no state, but it's an object so that it can be used where a RiceCoder
+ * can, see the interface LineCoder.
+ */
+public class ZeroRunCodec implements LineCoder {
+
+    private static int SHORT_RUNS = 8;
+    private static int SHORT_NUMBERS = 16; // The zigzag numbers 1,...,16 fit into a short token
+    private static int LONG_RUN = 127; // In a long token, followed by a varint
+
+    /**
+     * Tells how many bytes a line may take at most when it's coded.
+     *
+     * @param length The number of coefficients on the line.
+     * @return The length of the line if every coefficient needs a long token
+     * and a varint of 5 bytes.
+     */
+    public static int maxEncodedLength(int length) {
+        return 4 + 6 * length + 6;
+    }
+
+    /**
+     * Writes a coded line at the position of the buffer and moves the position
+     * past it.
+     *
+     * @param data An array that contains the line.
+     * @param start The index where the line begins.
+     * @param length The number of coefficients on the line.
+     * @param target The buffer. It must have at least maxEncodedLength(length)
+     * bytes remaining.
+     * @return The number of bytes written.
+     */
+    @Override
+    public int encode(int[] data, int start, int length, ByteBuffer target) {
+        int lineStart = target.position();
+        target.putInt(0);
+        int run = 0;
+        for (int i = start; i < start + length; i++) {
+            int value = data[i];
+            if (value == 0) {
+                run++;
+                continue;
+            }
+            int number = (value << 1) ^ (value >> 31);
+            if (run < SHORT_RUNS && number >= 1 && number <= SHORT_NUMBERS) {
+                target.put((byte) ((run << 4) | (number - 1)));
+            } else {
+                putRun(run, target);
+                putVarint(number, target);
+            }
+            run = 0;
+        }
+        if (run > 0) {
+            putRun(run, target);
+        }
+        int written = target.position() - lineStart;
+        target.putInt(lineStart, written - 4);
+        return written;
+    }
+
+    /**
+     * Reads a coded line from the position of the buffer and moves the
+     * position past it.
+     *
+     * @param source The buffer.
+     * @param target The array into which the coefficients are written, the
+     * zeros too.
+     * @param start The index where the line will begin in the array.
+     * @param length The number of coefficients on the line.
+     */
+    @Override
+    public void decode(ByteBuffer source, int[] target, int start, int length) {
+        int lineEnd = source.position() + 4 + source.getInt();
+        int i = start;
+        int end = start + length;
+        while (i < end) {
+            int token = source.get();
+            if (token >= 0) {
+                int run = token >>> 4;
+                if (run > 0) {
+                    Arrays.fill(target, i, i + run, 0);
+                    i += run;
+                }
+                int number = (token & 15) + 1;
+                target[i++] = (number >>> 1) ^ -(number & 1);
+            } else {
+                int run = longRun(token, source);
+                Arrays.fill(target, i, i + run, 0);
+                i += run;
+                if (i < end) {
+                    int number = getVarint(source);
+                    target[i++] = (number >>> 1) ^ -(number & 1);
+                }
+            }
+        }
+        source.position(lineEnd);
+    }
+
+    /**
+     * Reads a coded line like decode, but into a SparseLine, so the zeros are
+     * only skipped.
+     *
+     * @param source The buffer.
+     * @param target The line into which the coefficients that aren't zero are
+     * written. What it held before is cleared.
+     * @param length The number of coefficients on the line.
+     */
+    public void decode(ByteBuffer source, SparseLine target, int length) {
+        int lineEnd = source.position() + 4 + source.getInt();
+        target.clear(length);
+        int i = 0;
+        while (i < length) {
+            int token = source.get();
+            if (token >= 0) {
+                i += token >>> 4;
+                int number = (token & 15) + 1;
+                target.add(i++, (number >>> 1) ^ -(number & 1));
+            } else {
+                i += longRun(token, source);
+                if (i < length) {
+                    int number = getVarint(source);
+                    target.add(i++, (number >>> 1) ^ -(number & 1));
+                }
+            }
+        }
+        source.position(lineEnd);
+    }
+
+    /**
+     * An auxiliary method for encode. Writes the long token of a run.
+     */
+    private static void putRun(int run, ByteBuffer target) {
+        if (run < LONG_RUN) {
+            target.put((byte) (0x80 | run));
+        } else {
+            target.put((byte) (0x80 | LONG_RUN));
+            putVarint(run - LONG_RUN, target);
+        }
+    }
+
+    /**
+     * An auxiliary method for the decoding methods. Reads the run of a long
+     * token.
+     */
+    private static int longRun(int token, ByteBuffer source) {
+        int run = token & 0x7F;
+        return run == LONG_RUN ? LONG_RUN + getVarint(source) : run;
+    }
+
+    /**
+     * Writes an unsigned number as a varint. RiceCoder uses it too.
+     */
+    static void putVarint(int number, ByteBuffer target) {
+        while ((number & ~0x7F) != 0) {
+            target.put((byte) ((number & 0x7F) | 0x80));
+            number >>>= 7;
+        }
+        target.put((byte) number);
+    }
+
+    /**
+     * Reads an unsigned number written with putVarint.
+     */
+    private static int getVarint(ByteBuffer source) {
+        int number = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = source.get();
+            number |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return number;
+    }
+}
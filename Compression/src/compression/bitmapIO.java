@@ -1,6 +1,12 @@
 package compression;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
 import javax.imageio.ImageIO;
@@ -10,7 +16,10 @@ public class BitmapIO {
     public static final int BLUE = 0;
     public static final int GREEN = 1;
     public static final int RED = 2;
-    public static final int NO_OF_COLORS = 3;
+    public static final int ALPHA = 3;
+    public static final int GRAY = 0; // The only color of grayscale images
+    public static final int NO_OF_COLORS = 3; // Of images without transparency
+    private static final int ROWS_AT_ONCE = 64; // The height of the strips of the raster copied at a time
 
     /**
      * Reads a given bmp-file into data of it's pixels in the form
@@ -23,14 +32,120 @@ public class BitmapIO {
      * @throws IOException 
      */
     public static byte[][][] readFileIntoByteData(File file) throws IOException{
-        
-        BufferedImage image = ImageIO.read(file);
-        byte[][][] bgrData = new byte[NO_OF_COLORS][image.getWidth()][image.getHeight()];
+        return readFileIntoPlanes(file).toJagged();
+    }
+
+    /**
+     * Reads a given bmp-file into planes, one for each basic color in the same
+     * order as in readFileIntoByteData. A grayscale image has only one plane,
+     * GRAY, and an image with transparency has a fourth one, ALPHA, see
+     * channels. Uncompressed 8-bit grayscale, 24-bit and 32-bit files are read
+     * straight with BmpReader, and other kinds of files with ImageIO.
+     * @param file The file to be read. Must be .bmp.
+     * @return the color data.
+     * @throws IOException 
+     */
+    public static ImagePlanes readFileIntoPlanes(File file) throws IOException{
+        BmpReader reader = BmpReader.open(file);
+        if (reader == null) {
+            return imageToPlanes(ImageIO.read(file));
+        }
+        try {
+            return reader.readPlanes();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads a given bmp-file like readFileIntoPlanes, but into the row-major
+     * layout of ImagePlanes, i.e. into the planes of the transposed image. The
+     * rows of the file are then copied into the planes one after another
+     * without jumping (see BmpReader.readRows), and the same is done for the
+     * rasters of ImageIO when the pixels are bytes.
+     * @param file The file to be read.
+     * @return the color data, row by row.
+     * @throws IOException 
+     */
+    public static ImagePlanes readFileIntoRows(File file) throws IOException{
+        BmpReader reader = BmpReader.open(file);
+        if (reader == null) {
+            return imageToRows(ImageIO.read(file));
+        }
+        try {
+            return reader.readRows();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Tells how many planes an image with the color model gets: 1 for gray
+     * images, including the ones with a palette of only grays, 4 for images
+     * with transparency and 3 for the others.
+     * @param model The color model of the image.
+     * @return 1, 3 or 4.
+     */
+    public static int channels(ColorModel model){
+        if (model.hasAlpha()) {
+            return 4;
+        }
+        if (model.getNumColorComponents() == 1) {
+            return 1;
+        }
+        if (model instanceof IndexColorModel) {
+            IndexColorModel palette = (IndexColorModel) model;
+            for (int i = 0; i < palette.getMapSize(); i++) {
+                int red = palette.getRed(i);
+                if (red != palette.getGreen(i) || red != palette.getBlue(i)) {
+                    return 3;
+                }
+            }
+            return 1;
+        }
+        return 3;
+    }
+
+    /**
+     * Copies the colors of an image into planes in the same way as
+     * readFileIntoPlanes. The image can be a part of a bigger one, as read by
+     * the class StreamingEncoder.
+     * @param image The image.
+     * @return the color data.
+     */
+    public static ImagePlanes imageToPlanes(BufferedImage image){
+        int colors = channels(image.getColorModel());
+        if (hasByteRaster(image, colors)) {
+            return rasterToPlanes(image.getRaster(), colors);
+        }
+        return imageToPlanesPerPixel(image);
+    }
+
+    /**
+     * Copies the colors of an image into planes one pixel at a time through
+     * getRGB. This works for every type of image, but it is slow, since each
+     * pixel goes through the color model of the image. The samples of gray
+     * images without a palette are taken straight from the raster, since
+     * getRGB would change their gamma.
+     * @param image The image.
+     * @return the color data.
+     */
+    static ImagePlanes imageToPlanesPerPixel(BufferedImage image){
+        int colors = channels(image.getColorModel());
+        ImagePlanes bgrData = new ImagePlanes(colors, image.getWidth(), image.getHeight());
+        Raster raster = image.getRaster();
+        boolean samples = colors == 1 && !(image.getColorModel() instanceof IndexColorModel);
+        int extraBits = raster.getSampleModel().getSampleSize(0) - 8;
 
-        for (int y = 0; y < image.getHeight(); y++) {
-            for (int x = 0; x < image.getWidth(); x++) {
-                for (int color = 0; color < NO_OF_COLORS; color++) {
-                    bgrData[color][x][y] = bgrIntegerToColor(image.getRGB(x, y), color);
+        for (int x = 0; x < image.getWidth(); x++) {
+            for (int y = 0; y < image.getHeight(); y++) {
+                if (samples) {
+                    bgrData.set(GRAY, x, y, (byte) ((raster.getSample(x, y, 0) >> extraBits) - 128));
+                    continue;
+                }
+                int rgb = image.getRGB(x, y);
+                for (int color = 0; color < colors; color++) {
+                    bgrData.set(color, x, y, bgrIntegerToColor(rgb, color));
                 }
             }
         }
@@ -39,28 +154,242 @@ public class BitmapIO {
     }
 
     /**
-     * Writes raw data on the hard disk in .bmp-form. The data must be in the 
-     * same form as it is read in the readFileIntoByteData-method.
+     * Copies the pixels of an image into the row-major layout of ImagePlanes,
+     * see readFileIntoRows.
+     * @param image The image.
+     * @return The planes of the transposed image.
+     */
+    public static ImagePlanes imageToRows(BufferedImage image){
+        int colors = channels(image.getColorModel());
+        if (hasByteRaster(image, colors)) {
+            return rasterToRows(image.getRaster(), colors);
+        }
+        return imageToPlanesPerPixel(image).transposed();
+    }
+
+    /**
+     * Tells whether the pixels of an image are stored as bytes in the order of
+     * the image type of the number of colors (see imageType), so that they can
+     * be copied straight from the array of the raster. The bmp-reader of
+     * ImageIO gives images like this from 24-bit files.
+     */
+    private static boolean hasByteRaster(BufferedImage image, int colors) {
+        return image.getType() == imageType(colors)
+                && image.getRaster().getDataBuffer() instanceof DataBufferByte
+                && image.getRaster().getSampleModel() instanceof ComponentSampleModel;
+    }
+
+    /**
+     * Tells the type of BufferedImage whose raster holds the given number of
+     * colors as bytes: TYPE_BYTE_GRAY, TYPE_3BYTE_BGR or TYPE_4BYTE_ABGR.
+     */
+    private static int imageType(int colors) {
+        switch (colors) {
+            case 1:
+                return BufferedImage.TYPE_BYTE_GRAY;
+            case 3:
+                return BufferedImage.TYPE_3BYTE_BGR;
+            case 4:
+                return BufferedImage.TYPE_4BYTE_ABGR;
+            default:
+                throw new IllegalArgumentException("Images have 1, 3 or 4 colors, not " + colors + ".");
+        }
+    }
+
+    /**
+     * An auxiliary method for imageToPlanes. Copies the bytes of a raster of
+     * the type imageType(colors) into planes. The raster is gone through in
+     * strips of ROWS_AT_ONCE rows: the planes are stored column by column and
+     * the raster row by row, so this way a column of the strip is written in
+     * one go and the rows it is read from stay in the cache for the next
+     * columns. The shade s of a color is stored as s - 128 like in
+     * bgrIntegerToColor, which is the same as flipping the highest bit.
+     */
+    private static ImagePlanes rasterToPlanes(Raster raster, int colors) {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        ImagePlanes planes = new ImagePlanes(colors, width, height);
+        ComponentSampleModel model = (ComponentSampleModel) raster.getSampleModel();
+        DataBufferByte buffer = (DataBufferByte) raster.getDataBuffer();
+        byte[] bytes = buffer.getData();
+        int pixelStride = model.getPixelStride();
+        int scanlineStride = model.getScanlineStride();
+        int[] offsets = bandOffsets(raster, model, buffer, colors);
+
+        for (int color = 0; color < colors; color++) {
+            byte[] plane = planes.getPlane(color);
+            for (int top = 0; top < height; top += ROWS_AT_ONCE) {
+                int bottom = Math.min(height, top + ROWS_AT_ONCE);
+                for (int x = 0; x < width; x++) {
+                    int index = planes.columnOffset(x) + top;
+                    int source = offsets[color] + x * pixelStride + top * scanlineStride;
+                    for (int y = top; y < bottom; y++) {
+                        plane[index++] = (byte) (bytes[source] ^ 0x80);
+                        source += scanlineStride;
+                    }
+                }
+            }
+        }
+        return planes;
+    }
+
+    /**
+     * An auxiliary method for imageToRows. Copies the bytes of a raster of the
+     * type imageType(colors) into the row-major layout. A row of the raster
+     * is gone through once for each color from left to right, so both the
+     * reads and the writes move forward.
+     */
+    private static ImagePlanes rasterToRows(Raster raster, int colors) {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        ImagePlanes rows = new ImagePlanes(colors, height, width);
+        ComponentSampleModel model = (ComponentSampleModel) raster.getSampleModel();
+        DataBufferByte buffer = (DataBufferByte) raster.getDataBuffer();
+        byte[] bytes = buffer.getData();
+        int pixelStride = model.getPixelStride();
+        int scanlineStride = model.getScanlineStride();
+        int[] offsets = bandOffsets(raster, model, buffer, colors);
+
+        for (int y = 0; y < height; y++) {
+            int index = rows.columnOffset(y);
+            for (int color = 0; color < colors; color++) {
+                byte[] plane = rows.getPlane(color);
+                int source = offsets[color] + y * scanlineStride;
+                for (int x = 0; x < width; x++) {
+                    plane[index + x] = (byte) (bytes[source] ^ 0x80);
+                    source += pixelStride;
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Creates an image out of planes by writing straight into the array of
+     * its raster, the same way round as rasterToPlanes. The type of the image
+     * is TYPE_BYTE_GRAY, TYPE_3BYTE_BGR or TYPE_4BYTE_ABGR by the number of
+     * colors.
+     * @param data the pixel data of the image, in the same order as in
+     * readFileIntoPlanes.
+     * @return the image.
+     */
+    public static BufferedImage planesToImage(ImagePlanes data){
+        int width = data.getWidth();
+        int height = data.getHeight();
+        int colors = data.getColors();
+        BufferedImage image = new BufferedImage(width, height, imageType(colors));
+        WritableRaster raster = image.getRaster();
+        ComponentSampleModel model = (ComponentSampleModel) raster.getSampleModel();
+        DataBufferByte buffer = (DataBufferByte) raster.getDataBuffer();
+        byte[] bytes = buffer.getData();
+        int pixelStride = model.getPixelStride();
+        int scanlineStride = model.getScanlineStride();
+        int[] offsets = bandOffsets(raster, model, buffer, colors);
+
+        for (int color = 0; color < colors; color++) {
+            byte[] plane = data.getPlane(color);
+            for (int top = 0; top < height; top += ROWS_AT_ONCE) {
+                int bottom = Math.min(height, top + ROWS_AT_ONCE);
+                for (int x = 0; x < width; x++) {
+                    int index = data.columnOffset(x) + top;
+                    int target = offsets[color] + x * pixelStride + top * scanlineStride;
+                    for (int y = top; y < bottom; y++) {
+                        bytes[target] = (byte) (plane[index++] ^ 0x80);
+                        target += scanlineStride;
+                    }
+                }
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Creates an image of three colors out of planes one pixel at a time
+     * through setRGB, the slow way round of imageToPlanesPerPixel.
      * @param data the pixel data of the image.
-     * @param outputFile the file into which the image will be written.
-     * @throws IOException 
+     * @return the image.
      */
-    public static void writeByteDataIntoBitmap(byte[][][] data, File outputFile) throws IOException{
-        int height = data[0][0].length;
-        int width = data[0].length;
+    static BufferedImage planesToImagePerPixel(ImagePlanes data){
+        int height = data.getHeight();
+        int width = data.getWidth();
         BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        byte[] colors = new byte[data.getColors()];
 
         for (int x = 0; x < width; x++) {
             for (int y = 0; y < height; y++) {
-                byte[] colors = new byte[data.length];
-                for (int i = 0; i < data.length; i++) {
-                    colors[i] = data[i][x][y];
+                for (int i = 0; i < colors.length; i++) {
+                    colors[i] = data.get(i, x, y);
                 }
                 image.setRGB(x, y, colorsToBgrInteger(colors));
             }
         }
-        
-        ImageIO.write(image, "bmp", outputFile);
+        return image;
+    }
+
+    /**
+     * An auxiliary method for rasterToPlanes and planesToImage. Tells where
+     * the byte of each color of the upper left pixel of the raster is in the
+     * array of the buffer. The bands of the images of imageType are red,
+     * green, blue and alpha, so the order of the first three is turned around.
+     * A raster of a subimage shares the array of the whole image and is moved
+     * by the translation of its sample model.
+     */
+    private static int[] bandOffsets(Raster raster, ComponentSampleModel model, DataBufferByte buffer, int colors) {
+        int corner = buffer.getOffset()
+                + (raster.getMinX() - raster.getSampleModelTranslateX()) * model.getPixelStride()
+                + (raster.getMinY() - raster.getSampleModelTranslateY()) * model.getScanlineStride();
+        int[] bands = model.getBandOffsets();
+        int[] offsets = new int[colors];
+        for (int color = 0; color < colors; color++) {
+            offsets[color] = corner + bands[colors == 1 || color == ALPHA ? color : NO_OF_COLORS - 1 - color];
+        }
+        return offsets;
+    }
+
+    /**
+     * Writes raw data on the hard disk in .bmp-form. The data must be in the 
+     * same form as it is read in the readFileIntoByteData-method.
+     * @param data the pixel data of the image.
+     * @param outputFile the file into which the image will be written.
+     * @throws IOException 
+     */
+    public static void writeByteDataIntoBitmap(byte[][][] data, File outputFile) throws IOException{
+        writePlanesIntoBitmap(ImagePlanes.fromJagged(data), outputFile);
+    }
+
+    /**
+     * Writes an image that is stored in planes on the hard disk in .bmp-form
+     * with BmpWriter. The planes must be in the same order as in
+     * readFileIntoPlanes. One plane is written as an 8-bit grayscale file and
+     * four as a 32-bit file with alpha.
+     * @param data the pixel data of the image.
+     * @param outputFile the file into which the image will be written.
+     * @throws IOException 
+     */
+    public static void writePlanesIntoBitmap(ImagePlanes data, File outputFile) throws IOException{
+        BmpWriter writer = new BmpWriter(outputFile, data.getWidth(), data.getHeight(), data.getColors());
+        try {
+            writer.writeColumns(0, data);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Writes an image that is stored in the row-major layout (see
+     * readFileIntoRows) in .bmp-form with BmpWriter.writeRows.
+     * @param rows the pixel data of the image as the planes of the transposed
+     * image.
+     * @param outputFile the file into which the image will be written.
+     * @throws IOException 
+     */
+    public static void writeRowsIntoBitmap(ImagePlanes rows, File outputFile) throws IOException{
+        BmpWriter writer = new BmpWriter(outputFile, rows.getHeight(), rows.getWidth(), rows.getColors());
+        try {
+            writer.writeRows(0, rows);
+        } finally {
+            writer.close();
+        }
     }
     
      /**
@@ -71,7 +400,8 @@ public class BitmapIO {
      * subtracted from the returning value. (Otherwise shades 127 and 128 for example
      * would result 127 and -128 respectively.
      * @param rgbInt The integer describing the color.
-     * @param color The color to be extracted (BLUE = 0, Green = 1, RED = 2)
+     * @param color The color to be extracted (BLUE = 0, Green = 1, RED = 2),
+     * or ALPHA = 3 for the first byte, which is the alpha in getRGB.
      * @return The shade of the color - 128.
      */
     public static byte bgrIntegerToColor(int rgbInt, int color){
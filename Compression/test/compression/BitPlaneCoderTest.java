@@ -0,0 +1,103 @@
+package compression;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class BitPlaneCoderTest {
+
+    Random random;
+    int[] lineLengths = {13, 64, 1, 102};
+
+    @Before
+    public void setUp() {
+        random = new Random();
+    }
+
+    @Test
+    public void decode_inverseOfEncode() {
+        CoefficientPlanes transform = randomTransform();
+        transform.getPlane(1)[77] = -(1 << 20);
+
+        CoefficientPlanes decoded = decode(transform, Integer.MAX_VALUE);
+
+        for (int c = 0; c < transform.getColors(); c++) {
+            assertTrue(Arrays.equals(transform.getPlane(c), decoded.getPlane(c)));
+        }
+    }
+
+    @Test
+    public void decode_zerosTakeOnlyAFewBytes() {
+        CoefficientPlanes transform = new CoefficientPlanes(2, 4, 45);
+        int[] bits = BitPlaneCoder.highestBits(transform, lineLengths);
+        assertTrue(BitPlaneCoder.encode(transform, lineLengths, bits).length <= 8);
+
+        CoefficientPlanes decoded = decode(transform, Integer.MAX_VALUE);
+        assertTrue(Arrays.equals(transform.getPlane(0), decoded.getPlane(0)));
+    }
+
+    @Test
+    public void decode_beginningsCloserWhenLonger() {
+        CoefficientPlanes transform = randomTransform();
+        int[] bits = BitPlaneCoder.highestBits(transform, lineLengths);
+        int length = BitPlaneCoder.encode(transform, lineLengths, bits).length;
+
+        long first = error(transform, decode(transform, 0));
+        long half = error(transform, decode(transform, length / 2));
+        assertTrue(half < first);
+        for (int bytes = 0; bytes <= length; bytes++) {
+            assertTrue(error(transform, decode(transform, bytes)) <= first);
+        }
+        assertEquals(0, error(transform, decode(transform, length)));
+    }
+
+    /**
+     * Creates two colors of random coefficients that are bigger the coarser
+     * they are, like in a real transform.
+     */
+    private CoefficientPlanes randomTransform() {
+        CoefficientPlanes transform = new CoefficientPlanes(2, 4, 45);
+        for (int c = 0; c < 2; c++) {
+            int[] plane = transform.getPlane(c);
+            int start = 0;
+            for (int length : lineLengths) {
+                int[] levels = EntropyCoder.levelContexts(length);
+                for (int i = 0; i < length; i++) {
+                    int size = levels[i] == 0 ? 4000 : 400 >> levels[i];
+                    plane[start + i] = random.nextInt(2 * size + 1) - size;
+                }
+                start += length;
+            }
+        }
+        return transform;
+    }
+
+    /**
+     * Codes the transform and decodes the given number of bytes from the
+     * beginning of the stream.
+     */
+    private CoefficientPlanes decode(CoefficientPlanes transform, int bytes) {
+        int[] bits = BitPlaneCoder.highestBits(transform, lineLengths);
+        byte[] stream = BitPlaneCoder.encode(transform, lineLengths, bits);
+        CoefficientPlanes decoded = new CoefficientPlanes(2, 4, 45);
+        BitPlaneCoder.decode(ByteBuffer.wrap(stream, 0, Math.min(bytes, stream.length)), decoded, lineLengths,
+                bits);
+        return decoded;
+    }
+
+    /**
+     * Sums the absolute differences of the coefficients.
+     */
+    private static long error(CoefficientPlanes expected, CoefficientPlanes actual) {
+        long sum = 0;
+        for (int c = 0; c < expected.getColors(); c++) {
+            for (int i = 0; i < expected.getPlane(c).length; i++) {
+                sum += Math.abs(expected.getPlane(c)[i] - actual.getPlane(c)[i]);
+            }
+        }
+        return sum;
+    }
+}
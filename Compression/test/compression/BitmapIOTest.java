@@ -1,7 +1,9 @@
 package compression;
 
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Random;
 import static org.junit.Assert.*;
 import org.junit.Ignore;
@@ -226,4 +228,91 @@ public class BitmapIOTest {
         }
 
     }
+
+    @Test
+    public void imageToPlanes_rasterSameAsPerPixel() {
+        BufferedImage image = BitmapIO.planesToImagePerPixel(randomPlanes(37, 29));
+
+        assertSamePlanes(BitmapIO.imageToPlanesPerPixel(image), BitmapIO.imageToPlanes(image));
+        BufferedImage part = image.getSubimage(5, 3, 20, 17);
+        assertSamePlanes(BitmapIO.imageToPlanesPerPixel(part), BitmapIO.imageToPlanes(part));
+    }
+
+    @Test
+    public void imageToPlanes_otherTypesPerPixel() {
+        BufferedImage image = new BufferedImage(13, 11, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random();
+        for (int x = 0; x < 13; x++) {
+            for (int y = 0; y < 11; y++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+
+        assertSamePlanes(BitmapIO.imageToPlanesPerPixel(image), BitmapIO.imageToPlanes(image));
+    }
+
+    @Test
+    public void planesToImage_sameAsPerPixel() {
+        ImagePlanes planes = randomPlanes(70, 131);
+        BufferedImage fast = BitmapIO.planesToImage(planes);
+        BufferedImage slow = BitmapIO.planesToImagePerPixel(planes);
+
+        for (int x = 0; x < 70; x++) {
+            for (int y = 0; y < 131; y++) {
+                assertEquals(slow.getRGB(x, y), fast.getRGB(x, y));
+            }
+        }
+        assertSamePlanes(planes, BitmapIO.imageToPlanes(fast));
+    }
+
+    @Test
+    public void imageToPlanes_grayAndAlphaFromTheRaster() {
+        for (int colors : new int[]{1, 4}) {
+            ImagePlanes planes = randomPlanes(colors, 70, 131);
+            BufferedImage image = BitmapIO.planesToImage(planes);
+
+            assertEquals(colors, BitmapIO.channels(image.getColorModel()));
+            assertSamePlanes(planes, BitmapIO.imageToPlanes(image));
+            assertSamePlanes(planes, BitmapIO.imageToPlanesPerPixel(image));
+        }
+    }
+
+    @Test
+    public void rows_sameAsTransposedPlanes() throws IOException {
+        ImagePlanes planes = randomPlanes(37, 29);
+        BufferedImage image = BitmapIO.planesToImage(planes);
+        File bmp = File.createTempFile("testRows", ".bmp");
+
+        try {
+            assertSamePlanes(planes.transposed(), BitmapIO.imageToRows(image));
+            assertSamePlanes(planes.transposed(), BitmapIO.imageToRows(image.getSubimage(0, 0, 37, 29)));
+            BitmapIO.writeRowsIntoBitmap(planes.transposed(), bmp);
+            assertSamePlanes(planes, BitmapIO.readFileIntoPlanes(bmp));
+            assertSamePlanes(planes.transposed(), BitmapIO.readFileIntoRows(bmp));
+        } finally {
+            bmp.delete();
+        }
+    }
+
+    private static ImagePlanes randomPlanes(int width, int height) {
+        return randomPlanes(3, width, height);
+    }
+
+    private static ImagePlanes randomPlanes(int colors, int width, int height) {
+        ImagePlanes planes = new ImagePlanes(colors, width, height);
+        Random random = new Random();
+        for (int c = 0; c < colors; c++) {
+            random.nextBytes(planes.getPlane(c));
+        }
+        return planes;
+    }
+
+    private static void assertSamePlanes(ImagePlanes expected, ImagePlanes actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertEquals(expected.getColors(), actual.getColors());
+        for (int c = 0; c < expected.getColors(); c++) {
+            assertTrue(Arrays.equals(expected.getPlane(c), actual.getPlane(c)));
+        }
+    }
 }
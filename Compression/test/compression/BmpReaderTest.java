@@ -0,0 +1,174 @@
+package compression;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class BmpReaderTest {
+
+    ImagePlanes image;
+    File bmp;
+
+    @Before
+    public void setUp() throws IOException {
+        Random random = new Random();
+        image = new ImagePlanes(3, 37, 70); // 3 * 37 bytes per row, so the rows are padded
+        for (int c = 0; c < 3; c++) {
+            random.nextBytes(image.getPlane(c));
+        }
+        bmp = File.createTempFile("testBmpReader", ".bmp");
+    }
+
+    @After
+    public void tearDown() {
+        bmp.delete();
+    }
+
+    @Test
+    public void readPlanes_sameAsImageIO() throws IOException {
+        ImageIO.write(BitmapIO.planesToImage(image), "bmp", bmp);
+
+        BmpReader reader = BmpReader.open(bmp);
+        assertEquals(37, reader.getWidth());
+        assertEquals(70, reader.getHeight());
+        assertSamePlanes(image, reader.readPlanes());
+        reader.close();
+    }
+
+    @Test
+    public void readColumns_partOfTheImage() throws IOException {
+        BitmapIO.writePlanesIntoBitmap(image, bmp);
+
+        BmpReader reader = BmpReader.open(bmp);
+        ImagePlanes columns = reader.readColumns(5, 11);
+        reader.close();
+        for (int c = 0; c < 3; c++) {
+            for (int x = 0; x < 11; x++) {
+                for (int y = 0; y < 70; y++) {
+                    assertEquals(image.get(c, x + 5, y), columns.get(c, x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void readRows_transposedImage() throws IOException {
+        BitmapIO.writePlanesIntoBitmap(image, bmp);
+
+        BmpReader reader = BmpReader.open(bmp);
+        assertSamePlanes(image.transposed(), reader.readRows());
+        ImagePlanes rows = reader.readRows(13, 20);
+        reader.close();
+        for (int c = 0; c < 3; c++) {
+            for (int x = 0; x < 37; x++) {
+                for (int y = 0; y < 20; y++) {
+                    assertEquals(image.get(c, x, y + 13), rows.get(c, y, x));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void readStoredRow_fromTheBottomUp() throws IOException {
+        BitmapIO.writePlanesIntoBitmap(image, bmp);
+
+        BmpReader reader = BmpReader.open(bmp);
+        byte[] row = new byte[3 * 37];
+        reader.readStoredRow(0, 0, 37, row, 0);
+        reader.close();
+        assertEquals(69, reader.imageRow(0));
+        for (int x = 0; x < 37; x++) {
+            for (int c = 0; c < 3; c++) {
+                assertEquals(image.get(c, x, 69) + 128, row[3 * x + c] & 0xFF);
+            }
+        }
+    }
+
+    @Test
+    public void readPlanes_rowsFromTheTopDown() throws IOException {
+        // Flip the rows of a file and make its height negative.
+        BitmapIO.writePlanesIntoBitmap(image, bmp);
+        RandomAccessFile file = new RandomAccessFile(bmp, "rw");
+        int rowSize = 3 * 37 + 1;
+        byte[] rows = new byte[rowSize * 70];
+        file.seek(54);
+        file.readFully(rows);
+        byte[] flipped = new byte[rows.length];
+        for (int y = 0; y < 70; y++) {
+            System.arraycopy(rows, y * rowSize, flipped, (69 - y) * rowSize, rowSize);
+        }
+        file.seek(54);
+        file.write(flipped);
+        file.seek(22);
+        file.write(new byte[]{-70, -1, -1, -1});
+        file.close();
+
+        BmpReader reader = BmpReader.open(bmp);
+        assertEquals(70, reader.getHeight());
+        assertSamePlanes(image, reader.readPlanes());
+        reader.close();
+    }
+
+    @Test
+    public void readPlanes_grayAndAlphaSameAsImageIO() throws IOException {
+        Random random = new Random();
+        for (int colors : new int[]{1, 4}) {
+            ImagePlanes planes = new ImagePlanes(colors, 37, 70);
+            for (int c = 0; c < colors; c++) {
+                random.nextBytes(planes.getPlane(c));
+            }
+            BitmapIO.writePlanesIntoBitmap(planes, bmp);
+
+            BmpReader reader = BmpReader.open(bmp);
+            assertEquals(colors, reader.getColors());
+            assertSamePlanes(planes, reader.readPlanes());
+            reader.close();
+            assertSamePlanes(planes, BitmapIO.imageToPlanes(ImageIO.read(bmp)));
+        }
+    }
+
+    @Test
+    public void open_grayFileOfImageIO() throws IOException {
+        BufferedImage gray = new BufferedImage(13, 11, BufferedImage.TYPE_BYTE_GRAY);
+        gray.getRaster().setSample(3, 4, 0, 200);
+        ImageIO.write(gray, "bmp", bmp);
+
+        BmpReader reader = BmpReader.open(bmp);
+        assertEquals(1, reader.getColors());
+        ImagePlanes read = reader.readPlanes();
+        reader.close();
+        assertEquals(200 - 128, read.get(BitmapIO.GRAY, 3, 4));
+        assertEquals(-128, read.get(BitmapIO.GRAY, 4, 3));
+    }
+
+    @Test
+    public void open_otherKindsLeftToImageIO() throws IOException {
+        BufferedImage image = new BufferedImage(13, 11, BufferedImage.TYPE_USHORT_565_RGB);
+        image.setRGB(3, 4, 0xFF0000);
+        ImageIO.write(image, "bmp", bmp);
+
+        assertNull(BmpReader.open(bmp));
+        ImagePlanes read = BitmapIO.readFileIntoPlanes(bmp);
+        assertEquals(3, read.getColors());
+        assertEquals(127, read.get(BitmapIO.RED, 3, 4));
+        assertEquals(-128, read.get(BitmapIO.BLUE, 3, 4));
+        assertEquals(-128, read.get(BitmapIO.RED, 4, 3));
+    }
+
+    private static void assertSamePlanes(ImagePlanes expected, ImagePlanes actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertEquals(expected.getColors(), actual.getColors());
+        for (int c = 0; c < expected.getColors(); c++) {
+            assertTrue(Arrays.equals(expected.getPlane(c), actual.getPlane(c)));
+        }
+    }
+}
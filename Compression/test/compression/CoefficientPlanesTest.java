@@ -0,0 +1,59 @@
+package compression;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CoefficientPlanesTest {
+
+    Random random;
+
+    @Before
+    public void setUp() {
+        random = new Random();
+    }
+
+    @Test
+    public void fromJaggedAndBack() {
+        int[][][] transform = new int[3][11][23];
+        for (int c = 0; c < 3; c++) {
+            for (int m = 0; m < 11; m++) {
+                for (int k = 0; k < 23; k++) {
+                    transform[c][m][k] = random.nextInt();
+                }
+            }
+        }
+        CoefficientPlanes planes = CoefficientPlanes.fromJagged(transform);
+
+        assertEquals(11, planes.getLines());
+        assertEquals(23, planes.getLineLength());
+        assertEquals(transform[2][5][7], planes.getPlane(2)[planes.lineOffset(5) + 7]);
+        assertTrue(ParallelTransformTest.areTheSameArrays(transform, planes.toJagged(null)));
+    }
+
+    @Test
+    public void tilesAreOneAfterAnother() {
+        Tiling tiling = new Tiling(70, 45, 32, 1);
+        int[][][] transform = new int[2][tiling.getTiles()][];
+        for (int c = 0; c < 2; c++) {
+            for (int tile = 0; tile < tiling.getTiles(); tile++) {
+                transform[c][tile] = new int[tiling.compressedTileWidth(tile) * tiling.compressedTileHeight(tile)];
+                for (int i = 0; i < transform[c][tile].length; i++) {
+                    transform[c][tile][i] = random.nextInt();
+                }
+            }
+        }
+        CoefficientPlanes planes = CoefficientPlanes.fromJagged(transform, tiling);
+        int[][][] back = planes.toJagged(tiling);
+
+        assertEquals(tiling.tileOffset(tiling.getTiles()), planes.getPlane(0).length);
+        for (int c = 0; c < 2; c++) {
+            for (int tile = 0; tile < tiling.getTiles(); tile++) {
+                assertTrue(Arrays.equals(transform[c][tile], back[c][tile]));
+                assertEquals(transform[c][tile][0], planes.getPlane(c)[tiling.tileOffset(tile)]);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package compression;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ColorTransformTest {
+
+    Random random;
+
+    @Before
+    public void setUp() {
+        random = new Random();
+    }
+
+    @Test
+    public void forwardAndInverse_sameCoefficients() {
+        CoefficientPlanes transform = new CoefficientPlanes(4, 7, 13);
+        for (int c = 0; c < 4; c++) {
+            int[] plane = transform.getPlane(c);
+            for (int i = 0; i < plane.length; i++) {
+                plane[i] = random.nextInt(1 << 20) - (1 << 19);
+            }
+        }
+        int[][] original = new int[4][];
+        for (int c = 0; c < 4; c++) {
+            original[c] = transform.getPlane(c).clone();
+        }
+
+        ColorTransform.forward(transform);
+        assertTrue(transform.isColorTransformed());
+        assertTrue(Arrays.equals(original[3], transform.getPlane(3)));
+        ColorTransform.inverse(transform);
+
+        assertFalse(transform.isColorTransformed());
+        for (int c = 0; c < 4; c++) {
+            assertTrue(Arrays.equals(original[c], transform.getPlane(c)));
+        }
+    }
+
+    @Test
+    public void grayPixel_noChroma() {
+        CoefficientPlanes transform = new CoefficientPlanes(3, 1, 1);
+        for (int c = 0; c < 3; c++) {
+            transform.getPlane(c)[0] = -37;
+        }
+
+        ColorTransform.forward(transform);
+
+        assertEquals(-37, transform.getPlane(ColorTransform.LUMA)[0]);
+        assertEquals(0, transform.getPlane(ColorTransform.CHROMA_ORANGE)[0]);
+        assertEquals(0, transform.getPlane(ColorTransform.CHROMA_GREEN)[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void grayscale_notTransformed() {
+        ColorTransform.forward(new CoefficientPlanes(1, 3, 3));
+    }
+
+    @Test
+    public void dropChroma_sameAsCoarserLevelOfLoss() {
+        int height = 45;
+        ImagePlanes image = new ImagePlanes(3, 5, height);
+        for (int c = 0; c < 3; c++) {
+            random.nextBytes(image.getPlane(c));
+        }
+        ForkJoinPool pool = new ForkJoinPool(2);
+        CoefficientPlanes transform = ParallelTransform.lossyTransform(image, 1, pool);
+        CoefficientPlanes coarser = ParallelTransform.lossyTransform(image, 3, pool);
+        pool.shutdown();
+        ColorTransform.forward(transform);
+        ColorTransform.forward(coarser);
+
+        ColorTransform.dropChroma(transform, height, 1, 2);
+
+        int[] positions = HaarTransform.coarserPositions(height, 1, 3);
+        for (int color = 0; color < 3; color++) {
+            int[] plane = transform.getPlane(color);
+            int zeros = 0;
+            for (int line = 0; line < 5; line++) {
+                for (int k = 0; k < positions.length; k++) {
+                    assertEquals(coarser.getPlane(color)[coarser.lineOffset(line) + k],
+                            plane[transform.lineOffset(line) + positions[k]]);
+                }
+                for (int k = 0; k < transform.getLineLength(); k++) {
+                    zeros += plane[transform.lineOffset(line) + k] == 0 ? 1 : 0;
+                }
+            }
+            if (color != ColorTransform.LUMA) {
+                assertTrue(zeros >= 5 * (transform.getLineLength() - positions.length));
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package compression;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class EntropyCoderTest {
+
+    Random random = new Random();
+
+    @Test
+    public void decode_inverseOfEncode() {
+        int[] lineLengths = {100, 100, 37, 1, 0, 64};
+        int[] data = new int[2 + 302];
+        for (int i = 2; i < data.length; i++) {
+            int bits = random.nextInt(33);
+            data[i] = bits == 0 ? 0 : random.nextInt() >> (32 - bits);
+        }
+
+        byte[] coded = EntropyCoder.encode(data, 2, lineLengths);
+        int[] decoded = new int[data.length];
+        ByteBuffer buffer = ByteBuffer.wrap(Arrays.copyOf(coded, coded.length + 3));
+        EntropyCoder.decode(buffer, decoded, 2, lineLengths);
+
+        assertTrue(Arrays.equals(data, decoded));
+        assertTrue(buffer.position() <= coded.length);
+    }
+
+    @Test
+    public void decode_extremeValues() {
+        int[] data = {Integer.MIN_VALUE, Integer.MAX_VALUE, -1, 0, 1, 15, 16, -16, -17, Short.MIN_VALUE, 255};
+        int[] lineLengths = {data.length};
+
+        byte[] coded = EntropyCoder.encode(data, 0, lineLengths);
+        int[] decoded = new int[data.length];
+        EntropyCoder.decode(ByteBuffer.wrap(coded), decoded, 0, lineLengths);
+
+        assertTrue(Arrays.equals(data, decoded));
+    }
+
+    @Test
+    public void encode_smallCoefficientsTakeLittleSpace() {
+        int[] data = new int[10000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = random.nextInt(3) - 1;
+        }
+
+        byte[] coded = EntropyCoder.encode(data, 0, new int[]{data.length});
+
+        // About log2(3) bits per coefficient, much less than a byte.
+        assertTrue(coded.length < data.length / 4);
+    }
+}
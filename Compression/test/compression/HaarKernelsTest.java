@@ -0,0 +1,122 @@
+package compression;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Compares the kernels chosen by HaarKernels.get(), which are the vector ones
+ * when they are available, with the scalar ones.
+ */
+public class HaarKernelsTest {
+
+    Random random;
+    HaarKernels kernels;
+    HaarKernels scalar;
+
+    @Before
+    public void setUp() {
+        random = new Random();
+        kernels = HaarKernels.get();
+        scalar = new HaarKernels();
+    }
+
+    @Test
+    public void sumLeaves_sameAsScalar() {
+        for (int leafSize = 1; leafSize <= 64; leafSize *= 2) {
+            byte[] data = new byte[leafSize * (1 + random.nextInt(100))];
+            random.nextBytes(data);
+            int[] expected = new int[data.length / leafSize];
+            int[] leaves = new int[data.length / leafSize];
+
+            scalar.sumLeaves(data, leafSize, expected, expected.length);
+            kernels.sumLeaves(data, leafSize, leaves, leaves.length);
+
+            assertTrue("Leaves of size " + leafSize + " differ.", Arrays.equals(expected, leaves));
+        }
+    }
+
+    @Test
+    public void pairs_sameAsScalar() {
+        for (int i = 0; i < 20; i++) {
+            int pairs = random.nextInt(200);
+            int offset = random.nextInt(5);
+            int[] source = new int[offset + 2 * pairs];
+            for (int j = 0; j < source.length; j++) {
+                source[j] = random.nextInt();
+            }
+            int[] expected = new int[offset + pairs];
+            int[] result = new int[offset + pairs];
+
+            scalar.sumPairs(source, offset, expected, offset, pairs);
+            kernels.sumPairs(source, offset, result, offset, pairs);
+            assertTrue(Arrays.equals(expected, result));
+
+            scalar.differencesOfPairs(source, offset, expected, offset, pairs);
+            kernels.differencesOfPairs(source, offset, result, offset, pairs);
+            assertTrue(Arrays.equals(expected, result));
+        }
+    }
+
+    @Test
+    public void addDivideConvert_sameAsScalar() {
+        int[] divisors = {1, 2, 8, 1024, 3, 7, 100};
+        for (int divisor : divisors) {
+            int[] data = new int[1 + random.nextInt(300)];
+            for (int j = 0; j < data.length; j++) {
+                data[j] = random.nextInt(200000) - 100000;
+            }
+            int addThis = random.nextInt(2000) - 1000;
+            byte[] expected = new byte[data.length];
+            byte[] result = new byte[data.length];
+
+            scalar.addDivideConvert(data, addThis, divisor, expected);
+            kernels.addDivideConvert(data, addThis, divisor, result);
+
+            assertTrue("Division by " + divisor + " differs.", Arrays.equals(expected, result));
+        }
+    }
+
+    @Test
+    public void splitSums_sameAsScalar() {
+        for (int count = 1; count <= 256; count *= 2) {
+            for (int offset = 0; offset < 3; offset++) {
+                int[] expected = new int[offset + 2 * count];
+                int[] differences = new int[offset + count];
+                for (int j = 0; j < count; j++) {
+                    expected[offset + j] = random.nextInt(200000) - 100000;
+                    differences[offset + j] = random.nextInt(200000) - 100000;
+                }
+                int[] sums = expected.clone();
+
+                scalar.splitSums(expected, offset, differences, offset, count);
+                kernels.splitSums(sums, offset, differences, offset, count);
+
+                assertTrue("Splitting " + count + " sums differs.", Arrays.equals(expected, sums));
+            }
+        }
+    }
+
+    @Test
+    public void leavesToBytes_sameAsScalar() {
+        int[][] divisorsAndCopies = {{1, 1}, {4, 1}, {64, 1}, {4, 4}, {3, 1}, {6, 2}};
+        for (int[] divisorAndCopies : divisorsAndCopies) {
+            int summed = divisorAndCopies[0];
+            int copies = divisorAndCopies[1];
+            int count = 1 + random.nextInt(300);
+            int[] leaves = new int[count + 2];
+            for (int j = 0; j < leaves.length; j++) {
+                leaves[j] = random.nextInt(200 * summed) - 100 * summed;
+            }
+            byte[] expected = new byte[count * copies + 1];
+            byte[] result = new byte[count * copies + 1];
+
+            scalar.leavesToBytes(leaves, 2, count, summed, copies, expected, 1);
+            kernels.leavesToBytes(leaves, 2, count, summed, copies, result, 1);
+
+            assertTrue("Dividing by " + summed + " differs.", Arrays.equals(expected, result));
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -247,6 +248,388 @@ public class HaarTransformTest {
         }
     }
 
+    @Test
+    public void liftingTransform_sameAsTransformOfSubarrays() {
+        for (int i = 0; i < 50; i++) {
+            int length = 1 + random.nextInt(3000);
+            int levelOfLoss = random.nextInt(6);
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+
+            int[] expected = transformOfSubarrays(data, levelOfLoss);
+            int[] transform = new int[HaarTransform.compressedLength(length, levelOfLoss)];
+            int written = HaarTransform.liftingTransform(data, levelOfLoss, transform);
+
+            assertEquals(expected.length, written);
+            assertTrue("Lifting gives a different layout, length " + length + " lol " + levelOfLoss,
+                    Arrays.equals(expected, transform));
+        }
+    }
+
+    @Test
+    public void liftingTransform_leavesTheRestOfTheArrayAlone() {
+        byte[] data = new byte[100];
+        random.nextBytes(data);
+        int length = HaarTransform.compressedLength(data.length, 2);
+        int[] transform = new int[length + 10];
+        Arrays.fill(transform, 12345);
+
+        assertEquals(length, HaarTransform.liftingTransform(data, 2, transform));
+        for (int i = length; i < transform.length; i++) {
+            assertEquals(12345, transform[i]);
+        }
+    }
+
+    @Test
+    public void liftingTransform_subarrayShorterThanLeaf() {
+        // 13 = 8 + 4 + 1, and with lol = 3 the subarray of length 4 is one leaf.
+        byte[] data = new byte[13];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i - 6);
+        }
+        int[] transform = HaarTransform.lossyTransformArbitraryLength(data, 3);
+
+        assertEquals(3, transform.length);
+        assertEquals(-6 - 5 - 4 - 3 - 2 - 1 + 0 + 1, transform[0]);
+        assertEquals(2 + 3 + 4 + 5, transform[1]);
+        assertEquals(6, transform[2]);
+    }
+
+    @Test
+    public void liftingInverse_sameAsInverseBySupports() {
+        for (int power = 1; power < 12; power++) {
+            byte[] data = new byte[HaarTransform.pow(2, power)];
+            random.nextBytes(data);
+            for (int levelOfLoss = 0; levelOfLoss < power; levelOfLoss++) {
+                int[] transform = HaarTransform.lossyTransformPowerOfTwo(data, levelOfLoss);
+                byte[] expected = HaarTransform.inverseBySupports(transform, levelOfLoss);
+                byte[] inverse = new byte[data.length];
+                HaarTransform.liftingInverse(transform, levelOfLoss, inverse, new int[transform.length]);
+                assertTrue("Different inverse, length " + data.length + " lol " + levelOfLoss,
+                        areTheSameArray(expected, inverse));
+            }
+        }
+    }
+
+    @Test
+    public void sparseInverse_sameAsLiftingInverse() {
+        int[] work = new int[2 * 4097];
+        for (int length : new int[]{1, 2, 7, 64, 100, 1000, 4097}) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            for (int levelOfLoss = 0; levelOfLoss < 5; levelOfLoss++) {
+                // Both the sparse way and the dense one for lines with more coefficients.
+                for (int oneIn : new int[]{5, 500}) {
+                    int[] transform = HaarTransform.lossyTransformArbitraryLength(data, levelOfLoss);
+                    for (int i = 0; i < transform.length; i++) {
+                        if (random.nextInt(oneIn) > 0) {
+                            transform[i] = 0;
+                        }
+                    }
+                    byte[] expected = new byte[length];
+                    HaarTransform.liftingInverse(transform, levelOfLoss, expected, new int[transform.length]);
+                    byte[] inverse = new byte[length + 3];
+                    HaarTransform.sparseInverse(SparseLine.fromDense(transform, 0, transform.length), levelOfLoss,
+                            inverse, 3, length, work);
+                    assertTrue("Different inverse, length " + length + " lol " + levelOfLoss,
+                            areTheSameArray(expected, Arrays.copyOfRange(inverse, 3, inverse.length)));
+                    for (int w : work) {
+                        assertEquals(0, w);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void inverseLossyPowerOfTwo_sparseSameAsDense() {
+        byte[] data = new byte[1024];
+        random.nextBytes(data);
+        int[] transform = HaarTransform.lossyTransformPowerOfTwo(data, 3);
+        assertTrue(areTheSameArray(HaarTransform.inverseLossyPowerOfTwo(transform, 3),
+                HaarTransform.inverseLossyPowerOfTwo(SparseLine.fromDense(transform, 0, transform.length), 3)));
+    }
+
+    @Test
+    public void liftingInverse_losslessArbitraryLength() {
+        for (int i = 0; i < 50; i++) {
+            byte[] data = new byte[1 + random.nextInt(3000)];
+            random.nextBytes(data);
+            int[] transform = HaarTransform.lossyTransformArbitraryLength(data, 0);
+            byte[] inverse = new byte[data.length];
+            HaarTransform.liftingInverse(transform, 0, inverse, new int[transform.length]);
+            assertTrue(areTheSameArray(data, inverse));
+        }
+    }
+
+    @Test
+    public void liftingInverse_subarrayShorterThanLeafGetsItsAverage() {
+        byte[] data = new byte[13];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i - 6);
+        }
+        byte[] inverse = HaarTransform.inverseLossyArbitraryLength(
+                HaarTransform.lossyTransformArbitraryLength(data, 3), data.length, 3);
+
+        for (int i = 8; i < 12; i++) {
+            assertEquals((2 + 3 + 4 + 5) / 4, inverse[i]);
+        }
+        assertEquals(6, inverse[12]);
+    }
+
+    @Test
+    public void averageLifting_losslessArbitraryLength() {
+        for (int i = 0; i < 50; i++) {
+            int length = 1 + random.nextInt(3000);
+            int[] data = new int[length];
+            for (int j = 0; j < length; j++) {
+                data[j] = random.nextInt(2000) - 1000;
+            }
+            int[] transform = new int[HaarTransform.compressedLength(length, 0)];
+            assertEquals(transform.length, HaarTransform.averageLiftingTransform(data, 0, length, 0, transform, 0));
+
+            int[] inverse = new int[length];
+            HaarTransform.averageLiftingInverse(transform, 0, 0, inverse, 0, length, new int[transform.length]);
+            assertTrue(Arrays.equals(data, inverse));
+        }
+    }
+
+    @Test
+    public void averageLifting_lossyGivesAveragesOfLeaves() {
+        int[] data = {1, 3, 5, 7, 10, 10, 20, 21};
+        int[] transform = new int[HaarTransform.compressedLength(data.length, 1)];
+        HaarTransform.averageLiftingTransform(data, 0, data.length, 1, transform, 0);
+        int[] inverse = new int[data.length];
+        HaarTransform.averageLiftingInverse(transform, 0, 1, inverse, 0, data.length, new int[transform.length]);
+
+        int[] expected = {2, 2, 6, 6, 10, 10, 20, 20};
+        assertTrue(Arrays.equals(expected, inverse));
+    }
+
+    @Test
+    public void coarserTransform_sameAsTransformingAgain() {
+        for (int i = 0; i < 20; i++) {
+            byte[] data = new byte[1 + random.nextInt(1000)];
+            random.nextBytes(data);
+            int levelOfLoss = random.nextInt(4);
+            int newLevelOfLoss = levelOfLoss + random.nextInt(12);
+            int[] transform = HaarTransform.lossyTransformArbitraryLength(data, levelOfLoss);
+
+            int[] coarser = new int[transform.length];
+            int written = HaarTransform.coarserTransform(transform, 0, data.length, levelOfLoss, newLevelOfLoss,
+                    coarser, 0);
+
+            int[] expected = HaarTransform.lossyTransformArbitraryLength(data, newLevelOfLoss);
+            assertTrue(Arrays.equals(expected, Arrays.copyOf(coarser, written)));
+        }
+    }
+
+    @Test
+    public void thumbnailInverse_averagesOfTheNumbers() {
+        for (int i = 0; i < 30; i++) {
+            byte[] data = new byte[1 + random.nextInt(300)];
+            random.nextBytes(data);
+            int levelOfLoss = random.nextInt(4);
+            int scale = random.nextInt(5);
+            int[] transform = HaarTransform.lossyTransformArbitraryLength(data, levelOfLoss);
+            byte[] inverse = new byte[data.length];
+            HaarTransform.liftingInverse(transform, levelOfLoss, inverse, new int[transform.length]);
+
+            byte[] thumbnail = new byte[HaarTransform.thumbnailLength(data.length, scale)];
+            HaarTransform.thumbnailInverse(transform, 0, levelOfLoss, scale, 1, thumbnail, 0, data.length,
+                    new int[transform.length]);
+
+            // The column is split into parts of 2^scale numbers, and the last part has the rest.
+            int group = 1 << scale;
+            int rest = data.length - data.length % group; // Where the numbers that are left over begin
+            int k = 0;
+            for (int first = 0; first < data.length; first += group) {
+                int last = Math.min(data.length, first + group);
+                int expected;
+                if (scale >= levelOfLoss || first == rest) {
+                    int sum = 0;
+                    for (int j = first; j < last; j++) {
+                        sum += data[j];
+                    }
+                    expected = sum / (last - first);
+                } else {
+                    expected = inverse[first]; // The transform doesn't have the finer numbers.
+                }
+                assertEquals(expected, thumbnail[k++]);
+            }
+            assertEquals(thumbnail.length, k);
+        }
+    }
+
+    @Test
+    public void cropInverse_sameAsPartOfLiftingInverse() {
+        for (int i = 0; i < 50; i++) {
+            byte[] data = new byte[1 + random.nextInt(500)];
+            random.nextBytes(data);
+            int levelOfLoss = random.nextInt(5);
+            int from = random.nextInt(data.length);
+            int to = from + 1 + random.nextInt(data.length - from);
+            int[] transform = HaarTransform.lossyTransformArbitraryLength(data, levelOfLoss);
+            byte[] inverse = new byte[data.length];
+            HaarTransform.liftingInverse(transform, levelOfLoss, inverse, new int[transform.length]);
+
+            // Only the coefficients told by cropPositions may be needed.
+            int[] needed = new int[transform.length];
+            for (int position : HaarTransform.cropPositions(data.length, levelOfLoss, from, to)) {
+                needed[position] = transform[position];
+            }
+            byte[] crop = new byte[to - from + 3];
+            HaarTransform.cropInverse(needed, 0, levelOfLoss, data.length, from, to, crop, 3,
+                    new int[to - from + 2]);
+
+            assertTrue(Arrays.equals(Arrays.copyOfRange(inverse, from, to), Arrays.copyOfRange(crop, 3, crop.length)));
+        }
+    }
+
+    @Test
+    public void transform2D_lossless() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        for (int i = 0; i < 5; i++) {
+            int width = 1 + random.nextInt(300);
+            int height = 1 + random.nextInt(300);
+            byte[][][] data = new byte[3][width][height];
+            for (int c = 0; c < 3; c++) {
+                for (int x = 0; x < width; x++) {
+                    random.nextBytes(data[c][x]);
+                }
+            }
+
+            int[][][] transform = HaarTransform.lossyTransform2D(data, 0, pool);
+            byte[][][] retrieved = HaarTransform.inverseLossyTransform2D(transform, width, height, 0, pool);
+            assertTrue(WTFIOTest.areTheSameArrays(data, retrieved));
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void transform2D_lossyDimensions() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        byte[][][] data = new byte[3][100][37];
+        int[][][] transform = HaarTransform.lossyTransform2D(data, 2, pool);
+        assertEquals(HaarTransform.compressedLength(100, 2), transform[0].length);
+        assertEquals(HaarTransform.compressedLength(37, 2), transform[0][0].length);
+
+        byte[][][] retrieved = HaarTransform.inverseLossyTransform2D(transform, 100, 37, 2, pool);
+        assertEquals(100, retrieved[0].length);
+        assertEquals(37, retrieved[0][0].length);
+        pool.shutdown();
+    }
+
+    @Test
+    public void transformTiled_lossless() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        for (int i = 0; i < 5; i++) {
+            int width = 1 + random.nextInt(300);
+            int height = 1 + random.nextInt(300);
+            int tileSize = 1 + random.nextInt(100);
+            byte[][][] data = new byte[3][width][height];
+            for (int c = 0; c < 3; c++) {
+                for (int x = 0; x < width; x++) {
+                    random.nextBytes(data[c][x]);
+                }
+            }
+
+            int[][][] transform = HaarTransform.lossyTransformTiled(data, 0, tileSize, pool);
+            byte[][][] retrieved = HaarTransform.inverseLossyTransformTiled(transform, width, height, 0, tileSize, pool);
+            assertTrue(WTFIOTest.areTheSameArrays(data, retrieved));
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void transformTiled_oneTileIsTheSameAs2D() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        byte[][][] data = new byte[1][40][50];
+        for (int x = 0; x < 40; x++) {
+            random.nextBytes(data[0][x]);
+        }
+        int[][][] tiled = HaarTransform.lossyTransformTiled(data, 2, 64, pool);
+        int[][][] whole = HaarTransform.lossyTransform2D(data, 2, pool);
+        pool.shutdown();
+
+        int lineLength = whole[0][0].length;
+        for (int m = 0; m < whole[0].length; m++) {
+            for (int k = 0; k < lineLength; k++) {
+                assertEquals(whole[0][m][k], tiled[0][0][m * lineLength + k]);
+            }
+        }
+    }
+
+    @Test
+    public void transformTiled_edgeTilesLongerThanWholeOnes() {
+        // Width, height, tile size and level of loss where an edge tile has a longer transform than a whole tile.
+        int[][] cases = {{300, 200, 16, 5}, {255, 255, 256, 2}, {300, 300, 256, 8}, {7, 7, 8, 3}, {75, 45, 32, 4}};
+        ForkJoinPool pool = new ForkJoinPool(2);
+        for (int[] c : cases) {
+            int width = c[0];
+            int height = c[1];
+            int tileSize = c[2];
+            int levelOfLoss = c[3];
+            byte[][][] data = new byte[1][width][height];
+            for (int x = 0; x < width; x++) {
+                random.nextBytes(data[0][x]);
+            }
+            Tiling tiling = new Tiling(width, height, tileSize, levelOfLoss);
+
+            int[][][] tiled = HaarTransform.lossyTransformTiled(data, levelOfLoss, tileSize, pool);
+            byte[][][] retrieved = HaarTransform.inverseLossyTransformTiled(tiled, width, height, levelOfLoss,
+                    tileSize, pool);
+            for (int tile = 0; tile < tiling.getTiles(); tile++) {
+                int x0 = tiling.tileX(tile);
+                int y0 = tiling.tileY(tile);
+                byte[][][] part = new byte[1][tiling.tileWidth(tile)][];
+                for (int x = 0; x < part[0].length; x++) {
+                    part[0][x] = Arrays.copyOfRange(data[0][x0 + x], y0, y0 + tiling.tileHeight(tile));
+                }
+                int[][][] whole = HaarTransform.lossyTransform2D(part, levelOfLoss, pool);
+                byte[][][] inverse = HaarTransform.inverseLossyTransform2D(whole, part[0].length,
+                        part[0][0].length, levelOfLoss, pool);
+
+                int lineLength = whole[0][0].length;
+                for (int m = 0; m < whole[0].length; m++) {
+                    for (int k = 0; k < lineLength; k++) {
+                        assertEquals(whole[0][m][k], tiled[0][tile][m * lineLength + k]);
+                    }
+                }
+                for (int x = 0; x < part[0].length; x++) {
+                    for (int y = 0; y < part[0][x].length; y++) {
+                        assertEquals(inverse[0][x][y], retrieved[0][x0 + x][y0 + y]);
+                    }
+                }
+            }
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * Transforms the data the way lossyTransformArbitraryLength did before the
+     * lifting scheme: subarray by subarray with lossyTransformPowerOfTwo.
+     */
+    public static int[] transformOfSubarrays(byte[] data, int levelOfLoss) {
+        int[] transform = null;
+        int pointer = 0;
+        int remainingSize = data.length;
+        int subSize = HaarTransform.supPowerOfTwo(remainingSize);
+        while (remainingSize > 1 && subSize > 1) {
+            byte[] subArray = Arrays.copyOfRange(data, pointer, pointer + subSize);
+            transform = HaarTransform.joinArrays(transform,
+                    HaarTransform.lossyTransformPowerOfTwo(subArray, levelOfLoss));
+            pointer += subSize;
+            remainingSize -= subSize;
+            subSize = HaarTransform.supPowerOfTwo(remainingSize);
+        }
+        if (remainingSize == 1) {
+            int[] lastPixel = {data[data.length - 1]};
+            transform = HaarTransform.joinArrays(transform, lastPixel);
+        }
+        return transform;
+    }
+
     public static boolean areTheSameArray(byte[] a, byte[] b) {
         if (a.length != b.length) {
             return false;
@@ -0,0 +1,62 @@
+package compression;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ImagePlanesTest {
+
+    Random random;
+
+    @Before
+    public void setUp() {
+        random = new Random();
+    }
+
+    @Test
+    public void fromJaggedAndBack() {
+        byte[][][] data = new byte[3][17][29];
+        for (int c = 0; c < 3; c++) {
+            for (int x = 0; x < 17; x++) {
+                random.nextBytes(data[c][x]);
+            }
+        }
+        ImagePlanes image = ImagePlanes.fromJagged(data);
+
+        assertEquals(3, image.getColors());
+        assertEquals(17, image.getWidth());
+        assertEquals(29, image.getHeight());
+        assertTrue(WTFIOTest.areTheSameArrays(data, image.toJagged()));
+    }
+
+    @Test
+    public void columnsAreOneAfterAnother() {
+        ImagePlanes image = new ImagePlanes(2, 5, 7);
+        image.set(1, 3, 4, (byte) -12);
+
+        assertEquals(-12, image.get(1, 3, 4));
+        assertEquals(-12, image.getPlane(1)[image.columnOffset(3) + 4]);
+        assertEquals(3 * 7 + 4, image.columnOffset(3) + 4);
+        assertEquals(0, image.getPlane(0)[3 * 7 + 4]);
+    }
+
+    @Test
+    public void transposed_rowsAreOneAfterAnother() {
+        ImagePlanes image = new ImagePlanes(2, 70, 131);
+        for (int c = 0; c < 2; c++) {
+            random.nextBytes(image.getPlane(c));
+        }
+        ImagePlanes rows = image.transposed();
+
+        assertEquals(131, rows.getWidth());
+        assertEquals(70, rows.getHeight());
+        for (int x = 0; x < 70; x++) {
+            for (int y = 0; y < 131; y++) {
+                assertEquals(image.get(1, x, y), rows.getPlane(1)[y * 70 + x]);
+            }
+        }
+        assertTrue(Arrays.equals(image.getPlane(0), rows.transposed().getPlane(0)));
+    }
+}
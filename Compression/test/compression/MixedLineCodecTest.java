@@ -0,0 +1,90 @@
+package compression;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class MixedLineCodecTest {
+
+    Random random;
+    MixedLineCodec codec;
+
+    @Before
+    public void setUp() {
+        random = new Random();
+        codec = new MixedLineCodec();
+    }
+
+    @Test
+    public void encode_sameAsCreateLineOfMixedData() {
+        for (int i = 0; i < 50; i++) {
+            int[] data = randomLine(1 + random.nextInt(300));
+            int start = random.nextInt(data.length);
+            int length = data.length - start;
+            ByteBuffer buffer = ByteBuffer.allocateDirect(MixedLineCodec.maxEncodedLength(length) + 3);
+            buffer.position(3);
+
+            int written = codec.encode(data, start, length, buffer);
+            byte[] expected = WTFIO.createLineOfMixedData(data, start, length);
+            byte[] encoded = new byte[written];
+            buffer.position(3);
+            buffer.get(encoded);
+
+            assertTrue(Arrays.equals(expected, encoded));
+        }
+    }
+
+    @Test
+    public void encode_twoBuffersInTurns() {
+        // The lines begin at every remainder of 2 and 4, so all the views are used:
+        ByteBuffer[] buffers = {ByteBuffer.allocate(20000), ByteBuffer.allocateDirect(20000)};
+        buffers[1].position(1);
+        for (int i = 0; i < 60; i++) {
+            ByteBuffer buffer = buffers[i % 2];
+            int[] data = randomLine(random.nextInt(100));
+            int begin = buffer.position();
+
+            int written = codec.encode(data, 0, data.length, buffer);
+            byte[] expected = WTFIO.createLineOfMixedData(data, 0, data.length);
+            byte[] encoded = new byte[written];
+            buffer.position(begin);
+            buffer.get(encoded);
+
+            assertTrue(Arrays.equals(expected, encoded));
+            assertEquals(begin + written, buffer.position());
+        }
+    }
+
+    @Test
+    public void decode_inverseOfEncode() {
+        ByteBuffer buffer = ByteBuffer.allocate(10000);
+        int[][] lines = new int[20][];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = randomLine(random.nextInt(100));
+            codec.encode(lines[i], 0, lines[i].length, buffer);
+        }
+        buffer.flip();
+
+        for (int i = 0; i < lines.length; i++) {
+            int[] decoded = new int[lines[i].length + 1];
+            codec.decode(buffer, decoded, 1, lines[i].length);
+            assertTrue(Arrays.equals(lines[i], Arrays.copyOfRange(decoded, 1, decoded.length)));
+        }
+        assertFalse(buffer.hasRemaining());
+    }
+
+    /**
+     * A line like a transform: small numbers first, then bigger ones.
+     */
+    private int[] randomLine(int length) {
+        int[] line = new int[length];
+        for (int i = 0; i < length; i++) {
+            int bits = 1 + random.nextInt(1 + i / 8);
+            line[i] = random.nextInt() >> (32 - Math.min(32, bits));
+        }
+        return line;
+    }
+}
@@ -0,0 +1,67 @@
+package compression;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NarrowCoefficientsTest {
+
+    Random random;
+
+    @Before
+    public void setUp() {
+        random = new Random();
+    }
+
+    @Test
+    public void setAndGetLine() {
+        NarrowCoefficients narrow = new NarrowCoefficients(2, 5, 40);
+        int[] data = new int[45];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = random.nextInt(1 << (i / 3)) - (1 << (i / 3)) / 2;
+        }
+        narrow.setLine(1, 3, data, 5);
+        int[] back = new int[42];
+        narrow.getLine(1, 3, back, 2);
+
+        assertTrue(Arrays.equals(Arrays.copyOfRange(data, 5, 45), Arrays.copyOfRange(back, 2, 42)));
+        assertTrue(narrow.getMixedLine(1, 3).length < 4 * 40);
+    }
+
+    @Test
+    public void smallCoefficientsTakeOneByte() {
+        CoefficientPlanes planes = new CoefficientPlanes(3, 10, 100);
+        for (int c = 0; c < 3; c++) {
+            for (int i = 0; i < planes.getPlane(c).length; i++) {
+                planes.getPlane(c)[i] = random.nextInt(256) - 128;
+            }
+        }
+        NarrowCoefficients narrow = NarrowCoefficients.fromPlanes(planes, null, null);
+
+        assertEquals(3000, narrow.getCoefficients());
+        assertEquals(3000 + 3 * 10 * 8, narrow.getSizeInBytes());
+    }
+
+    @Test
+    public void tiledFromPlanesAndBack() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        Tiling tiling = new Tiling(70, 45, 32, 1);
+        CoefficientPlanes planes = new CoefficientPlanes(3, tiling);
+        for (int c = 0; c < 3; c++) {
+            for (int i = 0; i < planes.getPlane(c).length; i++) {
+                planes.getPlane(c)[i] = random.nextInt();
+            }
+        }
+        NarrowCoefficients narrow = NarrowCoefficients.fromPlanes(planes, tiling, pool);
+        CoefficientPlanes back = narrow.toPlanes(tiling, pool);
+        pool.shutdown();
+
+        assertEquals(tiling.compressedTileHeight(tiling.getTiles() - 1), narrow.getLineLength(narrow.getLines() - 1));
+        for (int c = 0; c < 3; c++) {
+            assertTrue(Arrays.equals(planes.getPlane(c), back.getPlane(c)));
+        }
+    }
+}
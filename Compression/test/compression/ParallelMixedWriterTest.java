@@ -0,0 +1,93 @@
+package compression;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ParallelMixedWriterTest {
+
+    ForkJoinPool pool;
+    ImagePlanes image;
+    File sequential;
+    File parallel;
+
+    @Before
+    public void setUp() throws IOException {
+        pool = new ForkJoinPool(2);
+        Random random = new Random();
+        // Big enough for many batches, so the window gets full.
+        image = new ImagePlanes(3, 600, 513);
+        for (int c = 0; c < 3; c++) {
+            random.nextBytes(image.getPlane(c));
+        }
+        sequential = File.createTempFile("testSequential", ".wtf");
+        parallel = File.createTempFile("testParallel", ".wtf");
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+        sequential.delete();
+        parallel.delete();
+    }
+
+    @Test
+    public void columns_sameFileAsSequential() throws IOException {
+        CoefficientPlanes transform = ParallelTransform.lossyTransform(image, 0, pool);
+        WTFIO.writeMixedData(transform, 513, 0, sequential);
+        WTFIO.writeMixedData(transform, 513, 0, parallel, pool);
+
+        assertTrue(Arrays.equals(Files.readAllBytes(sequential.toPath()), Files.readAllBytes(parallel.toPath())));
+    }
+
+    @Test
+    public void tiles_sameFileAsSequential() throws IOException {
+        CoefficientPlanes transform = HaarTransform.lossyTransformTiled(image, 1, 64, pool);
+        WTFIO.writeMixedDataTiled(transform, 600, 513, 1, 64, sequential);
+        WTFIO.writeMixedDataTiled(transform, 600, 513, 1, 64, parallel, pool);
+
+        assertTrue(Arrays.equals(Files.readAllBytes(sequential.toPath()), Files.readAllBytes(parallel.toPath())));
+    }
+
+    @Test
+    public void indexed_sameFileAsSequential() throws IOException {
+        CoefficientPlanes transform = HaarTransform.lossyTransformTiled(image, 0, 128, pool);
+        WTFIO.writeIndexedData(transform, 600, 513, 0, 128, sequential);
+        WTFIO.writeIndexedData(transform, 600, 513, 0, 128, parallel, pool);
+
+        assertTrue(Arrays.equals(Files.readAllBytes(sequential.toPath()), Files.readAllBytes(parallel.toPath())));
+        CoefficientPlanes read = new WTFIO(parallel).readPlanes(pool);
+        for (int c = 0; c < 3; c++) {
+            assertTrue(Arrays.equals(transform.getPlane(c), read.getPlane(c)));
+        }
+    }
+
+    @Test
+    public void rice_sameFileAsSequential() throws IOException {
+        CoefficientPlanes transform = ParallelTransform.lossyTransform(image, 1, pool);
+        WTFIO.writeRiceData(transform, 600, 513, 1, 0, sequential);
+        WTFIO.writeRiceData(transform, 600, 513, 1, 0, parallel, pool);
+
+        assertTrue(Arrays.equals(Files.readAllBytes(sequential.toPath()), Files.readAllBytes(parallel.toPath())));
+    }
+
+    @Test
+    public void zeroRuns_sameFileAsSequential() throws IOException {
+        CoefficientPlanes transform = HaarTransform.lossyTransformTiled(image, 2, 64, pool);
+        WTFIO.writeZeroRunData(transform, 600, 513, 2, 64, sequential);
+        WTFIO.writeZeroRunData(transform, 600, 513, 2, 64, parallel, pool);
+
+        assertTrue(Arrays.equals(Files.readAllBytes(sequential.toPath()), Files.readAllBytes(parallel.toPath())));
+        CoefficientPlanes read = new WTFIO(parallel).readPlanes(pool);
+        for (int c = 0; c < 3; c++) {
+            assertTrue(Arrays.equals(transform.getPlane(c), read.getPlane(c)));
+        }
+    }
+}
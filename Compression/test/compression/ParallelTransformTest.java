@@ -0,0 +1,161 @@
+package compression;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ParallelTransformTest {
+
+    Random random;
+    ForkJoinPool pool;
+
+    @Before
+    public void setUp() {
+        random = new Random();
+        pool = new ForkJoinPool(3);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void lossyTransform_sameAsSequential() {
+        for (int i = 0; i < 10; i++) {
+            byte[][][] data = randomData(1 + random.nextInt(4), 1 + random.nextInt(200), 1 + random.nextInt(500));
+            int levelOfLoss = random.nextInt(5);
+
+            int[][][] expected = HaarTransform.lossyTransfrom(data, levelOfLoss);
+            int[][][] transform = ParallelTransform.lossyTransform(data, levelOfLoss, pool);
+
+            assertTrue("Parallel transform differs from the sequential one.", areTheSameArrays(expected, transform));
+        }
+    }
+
+    @Test
+    public void inverseLossyTransform_sameAsSequential() {
+        for (int i = 0; i < 10; i++) {
+            int height = 1 + random.nextInt(500);
+            byte[][][] data = randomData(1 + random.nextInt(4), 1 + random.nextInt(200), height);
+            int levelOfLoss = random.nextInt(5);
+            int[][][] transform = HaarTransform.lossyTransfrom(data, levelOfLoss);
+
+            byte[][][] expected = HaarTransform.inverseLossyTransform(transform, height, levelOfLoss);
+            byte[][][] inverse = ParallelTransform.inverseLossyTransform(transform, height, levelOfLoss, pool);
+
+            assertTrue("Parallel inverse differs from the sequential one.", WTFIOTest.areTheSameArrays(expected, inverse));
+        }
+    }
+
+    @Test
+    public void lossless_oneThread() {
+        ForkJoinPool onlyOne = new ForkJoinPool(1);
+        byte[][][] data = randomData(3, 77, 123);
+        int[][][] transform = ParallelTransform.lossyTransform(data, 0, onlyOne);
+        byte[][][] inverse = ParallelTransform.inverseLossyTransform(transform, 123, 0, onlyOne);
+        onlyOne.shutdown();
+
+        assertTrue(WTFIOTest.areTheSameArrays(data, inverse));
+    }
+
+    @Test
+    public void planes_sameAsJagged() {
+        byte[][][] data = randomData(3, 64, 99);
+        ImagePlanes image = ImagePlanes.fromJagged(data);
+
+        CoefficientPlanes transform = ParallelTransform.lossyTransform(image, 2, pool);
+        assertTrue(areTheSameArrays(HaarTransform.lossyTransfrom(data, 2), transform.toJagged(null)));
+
+        ImagePlanes inverse = ParallelTransform.inverseLossyTransform(transform, 99, 2, pool);
+        assertTrue(WTFIOTest.areTheSameArrays(HaarTransform.inverseLossyTransform(transform.toJagged(null), 99, 2),
+                inverse.toJagged()));
+    }
+
+    @Test
+    public void narrow_sameAsPlanes() {
+        ImagePlanes image = ImagePlanes.fromJagged(randomData(3, 50, 150));
+
+        CoefficientPlanes transform = ParallelTransform.lossyTransform(image, 3, pool);
+        NarrowCoefficients narrow = ParallelTransform.lossyTransformNarrow(image, 3, pool);
+        assertTrue(areTheSameArrays(transform.toJagged(null), narrow.toPlanes(null, pool).toJagged(null)));
+
+        ImagePlanes inverse = ParallelTransform.inverseLossyTransform(narrow, 150, 3, pool);
+        assertTrue(WTFIOTest.areTheSameArrays(
+                ParallelTransform.inverseLossyTransform(transform, 150, 3, pool).toJagged(), inverse.toJagged()));
+    }
+
+    @Test
+    public void series_sameAsOneLevelAtATime() {
+        ImagePlanes image = ImagePlanes.fromJagged(randomData(3, 20, 333));
+        NarrowCoefficients[] series = ParallelTransform.lossyTransformSeries(image, 1, 10, pool);
+
+        assertEquals(10, series.length);
+        for (int lol = 1; lol <= 10; lol++) {
+            CoefficientPlanes expected = ParallelTransform.lossyTransform(image, lol, pool);
+            assertTrue(areTheSameArrays(expected.toJagged(null), series[lol - 1].toPlanes(null, pool).toJagged(null)));
+        }
+    }
+
+    @Test
+    public void inverseThumbnail_averagesOfBlocks() {
+        for (int i = 0; i < 10; i++) {
+            int width = 1 + random.nextInt(100);
+            int height = 1 + random.nextInt(200);
+            int scale = random.nextInt(4);
+            ImagePlanes image = ImagePlanes.fromJagged(randomData(2, width, height));
+            CoefficientPlanes transform = ParallelTransform.lossyTransform(image, 0, pool);
+
+            ImagePlanes thumbnail = ParallelTransform.inverseThumbnail(transform, height, 0, scale, pool);
+
+            int group = 1 << scale;
+            assertEquals((width + group - 1) / group, thumbnail.getWidth());
+            assertEquals((height + group - 1) / group, thumbnail.getHeight());
+            for (int c = 0; c < 2; c++) {
+                for (int x = 0; x < thumbnail.getWidth(); x++) {
+                    int lastColumn = Math.min(width, (x + 1) * group);
+                    for (int y = 0; y < thumbnail.getHeight(); y++) {
+                        int lastRow = Math.min(height, (y + 1) * group);
+                        int sum = 0;
+                        for (int column = x * group; column < lastColumn; column++) {
+                            for (int row = y * group; row < lastRow; row++) {
+                                sum += image.get(c, column, row);
+                            }
+                        }
+                        assertEquals(sum / ((lastColumn - x * group) * (lastRow - y * group)),
+                                thumbnail.get(c, x, y));
+                    }
+                }
+            }
+        }
+    }
+
+    public byte[][][] randomData(int colors, int width, int height) {
+        byte[][][] data = new byte[colors][width][height];
+        for (int c = 0; c < colors; c++) {
+            for (int x = 0; x < width; x++) {
+                random.nextBytes(data[c][x]);
+            }
+        }
+        return data;
+    }
+
+    public static boolean areTheSameArrays(int[][][] a, int[][][] b) {
+        if (a.length != b.length || a[0].length != b[0].length || a[0][0].length != b[0][0].length) {
+            return false;
+        }
+        for (int i = 0; i < a.length; i++) {
+            for (int j = 0; j < a[0].length; j++) {
+                for (int k = 0; k < a[0][0].length; k++) {
+                    if (a[i][j][k] != b[i][j][k]) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,114 @@
+package compression;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RiceCoderTest {
+
+    Random random;
+    RiceCoder coder;
+
+    @Before
+    public void setUp() {
+        random = new Random();
+        coder = new RiceCoder();
+    }
+
+    @Test
+    public void decode_inverseOfEncode() {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        int[][] lines = new int[30][];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = randomLine(random.nextInt(200));
+            int written = coder.encode(lines[i], 0, lines[i].length, buffer);
+            assertTrue(written <= RiceCoder.maxEncodedLength(lines[i].length));
+        }
+        buffer.flip();
+
+        for (int i = 0; i < lines.length; i++) {
+            int[] decoded = new int[lines[i].length + 2];
+            coder.decode(buffer, decoded, 2, lines[i].length);
+            assertTrue(Arrays.equals(lines[i], Arrays.copyOfRange(decoded, 2, decoded.length)));
+        }
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void decode_outliersAndExtremeValues() {
+        int[] line = new int[100];
+        for (int i = 0; i < line.length; i++) {
+            line[i] = random.nextInt(5) - 2;
+        }
+        line[3] = Integer.MIN_VALUE;
+        line[50] = Integer.MAX_VALUE;
+        line[51] = 1000;
+        line[99] = -70000;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(RiceCoder.maxEncodedLength(line.length));
+
+        int written = coder.encode(line, 0, line.length, buffer);
+        buffer.flip();
+        int[] decoded = new int[line.length];
+        coder.decode(buffer, decoded, 0, line.length);
+
+        assertTrue(Arrays.equals(line, decoded));
+        // The outliers don't make the small coefficients longer.
+        assertTrue(written < 100 / 2 + 4 * 8 + 30);
+    }
+
+    @Test
+    public void decode_smallestIntegerWithParameterZero() {
+        // The level of the finest differences gets the parameter 0, and the zigzag of MIN_VALUE has all 32 bits.
+        int[] line = {0, Integer.MIN_VALUE, 0, 0};
+        ByteBuffer buffer = ByteBuffer.allocate(RiceCoder.maxEncodedLength(line.length));
+
+        coder.encode(line, 0, line.length, buffer);
+        buffer.flip();
+        int[] decoded = new int[line.length];
+        coder.decode(buffer, decoded, 0, line.length);
+
+        assertTrue(Arrays.equals(line, decoded));
+    }
+
+    @Test
+    public void decode_packedWidthsWithExceptions() {
+        // Evenly spread numbers of every size, which are cheaper packed than Rice coded.
+        int[] bits = {3, 7, 11, 15, 20, 30};
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 18);
+        int[][] lines = new int[20][];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = new int[random.nextInt(1000)];
+            for (int j = 0; j < lines[i].length; j++) {
+                int size = bits[Math.min(bits.length - 1, 31 - Integer.numberOfLeadingZeros(lines[i].length - j))];
+                lines[i][j] = random.nextInt(1 << size) - (1 << (size - 1));
+                if (random.nextInt(50) == 0) {
+                    lines[i][j] = random.nextInt();
+                }
+            }
+            coder.encode(lines[i], 0, lines[i].length, buffer);
+        }
+        buffer.flip();
+
+        for (int i = 0; i < lines.length; i++) {
+            int[] decoded = new int[lines[i].length];
+            coder.decode(buffer, decoded, 0, lines[i].length);
+            assertTrue(Arrays.equals(lines[i], decoded));
+        }
+        assertFalse(buffer.hasRemaining());
+    }
+
+    /**
+     * A line like a transform: small numbers first, then bigger ones.
+     */
+    private int[] randomLine(int length) {
+        int[] line = new int[length];
+        for (int i = 0; i < length; i++) {
+            int bits = 1 + random.nextInt(1 + i / 8);
+            line[i] = random.nextInt() >> (32 - Math.min(32, bits));
+        }
+        return line;
+    }
+}
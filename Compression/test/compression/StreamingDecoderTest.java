@@ -0,0 +1,106 @@
+package compression;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class StreamingDecoderTest {
+
+    ForkJoinPool pool;
+    ImagePlanes image;
+    File wtf;
+    File bmp;
+
+    @Before
+    public void setUp() throws IOException {
+        pool = new ForkJoinPool(2);
+        Random random = new Random();
+        image = new ImagePlanes(3, 75, 41);
+        for (int c = 0; c < 3; c++) {
+            random.nextBytes(image.getPlane(c));
+        }
+        wtf = File.createTempFile("testDecoder", ".wtf");
+        bmp = File.createTempFile("testDecoder", ".bmp");
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+        wtf.delete();
+        bmp.delete();
+    }
+
+    @Test
+    public void columnsInStrips_losslessImage() throws IOException {
+        WTFIO.writeMixedData(ParallelTransform.lossyTransform(image, 0, pool), 41, 0, wtf);
+        StreamingDecoder.decode(wtf, bmp, 19 * 41 * 8, pool);
+
+        assertTheSame(image, BitmapIO.readFileIntoPlanes(bmp));
+    }
+
+    @Test
+    public void columnsInStrips_sameAsAtOnce() throws IOException {
+        WTFIO.writeMixedData(ParallelTransform.lossyTransform(image, 2, pool), 41, 2, wtf);
+        StreamingDecoder.decode(wtf, bmp, 1, pool);
+        ImagePlanes expected = ParallelTransform.inverseLossyTransform(new WTFIO(wtf).readPlanes(), 41, 2, pool);
+
+        assertTheSame(expected, BitmapIO.readFileIntoPlanes(bmp));
+    }
+
+    @Test
+    public void tilesInStrips_sameAsAtOnce() throws IOException {
+        WTFIO.writeMixedDataTiled(HaarTransform.lossyTransformTiled(image, 1, 16, pool), 75, 41, 1, 16, wtf);
+        StreamingDecoder.decode(wtf, bmp, 1, pool);
+        ImagePlanes expected = HaarTransform.inverseLossyTransformTiled(new WTFIO(wtf).readPlanes(), 75, 41, 1, 16,
+                pool);
+
+        assertTheSame(expected, BitmapIO.readFileIntoPlanes(bmp));
+    }
+
+    @Test
+    public void imageWithAlpha_fourColors() throws IOException {
+        ImagePlanes transparent = new ImagePlanes(4, 75, 41);
+        for (int c = 0; c < 4; c++) {
+            new Random().nextBytes(transparent.getPlane(c));
+        }
+        WTFIO.writeMixedData(ParallelTransform.lossyTransform(transparent, 0, pool), 41, 0, wtf);
+        StreamingDecoder.decode(wtf, bmp, 19 * 41 * 8, pool);
+
+        assertTheSame(transparent, BitmapIO.readFileIntoPlanes(bmp));
+    }
+
+    @Test
+    public void colorTransform_turnedBackInStrips() throws IOException {
+        CoefficientPlanes transform = ParallelTransform.lossyTransform(image, 0, pool);
+        ColorTransform.forward(transform);
+        WTFIO.writeMixedData(transform, 41, 0, wtf);
+        StreamingDecoder.decode(wtf, bmp, 19 * 41 * 8, pool);
+
+        assertTheSame(image, BitmapIO.readFileIntoPlanes(bmp));
+    }
+
+    @Test
+    public void rowMajor_bandsOfRows() throws IOException {
+        CoefficientPlanes transform = ParallelTransform.lossyTransform(image.transposed(), 0, pool);
+        transform.setRowMajor(true);
+        WTFIO.writeRiceData(transform, 41, 75, 0, 0, wtf);
+        StreamingDecoder.decode(wtf, bmp, 7 * 75 * 8, pool);
+
+        assertTheSame(image, BitmapIO.readFileIntoPlanes(bmp));
+    }
+
+    private static void assertTheSame(ImagePlanes expected, ImagePlanes actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertEquals(expected.getColors(), actual.getColors());
+        for (int c = 0; c < expected.getColors(); c++) {
+            assertTrue(Arrays.equals(expected.getPlane(c), actual.getPlane(c)));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package compression;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import javax.imageio.ImageIO;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class StreamingEncoderTest {
+
+    ForkJoinPool pool;
+    ImagePlanes image;
+    File bmp;
+    File expected;
+    File streamed;
+
+    @Before
+    public void setUp() throws IOException {
+        pool = new ForkJoinPool(2);
+        Random random = new Random();
+        image = new ImagePlanes(3, 75, 41);
+        for (int c = 0; c < 3; c++) {
+            random.nextBytes(image.getPlane(c));
+        }
+        bmp = File.createTempFile("testStreaming", ".bmp");
+        BitmapIO.writePlanesIntoBitmap(image, bmp);
+        expected = File.createTempFile("testExpected", ".wtf");
+        streamed = File.createTempFile("testStreamed", ".wtf");
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+        bmp.delete();
+        expected.delete();
+        streamed.delete();
+    }
+
+    @Test
+    public void stripWidth_fitsTheBudget() {
+        assertEquals(10, StreamingEncoder.stripWidth(100, 3, 0, 19 * 100 * 10));
+        assertEquals(1, StreamingEncoder.stripWidth(100, 3, 0, 1));
+        assertEquals(32, StreamingEncoder.stripWidth(100, 3, 16, 19 * 100 * 40));
+        assertEquals(16, StreamingEncoder.stripWidth(100, 3, 16, 1));
+    }
+
+    @Test
+    public void columnsInStrips_sameFileAsAtOnce() throws IOException {
+        WTFIO.writeMixedData(ParallelTransform.lossyTransform(image, 2, pool), 41, 2, expected);
+        StreamingEncoder.encode(bmp, streamed, 2, 0, 19 * 41 * 8, pool);
+
+        assertTrue(Arrays.equals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(streamed.toPath())));
+    }
+
+    @Test
+    public void tilesInStrips_sameFileAsAtOnce() throws IOException {
+        WTFIO.writeMixedDataTiled(HaarTransform.lossyTransformTiled(image, 1, 16, pool), 75, 41, 1, 16, expected);
+        StreamingEncoder.encode(bmp, streamed, 1, 16, 1, pool);
+
+        assertTrue(Arrays.equals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(streamed.toPath())));
+        assertEquals(0, streamed.getAbsoluteFile().getParentFile().listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith("color") && name.endsWith(".part");
+            }
+        }).length);
+    }
+
+    @Test
+    public void otherFormats_readWithImageIO() throws IOException {
+        File png = File.createTempFile("testStreaming", ".png");
+        ImageIO.write(BitmapIO.planesToImage(image), "png", png);
+        WTFIO.writeMixedData(ParallelTransform.lossyTransform(image, 2, pool), 41, 2, expected);
+        StreamingEncoder.encode(png, streamed, 2, 0, 19 * 41 * 8, pool);
+        png.delete();
+
+        assertTrue(Arrays.equals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(streamed.toPath())));
+    }
+
+    @Test
+    public void grayImage_oneColor() throws IOException {
+        ImagePlanes gray = new ImagePlanes(1, 75, 41);
+        new Random().nextBytes(gray.getPlane(0));
+        BitmapIO.writePlanesIntoBitmap(gray, bmp);
+        WTFIO.writeMixedData(ParallelTransform.lossyTransform(gray, 2, pool), 41, 2, expected);
+        StreamingEncoder.encode(bmp, streamed, 2, 0, 19 * 41 * 8, pool);
+
+        WTFIO read = new WTFIO(streamed);
+        assertEquals(1, read.getNoOfColors());
+        read.close();
+        assertTrue(Arrays.equals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(streamed.toPath())));
+    }
+}
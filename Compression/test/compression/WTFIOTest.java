@@ -4,6 +4,10 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -229,6 +233,627 @@ public class WTFIOTest {
         }
     }
 
+    @Test
+    public void writeAndReadMixedData2D() throws IOException {
+        Random random = new Random();
+        byte[][][] data = new byte[3][57][33];
+        for (int c = 0; c < 3; c++) {
+            for (int x = 0; x < 57; x++) {
+                random.nextBytes(data[c][x]);
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(2);
+        int[][][] transform = HaarTransform.lossyTransform2D(data, 1, pool);
+        File file = File.createTempFile("test2D", ".wtf");
+        WTFIO.writeMixedData2D(transform, 57, 33, 1, file);
+
+        WTFIO read = new WTFIO(file);
+        assertEquals(WTFIO.TYPE_MIXED_2D, read.getTypeOfFile());
+        assertEquals(57, read.getOriginalWidth());
+        assertEquals(33, read.getOriginalHeight());
+        assertEquals(transform[0].length, read.getCompressedWidth());
+        int[][][] readTransform = read.readData();
+        file.delete();
+        pool.shutdown();
+
+        assertTrue(ParallelTransformTest.areTheSameArrays(transform, readTransform));
+    }
+
+    @Test
+    public void writeAndReadMixedDataTiled() throws IOException {
+        Random random = new Random();
+        byte[][][] data = new byte[3][70][45];
+        for (int c = 0; c < 3; c++) {
+            for (int x = 0; x < 70; x++) {
+                random.nextBytes(data[c][x]);
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(2);
+        int[][][] transform = HaarTransform.lossyTransformTiled(data, 1, 32, pool);
+        File file = File.createTempFile("testTiled", ".wtf");
+        WTFIO.writeMixedDataTiled(transform, 70, 45, 1, 32, file);
+
+        WTFIO read = new WTFIO(file);
+        assertEquals(WTFIO.TYPE_MIXED_TILED, read.getTypeOfFile());
+        assertEquals(32, read.getTileSize());
+        int[][][] readTransform = read.readData();
+        file.delete();
+        pool.shutdown();
+
+        assertEquals(transform[0].length, readTransform[0].length);
+        for (int c = 0; c < 3; c++) {
+            for (int tile = 0; tile < transform[c].length; tile++) {
+                assertTrue(Arrays.equals(transform[c][tile], readTransform[c][tile]));
+            }
+        }
+    }
+
+    @Test
+    public void writeAndReadPlanes() throws IOException {
+        Random random = new Random();
+        ImagePlanes image = new ImagePlanes(3, 40, 66);
+        for (int c = 0; c < 3; c++) {
+            random.nextBytes(image.getPlane(c));
+        }
+        ForkJoinPool pool = new ForkJoinPool(2);
+        CoefficientPlanes transform = ParallelTransform.lossyTransform(image, 0, pool);
+        File file = File.createTempFile("testPlanes", ".wtf");
+        WTFIO.writeMixedData(transform, 66, 0, file);
+
+        CoefficientPlanes readTransform = new WTFIO(file).readPlanes();
+        ImagePlanes inverse = ParallelTransform.inverseLossyTransform(readTransform, 66, 0, pool);
+        file.delete();
+        pool.shutdown();
+
+        for (int c = 0; c < 3; c++) {
+            assertTrue(Arrays.equals(transform.getPlane(c), readTransform.getPlane(c)));
+            assertTrue(Arrays.equals(image.getPlane(c), inverse.getPlane(c)));
+        }
+    }
+
+    @Test
+    public void narrowWriteIsTheSameAsPlanesWrite() throws IOException {
+        Random random = new Random();
+        ImagePlanes image = new ImagePlanes(3, 40, 66);
+        for (int c = 0; c < 3; c++) {
+            random.nextBytes(image.getPlane(c));
+        }
+        ForkJoinPool pool = new ForkJoinPool(2);
+        CoefficientPlanes transform = ParallelTransform.lossyTransform(image, 1, pool);
+        NarrowCoefficients narrow = ParallelTransform.lossyTransformNarrow(image, 1, pool);
+        File planesFile = File.createTempFile("testPlanes", ".wtf");
+        File narrowFile = File.createTempFile("testNarrow", ".wtf");
+        WTFIO.writeMixedData(transform, 66, 1, planesFile);
+        WTFIO.writeMixedData(narrow, 66, 1, narrowFile);
+
+        byte[] planesBytes = Files.readAllBytes(planesFile.toPath());
+        byte[] narrowBytes = Files.readAllBytes(narrowFile.toPath());
+        NarrowCoefficients readNarrow = new WTFIO(narrowFile).readNarrowData();
+        CoefficientPlanes readTransform = readNarrow.toPlanes(null, pool);
+        planesFile.delete();
+        narrowFile.delete();
+        pool.shutdown();
+
+        assertTrue(Arrays.equals(planesBytes, narrowBytes));
+        for (int c = 0; c < 3; c++) {
+            assertTrue(Arrays.equals(transform.getPlane(c), readTransform.getPlane(c)));
+        }
+    }
+
+    @Test
+    public void nextLineAndSkipLines() throws IOException {
+        Random random = new Random();
+        ImagePlanes image = new ImagePlanes(3, 70, 45);
+        for (int c = 0; c < 3; c++) {
+            random.nextBytes(image.getPlane(c));
+        }
+        ForkJoinPool pool = new ForkJoinPool(2);
+        CoefficientPlanes transform = HaarTransform.lossyTransformTiled(image, 1, 32, pool);
+        pool.shutdown();
+        File file = File.createTempFile("testCursor", ".wtf");
+        WTFIO.writeMixedDataTiled(transform, 70, 45, 1, 32, file);
+
+        WTFIO cursor = new WTFIO(file);
+        cursor.skipLines(cursor.getLines() + 5);
+        int[] line = new int[cursor.getCompressedHeight()];
+        int length = cursor.nextLine(line, 0);
+        int[] secondColor = transform.getPlane(1);
+        int offset = 0;
+        for (int i = 0; i < 5; i++) {
+            offset += cursor.getLineLength(i);
+        }
+        int lines = 6;
+        while (cursor.hasNextLine()) {
+            cursor.nextLine(new int[length], 0);
+            lines++;
+        }
+        cursor.close();
+        file.delete();
+
+        assertEquals(length, cursor.getLineLength(5));
+        assertTrue(Arrays.equals(Arrays.copyOfRange(secondColor, offset, offset + length),
+                Arrays.copyOf(line, length)));
+        assertEquals(2 * cursor.getLines(), lines);
+    }
+
+    @Test
+    public void indexedFiles_sameDataAsOtherTypes() throws IOException {
+        Random random = new Random();
+        ImagePlanes image = new ImagePlanes(3, 70, 45);
+        for (int c = 0; c < 3; c++) {
+            random.nextBytes(image.getPlane(c));
+        }
+        ForkJoinPool pool = new ForkJoinPool(3);
+        CoefficientPlanes columns = ParallelTransform.lossyTransform(image, 1, pool);
+        CoefficientPlanes tiles = HaarTransform.lossyTransformTiled(image, 1, 32, pool);
+        Tiling tiling = new Tiling(70, 45, 32, 1);
+        File file = File.createTempFile("testIndexed", ".wtf");
+        File narrowFile = File.createTempFile("testIndexedNarrow", ".wtf");
+
+        try {
+            for (int tileSize : new int[]{0, 32}) {
+                CoefficientPlanes transform = tileSize > 0 ? tiles : columns;
+                WTFIO.writeIndexedData(transform, 70, 45, 1, tileSize, file);
+                WTFIO.writeIndexedData(NarrowCoefficients.fromPlanes(transform, tileSize > 0 ? tiling : null, pool),
+                        70, 45, 1, tileSize, narrowFile);
+                assertTrue(Arrays.equals(Files.readAllBytes(file.toPath()), Files.readAllBytes(narrowFile.toPath())));
+
+                CoefficientPlanes parallel = new WTFIO(file).readPlanes(pool);
+                CoefficientPlanes sequential = new WTFIO(file).readPlanes();
+                for (int c = 0; c < 3; c++) {
+                    assertTrue(Arrays.equals(transform.getPlane(c), parallel.getPlane(c)));
+                    assertTrue(Arrays.equals(transform.getPlane(c), sequential.getPlane(c)));
+                }
+            }
+        } finally {
+            pool.shutdown();
+            file.delete();
+            narrowFile.delete();
+        }
+    }
+
+    @Test
+    public void readCoarserPlanes_sameAsCoarserTransform() throws IOException {
+        Random random = new Random();
+        ImagePlanes image = new ImagePlanes(3, 40, 600);
+        for (int c = 0; c < 3; c++) {
+            random.nextBytes(image.getPlane(c));
+        }
+        for (int y = 0; y < 600; y++) {
+            image.set(1, 3, y, Byte.MIN_VALUE); // Sums that need ints
+        }
+        ForkJoinPool pool = new ForkJoinPool(2);
+        CoefficientPlanes transform = ParallelTransform.lossyTransform(image, 1, pool);
+        File indexedFile = File.createTempFile("testIndexed", ".wtf");
+        File mixedFile = File.createTempFile("testMixed", ".wtf");
+
+        try {
+            WTFIO.writeIndexedData(transform, 40, 600, 1, 0, indexedFile);
+            WTFIO.writeMixedData(transform, 600, 1, mixedFile);
+            for (int newLevelOfLoss : new int[]{1, 3, 12}) {
+                CoefficientPlanes indexed = new WTFIO(indexedFile).readCoarserPlanes(newLevelOfLoss, pool);
+                CoefficientPlanes mixed = new WTFIO(mixedFile).readCoarserPlanes(newLevelOfLoss, pool);
+                int length = HaarTransform.compressedLength(600, newLevelOfLoss);
+                int[] expected = new int[length];
+                for (int c = 0; c < 3; c++) {
+                    for (int x = 0; x < 40; x++) {
+                        HaarTransform.coarserTransform(transform.getPlane(c), transform.lineOffset(x), 600, 1,
+                                newLevelOfLoss, expected, 0);
+                        int start = x * length;
+                        assertTrue(Arrays.equals(expected,
+                                Arrays.copyOfRange(indexed.getPlane(c), start, start + length)));
+                        assertTrue(Arrays.equals(expected,
+                                Arrays.copyOfRange(mixed.getPlane(c), start, start + length)));
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+            indexedFile.delete();
+            mixedFile.delete();
+        }
+    }
+
+    @Test
+    public void readRegion_samePixelsAsWholeImage() throws IOException {
+        Random random = new Random();
+        ImagePlanes image = new ImagePlanes(3, 50, 300);
+        for (int c = 0; c < 3; c++) {
+            random.nextBytes(image.getPlane(c));
+        }
+        ForkJoinPool pool = new ForkJoinPool(2);
+        File file = File.createTempFile("testRegion", ".wtf");
+
+        try {
+            for (int levelOfLoss : new int[]{0, 2}) {
+                CoefficientPlanes transform = ParallelTransform.lossyTransform(image, levelOfLoss, pool);
+                ImagePlanes whole = ParallelTransform.inverseLossyTransform(transform, 300, levelOfLoss, pool);
+                for (int type = 0; type < 6; type++) {
+                    if (type == 0) {
+                        WTFIO.writeIntegerData(transform, 300, levelOfLoss, file);
+                    } else if (type == 1) {
+                        WTFIO.writeMixedData(transform, 300, levelOfLoss, file);
+                    } else if (type == 2) {
+                        WTFIO.writeIndexedData(transform, 50, 300, levelOfLoss, 0, file);
+                    } else if (type == 3) {
+                        WTFIO.writeRiceData(transform, 50, 300, levelOfLoss, 0, file);
+                    } else if (type == 4) {
+                        WTFIO.writeZeroRunData(transform, 50, 300, levelOfLoss, 0, file);
+                    } else {
+                        WTFIO.writeEntropyData(transform, 50, 300, levelOfLoss, 0, file);
+                    }
+                    int x = random.nextInt(50);
+                    int y = random.nextInt(300);
+                    int width = 1 + random.nextInt(50 - x);
+                    int height = 1 + random.nextInt(300 - y);
+                    for (boolean mapped : new boolean[]{true, false}) {
+                        WTFIO.setMappedIO(mapped);
+                        CoefficientPlanes columns = new WTFIO(file).readRegion(x, y, width, height, pool);
+                        ImagePlanes region = ParallelTransform.inverseRegion(columns, 300, levelOfLoss, y, height,
+                                pool);
+                        for (int c = 0; c < 3; c++) {
+                            for (int i = 0; i < width; i++) {
+                                for (int j = 0; j < height; j++) {
+                                    assertEquals(whole.get(c, x + i, y + j), region.get(c, i, j));
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            WTFIO.setMappedIO(true);
+            pool.shutdown();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void indexedFiles_anyLineCanBeRead() throws IOException {
+        Random random = new Random();
+        ImagePlanes image = new ImagePlanes(3, 70, 45);
+        for (int c = 0; c < 3; c++) {
+            random.nextBytes(image.getPlane(c));
+        }
+        ForkJoinPool pool = new ForkJoinPool(2);
+        CoefficientPlanes transform = ParallelTransform.lossyTransform(image, 0, pool);
+        pool.shutdown();
+        File file = File.createTempFile("testIndexed", ".wtf");
+        WTFIO.writeIndexedData(transform, 70, 45, 0, 0, file);
+
+        WTFIO wtf = new WTFIO(file);
+        int length = transform.getLineLength();
+        int[] line = new int[length];
+        for (int i = 0; i < 100; i++) {
+            int color = random.nextInt(3);
+            int column = random.nextInt(70);
+            assertEquals(length, wtf.readLineAt(color, column, line, 0));
+            assertTrue(Arrays.equals(Arrays.copyOfRange(transform.getPlane(color), transform.lineOffset(column),
+                    transform.lineOffset(column) + length), line));
+        }
+        wtf.skipLines(70 + 13);
+        wtf.nextLine(line, 0);
+        wtf.close();
+        file.delete();
+
+        assertTrue(Arrays.equals(Arrays.copyOfRange(transform.getPlane(1), transform.lineOffset(13),
+                transform.lineOffset(13) + length), line));
+    }
+
+    @Test
+    public void entropyCodedFiles_sameDataAsOtherTypes() throws IOException {
+        ImagePlanes image = new ImagePlanes(3, 300, 257);
+        for (int c = 0; c < 3; c++) {
+            byte[] plane = image.getPlane(c);
+            for (int i = 0; i < plane.length; i++) {
+                plane[i] = (byte) (i / 300 + c * (i % 257) / 8);
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(3);
+        File file = File.createTempFile("testEntropy", ".wtf");
+        File mixedFile = File.createTempFile("testMixed", ".wtf");
+
+        try {
+            for (int tileSize : new int[]{0, 64}) {
+                CoefficientPlanes transform = tileSize > 0
+                        ? HaarTransform.lossyTransformTiled(image, 1, tileSize, pool)
+                        : ParallelTransform.lossyTransform(image, 1, pool);
+                WTFIO.writeEntropyData(transform, 300, 257, 1, tileSize, file, pool);
+
+                CoefficientPlanes parallel = new WTFIO(file).readPlanes(pool);
+                CoefficientPlanes sequential = new WTFIO(file).readPlanes();
+                CoefficientPlanes narrow = new WTFIO(file).readNarrowData()
+                        .toPlanes(new WTFIO(file).getTiling(), pool);
+                for (int c = 0; c < 3; c++) {
+                    assertTrue(Arrays.equals(transform.getPlane(c), parallel.getPlane(c)));
+                    assertTrue(Arrays.equals(transform.getPlane(c), sequential.getPlane(c)));
+                    assertTrue(Arrays.equals(transform.getPlane(c), narrow.getPlane(c)));
+                }
+            }
+
+            WTFIO.writeMixedData(ParallelTransform.lossyTransform(image, 1, pool), 257, 1, mixedFile);
+            WTFIO.writeEntropyData(ParallelTransform.lossyTransform(image, 1, pool), 300, 257, 1, 0, file);
+            assertTrue(file.length() < mixedFile.length());
+        } finally {
+            pool.shutdown();
+            file.delete();
+            mixedFile.delete();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void entropyCodedFiles_notLineByLine() throws IOException {
+        ImagePlanes image = new ImagePlanes(3, 10, 10);
+        ForkJoinPool pool = new ForkJoinPool(1);
+        File file = File.createTempFile("testEntropy", ".wtf");
+        WTFIO.writeEntropyData(HaarTransform.lossyTransformTiled(image, 0, 4, pool), 10, 10, 0, 4, file);
+        pool.shutdown();
+        WTFIO wtf = new WTFIO(file);
+        try {
+            wtf.nextLine(new int[100], 0);
+        } finally {
+            wtf.close();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void riceCodedFiles_sameDataAsOtherTypes() throws IOException {
+        ImagePlanes image = new ImagePlanes(3, 150, 97);
+        Random random = new Random();
+        for (int c = 0; c < 3; c++) {
+            byte[] plane = image.getPlane(c);
+            for (int i = 0; i < plane.length; i++) {
+                plane[i] = (byte) (i / 97 + c * (i % 97) / 8 + random.nextInt(5));
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(2);
+        File file = File.createTempFile("testRice", ".wtf");
+        File mixedFile = File.createTempFile("testMixed", ".wtf");
+
+        try {
+            for (int tileSize : new int[]{0, 32}) {
+                CoefficientPlanes transform = tileSize > 0
+                        ? HaarTransform.lossyTransformTiled(image, 0, tileSize, pool)
+                        : ParallelTransform.lossyTransform(image, 0, pool);
+                WTFIO.writeRiceData(transform, 150, 97, 0, tileSize, file);
+
+                WTFIO.setMappedIO(false);
+                CoefficientPlanes streamed = new WTFIO(file).readPlanes();
+                WTFIO.setMappedIO(true);
+                CoefficientPlanes mapped = new WTFIO(file).readPlanes();
+                WTFIO cursor = new WTFIO(file);
+                cursor.skipLines(cursor.getLines() + 5);
+                int[] line = new int[cursor.getLineLength(5)];
+                cursor.nextLine(line, 0);
+                cursor.close();
+                int lineStart = 0;
+                for (int j = 0; j < 5; j++) {
+                    lineStart += cursor.getLineLength(j);
+                }
+
+                for (int c = 0; c < 3; c++) {
+                    assertTrue(Arrays.equals(transform.getPlane(c), streamed.getPlane(c)));
+                    assertTrue(Arrays.equals(transform.getPlane(c), mapped.getPlane(c)));
+                }
+                assertTrue(Arrays.equals(Arrays.copyOfRange(transform.getPlane(1), lineStart,
+                        lineStart + line.length), line));
+            }
+
+            WTFIO.writeMixedData(ParallelTransform.lossyTransform(image, 0, pool), 97, 0, mixedFile);
+            WTFIO.writeRiceData(ParallelTransform.lossyTransform(image, 0, pool), 150, 97, 0, 0, file);
+            assertTrue(file.length() < mixedFile.length());
+        } finally {
+            WTFIO.setMappedIO(true);
+            pool.shutdown();
+            file.delete();
+            mixedFile.delete();
+        }
+    }
+
+    @Test
+    public void zeroRunFiles_sameDataAndSmallerWhenFlat() throws IOException {
+        ImagePlanes image = new ImagePlanes(3, 150, 97);
+        for (int c = 0; c < 3; c++) {
+            byte[] plane = image.getPlane(c);
+            for (int i = 0; i < plane.length; i++) {
+                plane[i] = (byte) (i / 97 < 60 ? 10 * c : 30 + 20 * ((i % 97) / 40));
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(2);
+        File file = File.createTempFile("testZeroRun", ".wtf");
+        File mixedFile = File.createTempFile("testMixed", ".wtf");
+
+        try {
+            for (int tileSize : new int[]{0, 32}) {
+                CoefficientPlanes transform = tileSize > 0
+                        ? HaarTransform.lossyTransformTiled(image, 0, tileSize, pool)
+                        : ParallelTransform.lossyTransform(image, 0, pool);
+                WTFIO.writeZeroRunData(transform, 150, 97, 0, tileSize, file);
+
+                WTFIO.setMappedIO(false);
+                CoefficientPlanes streamed = new WTFIO(file).readPlanes();
+                WTFIO.setMappedIO(true);
+                CoefficientPlanes mapped = new WTFIO(file).readPlanes(pool);
+                for (int c = 0; c < 3; c++) {
+                    assertTrue(Arrays.equals(transform.getPlane(c), streamed.getPlane(c)));
+                    assertTrue(Arrays.equals(transform.getPlane(c), mapped.getPlane(c)));
+                }
+            }
+
+            WTFIO.writeMixedData(ParallelTransform.lossyTransform(image, 0, pool), 97, 0, mixedFile);
+            WTFIO.writeZeroRunData(ParallelTransform.lossyTransform(image, 0, pool), 150, 97, 0, 0, file);
+            assertTrue(file.length() < mixedFile.length() / 4);
+        } finally {
+            WTFIO.setMappedIO(true);
+            pool.shutdown();
+            file.delete();
+            mixedFile.delete();
+        }
+    }
+
+    @Test
+    public void sparseImage_sameAsDenseInverse() throws IOException {
+        Random random = new Random(7);
+        ImagePlanes image = new ImagePlanes(3, 80, 97);
+        for (int c = 0; c < 3; c++) {
+            byte[] plane = image.getPlane(c);
+            for (int i = 0; i < plane.length; i++) {
+                // Flat columns, whose lines are sparse, and noisy ones, whose lines are dense
+                plane[i] = (byte) (i / 97 < 40 ? 10 * c + 20 * ((i % 97) / 50) : random.nextInt(256));
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(2);
+        File file = File.createTempFile("testZeroRun", ".wtf");
+
+        try {
+            WTFIO.writeZeroRunData(HaarTransform.lossyTransformTiled(image, 0, 32, pool), 80, 97, 0, 32, file);
+            assertFalse(new WTFIO(file).canReadSparse());
+
+            for (int levelOfLoss = 0; levelOfLoss < 4; levelOfLoss++) {
+                CoefficientPlanes transform = ParallelTransform.lossyTransform(image, levelOfLoss, pool);
+                ImagePlanes expected = ParallelTransform.inverseLossyTransform(transform, 97, levelOfLoss, pool);
+                WTFIO.writeZeroRunData(transform, 80, 97, levelOfLoss, 0, file);
+                for (boolean mapped : new boolean[]{true, false}) {
+                    WTFIO.setMappedIO(mapped);
+                    WTFIO read = new WTFIO(file);
+                    assertTrue(read.canReadSparse());
+                    ImagePlanes sparse = read.readSparseImage(pool);
+                    for (int c = 0; c < 3; c++) {
+                        assertTrue(Arrays.equals(expected.getPlane(c), sparse.getPlane(c)));
+                    }
+                }
+            }
+        } finally {
+            WTFIO.setMappedIO(true);
+            pool.shutdown();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void progressiveFiles_sameDataAndBeginningsCloserWhenLonger() throws IOException {
+        Random random = new Random(8);
+        ImagePlanes image = new ImagePlanes(3, 150, 97);
+        for (int c = 0; c < 3; c++) {
+            byte[] plane = image.getPlane(c);
+            for (int i = 0; i < plane.length; i++) {
+                plane[i] = (byte) (i / 97 + i % 97 + 20 * c + random.nextInt(8));
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(2);
+        File file = File.createTempFile("testProgressive", ".wtf");
+
+        try {
+            for (int tileSize : new int[]{0, 32}) {
+                CoefficientPlanes transform = tileSize > 0
+                        ? HaarTransform.lossyTransformTiled(image, 0, tileSize, pool)
+                        : ParallelTransform.lossyTransform(image, 0, pool);
+                WTFIO.writeProgressiveData(transform, 150, 97, 0, tileSize, file);
+
+                CoefficientPlanes whole = new WTFIO(file).readPlanes(pool);
+                for (int c = 0; c < 3; c++) {
+                    assertTrue(Arrays.equals(transform.getPlane(c), whole.getPlane(c)));
+                }
+
+                long previous = Long.MAX_VALUE;
+                for (int percent : new int[]{5, 20, 50, 80}) {
+                    WTFIO read = new WTFIO(file);
+                    CoefficientPlanes beginning = read.readProgressive(file.length() * percent / 100);
+                    ImagePlanes decoded = tileSize > 0
+                            ? HaarTransform.inverseLossyTransformTiled(beginning, 150, 97, 0, tileSize, pool)
+                            : ParallelTransform.inverseLossyTransform(beginning, 97, 0, pool);
+                    long error = squaredError(image, decoded);
+                    assertTrue(error > 0);
+                    assertTrue(error < previous);
+                    previous = error;
+                }
+            }
+        } finally {
+            pool.shutdown();
+            file.delete();
+        }
+    }
+
+    /**
+     * Sums the squares of the differences of the pixels of two images.
+     */
+    private static long squaredError(ImagePlanes expected, ImagePlanes actual) {
+        long sum = 0;
+        for (int c = 0; c < expected.getColors(); c++) {
+            byte[] a = expected.getPlane(c);
+            byte[] b = actual.getPlane(c);
+            for (int i = 0; i < a.length; i++) {
+                int difference = (a[i] & 0xFF) - (b[i] & 0xFF);
+                sum += difference * difference;
+            }
+        }
+        return sum;
+    }
+
+    @Test
+    public void streamsAndChannels_sameFilesAndData() throws IOException {
+        Random random = new Random();
+        ImagePlanes image = new ImagePlanes(3, 70, 45);
+        for (int c = 0; c < 3; c++) {
+            random.nextBytes(image.getPlane(c));
+        }
+        ForkJoinPool pool = new ForkJoinPool(2);
+        CoefficientPlanes transform = HaarTransform.lossyTransformTiled(image, 0, 32, pool);
+        pool.shutdown();
+        File streamFile = File.createTempFile("testStream", ".wtf");
+        File channelFile = File.createTempFile("testChannel", ".wtf");
+
+        WTFIO.setMappedIO(false);
+        try {
+            WTFIO.writeMixedDataTiled(transform, 70, 45, 0, 32, streamFile);
+            CoefficientPlanes streamRead = new WTFIO(streamFile).readPlanes();
+            WTFIO.setMappedIO(true);
+            WTFIO.writeMixedDataTiled(transform, 70, 45, 0, 32, channelFile);
+            CoefficientPlanes channelRead = new WTFIO(channelFile).readPlanes();
+
+            assertTrue(Arrays.equals(Files.readAllBytes(streamFile.toPath()), Files.readAllBytes(channelFile.toPath())));
+            for (int c = 0; c < 3; c++) {
+                assertTrue(Arrays.equals(transform.getPlane(c), streamRead.getPlane(c)));
+                assertTrue(Arrays.equals(transform.getPlane(c), channelRead.getPlane(c)));
+            }
+        } finally {
+            WTFIO.setMappedIO(true);
+            streamFile.delete();
+            channelFile.delete();
+        }
+    }
+
+    @Test
+    public void colorTransform_toldInHeader() throws IOException {
+        ImagePlanes image = new ImagePlanes(3, 20, 17);
+        new Random().nextBytes(image.getPlane(1));
+        ForkJoinPool pool = new ForkJoinPool(2);
+        CoefficientPlanes transform = ParallelTransform.lossyTransform(image, 1, pool);
+        pool.shutdown();
+        ColorTransform.forward(transform);
+        File transformed = File.createTempFile("testYCoCg", ".wtf");
+        File plain = File.createTempFile("testPlain", ".wtf");
+
+        try {
+            WTFIO.writeRiceData(transform, 20, 17, 1, 0, transformed);
+            transform.setColorTransformed(false);
+            WTFIO.writeRiceData(transform, 20, 17, 1, 0, plain);
+            WTFIO read = new WTFIO(transformed);
+            CoefficientPlanes readPlanes = read.readPlanes();
+
+            assertTrue(read.hasColorTransform());
+            assertEquals(3, read.getNoOfColors());
+            assertFalse(new WTFIO(plain).hasColorTransform());
+            for (int c = 0; c < 3; c++) {
+                assertTrue(Arrays.equals(transform.getPlane(c), readPlanes.getPlane(c)));
+            }
+        } finally {
+            transformed.delete();
+            plain.delete();
+        }
+    }
+
     public static boolean areTheSameArrays(byte[][][] a, byte[][][] b) {
         if (a.length != b.length) {
             return false;
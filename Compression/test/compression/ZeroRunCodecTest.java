@@ -0,0 +1,84 @@
+package compression;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ZeroRunCodecTest {
+
+    Random random;
+    ZeroRunCodec codec;
+
+    @Before
+    public void setUp() {
+        random = new Random();
+        codec = new ZeroRunCodec();
+    }
+
+    @Test
+    public void decode_inverseOfEncode() {
+        int[][] lines = {new int[0], new int[300], sparseLine(1000), sparseLine(17), sparseLine(5000)};
+        lines[3][16] = Integer.MIN_VALUE;
+        lines[3][0] = Integer.MAX_VALUE;
+        lines[4][4999] = 0;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+        for (int[] line : lines) {
+            int written = codec.encode(line, 0, line.length, buffer);
+            assertTrue(written <= ZeroRunCodec.maxEncodedLength(line.length));
+        }
+        buffer.flip();
+
+        for (int[] line : lines) {
+            int[] decoded = new int[line.length + 2];
+            Arrays.fill(decoded, 9); // The zeros must be written too.
+            codec.decode(buffer, decoded, 2, line.length);
+            assertTrue(Arrays.equals(line, Arrays.copyOfRange(decoded, 2, decoded.length)));
+        }
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void decodeSparse_sameAsDense() {
+        int[] line = sparseLine(2000);
+        ByteBuffer buffer = ByteBuffer.allocate(ZeroRunCodec.maxEncodedLength(line.length));
+        codec.encode(line, 0, line.length, buffer);
+        buffer.flip();
+
+        SparseLine sparse = new SparseLine();
+        codec.decode(buffer, sparse, line.length);
+        int[] decoded = new int[line.length];
+        sparse.toDense(decoded, 0);
+
+        assertTrue(Arrays.equals(line, decoded));
+        for (int k = 0; k < sparse.getCount(); k++) {
+            assertTrue(sparse.getValue(k) != 0);
+        }
+    }
+
+    @Test
+    public void encode_zeroRunsTakeLittleSpace() {
+        int[] line = new int[10000];
+        line[5000] = 3;
+        ByteBuffer buffer = ByteBuffer.allocate(ZeroRunCodec.maxEncodedLength(line.length));
+        assertTrue(codec.encode(line, 0, line.length, buffer) < 12);
+    }
+
+    /**
+     * A line with runs of zeros of different lengths between small and big
+     * numbers.
+     */
+    private int[] sparseLine(int length) {
+        int[] line = new int[length];
+        int i = 0;
+        while (i < length) {
+            i += random.nextInt(random.nextBoolean() ? 10 : 400);
+            if (i < length) {
+                line[i++] = random.nextBoolean() ? random.nextInt(17) - 8 : random.nextInt();
+            }
+        }
+        return line;
+    }
+}
@@ -0,0 +1,183 @@
+package compression;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The kernels of the class HaarKernels done with the vectors of the module
+ * jdk.incubator.vector. The numbers are handled INTS.length() at a time, and
+ * what is left over at the end of an array is given to the scalar methods of
+ * the superclass. The results are exactly the same as with the superclass.
+ *
+ * This needs Java 16 or newer, and it's compiled separately:
+ * javac --add-modules jdk.incubator.vector -cp build/classes -d build/classes vector/compression/VectorKernels.java
+ */
+public class VectorKernels extends HaarKernels {
+
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED.vectorBitSize() >= 256
+            ? IntVector.SPECIES_PREFERRED : IntVector.SPECIES_256;
+    // The bytes that fit into one vector of ints when converted:
+    private static final VectorSpecies<Byte> BYTES = VectorSpecies.of(byte.class,
+            VectorShape.forBitSize(INTS.vectorBitSize() / 4));
+    private static final int LANES = INTS.length();
+    // The longs into which the pairs are widened in splitSums:
+    private static final VectorSpecies<Long> LONGS = VectorSpecies.of(long.class, INTS.vectorShape());
+    // Where the first and the second numbers of LANES pairs are:
+    private static final int[] FIRSTS = everyOther(0);
+    private static final int[] SECONDS = everyOther(1);
+
+    /**
+     * An auxiliary method for the index maps of the pairs.
+     *
+     * @param first 0 for the first numbers, 1 for the second ones.
+     * @return The indices first, first + 2,..., first + 2 * (LANES - 1).
+     */
+    private static int[] everyOther(int first) {
+        int[] indices = new int[LANES];
+        for (int i = 0; i < LANES; i++) {
+            indices[i] = first + 2 * i;
+        }
+        return indices;
+    }
+
+    @Override
+    public String getName() {
+        return "vector (" + LANES + " ints)";
+    }
+
+    /**
+     * Sums the leaves like the superclass. Leaves of one number are just
+     * converted, and leaves of at least LANES numbers are summed a vector at
+     * a time.
+     */
+    @Override
+    public void sumLeaves(byte[] data, int leafSize, int[] leaves, int count) {
+        if (leafSize == 1) {
+            int upper = count - count % LANES;
+            for (int i = 0; i < upper; i += LANES) {
+                ByteVector.fromArray(BYTES, data, i).castShape(INTS, 0).reinterpretAsInts().intoArray(leaves, i);
+            }
+            for (int i = upper; i < count; i++) {
+                leaves[i] = data[i];
+            }
+        } else if (leafSize >= LANES) {
+            for (int leaf = 0; leaf < count; leaf++) {
+                IntVector sum = IntVector.zero(INTS);
+                for (int i = leaf * leafSize; i < (leaf + 1) * leafSize; i += LANES) {
+                    sum = sum.add(ByteVector.fromArray(BYTES, data, i).castShape(INTS, 0).reinterpretAsInts());
+                }
+                leaves[leaf] = sum.reduceLanes(VectorOperators.ADD);
+            }
+        } else {
+            super.sumLeaves(data, leafSize, leaves, count);
+        }
+    }
+
+    /**
+     * Sums the pairs like the superclass. The first numbers of LANES pairs are
+     * gathered into one vector and the second ones into another, and the
+     * vectors are added. On processors that can gather this is faster than
+     * reading whole vectors and separating the numbers with rearrange.
+     */
+    @Override
+    public void sumPairs(int[] source, int sourceOffset, int[] target, int targetOffset, int pairs) {
+        int upper = pairs - pairs % LANES;
+        for (int j = 0; j < upper; j += LANES) {
+            IntVector first = IntVector.fromArray(INTS, source, sourceOffset + 2 * j, FIRSTS, 0);
+            IntVector second = IntVector.fromArray(INTS, source, sourceOffset + 2 * j, SECONDS, 0);
+            first.add(second).intoArray(target, targetOffset + j);
+        }
+        super.sumPairs(source, sourceOffset + 2 * upper, target, targetOffset + upper, pairs - upper);
+    }
+
+    /**
+     * Subtracts the pairs like the superclass, see sumPairs.
+     */
+    @Override
+    public void differencesOfPairs(int[] source, int sourceOffset, int[] target, int targetOffset, int pairs) {
+        int upper = pairs - pairs % LANES;
+        for (int j = 0; j < upper; j += LANES) {
+            IntVector first = IntVector.fromArray(INTS, source, sourceOffset + 2 * j, FIRSTS, 0);
+            IntVector second = IntVector.fromArray(INTS, source, sourceOffset + 2 * j, SECONDS, 0);
+            first.sub(second).intoArray(target, targetOffset + j);
+        }
+        super.differencesOfPairs(source, sourceOffset + 2 * upper, target, targetOffset + upper, pairs - upper);
+    }
+
+    /**
+     * Adds, divides and converts like the superclass. The vectors have no
+     * fast division, so only divisors that are powers of two are handled
+     * here: the division rounds towards zero like Java's, so 2^k - 1 is added
+     * to the negative numbers before they are shifted right by k.
+     */
+    @Override
+    public void addDivideConvert(int[] data, int addThis, int divideByThis, byte[] result) {
+        if (divideByThis <= 0 || Integer.bitCount(divideByThis) != 1) {
+            super.addDivideConvert(data, addThis, divideByThis, result);
+            return;
+        }
+        int shift = Integer.numberOfTrailingZeros(divideByThis);
+        int upper = data.length - data.length % LANES;
+        for (int i = 0; i < upper; i += LANES) {
+            IntVector sum = IntVector.fromArray(INTS, data, i).add(addThis);
+            IntVector rounding = sum.lanewise(VectorOperators.ASHR, 31).and(divideByThis - 1);
+            sum.add(rounding).lanewise(VectorOperators.ASHR, shift)
+                    .castShape(BYTES, 0).reinterpretAsBytes().intoArray(result, i);
+        }
+        for (int i = upper; i < data.length; i++) {
+            result[i] = (byte) ((data[i] + addThis) / divideByThis);
+        }
+    }
+
+    /**
+     * Rebuilds the sums like the superclass, LANES of them at a time from the
+     * last ones to the first. The finer sums of LANES coarser ones are
+     * interleaved by widening them into longs, the second number of each pair
+     * into the upper half, and reading the longs back as ints. That's faster
+     * than rearrange, and scattering into every other place broke the arrays
+     * around it when compiled by the C2 of some Java 17 and 21 updates. What
+     * is left over at the beginning is rebuilt last by the superclass.
+     */
+    @Override
+    public void splitSums(int[] sums, int sumsOffset, int[] differences, int differencesOffset, int count) {
+        int rest = count % LANES;
+        for (int i = count - LANES; i >= rest; i -= LANES) {
+            IntVector sum = IntVector.fromArray(INTS, sums, sumsOffset + i);
+            IntVector difference = IntVector.fromArray(INTS, differences, differencesOffset + i);
+            IntVector firsts = half(sum.add(difference));
+            IntVector seconds = half(sum.sub(difference));
+            interleave(firsts, seconds, 0).intoArray(sums, sumsOffset + 2 * i);
+            interleave(firsts, seconds, 1).intoArray(sums, sumsOffset + 2 * i + LANES);
+        }
+        super.splitSums(sums, sumsOffset, differences, differencesOffset, rest);
+    }
+
+    /**
+     * An auxiliary method for splitSums. Divides by 2 rounding towards zero
+     * like Java's division: 1 is added to the negative numbers before they
+     * are shifted.
+     */
+    private static IntVector half(IntVector numbers) {
+        return numbers.add(numbers.lanewise(VectorOperators.LSHR, 31)).lanewise(VectorOperators.ASHR, 1);
+    }
+
+    /**
+     * An auxiliary method for splitSums. The vectors read as ints are little
+     * endian, so the lower half of each long comes first.
+     *
+     * @param firsts The first numbers of the pairs.
+     * @param seconds The second numbers of the pairs.
+     * @param part 0 for the first LANES / 2 pairs, 1 for the rest.
+     * @return The numbers of LANES / 2 pairs one after another.
+     */
+    private static IntVector interleave(IntVector firsts, IntVector seconds, int part) {
+        LongVector lower = ((LongVector) firsts.convertShape(VectorOperators.I2L, LONGS, part)).and(0xFFFFFFFFL);
+        LongVector upper = ((LongVector) seconds.convertShape(VectorOperators.I2L, LONGS, part))
+                .lanewise(VectorOperators.LSHL, 32);
+        return lower.or(upper).reinterpretAsInts();
+    }
+}